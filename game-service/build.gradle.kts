@@ -52,6 +52,7 @@ dependencies {
     // SPRING
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
+    implementation("org.springframework.boot:spring-boot-starter-data-redis")
     implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-validation")
     implementation("org.springframework.boot:spring-boot-starter-websocket")
@@ -95,8 +96,21 @@ dependencies {
     testImplementation("org.testcontainers:junit-jupiter:${versions["testContainersVersion"]}")
 }
 
-tasks.withType<Test> {
-    useJUnitPlatform()
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("stress")
+    }
+}
+
+// Параллельные ходы тысяч матчей на Postgres из Testcontainers: ./gradlew stress
+tasks.register<Test>("stress") {
+    group = "verification"
+    description = "Runs concurrent move stress tests against PostgreSQL"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("stress")
+    }
 }
 
 /*
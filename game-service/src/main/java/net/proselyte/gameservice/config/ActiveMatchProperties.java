@@ -0,0 +1,16 @@
+package net.proselyte.gameservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Состояние идущих матчей в памяти реплики.
+ *
+ * @param enabled принимать и разрешать ходы в памяти; требует, чтобы все ходы матча приходили на одну реплику
+ *                (маршрутизация по matchId), поэтому выключено по умолчанию
+ */
+@ConfigurationProperties("game.active-matches")
+public record ActiveMatchProperties(
+        @DefaultValue("false") boolean enabled
+) {
+}
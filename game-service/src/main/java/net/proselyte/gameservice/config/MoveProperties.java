@@ -0,0 +1,16 @@
+package net.proselyte.gameservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Обработка хода: транзакцией в базе или в памяти реплики ({@code game.active-matches}).
+ *
+ * @param maxAttempts сколько раз ход повторяется, если строку матча параллельно изменил другой ход или таймер
+ *                    (конфликт версии); после этого клиент получает 409
+ */
+@ConfigurationProperties("game.moves")
+public record MoveProperties(
+        @DefaultValue("5") int maxAttempts
+) {
+}
@@ -0,0 +1,35 @@
+package net.proselyte.gameservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Таймер хода: по истечении {@code timeout} после начала хода ход разрешается с теми ходами, что успели прийти.
+ *
+ * @param enabled          отслеживать дедлайны ходов
+ * @param timeout          длительность хода
+ * @param tickDuration     шаг колеса таймеров; дедлайн срабатывает не позже чем через один шаг
+ * @param wheelSize        количество ячеек колеса (округляется вверх до степени двойки)
+ * @param batchSize        сколько просроченных матчей разрешается одной транзакцией
+ * @param takeoverInterval как часто реплика проверяет в Redis просроченные дедлайны других реплик
+ * @param takeoverDelay    насколько дедлайн должен быть просрочен, чтобы его забрали из Redis, а не ждали колеса владельца
+ * @param claimLease       на сколько забранный из Redis дедлайн откладывается, пока реплика его разрешает
+ * @param maxMissedTurns   после скольких истекших подряд ходов без ходов обоих игроков матч завершается ничьей
+ * @param maxTakeoverBatches сколько пачек дедлайнов забирается из Redis за один проход; остальные - следующим проходом
+ */
+@ConfigurationProperties("game.turn-deadline")
+public record TurnDeadlineProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("30s") Duration timeout,
+        @DefaultValue("100ms") Duration tickDuration,
+        @DefaultValue("512") int wheelSize,
+        @DefaultValue("200") int batchSize,
+        @DefaultValue("1s") Duration takeoverInterval,
+        @DefaultValue("2s") Duration takeoverDelay,
+        @DefaultValue("10s") Duration claimLease,
+        @DefaultValue("3") int maxMissedTurns,
+        @DefaultValue("10") int maxTakeoverBatches
+) {
+}
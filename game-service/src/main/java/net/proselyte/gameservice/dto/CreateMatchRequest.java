@@ -14,5 +14,21 @@ public class CreateMatchRequest {
     
     @NotNull(message = "player2Id is required")
     private UUID player2Id;
+    
+    /**
+     * Ключ идемпотентности пары; повторный запрос с тем же ключом возвращает уже созданный матч.
+     */
+    private UUID pairingId;
+    
+    /**
+     * Вход первого игрока в очередь. По одному входу создается не больше одного матча:
+     * если вход уже сведен в матч с другим соперником, пара не создается и в ответ попадает тот матч.
+     */
+    private UUID player1Ticket;
+    
+    /**
+     * Вход второго игрока в очередь, см. {@link #player1Ticket}.
+     */
+    private UUID player2Ticket;
 }
 
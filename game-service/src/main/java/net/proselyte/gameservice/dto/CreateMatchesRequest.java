@@ -0,0 +1,17 @@
+package net.proselyte.gameservice.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+@Getter
+@Setter
+public class CreateMatchesRequest {
+    @NotEmpty(message = "matches must not be empty")
+    @Size(max = 500, message = "no more than 500 matches per request")
+    private List<@Valid CreateMatchRequest> matches;
+}
@@ -10,6 +10,7 @@ import java.util.UUID;
 @Setter
 public class MatchResponse {
     private UUID id;
+    private UUID pairingId;
     private UUID player1Id;
     private UUID player2Id;
     private UUID winnerId;
@@ -0,0 +1,12 @@
+package net.proselyte.gameservice.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class MatchesResponse {
+    private List<MatchResponse> items;
+}
@@ -19,6 +19,9 @@ public class Match {
     @Column(name = "id", nullable = false)
     private UUID id;
 
+    @Column(name = "pairing_id", unique = true)
+    private UUID pairingId;
+
     @NotNull
     @Column(name = "player1_id", nullable = false)
     private UUID player1Id;
@@ -67,6 +70,19 @@ public class Match {
     @Column(name = "turn_count")
     private Integer turnCount;
 
+    /**
+     * Сколько ходов подряд истекли без единого хода обоих игроков
+     */
+    @Column(name = "missed_turns", nullable = false)
+    private int missedTurns;
+
+    /**
+     * Версия строки: каждый ход ее увеличивает, поэтому параллельные ходы одного матча конфликтуют
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     public enum MatchStatus {
         WAITING,
         IN_PROGRESS,
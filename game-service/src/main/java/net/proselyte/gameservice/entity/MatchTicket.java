@@ -0,0 +1,47 @@
+package net.proselyte.gameservice.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import javax.validation.constraints.NotNull;
+import java.util.UUID;
+
+/**
+ * Вход игрока в очередь, по которому уже создан матч. Ключ - ticket из {@code CreateMatchRequest}.
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "match_tickets", schema = "game")
+public class MatchTicket implements Persistable<UUID> {
+
+    @Id
+    @Column(name = "ticket", nullable = false)
+    private UUID ticket;
+
+    @NotNull
+    @Column(name = "match_id", nullable = false)
+    private UUID matchId;
+
+    public MatchTicket(UUID ticket, UUID matchId) {
+        this.ticket = ticket;
+        this.matchId = matchId;
+    }
+
+    @Override
+    public UUID getId() {
+        return ticket;
+    }
+
+    /**
+     * Тикет только вставляется: занятый тикет должен упасть на первичном ключе, а не перезаписать матч (merge).
+     */
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -11,8 +11,14 @@ import java.util.UUID;
 @Setter
 @Getter
 @Entity
-@Table(name = "moves", schema = "game")
+@Table(name = "moves", schema = "game", uniqueConstraints = @UniqueConstraint(
+        name = Move.TURN_MOVE_CONSTRAINT, columnNames = {"match_id", "turn_number", "player_id"}))
 public class Move {
+
+    /**
+     * Один ход игрока за раунд
+     */
+    public static final String TURN_MOVE_CONSTRAINT = "uq_moves_match_turn_player";
     
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
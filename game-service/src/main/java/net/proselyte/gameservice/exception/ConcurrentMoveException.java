@@ -0,0 +1,7 @@
+package net.proselyte.gameservice.exception;
+
+public class ConcurrentMoveException extends RuntimeException {
+    public ConcurrentMoveException(String message) {
+        super(message);
+    }
+}
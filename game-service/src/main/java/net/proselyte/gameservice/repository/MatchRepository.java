@@ -1,10 +1,15 @@
 package net.proselyte.gameservice.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import net.proselyte.gameservice.entity.Match;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -13,6 +18,27 @@ public interface MatchRepository extends JpaRepository<Match, UUID> {
     
     Optional<Match> findById(UUID id);
     
+    /**
+     * Читает матч без блокировки строки; при коммите версия матча увеличивается, даже если он не изменился
+     * (UPDATE ... WHERE version = ?). Из двух параллельных ходов одного матча коммитится один, второй
+     * получает конфликт версии и повторяется уже с первым ходом в базе.
+     */
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("SELECT m FROM Match m WHERE m.id = :id")
+    Optional<Match> findByIdForMove(@Param("id") UUID id);
+    
+    /**
+     * Блокирует пачку матчей в порядке ID (SKIP LOCKED). Ход строку при чтении не блокирует
+     * ({@link #findByIdForMove}), поэтому пропускаются только матчи, которые разрешает другой таймер или чей ход
+     * прямо сейчас коммитится. Ход, прочитавший матч до таймера, проигрывает ему по версии.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM Match m WHERE m.id IN :ids ORDER BY m.id")
+    List<Match> findAllByIdInForUpdateSkipLocked(@Param("ids") Collection<UUID> ids);
+    
+    List<Match> findAllByPairingIdIn(Collection<UUID> pairingIds);
+    
     @Query("SELECT m FROM Match m WHERE m.player1Id = :playerId OR m.player2Id = :playerId ORDER BY m.created DESC")
     List<Match> findAllByPlayerId(@Param("playerId") UUID playerId);
     
@@ -0,0 +1,9 @@
+package net.proselyte.gameservice.repository;
+
+import net.proselyte.gameservice.entity.MatchTicket;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.UUID;
+
+public interface MatchTicketRepository extends JpaRepository<MatchTicket, UUID> {
+}
@@ -5,8 +5,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 public interface MoveRepository extends JpaRepository<Move, UUID> {
@@ -17,11 +17,10 @@ public interface MoveRepository extends JpaRepository<Move, UUID> {
     @Query("SELECT m FROM Move m WHERE m.matchId = :matchId AND m.turnNumber = :turnNumber")
     List<Move> findAllByMatchIdAndTurnNumber(@Param("matchId") UUID matchId, @Param("turnNumber") Integer turnNumber);
     
-    @Query("SELECT m FROM Move m WHERE m.matchId = :matchId AND m.playerId = :playerId AND m.turnNumber = :turnNumber")
-    Optional<Move> findByMatchIdAndPlayerIdAndTurnNumber(
-        @Param("matchId") UUID matchId,
-        @Param("playerId") UUID playerId,
-        @Param("turnNumber") Integer turnNumber
-    );
+    /**
+     * Ходы текущего раунда каждого из матчей одним запросом.
+     */
+    @Query("SELECT mv FROM Move mv, Match m WHERE m.id IN :matchIds AND mv.matchId = m.id AND mv.turnNumber = m.turnNumber")
+    List<Move> findCurrentTurnMoves(@Param("matchIds") Collection<UUID> matchIds);
 }
 
@@ -0,0 +1,64 @@
+package net.proselyte.gameservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Дедлайны ходов в Sorted Set {@code game:turn-deadlines}: член - ID матча, score - дедлайн текущего хода (epoch ms).
+ * У матча одна запись, новый ход перезаписывает дедлайн предыдущего. Набор общий для реплик:
+ * дедлайны упавшей реплики забирает любая другая.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RedisTurnDeadlineRepository {
+
+    static final String DEADLINES_KEY = "game:turn-deadlines";
+
+    /**
+     * KEYS[1] - дедлайны; ARGV[1] - просрочены не позже, ARGV[2] - новый score забранных, ARGV[3] - размер пачки.
+     * Забирает пачку просроченных дедлайнов, откладывая их до ARGV[2]: другие реплики их не видят,
+     * а если забравшая реплика упадет, дедлайны снова станут просроченными.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local members = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[3])
+            for _, member in ipairs(members) do
+                redis.call('ZADD', KEYS[1], 'XX', ARGV[2], member)
+            end
+            return members
+            """, List.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public void schedule(UUID matchId, long deadline) {
+        redisTemplate.opsForZSet().add(DEADLINES_KEY, matchId.toString(), deadline);
+    }
+
+    public void cancel(UUID matchId) {
+        redisTemplate.opsForZSet().remove(DEADLINES_KEY, matchId.toString());
+    }
+
+    /**
+     * Забирает до {@code batchSize} матчей с дедлайном не позже {@code expiredBefore} одним скриптом.
+     */
+    public List<UUID> claimExpired(long expiredBefore, long leaseUntil, int batchSize) {
+        @SuppressWarnings("unchecked")
+        List<String> members = redisTemplate.execute(CLAIM_SCRIPT, List.of(DEADLINES_KEY),
+                String.valueOf(expiredBefore), String.valueOf(leaseUntil), String.valueOf(batchSize));
+        if (members == null || members.isEmpty()) {
+            return List.of();
+        }
+        List<UUID> matchIds = new ArrayList<>(members.size());
+        for (String member : members) {
+            matchIds.add(UUID.fromString(member));
+        }
+        return matchIds;
+    }
+}
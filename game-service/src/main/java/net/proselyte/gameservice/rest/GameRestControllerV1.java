@@ -3,7 +3,9 @@ package net.proselyte.gameservice.rest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.proselyte.gameservice.dto.CreateMatchRequest;
+import net.proselyte.gameservice.dto.CreateMatchesRequest;
 import net.proselyte.gameservice.dto.MatchResponse;
+import net.proselyte.gameservice.dto.MatchesResponse;
 import net.proselyte.gameservice.service.MatchService;
 import net.proselyte.gameservice.service.MoveService;
 import net.proselyte.gameservice.util.PlayerIdExtractor;
@@ -37,6 +39,14 @@ public class GameRestControllerV1 {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
     
+    @PostMapping("/matches")
+    public ResponseEntity<MatchesResponse> createMatches(@Valid @RequestBody CreateMatchesRequest request) {
+        log.info("Received request to create {} matches", request.getMatches().size());
+        
+        MatchesResponse response = matchService.createMatches(request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+    
     @GetMapping("/{matchId}")
     public ResponseEntity<MatchResponse> getMatch(@PathVariable UUID matchId) {
         log.info("Received request to get match: {}", matchId);
@@ -2,6 +2,7 @@ package net.proselyte.gameservice.rest;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
+import net.proselyte.gameservice.exception.ConcurrentMoveException;
 import net.proselyte.gameservice.exception.InvalidMoveTargetException;
 import net.proselyte.gameservice.exception.InvalidTurnNumberException;
 import net.proselyte.gameservice.exception.MatchFinishedException;
@@ -32,6 +33,11 @@ public class RestExceptionHandler {
         return toResponse(HttpStatus.FORBIDDEN, ex, request);
     }
 
+    @ExceptionHandler(ConcurrentMoveException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrentMove(ConcurrentMoveException ex, HttpServletRequest request) {
+        return toResponse(HttpStatus.CONFLICT, ex, request);
+    }
+
     @ExceptionHandler({
             MatchFinishedException.class,
             InvalidTurnNumberException.class,
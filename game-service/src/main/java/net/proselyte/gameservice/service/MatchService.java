@@ -3,15 +3,31 @@ package net.proselyte.gameservice.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.proselyte.gameservice.dto.CreateMatchRequest;
+import net.proselyte.gameservice.dto.CreateMatchesRequest;
 import net.proselyte.gameservice.dto.MatchResponse;
+import net.proselyte.gameservice.dto.MatchesResponse;
 import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.MatchTicket;
 import net.proselyte.gameservice.exception.MatchNotFoundException;
 import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MatchTicketRepository;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -19,6 +35,8 @@ import java.util.UUID;
 public class MatchService {
     
     private final MatchRepository matchRepository;
+    private final MatchTicketRepository matchTicketRepository;
+    private final TransactionTemplate transactionTemplate;
     
     @Transactional(readOnly = true)
     public MatchResponse getMatch(UUID matchId) {
@@ -30,31 +48,209 @@ public class MatchService {
         return toMatchResponse(match);
     }
     
-    @Transactional
+    /**
+     * Создает матч. Запрос с {@code pairingId}, по которому матч уже создан, возвращает существующий матч:
+     * queue-service повторяет запрос после таймаута, не зная, был ли создан матч.
+     * Если вход одного из игроков в очередь (ticket) уже сведен в матч с другим соперником, новый матч
+     * не создается, а возвращается тот: вызывающая сторона видит это по игрокам в ответе.
+     * Метод не транзакционный: конфликт уникального pairing_id или ticket при параллельном повторе ловится
+     * после транзакции вставки, и существующий матч читается уже в новой.
+     */
     public MatchResponse createMatch(CreateMatchRequest request) {
         log.info("Creating match for players: {} and {}", request.getPlayer1Id(), request.getPlayer2Id());
         
+        List<Match> created;
+        try {
+            created = createInTransaction(List.of(request));
+        } catch (DataIntegrityViolationException e) {
+            // Параллельный повтор того же запроса успел вставить матч первым
+            log.info("Match for players {} and {} was created concurrently", request.getPlayer1Id(), request.getPlayer2Id());
+            created = createInTransaction(List.of(request));
+        }
+        Match match = created.get(0);
+        log.info("Match for players {} and {}: {}", request.getPlayer1Id(), request.getPlayer2Id(), match.getId());
+        return toMatchResponse(match);
+    }
+    
+    /**
+     * Создает пачку матчей одним saveAll (INSERT'ы уходят JDBC-батчами).
+     * Некорректные пары (игрок против самого себя, игрок уже занят в другой паре этого запроса)
+     * пропускаются и не попадают в ответ — вызывающая сторона сопоставляет ответ с парами по id игроков.
+     * Пары с {@code pairingId}, по которому матч уже создан, не создаются повторно: в ответ попадает
+     * существующий матч. Пара, в которой вход игрока в очередь (ticket) уже сведен в матч с другим
+     * соперником, тоже не создается: в ответ попадает тот матч.
+     * Если пачка столкнулась с параллельным запросом на уникальном ключе, пары создаются по одной,
+     * чтобы конфликт одной пары не отменял остальные.
+     */
+    public MatchesResponse createMatches(CreateMatchesRequest request) {
+        log.info("Creating {} matches in bulk", request.getMatches().size());
+        
+        Set<UUID> busyPlayers = new HashSet<>();
+        List<CreateMatchRequest> pairs = new ArrayList<>(request.getMatches().size());
+        for (CreateMatchRequest pair : request.getMatches()) {
+            if (pair.getPlayer1Id().equals(pair.getPlayer2Id())
+                    || !busyPlayers.add(pair.getPlayer1Id())
+                    || !busyPlayers.add(pair.getPlayer2Id())) {
+                log.warn("Skipping invalid pair in bulk request: {} and {}", pair.getPlayer1Id(), pair.getPlayer2Id());
+                continue;
+            }
+            pairs.add(pair);
+        }
+        
+        List<Match> matches;
+        try {
+            matches = createInTransaction(pairs);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Bulk create of {} matches conflicted with a concurrent request, creating them one by one",
+                    pairs.size());
+            matches = new ArrayList<>(pairs.size());
+            for (CreateMatchRequest pair : pairs) {
+                createOne(pair).ifPresent(matches::add);
+            }
+        }
+        
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(matches.stream().map(this::toMatchResponse).toList());
+        return response;
+    }
+    
+    private Optional<Match> createOne(CreateMatchRequest pair) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                return Optional.of(createInTransaction(List.of(pair)).get(0));
+            } catch (DataIntegrityViolationException e) {
+                // Вторая попытка уже видит матч, вставленный параллельным запросом
+                log.debug("Pair {} and {} conflicted: {}", pair.getPlayer1Id(), pair.getPlayer2Id(), e.getMessage());
+            }
+        }
+        log.warn("Skipping pair {} and {}: conflicting match is not visible", pair.getPlayer1Id(), pair.getPlayer2Id());
+        return Optional.empty();
+    }
+    
+    /**
+     * В одной транзакции возвращает для каждой пары существующий матч (повтор по pairing_id или уже
+     * сведенный ticket игрока) или создает новый. Новые матчи и их тикеты вставляются пачкой.
+     *
+     * @return матчи в порядке пар
+     * @throws DataIntegrityViolationException если параллельный запрос успел занять pairing_id или ticket
+     */
+    private List<Match> createInTransaction(List<CreateMatchRequest> pairs) {
+        return transactionTemplate.execute(status -> {
+            Map<UUID, Match> byPairing = findExistingPairings(pairs);
+            Map<UUID, Match> byTicket = findMatchedTickets(pairs);
+            Instant now = Instant.now();
+            Match[] result = new Match[pairs.size()];
+            List<Integer> createdAt = new ArrayList<>();
+            List<Match> created = new ArrayList<>();
+            for (int i = 0; i < pairs.size(); i++) {
+                CreateMatchRequest pair = pairs.get(i);
+                Match existing = pair.getPairingId() != null ? byPairing.get(pair.getPairingId()) : null;
+                if (existing == null) {
+                    existing = ticketMatch(pair, byTicket);
+                    if (existing != null) {
+                        log.warn("Queue entry of player {} or {} is already matched in {}, not creating another match",
+                                pair.getPlayer1Id(), pair.getPlayer2Id(), existing.getId());
+                    }
+                }
+                if (existing != null) {
+                    result[i] = existing;
+                } else {
+                    createdAt.add(i);
+                    created.add(newMatch(pair, now));
+                }
+            }
+            
+            // Матчи вставляются до тикетов (внешний ключ); flush здесь, а не при коммите, чтобы конфликт
+            // pairing_id или ticket пришел как DataIntegrityViolationException
+            List<Match> saved = matchRepository.saveAllAndFlush(created);
+            List<MatchTicket> tickets = new ArrayList<>(saved.size() * 2);
+            for (int j = 0; j < saved.size(); j++) {
+                int i = createdAt.get(j);
+                Match match = saved.get(j);
+                result[i] = match;
+                addTicket(tickets, pairs.get(i).getPlayer1Ticket(), match);
+                addTicket(tickets, pairs.get(i).getPlayer2Ticket(), match);
+            }
+            matchTicketRepository.saveAllAndFlush(tickets);
+            log.info("Created {} of {} requested matches, {} already existed",
+                    saved.size(), pairs.size(), pairs.size() - saved.size());
+            return Arrays.asList(result);
+        });
+    }
+    
+    private static void addTicket(List<MatchTicket> tickets, UUID ticket, Match match) {
+        if (ticket != null) {
+            tickets.add(new MatchTicket(ticket, match.getId()));
+        }
+    }
+    
+    private static Match ticketMatch(CreateMatchRequest pair, Map<UUID, Match> byTicket) {
+        Match match = pair.getPlayer1Ticket() != null ? byTicket.get(pair.getPlayer1Ticket()) : null;
+        if (match == null && pair.getPlayer2Ticket() != null) {
+            match = byTicket.get(pair.getPlayer2Ticket());
+        }
+        return match;
+    }
+    
+    private Map<UUID, Match> findExistingPairings(List<CreateMatchRequest> pairs) {
+        List<UUID> pairingIds = pairs.stream()
+                .map(CreateMatchRequest::getPairingId)
+                .filter(Objects::nonNull)
+                .toList();
+        if (pairingIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, Match> existing = new HashMap<>();
+        for (Match match : matchRepository.findAllByPairingIdIn(pairingIds)) {
+            existing.put(match.getPairingId(), match);
+        }
+        return existing;
+    }
+    
+    private Map<UUID, Match> findMatchedTickets(List<CreateMatchRequest> pairs) {
+        List<UUID> tickets = pairs.stream()
+                .flatMap(pair -> Stream.of(pair.getPlayer1Ticket(), pair.getPlayer2Ticket()))
+                .filter(Objects::nonNull)
+                .toList();
+        if (tickets.isEmpty()) {
+            return Map.of();
+        }
+        List<MatchTicket> matched = matchTicketRepository.findAllById(tickets);
+        if (matched.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, Match> matches = new HashMap<>();
+        for (Match match : matchRepository.findAllById(matched.stream().map(MatchTicket::getMatchId).toList())) {
+            matches.put(match.getId(), match);
+        }
+        Map<UUID, Match> byTicket = new HashMap<>();
+        for (MatchTicket ticket : matched) {
+            Match match = matches.get(ticket.getMatchId());
+            if (match != null) {
+                byTicket.put(ticket.getTicket(), match);
+            }
+        }
+        return byTicket;
+    }
+    
+    private Match newMatch(CreateMatchRequest request, Instant now) {
         Match match = new Match();
+        match.setPairingId(request.getPairingId());
         match.setPlayer1Id(request.getPlayer1Id());
         match.setPlayer2Id(request.getPlayer2Id());
         match.setStatus(Match.MatchStatus.WAITING);
         match.setPlayer1HP(100);
         match.setPlayer2HP(100);
         match.setTurnNumber(1);
-        
-        Instant now = Instant.now();
         match.setCreated(now);
         match.setUpdated(now);
-        
-        Match savedMatch = matchRepository.save(match);
-        log.info("Match created successfully with id: {}", savedMatch.getId());
-        
-        return toMatchResponse(savedMatch);
+        return match;
     }
     
     private MatchResponse toMatchResponse(Match match) {
         MatchResponse response = new MatchResponse();
         response.setId(match.getId());
+        response.setPairingId(match.getPairingId());
         response.setPlayer1Id(match.getPlayer1Id());
         response.setPlayer2Id(match.getPlayer2Id());
         response.setWinnerId(match.getWinnerId());
@@ -4,17 +4,25 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.proselyte.game.dto.MoveRequest;
 import net.proselyte.game.dto.MoveResponse;
+import net.proselyte.gameservice.config.MoveProperties;
 import net.proselyte.gameservice.entity.Match;
 import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.exception.ConcurrentMoveException;
 import net.proselyte.gameservice.exception.MatchNotFoundException;
 import net.proselyte.gameservice.repository.MatchRepository;
 import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.match.ActiveMatchRegistry;
 import net.proselyte.gameservice.service.move.MoveFactory;
 import net.proselyte.gameservice.service.move.MoveValidator;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Slf4j
@@ -26,41 +34,126 @@ public class MoveService {
     private final MatchRepository matchRepository;
     private final MoveValidator moveValidator;
     private final MoveFactory moveFactory;
+    private final TurnResolver turnResolver;
+    private final TurnDeadlineScheduler turnDeadlineScheduler;
+    private final ActiveMatchRegistry activeMatchRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final MoveProperties properties;
     
-    @Transactional
+    /**
+     * Принимает ход игрока. Ход, второй в своем раунде, сразу разрешает раунд: урон, HP, следующий ход
+     * или завершение матча. По умолчанию ход обрабатывается транзакцией в базе, при включенном реестре
+     * ({@code game.active-matches.enabled}) - в памяти {@link ActiveMatchRegistry} с синхронной записью.
+     */
     public MoveResponse makeMove(MoveRequest request, UUID playerId) {
         log.info("Processing move for match: {}, player: {}, turn: {}", 
                 request.getMatchId(), playerId, request.getTurnNumber());
         
-        // Проверяем существование матча
-        Match match = matchRepository.findById(request.getMatchId())
+        if (activeMatchRegistry.enabled()) {
+            activeMatchRegistry.accept(request, playerId);
+        } else {
+            makeMoveInDatabaseWithRetry(request, playerId);
+        }
+        
+        // Формируем ответ
+        MoveResponse response = new MoveResponse();
+        response.setMessage("Move accepted");
+        response.setTurnNumber(request.getTurnNumber());
+        response.setMatchId(request.getMatchId());
+        
+        return response;
+    }
+    
+    /**
+     * Каждая попытка - отдельная транзакция. Конфликт версии матча значит, что параллельно закоммитился
+     * другой ход этого матча (обычно ход соперника в том же раунде): попытка повторяется и видит его в базе.
+     * Нарушение уникального индекса ходов - тот же игрок уже походил в этом раунде, повторять нечего.
+     */
+    private void makeMoveInDatabaseWithRetry(MoveRequest request, UUID playerId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Match changed = transactionTemplate.execute(status -> makeMoveInDatabase(request, playerId));
+                if (changed != null) {
+                    // Таймер ставится после коммита: откатанная попытка не должна переставлять дедлайн
+                    turnDeadlineScheduler.track(changed);
+                }
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= properties.maxAttempts()) {
+                    log.warn("Move for match: {}, player: {} conflicted {} times, giving up",
+                            request.getMatchId(), playerId, attempt);
+                    throw new ConcurrentMoveException("Match " + request.getMatchId()
+                            + " is being updated concurrently, please retry the move");
+                }
+                log.debug("Version conflict on match: {}, player: {}, retrying (attempt {})",
+                        request.getMatchId(), playerId, attempt);
+            } catch (DataIntegrityViolationException e) {
+                if (moveValidator.isDuplicateMove(e)) {
+                    throw moveValidator.moveAlreadyExists(playerId, request.getTurnNumber());
+                }
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * Число SQL-запросов постоянно: чтение матча, ходы раунда, вставка хода,
+     * при разрешении обновление хода соперника и обновление версии матча.
+     * Отдельного запроса на проверку дубля нет - ее делает уникальный индекс при вставке.
+     *
+     * @return матч, если начался новый ход или матч завершен (нужно переставить таймер хода), иначе null
+     */
+    private Match makeMoveInDatabase(MoveRequest request, UUID playerId) {
+        // Проверяем существование матча; версия матча увеличится при коммите, поэтому параллельные ходы конфликтуют
+        Match match = matchRepository.findByIdForMove(request.getMatchId())
                 .orElseThrow(() -> new MatchNotFoundException("Match not found: " + request.getMatchId()));
 
         // Валидация бизнес-правил хода
-        moveValidator.validate(match, request, playerId);
+        moveValidator.validateTurn(match, request, playerId);
+
+        // Ходы этого раунда: ход соперника и, если клиент повторил запрос, уже записанный ход игрока
+        List<Move> turnMoves = moveRepository.findAllByMatchIdAndTurnNumber(request.getMatchId(), request.getTurnNumber());
+        if (turnMoves.stream().anyMatch(other -> other.getPlayerId().equals(playerId))) {
+            throw moveValidator.moveAlreadyExists(playerId, request.getTurnNumber());
+        }
 
-        // Создаем и сохраняем ход
+        // Создаем ход и ищем ход соперника в этом раунде
         Instant now = Instant.now();
         Move move = moveFactory.create(request, playerId, now);
-        Move savedMove = moveRepository.save(move);
-        log.info("Move saved with id: {} for match: {}, player: {}, turn: {}", 
-                savedMove.getId(), request.getMatchId(), playerId, request.getTurnNumber());
-        
+        boolean player1Moved = match.getPlayer1Id().equals(playerId);
+        UUID opponentId = player1Moved ? match.getPlayer2Id() : match.getPlayer1Id();
+        Optional<Move> opponentMove = turnMoves.stream()
+                .filter(other -> other.getPlayerId().equals(opponentId))
+                .findFirst();
+
+        boolean matchChanged = false;
         // Обновляем статус матча на IN_PROGRESS, если он был WAITING
         if (match.getStatus() == Match.MatchStatus.WAITING) {
             match.setStatus(Match.MatchStatus.IN_PROGRESS);
             match.setCurrentTurnStart(now);
             match.setUpdated(now);
-            matchRepository.save(match);
+            matchChanged = true;
         }
         
-        // Формируем ответ
-        MoveResponse response = new MoveResponse();
-        response.setMessage("Move accepted");
-        response.setTurnNumber(request.getTurnNumber());
-        response.setMatchId(request.getMatchId());
+        // Второй ход раунда: урон ходу соперника запишется при flush, он загружен в этой транзакции
+        if (opponentMove.isPresent()) {
+            turnResolver.resolve(match,
+                    player1Moved ? move : opponentMove.get(),
+                    player1Moved ? opponentMove.get() : move,
+                    now);
+            matchChanged = true;
+        }
+
+        Move savedMove = moveRepository.save(move);
+        log.info("Move saved with id: {} for match: {}, player: {}, turn: {}", 
+                savedMove.getId(), request.getMatchId(), playerId, request.getTurnNumber());
         
-        return response;
+        if (!matchChanged) {
+            return null;
+        }
+        matchRepository.save(match);
+        // Начался новый ход - таймер поставят после коммита, матч завершен - снимут
+        return match;
     }
 }
 
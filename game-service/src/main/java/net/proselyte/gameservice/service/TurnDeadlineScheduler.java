@@ -0,0 +1,160 @@
+package net.proselyte.gameservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.repository.RedisTurnDeadlineRepository;
+import net.proselyte.gameservice.service.match.ActiveMatchRegistry;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Таймеры ходов. Дедлайн текущего хода ставится в колесо таймеров этой реплики и дублируется
+ * в Redis ({@code game:turn-deadlines}). Колесо срабатывает вовремя без обращений к базе и Redis;
+ * дедлайны, которые никто не разрешил (реплика упала, разрешение не удалось), любая реплика
+ * забирает из Redis с задержкой {@code game.turn-deadline.takeover-delay}.
+ * <p>
+ * Шаг колеса и забор из Redis выполняются разными потоками планировщика ({@code spring.task.scheduling.pool.size}),
+ * поэтому долгий забор дедлайнов упавшей реплики не задерживает срабатывание собственных дедлайнов.
+ */
+@Slf4j
+@Component
+public class TurnDeadlineScheduler {
+
+    private final RedisTurnDeadlineRepository deadlineRepository;
+    private final TurnTimeoutService turnTimeoutService;
+    private final ActiveMatchRegistry activeMatchRegistry;
+    private final TurnDeadlineProperties properties;
+    private final TurnDeadlineWheel wheel;
+    private final Counter takenOver;
+
+    public TurnDeadlineScheduler(RedisTurnDeadlineRepository deadlineRepository,
+                                 TurnTimeoutService turnTimeoutService,
+                                 ActiveMatchRegistry activeMatchRegistry,
+                                 TurnDeadlineProperties properties,
+                                 MeterRegistry registry) {
+        this.deadlineRepository = deadlineRepository;
+        this.turnTimeoutService = turnTimeoutService;
+        this.activeMatchRegistry = activeMatchRegistry;
+        this.properties = properties;
+        this.wheel = new TurnDeadlineWheel(properties.tickDuration(), properties.wheelSize(), System.currentTimeMillis());
+        Gauge.builder("game_turn_deadlines_pending", wheel, TurnDeadlineWheel::size)
+                .description("Turn deadlines tracked by this replica")
+                .register(registry);
+        this.takenOver = Counter.builder("game_turn_deadlines_taken_over")
+                .description("Expired turn deadlines claimed from Redis instead of the local timer wheel")
+                .register(registry);
+    }
+
+    /**
+     * Ставит таймер текущего хода матча или снимает его, если матч завершен или ход еще не начался.
+     * Ошибка Redis не мешает ходу: дедлайн останется в колесе этой реплики.
+     */
+    public void track(Match match) {
+        if (!properties.enabled()) {
+            return;
+        }
+        UUID matchId = match.getId();
+        if (match.getStatus() == Match.MatchStatus.FINISHED || match.getCurrentTurnStart() == null) {
+            wheel.cancel(matchId);
+            try {
+                deadlineRepository.cancel(matchId);
+            } catch (DataAccessException e) {
+                log.warn("Failed to cancel turn deadline for match {}: {}", matchId, e.getMessage());
+            }
+            return;
+        }
+        long deadline = match.getCurrentTurnStart().plus(properties.timeout()).toEpochMilli();
+        wheel.schedule(matchId, deadline);
+        try {
+            deadlineRepository.schedule(matchId, deadline);
+        } catch (DataAccessException e) {
+            log.warn("Failed to store turn deadline for match {}: {}", matchId, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${game.turn-deadline.tick-duration:100ms}")
+    public void tick() {
+        if (properties.enabled()) {
+            tick(System.currentTimeMillis());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${game.turn-deadline.takeover-interval:1s}")
+    public void takeOver() {
+        if (properties.enabled()) {
+            takeOver(System.currentTimeMillis());
+        }
+    }
+
+    void tick(long now) {
+        List<UUID> expired = wheel.advance(now);
+        if (!expired.isEmpty()) {
+            resolve(expired, now);
+        }
+    }
+
+    /**
+     * Забирает из Redis давно просроченные дедлайны пачками, пока они не закончатся, но не больше
+     * {@code max-takeover-batches} пачек за проход: после падения реплики с тысячами дедлайнов проход
+     * не должен надолго занимать поток планировщика. Остаток забирается следующими проходами.
+     * Забранные дедлайны откладываются на {@code claim-lease}, поэтому повторно в этом проходе не попадаются.
+     */
+    void takeOver(long now) {
+        int batchSize = properties.batchSize();
+        long expiredBefore = now - properties.takeoverDelay().toMillis();
+        long leaseUntil = now + properties.claimLease().toMillis();
+        for (int batches = 0; batches < properties.maxTakeoverBatches(); batches++) {
+            List<UUID> claimed;
+            try {
+                claimed = deadlineRepository.claimExpired(expiredBefore, leaseUntil, batchSize);
+            } catch (DataAccessException e) {
+                log.warn("Failed to claim expired turn deadlines: {}", e.getMessage());
+                return;
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+            takenOver.increment(claimed.size());
+            log.info("Claimed {} expired turn deadlines from Redis", claimed.size());
+            resolve(claimed, now);
+            if (claimed.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    int pending() {
+        return wheel.size();
+    }
+
+    /**
+     * Разрешает просроченные ходы пачками и переставляет дедлайны по результату. Матчи из памяти этой реплики
+     * разрешает {@link ActiveMatchRegistry} (дедлайны переставляются после записи), остальные - база.
+     * Если пачка не разрешилась, ее дедлайны остаются в Redis и будут забраны повторно.
+     */
+    private void resolve(List<UUID> matchIds, long now) {
+        int batchSize = properties.batchSize();
+        for (int from = 0; from < matchIds.size(); from += batchSize) {
+            List<UUID> batch = matchIds.subList(from, Math.min(from + batchSize, matchIds.size()));
+            try {
+                List<UUID> notHeld = activeMatchRegistry.resolveExpired(batch, Instant.ofEpochMilli(now));
+                if (notHeld.isEmpty()) {
+                    continue;
+                }
+                List<Match> matches = turnTimeoutService.resolveExpired(notHeld, Instant.ofEpochMilli(now));
+                matches.forEach(this::track);
+            } catch (RuntimeException e) {
+                log.error("Failed to resolve {} expired turns", batch.size(), e);
+            }
+        }
+    }
+}
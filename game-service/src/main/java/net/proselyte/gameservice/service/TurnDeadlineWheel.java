@@ -0,0 +1,88 @@
+package net.proselyte.gameservice.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Хешированное колесо таймеров дедлайнов ходов. Дедлайн попадает в ячейку своего шага по модулю размера колеса,
+ * поэтому постановка и отмена стоят O(1), а продвижение просматривает только ячейки прошедших шагов.
+ * Дедлайны дальше одного оборота лежат в той же ячейке и пропускаются, пока не наступят.
+ */
+final class TurnDeadlineWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final Map<UUID, Long>[] buckets;
+    /**
+     * matchId -> ячейка, в которой лежит его дедлайн
+     */
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private long processedTick;
+
+    @SuppressWarnings("unchecked")
+    TurnDeadlineWheel(Duration tickDuration, int wheelSize, long now) {
+        this.tickMillis = Math.max(1, tickDuration.toMillis());
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.mask = size - 1;
+        this.buckets = new Map[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new HashMap<>();
+        }
+        this.processedTick = now / tickMillis;
+    }
+
+    /**
+     * Ставит дедлайн матча, заменяя предыдущий. Уже наступивший дедлайн сработает на следующем продвижении.
+     */
+    synchronized void schedule(UUID matchId, long deadline) {
+        cancel(matchId);
+        // Ячейка шага, к началу которого дедлайн уже наступил
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, processedTick + 1);
+        int slot = (int) (tick & mask);
+        buckets[slot].put(matchId, deadline);
+        slots.put(matchId, slot);
+    }
+
+    synchronized boolean cancel(UUID matchId) {
+        Integer slot = slots.remove(matchId);
+        if (slot == null) {
+            return false;
+        }
+        buckets[slot].remove(matchId);
+        return true;
+    }
+
+    /**
+     * Продвигает колесо до {@code now} и возвращает матчи с наступившими дедлайнами.
+     * После долгой паузы просматривается не больше одного оборота: все ячейки один раз.
+     */
+    synchronized List<UUID> advance(long now) {
+        long nowTick = now / tickMillis;
+        if (nowTick <= processedTick) {
+            return List.of();
+        }
+        List<UUID> expired = new ArrayList<>();
+        for (long tick = Math.max(processedTick + 1, nowTick - mask); tick <= nowTick; tick++) {
+            Iterator<Map.Entry<UUID, Long>> iterator = buckets[(int) (tick & mask)].entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<UUID, Long> entry = iterator.next();
+                if (entry.getValue() <= now) {
+                    iterator.remove();
+                    slots.remove(entry.getKey());
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        processedTick = nowTick;
+        return expired;
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,97 @@
+package net.proselyte.gameservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Разрешает ходы, по которым истек таймер: учитываются только успевшие ходы, отсутствующий ход
+ * не атакует и не защищает. Брошенный матч (оба игрока пропустили {@code max-missed-turns} ходов подряд)
+ * завершается ничьей. Пачка матчей обрабатывается одной транзакцией с постоянным числом запросов.
+ */
+@Slf4j
+@Service
+public class TurnTimeoutService {
+
+    private final MatchRepository matchRepository;
+    private final MoveRepository moveRepository;
+    private final TurnResolver turnResolver;
+    private final TurnDeadlineProperties properties;
+    private final Counter timeouts;
+
+    public TurnTimeoutService(MatchRepository matchRepository,
+                              MoveRepository moveRepository,
+                              TurnResolver turnResolver,
+                              TurnDeadlineProperties properties,
+                              MeterRegistry registry) {
+        this.matchRepository = matchRepository;
+        this.moveRepository = moveRepository;
+        this.turnResolver = turnResolver;
+        this.properties = properties;
+        this.timeouts = Counter.builder("game_turn_timeouts")
+                .description("Turns resolved by the turn timer")
+                .register(registry);
+    }
+
+    /**
+     * Блокирует матчи пачки и разрешает те, чей текущий ход начался не позже {@code now - timeout}.
+     * Ход, идущий одновременно с таймером, строку не блокирует: таймер и ход конфликтуют по версии матча.
+     * Если таймер закоммитился первым, ход повторяется и отклоняется по номеру хода, который уже сменился.
+     * Пропускаются только матчи, заблокированные другим таймером или коммитом хода: их дедлайн остается в Redis.
+     *
+     * @return заблокированные матчи после разрешения - по ним вызывающий переставляет дедлайны
+     */
+    @Transactional
+    public List<Match> resolveExpired(Collection<UUID> matchIds, Instant now) {
+        if (matchIds.isEmpty()) {
+            return List.of();
+        }
+        List<Match> matches = matchRepository.findAllByIdInForUpdateSkipLocked(matchIds);
+        Instant startedBefore = now.minus(properties.timeout());
+        List<Match> expired = matches.stream()
+                .filter(match -> match.getStatus() != Match.MatchStatus.FINISHED)
+                .filter(match -> match.getCurrentTurnStart() != null && !match.getCurrentTurnStart().isAfter(startedBefore))
+                .toList();
+        if (expired.isEmpty()) {
+            return matches;
+        }
+
+        Map<UUID, List<Move>> movesByMatch = moveRepository.findCurrentTurnMoves(
+                        expired.stream().map(Match::getId).toList()).stream()
+                .collect(Collectors.groupingBy(Move::getMatchId));
+        for (Match match : expired) {
+            List<Move> moves = movesByMatch.getOrDefault(match.getId(), List.of());
+            turnResolver.resolveExpired(match, findMove(moves, match.getPlayer1Id()), findMove(moves, match.getPlayer2Id()),
+                    now, properties.maxMissedTurns());
+        }
+        // Обновления матчей и ходов уходят JDBC-батчами при коммите
+        matchRepository.saveAll(expired);
+        timeouts.increment(expired.size());
+        log.info("Resolved {} expired turns", expired.size());
+        return matches;
+    }
+
+    private static Move findMove(List<Move> moves, UUID playerId) {
+        for (Move move : moves) {
+            if (move.getPlayerId().equals(playerId)) {
+                return move;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package net.proselyte.gameservice.service.match;
+
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Состояние идущего матча в памяти. Все поля защищены монитором самого объекта.
+ */
+final class ActiveMatch {
+
+    /**
+     * Отсоединенная копия строки матча; версия совпадает с последней записанной
+     */
+    final Match match;
+    /**
+     * playerId -> записанный ход текущего раунда
+     */
+    final Map<UUID, Move> pendingMoves = new HashMap<>(2);
+    /**
+     * Матч удален из реестра; держатель ссылки должен перечитать реестр
+     */
+    boolean evicted;
+
+    ActiveMatch(Match loaded) {
+        // Копия, а не сама сущность: загруженный экземпляр может оставаться в контексте персистентности запроса
+        this.match = new Match();
+        match.setId(loaded.getId());
+        match.setPairingId(loaded.getPairingId());
+        match.setPlayer1Id(loaded.getPlayer1Id());
+        match.setPlayer2Id(loaded.getPlayer2Id());
+        match.setCreated(loaded.getCreated());
+        match.setStatus(loaded.getStatus());
+        match.setPlayer1HP(loaded.getPlayer1HP());
+        match.setPlayer2HP(loaded.getPlayer2HP());
+        match.setTurnNumber(loaded.getTurnNumber());
+        match.setCurrentTurnStart(loaded.getCurrentTurnStart());
+        match.setUpdated(loaded.getUpdated());
+        match.setWinnerId(loaded.getWinnerId());
+        match.setFinishedAt(loaded.getFinishedAt());
+        match.setDuration(loaded.getDuration());
+        match.setTurnCount(loaded.getTurnCount());
+        match.setMissedTurns(loaded.getMissedTurns());
+        match.setVersion(loaded.getVersion());
+    }
+}
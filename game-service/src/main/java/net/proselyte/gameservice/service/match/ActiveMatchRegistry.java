@@ -0,0 +1,284 @@
+package net.proselyte.gameservice.service.match;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.game.dto.MoveRequest;
+import net.proselyte.gameservice.config.ActiveMatchProperties;
+import net.proselyte.gameservice.config.MoveProperties;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.exception.ConcurrentMoveException;
+import net.proselyte.gameservice.exception.MatchNotFoundException;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.TurnDeadlineScheduler;
+import net.proselyte.gameservice.service.move.MoveFactory;
+import net.proselyte.gameservice.service.move.MoveValidator;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр идущих матчей этой реплики: HP, номер хода, ходы текущего раунда и начало хода хранятся в памяти,
+ * поэтому ход проверяется и раунд разрешается без чтений из базы. Матч загружается из базы при первом ходе
+ * на этой реплике и удаляется из реестра, когда завершается.
+ * <p>
+ * Запись синхронная: каждый принятый ход (и разрешение раунда по таймеру) записывается в
+ * {@code game.moves}/{@code game.matches} до ответа, с проверкой версии матча. Ход, который не удалось
+ * записать, клиенту не подтверждается, а матч удаляется из реестра и при следующем ходе перечитывается
+ * из базы, где осталось последнее записанное состояние.
+ * <p>
+ * Все ходы матча должны приходить на одну реплику. Если строку матча изменил кто-то другой (например,
+ * таймер другой реплики разрешил ход), запись отклоняется по версии, и матч перечитывается из базы.
+ */
+@Slf4j
+@Component
+public class ActiveMatchRegistry {
+
+    private final MatchRepository matchRepository;
+    private final MoveRepository moveRepository;
+    private final MoveValidator moveValidator;
+    private final MoveFactory moveFactory;
+    private final TurnResolver turnResolver;
+    private final MatchStateWriter writer;
+    private final ActiveMatchProperties properties;
+    private final MoveProperties moveProperties;
+    private final TurnDeadlineProperties deadlineProperties;
+    private final ObjectProvider<TurnDeadlineScheduler> deadlineScheduler;
+
+    private final Map<UUID, ActiveMatch> matches = new ConcurrentHashMap<>();
+    private final Timer writeTimer;
+    private final Counter conflicts;
+    private final Counter failures;
+
+    public ActiveMatchRegistry(MatchRepository matchRepository,
+                               MoveRepository moveRepository,
+                               MoveValidator moveValidator,
+                               MoveFactory moveFactory,
+                               TurnResolver turnResolver,
+                               MatchStateWriter writer,
+                               ActiveMatchProperties properties,
+                               MoveProperties moveProperties,
+                               TurnDeadlineProperties deadlineProperties,
+                               ObjectProvider<TurnDeadlineScheduler> deadlineScheduler,
+                               MeterRegistry registry) {
+        this.matchRepository = matchRepository;
+        this.moveRepository = moveRepository;
+        this.moveValidator = moveValidator;
+        this.moveFactory = moveFactory;
+        this.turnResolver = turnResolver;
+        this.writer = writer;
+        this.properties = properties;
+        this.moveProperties = moveProperties;
+        this.deadlineProperties = deadlineProperties;
+        this.deadlineScheduler = deadlineScheduler;
+        Gauge.builder("game_active_matches", matches, Map::size)
+                .description("Matches held in memory by this replica")
+                .register(registry);
+        this.writeTimer = Timer.builder("game_match_write")
+                .description("Time to write one accepted move or resolved turn to the database")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.conflicts = Counter.builder("game_match_write_conflicts")
+                .description("Match writes rejected because the database row was changed elsewhere")
+                .register(registry);
+        this.failures = Counter.builder("game_match_write_failures")
+                .description("Match writes that failed with a database error; the match is reloaded on the next move")
+                .register(registry);
+    }
+
+    public boolean enabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * Принимает ход в памяти и записывает его; второй ход раунда сразу разрешает раунд.
+     * Ошибки те же, что при ходе транзакцией в базе: при конфликте версии матч уже удален из реестра,
+     * и ход повторяется по перечитанному состоянию до {@code game.moves.max-attempts} раз.
+     *
+     * @throws ConcurrentMoveException если конфликты не прекращаются; клиент должен повторить ход
+     */
+    public void accept(MoveRequest request, UUID playerId) {
+        int attempt = 1;
+        while (true) {
+            ActiveMatch active = getOrLoad(request.getMatchId());
+            synchronized (active) {
+                if (active.evicted) {
+                    continue;
+                }
+                Match match = active.match;
+                moveValidator.validateTurn(match, request, playerId);
+                if (active.pendingMoves.containsKey(playerId)) {
+                    throw moveValidator.moveAlreadyExists(playerId, request.getTurnNumber());
+                }
+
+                Instant now = Instant.now();
+                Move move = moveFactory.create(request, playerId, now);
+                active.pendingMoves.put(playerId, move);
+                boolean started = match.getStatus() == Match.MatchStatus.WAITING;
+                if (started) {
+                    match.setStatus(Match.MatchStatus.IN_PROGRESS);
+                    match.setCurrentTurnStart(now);
+                    match.setUpdated(now);
+                }
+
+                boolean resolved = active.pendingMoves.size() == 2;
+                List<Move> moves = resolved ? resolve(active, now, false) : List.of(move);
+                try {
+                    write(active, moves, started || resolved);
+                } catch (OptimisticLockingFailureException e) {
+                    if (attempt >= moveProperties.maxAttempts()) {
+                        log.warn("Move for match: {}, player: {} conflicted {} times, giving up",
+                                request.getMatchId(), playerId, attempt);
+                        throw new ConcurrentMoveException("Match " + request.getMatchId()
+                                + " is being updated concurrently, please retry the move");
+                    }
+                    log.debug("Version conflict on match: {}, player: {}, retrying (attempt {})",
+                            request.getMatchId(), playerId, attempt);
+                    attempt++;
+                    continue;
+                } catch (DataIntegrityViolationException e) {
+                    // Ход этого игрока уже записан вне реестра (например, другой репликой)
+                    if (moveValidator.isDuplicateMove(e)) {
+                        throw moveValidator.moveAlreadyExists(playerId, request.getTurnNumber());
+                    }
+                    throw e;
+                }
+                log.debug("Move accepted in memory for match: {}, player: {}, turn: {}",
+                        request.getMatchId(), playerId, request.getTurnNumber());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Разрешает просроченные ходы матчей, которые держит эта реплика, и сразу записывает результат.
+     *
+     * @return матчи, которых нет в памяти этой реплики или которые не удалось записать, - их разрешает таймер по базе
+     */
+    public List<UUID> resolveExpired(Collection<UUID> matchIds, Instant now) {
+        if (!enabled()) {
+            return List.copyOf(matchIds);
+        }
+        Instant startedBefore = now.minus(deadlineProperties.timeout());
+        List<UUID> notHeld = new ArrayList<>();
+        for (UUID matchId : matchIds) {
+            ActiveMatch active = matches.get(matchId);
+            if (active == null) {
+                notHeld.add(matchId);
+                continue;
+            }
+            synchronized (active) {
+                Instant turnStart = active.match.getCurrentTurnStart();
+                if (active.evicted) {
+                    notHeld.add(matchId);
+                } else if (active.match.getStatus() != Match.MatchStatus.FINISHED
+                        && turnStart != null && !turnStart.isAfter(startedBefore)) {
+                    try {
+                        write(active, resolve(active, now, true), true);
+                    } catch (RuntimeException e) {
+                        // Матч уже удален из реестра: таймер по базе разрешит ход по записанному состоянию
+                        notHeld.add(matchId);
+                    }
+                }
+            }
+        }
+        return notHeld;
+    }
+
+    int size() {
+        return matches.size();
+    }
+
+    private ActiveMatch getOrLoad(UUID matchId) {
+        ActiveMatch active = matches.get(matchId);
+        if (active != null) {
+            return active;
+        }
+
+        Match match = matchRepository.findById(matchId)
+                .orElseThrow(() -> new MatchNotFoundException("Match not found: " + matchId));
+        ActiveMatch loaded = new ActiveMatch(match);
+        if (match.getStatus() == Match.MatchStatus.FINISHED) {
+            // Завершенные матчи не кэшируются, ход отклонит валидация
+            return loaded;
+        }
+        // Ходы текущего раунда, записанные до включения реестра, до перезапуска или другой репликой
+        for (Move move : moveRepository.findAllByMatchIdAndTurnNumber(matchId, match.getTurnNumber())) {
+            loaded.pendingMoves.put(move.getPlayerId(), move);
+        }
+        ActiveMatch existing = matches.putIfAbsent(matchId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * Разрешает текущий раунд. Вызывается под монитором матча.
+     *
+     * @param expired раунд разрешается по таймеру: брошенный матч завершается
+     * @return ходы раунда, которые нужно записать вместе с матчем (урон записывается в ходы)
+     */
+    private List<Move> resolve(ActiveMatch active, Instant now, boolean expired) {
+        Match match = active.match;
+        Move player1Move = active.pendingMoves.get(match.getPlayer1Id());
+        Move player2Move = active.pendingMoves.get(match.getPlayer2Id());
+        if (expired) {
+            turnResolver.resolveExpired(match, player1Move, player2Move, now, deadlineProperties.maxMissedTurns());
+        } else {
+            turnResolver.resolve(match, player1Move, player2Move, now);
+        }
+        List<Move> moves = new ArrayList<>(active.pendingMoves.values());
+        active.pendingMoves.clear();
+        return moves;
+    }
+
+    /**
+     * Записывает ходы и состояние матча. Вызывается под монитором матча. При любой ошибке состояние в памяти
+     * уже разошлось с базой, поэтому матч удаляется из реестра, а ошибка пробрасывается.
+     *
+     * @param matchChanged начался новый ход или матч завершен - нужно переставить таймер хода
+     */
+    private void write(ActiveMatch active, List<Move> moves, boolean matchChanged) {
+        Match match = active.match;
+        try {
+            match.setVersion(writeTimer.record(() -> writer.write(match, moves)));
+        } catch (OptimisticLockingFailureException e) {
+            conflicts.increment();
+            log.warn("Match {} was changed outside this replica, dropping its in-memory state", match.getId());
+            evict(active);
+            throw e;
+        } catch (RuntimeException e) {
+            failures.increment();
+            log.warn("Failed to write match {}, dropping its in-memory state: {}", match.getId(), e.getMessage());
+            evict(active);
+            throw e;
+        }
+
+        if (match.getStatus() == Match.MatchStatus.FINISHED) {
+            evict(active);
+        }
+        TurnDeadlineScheduler scheduler = deadlineScheduler.getIfAvailable();
+        if (matchChanged && scheduler != null) {
+            // Таймер нового хода (или его снятие) - только после того, как ход записан
+            scheduler.track(match);
+        }
+    }
+
+    private void evict(ActiveMatch active) {
+        active.evicted = true;
+        matches.remove(active.match.getId(), active);
+    }
+}
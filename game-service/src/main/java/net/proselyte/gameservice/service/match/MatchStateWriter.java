@@ -0,0 +1,38 @@
+package net.proselyte.gameservice.service.match;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MoveRepository;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Записывает ход, принятый в памяти, одной транзакцией: новые или измененные ходы и состояние матча.
+ * Состояние матча сливается с проверкой {@code @Version}: если строку изменил кто-то другой
+ * (таймер или ход на другой реплике), запись откатывается с {@link OptimisticLockingFailureException}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MatchStateWriter {
+
+    private final MatchRepository matchRepository;
+    private final MoveRepository moveRepository;
+
+    /**
+     * @return версия матча после записи
+     */
+    @Transactional
+    public Long write(Match match, List<Move> moves) {
+        moveRepository.saveAll(moves);
+        Match saved = matchRepository.saveAndFlush(match);
+        log.debug("Wrote match {} (turn {}) and {} moves", match.getId(), match.getTurnNumber(), moves.size());
+        return saved.getVersion();
+    }
+}
@@ -1,24 +1,30 @@
 package net.proselyte.gameservice.service.move;
 
-import lombok.RequiredArgsConstructor;
 import net.proselyte.game.dto.MoveRequest;
 import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
 import net.proselyte.gameservice.exception.InvalidTurnNumberException;
 import net.proselyte.gameservice.exception.MatchFinishedException;
 import net.proselyte.gameservice.exception.MoveAlreadyExistsException;
 import net.proselyte.gameservice.exception.PlayerNotParticipantException;
-import net.proselyte.gameservice.repository.MoveRepository;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 
 import java.util.UUID;
 
+/**
+ * Проверки хода по состоянию матча. Повторный ход игрока в раунде в базе не ищется: его отсекает
+ * уникальный индекс {@code game.moves} ({@link net.proselyte.gameservice.entity.Move#TURN_MOVE_CONSTRAINT}),
+ * а вызывающий код превращает нарушение в {@link #moveAlreadyExists}.
+ */
 @Component
-@RequiredArgsConstructor
 public class MoveValidator {
 
-    private final MoveRepository moveRepository;
-
-    public void validate(Match match, MoveRequest request, UUID playerId) {
+    /**
+     * Проверки хода по состоянию матча, без обращения к базе: участник, матч не завершен, номер хода текущий.
+     */
+    public void validateTurn(Match match, MoveRequest request, UUID playerId) {
         // Проверяем, что игрок является участником матча
         if (!match.getPlayer1Id().equals(playerId) && !match.getPlayer2Id().equals(playerId)) {
             throw new PlayerNotParticipantException(
@@ -39,18 +45,23 @@ public class MoveValidator {
                     String.format("Invalid turn number. Expected: %d, got: %d", matchTurn, requestTurn)
             );
         }
+    }
 
-        // Проверяем, что игрок еще не сделал ход в этом раунде
-        boolean moveExists = moveRepository.findByMatchIdAndPlayerIdAndTurnNumber(
-                request.getMatchId(), playerId, requestTurn
-        ).isPresent();
+    public MoveAlreadyExistsException moveAlreadyExists(UUID playerId, Integer turnNumber) {
+        return new MoveAlreadyExistsException(
+                String.format("Player %s has already made a move for turn %d", playerId, turnNumber)
+        );
+    }
 
-        if (moveExists) {
-            throw new MoveAlreadyExistsException(
-                    String.format("Player %s has already made a move for turn %d", playerId, requestTurn)
-            );
+    /**
+     * @return true, если вставка хода нарушила уникальный индекс ходов - игрок уже походил в этом раунде
+     */
+    public boolean isDuplicateMove(DataIntegrityViolationException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation) {
+                return Move.TURN_MOVE_CONSTRAINT.equalsIgnoreCase(violation.getConstraintName());
+            }
         }
+        return false;
     }
 }
-
-
@@ -0,0 +1,101 @@
+package net.proselyte.gameservice.service.move;
+
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Разрешает ход матча: считает урон по таблице спецификации (голова 20, корпус 15, ноги 10,
+ * вдвое меньше при блоке той же зоны), пишет его в ходы и переводит матч к следующему ходу
+ * или завершает его, когда у кого-то из игроков закончились HP.
+ * Работает только с сущностями в памяти, SQL выполняет вызывающий сервис.
+ */
+@Slf4j
+@Component
+public class TurnResolver {
+
+    static final int HEAD_DAMAGE = 20;
+    static final int BODY_DAMAGE = 15;
+    static final int LEGS_DAMAGE = 10;
+
+    /**
+     * Разрешает текущий ход матча. Отсутствующий ход (игрок не успел походить) не атакует и не защищает.
+     *
+     * @param player1Move ход первого игрока или {@code null}
+     * @param player2Move ход второго игрока или {@code null}
+     */
+    public void resolve(Match match, Move player1Move, Move player2Move, Instant now) {
+        match.setMissedTurns(player1Move == null && player2Move == null ? match.getMissedTurns() + 1 : 0);
+        int damageToPlayer2 = damage(player1Move, player2Move);
+        int damageToPlayer1 = damage(player2Move, player1Move);
+        if (player1Move != null) {
+            player1Move.setDamage(damageToPlayer2);
+        }
+        if (player2Move != null) {
+            player2Move.setDamage(damageToPlayer1);
+        }
+
+        int player1HP = Math.max(0, match.getPlayer1HP() - damageToPlayer1);
+        int player2HP = Math.max(0, match.getPlayer2HP() - damageToPlayer2);
+        int resolvedTurn = match.getTurnNumber();
+
+        match.setPlayer1HP(player1HP);
+        match.setPlayer2HP(player2HP);
+        match.setTurnCount(resolvedTurn);
+        match.setUpdated(now);
+
+        if (player1HP == 0 || player2HP == 0) {
+            // Оба игрока на нуле - ничья, победителя нет
+            finish(match, player1HP > 0 ? match.getPlayer1Id() : player2HP > 0 ? match.getPlayer2Id() : null, now);
+            log.info("Match {} finished on turn {}, winner: {}", match.getId(), resolvedTurn, match.getWinnerId());
+            return;
+        }
+
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setTurnNumber(resolvedTurn + 1);
+        match.setCurrentTurnStart(now);
+        log.debug("Match {} turn {} resolved, HP: {}/{}", match.getId(), resolvedTurn, player1HP, player2HP);
+    }
+
+    /**
+     * Разрешает ход, по которому истек таймер. Если ни один игрок не ходил {@code maxMissedTurns} ходов подряд,
+     * матч брошен: он завершается ничьей, а не переходит к следующему ходу, и его таймер снимается.
+     */
+    public void resolveExpired(Match match, Move player1Move, Move player2Move, Instant now, int maxMissedTurns) {
+        resolve(match, player1Move, player2Move, now);
+        if (match.getStatus() != Match.MatchStatus.FINISHED && match.getMissedTurns() >= maxMissedTurns) {
+            // Номер хода возвращается к пропущенному: следующего хода у брошенного матча нет
+            match.setTurnNumber(match.getTurnCount());
+            finish(match, null, now);
+            log.info("Match {} abandoned after {} missed turns, finished as a draw", match.getId(), match.getMissedTurns());
+        }
+    }
+
+    private static void finish(Match match, UUID winnerId, Instant now) {
+        match.setStatus(Match.MatchStatus.FINISHED);
+        match.setWinnerId(winnerId);
+        match.setFinishedAt(now);
+        match.setDuration((int) Duration.between(match.getCreated(), now).toSeconds());
+    }
+
+    /**
+     * Урон, который атакующий ход наносит защищающемуся.
+     */
+    static int damage(Move attack, Move defense) {
+        if (attack == null) {
+            return 0;
+        }
+        int base = switch (attack.getAttackTarget()) {
+            case HEAD -> HEAD_DAMAGE;
+            case BODY -> BODY_DAMAGE;
+            case LEGS -> LEGS_DAMAGE;
+        };
+        boolean blocked = defense != null && defense.getDefenseTarget() == attack.getAttackTarget();
+        return blocked ? base / 2 : base;
+    }
+}
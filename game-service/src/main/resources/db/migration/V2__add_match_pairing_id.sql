@@ -0,0 +1,4 @@
+-- Idempotency key of the queue pairing that created the match
+ALTER TABLE game.matches ADD COLUMN pairing_id UUID;
+
+CREATE UNIQUE INDEX uq_matches_pairing_id ON game.matches(pairing_id);
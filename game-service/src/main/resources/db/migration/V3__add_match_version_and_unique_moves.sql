@@ -0,0 +1,12 @@
+-- Версия строки матча для оптимистичной блокировки (@Version)
+ALTER TABLE game.matches ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- Один ход игрока за раунд: оставляем самый ранний из дублей, если они успели появиться
+DELETE FROM game.moves m
+USING game.moves d
+WHERE m.match_id = d.match_id
+  AND m.player_id = d.player_id
+  AND m.turn_number = d.turn_number
+  AND (m.created, m.id) > (d.created, d.id);
+
+ALTER TABLE game.moves ADD CONSTRAINT uq_moves_match_player_turn UNIQUE (match_id, player_id, turn_number);
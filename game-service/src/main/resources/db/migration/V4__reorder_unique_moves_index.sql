@@ -0,0 +1,9 @@
+-- Уникальность хода игрока в раунде - единственная проверка дубля: приложение больше не ищет ход
+-- перед вставкой. Порядок (match_id, turn_number, player_id) позволяет тому же индексу обслуживать
+-- выборку ходов раунда, поэтому отдельные индексы по match_id и (match_id, turn_number) не нужны:
+-- на каждую вставку хода обновляется на два индекса меньше.
+ALTER TABLE game.moves ADD CONSTRAINT uq_moves_match_turn_player UNIQUE (match_id, turn_number, player_id);
+ALTER TABLE game.moves DROP CONSTRAINT uq_moves_match_player_turn;
+
+DROP INDEX IF EXISTS game.idx_moves_match_turn;
+DROP INDEX IF EXISTS game.idx_moves_match_id;
@@ -0,0 +1,8 @@
+-- Входы игроков в очередь (ticket), уже сведенные в матч: один вход - не больше одного матча.
+-- pairing_id защищает только от повтора той же пары; пара, откатанная после потерянного ответа
+-- и собранная заново с другим соперником, получает новый pairing_id, но тот же ticket игрока.
+CREATE TABLE game.match_tickets
+(
+    ticket   UUID PRIMARY KEY,
+    match_id UUID NOT NULL REFERENCES game.matches (id)
+);
@@ -0,0 +1,3 @@
+-- Подряд идущие ходы, в которых не походил ни один игрок: по достижении game.turn-deadline.max-missed-turns
+-- брошенный матч завершается ничьей, и его таймер снимается
+ALTER TABLE game.matches ADD COLUMN missed_turns INTEGER NOT NULL DEFAULT 0;
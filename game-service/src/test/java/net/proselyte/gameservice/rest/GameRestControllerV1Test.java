@@ -2,7 +2,9 @@ package net.proselyte.gameservice.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.proselyte.gameservice.dto.CreateMatchRequest;
+import net.proselyte.gameservice.dto.CreateMatchesRequest;
 import net.proselyte.gameservice.dto.MatchResponse;
+import net.proselyte.gameservice.dto.MatchesResponse;
 import net.proselyte.gameservice.service.MatchService;
 import net.proselyte.gameservice.service.MoveService;
 import net.proselyte.game.dto.MoveRequest;
@@ -20,6 +22,7 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -81,6 +84,50 @@ class GameRestControllerV1Test {
         verify(matchService).createMatch(any(CreateMatchRequest.class));
     }
 
+    @Test
+    void shouldCreateMatchesInBulk() throws Exception {
+        CreateMatchRequest pair = new CreateMatchRequest();
+        pair.setPlayer1Id(UUID.randomUUID());
+        pair.setPlayer2Id(UUID.randomUUID());
+        CreateMatchesRequest request = new CreateMatchesRequest();
+        request.setMatches(List.of(pair));
+
+        MatchResponse match = new MatchResponse();
+        match.setId(UUID.randomUUID());
+        match.setPlayer1Id(pair.getPlayer1Id());
+        match.setPlayer2Id(pair.getPlayer2Id());
+        match.setStatus("WAITING");
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match));
+
+        when(matchService.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        mockMvc.perform(post("/v1/game/matches")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.items[0].id").value(match.getId().toString()))
+                .andExpect(jsonPath("$.items[0].player1Id").value(pair.getPlayer1Id().toString()));
+
+        verify(matchService).createMatches(any(CreateMatchesRequest.class));
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenBulkPairIsInvalid() throws Exception {
+        CreateMatchRequest pair = new CreateMatchRequest();
+        pair.setPlayer1Id(UUID.randomUUID());
+        // player2Id is null
+        CreateMatchesRequest request = new CreateMatchesRequest();
+        request.setMatches(List.of(pair));
+
+        mockMvc.perform(post("/v1/game/matches")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+
+        verify(matchService, never()).createMatches(any());
+    }
+
     @Test
     void shouldReturnBadRequestWhenPlayer1IdIsMissing() throws Exception {
         CreateMatchRequest request = new CreateMatchRequest();
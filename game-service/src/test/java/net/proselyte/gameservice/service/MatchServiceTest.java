@@ -1,21 +1,29 @@
 package net.proselyte.gameservice.service;
 
 import net.proselyte.gameservice.dto.CreateMatchRequest;
+import net.proselyte.gameservice.dto.CreateMatchesRequest;
 import net.proselyte.gameservice.dto.MatchResponse;
+import net.proselyte.gameservice.dto.MatchesResponse;
 import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.MatchTicket;
 import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MatchTicketRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -24,17 +32,23 @@ class MatchServiceTest {
     @Mock
     private MatchRepository matchRepository;
 
-    @InjectMocks
+    @Mock
+    private MatchTicketRepository matchTicketRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private MatchService matchService;
 
     private CreateMatchRequest createMatchRequest;
     private Match savedMatch;
+    private UUID matchId;
 
     @BeforeEach
     void setUp() {
         UUID player1Id = UUID.randomUUID();
         UUID player2Id = UUID.randomUUID();
-        UUID matchId = UUID.randomUUID();
+        matchId = UUID.randomUUID();
 
         createMatchRequest = new CreateMatchRequest();
         createMatchRequest.setPlayer1Id(player1Id);
@@ -50,21 +64,29 @@ class MatchServiceTest {
         savedMatch.setTurnNumber(1);
         savedMatch.setCreated(Instant.now());
         savedMatch.setUpdated(Instant.now());
+
+        matchService = new MatchService(matchRepository, matchTicketRepository, new TransactionTemplate(transactionManager));
+    }
+
+    /**
+     * saveAllAndFlush присваивает матчам id, как это делает Hibernate при persist.
+     */
+    private void assignIdsOnSave() {
+        when(matchRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<Match> matches = invocation.getArgument(0);
+            matches.forEach(match -> match.setId(UUID.randomUUID()));
+            return matches;
+        });
     }
 
     @Test
     void shouldCreateMatchWithCorrectInitialValues() {
-        when(matchRepository.save(any(Match.class))).thenAnswer(invocation -> {
-            Match match = invocation.getArgument(0);
-            match.setId(savedMatch.getId());
-            match.setCreated(savedMatch.getCreated());
-            match.setUpdated(savedMatch.getUpdated());
-            return match;
-        });
+        assignIdsOnSave();
 
         MatchResponse response = matchService.createMatch(createMatchRequest);
 
         assertNotNull(response);
+        assertNotNull(response.getId());
         assertEquals(createMatchRequest.getPlayer1Id(), response.getPlayer1Id());
         assertEquals(createMatchRequest.getPlayer2Id(), response.getPlayer2Id());
         assertEquals("WAITING", response.getStatus());
@@ -72,36 +94,184 @@ class MatchServiceTest {
         assertEquals(100, response.getPlayer2HP());
         assertEquals(1, response.getTurnNumber());
         assertNotNull(response.getCreatedAt());
-        assertNotNull(response.getUpdated());
+        assertEquals(response.getCreatedAt(), response.getUpdated());
 
-        verify(matchRepository, times(1)).save(any(Match.class));
+        verify(matchRepository, times(1)).saveAllAndFlush(anyList());
     }
 
     @Test
-    void shouldSetCreatedAndUpdatedTimestamps() {
-        when(matchRepository.save(any(Match.class))).thenAnswer(invocation -> {
-            Match match = invocation.getArgument(0);
-            match.setId(savedMatch.getId());
-            return match;
-        });
+    void shouldNotLookUpKeysWhenRequestHasNone() {
+        assignIdsOnSave();
+
+        matchService.createMatch(createMatchRequest);
+
+        verify(matchRepository, never()).findAllByPairingIdIn(any());
+        verify(matchTicketRepository, never()).findAllById(any());
+    }
+
+    @Test
+    void shouldReturnExistingMatchForRepeatedPairingId() {
+        UUID pairingId = UUID.randomUUID();
+        createMatchRequest.setPairingId(pairingId);
+        savedMatch.setPairingId(pairingId);
+        when(matchRepository.findAllByPairingIdIn(List.of(pairingId))).thenReturn(List.of(savedMatch));
 
         MatchResponse response = matchService.createMatch(createMatchRequest);
 
-        assertNotNull(response.getCreatedAt());
-        assertNotNull(response.getUpdated());
-        assertEquals(response.getCreatedAt(), response.getUpdated());
+        assertEquals(matchId, response.getId());
+        assertEquals(pairingId, response.getPairingId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldStorePairingIdAndTicketsOnNewMatch() {
+        UUID pairingId = UUID.randomUUID();
+        UUID ticket1 = UUID.randomUUID();
+        UUID ticket2 = UUID.randomUUID();
+        createMatchRequest.setPairingId(pairingId);
+        createMatchRequest.setPlayer1Ticket(ticket1);
+        createMatchRequest.setPlayer2Ticket(ticket2);
+        assignIdsOnSave();
+
+        MatchResponse response = matchService.createMatch(createMatchRequest);
 
-        verify(matchRepository, times(1)).save(any(Match.class));
+        assertEquals(pairingId, response.getPairingId());
+        verify(matchTicketRepository).saveAllAndFlush(argThat(tickets -> {
+            List<MatchTicket> stored = (List<MatchTicket>) tickets;
+            return stored.size() == 2
+                    && stored.get(0).getTicket().equals(ticket1)
+                    && stored.get(1).getTicket().equals(ticket2)
+                    && stored.stream().allMatch(ticket -> ticket.getMatchId().equals(response.getId()));
+        }));
     }
 
     @Test
-    void shouldCallRepositorySaveOnce() {
-        when(matchRepository.save(any(Match.class))).thenReturn(savedMatch);
+    void shouldReturnMatchHoldingTicketInsteadOfCreatingSecondMatch() {
+        // Пара откатана после потерянного ответа, первый игрок собран заново с другим соперником
+        UUID ticket = UUID.randomUUID();
+        createMatchRequest.setPairingId(UUID.randomUUID());
+        createMatchRequest.setPlayer1Ticket(ticket);
+        createMatchRequest.setPlayer2Ticket(UUID.randomUUID());
+        savedMatch.setPlayer2Id(UUID.randomUUID());
+        when(matchTicketRepository.findAllById(anyList())).thenReturn(List.of(new MatchTicket(ticket, matchId)));
+        when(matchRepository.findAllById(List.of(matchId))).thenReturn(List.of(savedMatch));
 
-        matchService.createMatch(createMatchRequest);
+        MatchResponse response = matchService.createMatch(createMatchRequest);
 
-        verify(matchRepository, times(1)).save(any(Match.class));
-        verifyNoMoreInteractions(matchRepository);
+        assertEquals(matchId, response.getId());
+        assertNotEquals(createMatchRequest.getPlayer2Id(), response.getPlayer2Id());
+    }
+
+    @Test
+    void shouldReturnConcurrentlyCreatedMatchOnPairingIdConflict() {
+        UUID pairingId = UUID.randomUUID();
+        createMatchRequest.setPairingId(pairingId);
+        savedMatch.setPairingId(pairingId);
+        when(matchRepository.findAllByPairingIdIn(List.of(pairingId)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(savedMatch));
+        when(matchRepository.saveAllAndFlush(anyList()))
+                .thenThrow(new DataIntegrityViolationException("uq_matches_pairing_id"))
+                .thenReturn(List.of());
+
+        MatchResponse response = matchService.createMatch(createMatchRequest);
+
+        assertEquals(matchId, response.getId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldCreateMatchesWithSingleSaveAllAndSkipInvalidPairs() {
+        UUID player3Id = UUID.randomUUID();
+        UUID player4Id = UUID.randomUUID();
+
+        CreateMatchRequest valid = new CreateMatchRequest();
+        valid.setPlayer1Id(player3Id);
+        valid.setPlayer2Id(player4Id);
+        CreateMatchRequest selfMatch = new CreateMatchRequest();
+        selfMatch.setPlayer1Id(player3Id);
+        selfMatch.setPlayer2Id(player3Id);
+        CreateMatchRequest busyPlayer = new CreateMatchRequest();
+        busyPlayer.setPlayer1Id(createMatchRequest.getPlayer1Id());
+        busyPlayer.setPlayer2Id(player4Id);
+
+        CreateMatchesRequest request = new CreateMatchesRequest();
+        request.setMatches(List.of(createMatchRequest, valid, selfMatch, busyPlayer));
+        assignIdsOnSave();
+
+        MatchesResponse response = matchService.createMatches(request);
+
+        assertEquals(2, response.getItems().size());
+        assertEquals(createMatchRequest.getPlayer1Id(), response.getItems().get(0).getPlayer1Id());
+        assertEquals(player3Id, response.getItems().get(1).getPlayer1Id());
+        assertEquals(player4Id, response.getItems().get(1).getPlayer2Id());
+        response.getItems().forEach(match -> {
+            assertEquals("WAITING", match.getStatus());
+            assertEquals(100, match.getPlayer1HP());
+            assertEquals(100, match.getPlayer2HP());
+        });
+
+        verify(matchRepository, times(1)).saveAllAndFlush(argThat(matches -> ((List<Match>) matches).size() == 2));
     }
-}
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldNotRecreateAlreadyCreatedPairingsInBulk() {
+        UUID pairingId = UUID.randomUUID();
+        createMatchRequest.setPairingId(pairingId);
+        savedMatch.setPairingId(pairingId);
+        CreateMatchRequest fresh = new CreateMatchRequest();
+        fresh.setPlayer1Id(UUID.randomUUID());
+        fresh.setPlayer2Id(UUID.randomUUID());
+        fresh.setPairingId(UUID.randomUUID());
+
+        CreateMatchesRequest request = new CreateMatchesRequest();
+        request.setMatches(List.of(createMatchRequest, fresh));
+
+        when(matchRepository.findAllByPairingIdIn(List.of(pairingId, fresh.getPairingId())))
+                .thenReturn(List.of(savedMatch));
+        assignIdsOnSave();
+
+        MatchesResponse response = matchService.createMatches(request);
+
+        assertEquals(2, response.getItems().size());
+        assertEquals(matchId, response.getItems().get(0).getId());
+        assertEquals(fresh.getPairingId(), response.getItems().get(1).getPairingId());
+        verify(matchRepository).saveAllAndFlush(argThat(matches -> ((List<Match>) matches).size() == 1));
+    }
+
+    @Test
+    void shouldCreatePairsOneByOneWhenBulkConflictsWithConcurrentRequest() {
+        // given - параллельный запрос занял ticket второй пары между чтением и вставкой
+        UUID ticket = UUID.randomUUID();
+        CreateMatchRequest conflicting = new CreateMatchRequest();
+        conflicting.setPlayer1Id(UUID.randomUUID());
+        conflicting.setPlayer2Id(UUID.randomUUID());
+        conflicting.setPlayer1Ticket(ticket);
+        Match concurrent = new Match();
+        concurrent.setId(UUID.randomUUID());
+        concurrent.setPlayer1Id(conflicting.getPlayer1Id());
+        concurrent.setPlayer2Id(UUID.randomUUID());
+        concurrent.setStatus(Match.MatchStatus.WAITING);
+
+        CreateMatchesRequest request = new CreateMatchesRequest();
+        request.setMatches(List.of(createMatchRequest, conflicting));
+
+        when(matchTicketRepository.findAllById(anyList()))
+                .thenReturn(List.of())
+                .thenReturn(List.of(new MatchTicket(ticket, concurrent.getId())));
+        when(matchRepository.findAllById(List.of(concurrent.getId()))).thenReturn(List.of(concurrent));
+        when(matchTicketRepository.saveAllAndFlush(anyList()))
+                .thenThrow(new DataIntegrityViolationException("match_tickets_pkey"))
+                .thenReturn(List.of());
+        assignIdsOnSave();
+
+        // when
+        MatchesResponse response = matchService.createMatches(request);
+
+        // then - первая пара создана, для второй возвращен матч, занявший ticket
+        assertEquals(2, response.getItems().size());
+        assertEquals(createMatchRequest.getPlayer2Id(), response.getItems().get(0).getPlayer2Id());
+        assertEquals(concurrent.getId(), response.getItems().get(1).getId());
+    }
+}
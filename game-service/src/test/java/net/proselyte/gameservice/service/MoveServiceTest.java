@@ -2,8 +2,10 @@ package net.proselyte.gameservice.service;
 
 import net.proselyte.game.dto.MoveRequest;
 import net.proselyte.game.dto.MoveResponse;
+import net.proselyte.gameservice.config.MoveProperties;
 import net.proselyte.gameservice.entity.Match;
 import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.exception.ConcurrentMoveException;
 import net.proselyte.gameservice.exception.InvalidTurnNumberException;
 import net.proselyte.gameservice.exception.MatchNotFoundException;
 import net.proselyte.gameservice.exception.MatchFinishedException;
@@ -11,18 +13,27 @@ import net.proselyte.gameservice.exception.MoveAlreadyExistsException;
 import net.proselyte.gameservice.exception.PlayerNotParticipantException;
 import net.proselyte.gameservice.repository.MatchRepository;
 import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.match.ActiveMatchRegistry;
 import net.proselyte.gameservice.service.move.MoveFactory;
 import net.proselyte.gameservice.service.move.MoveTargetMapper;
 import net.proselyte.gameservice.service.move.MoveValidator;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.lang.reflect.Method;
+import java.sql.SQLException;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -42,6 +53,16 @@ class MoveServiceTest {
     @Mock
     private MatchRepository matchRepository;
 
+    @Mock
+    private TurnDeadlineScheduler turnDeadlineScheduler;
+
+    // Реестр матчей в памяти выключен (enabled() == false) - ходы идут транзакцией в базе
+    @Mock
+    private ActiveMatchRegistry activeMatchRegistry;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private MoveService moveService;
 
     // Тестовые данные
@@ -86,8 +107,10 @@ class MoveServiceTest {
         // Собираем MoveService с реальными валидатором/маппером (репозитории замоканы)
         MoveTargetMapper targetMapper = new MoveTargetMapper();
         MoveFactory moveFactory = new MoveFactory(targetMapper);
-        MoveValidator moveValidator = new MoveValidator(moveRepository);
-        moveService = new MoveService(moveRepository, matchRepository, moveValidator, moveFactory);
+        MoveValidator moveValidator = new MoveValidator();
+        moveService = new MoveService(moveRepository, matchRepository, moveValidator, moveFactory, new TurnResolver(),
+                turnDeadlineScheduler, activeMatchRegistry, new TransactionTemplate(transactionManager),
+                new MoveProperties(3));
     }
 
     /**
@@ -127,9 +150,7 @@ class MoveServiceTest {
     @Test
     void shouldCreateMoveSuccessfully() {
         // Настройка моков: матч существует и игрок является участником
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
-        when(moveRepository.findByMatchIdAndPlayerIdAndTurnNumber(matchId, player1Id, 1))
-                .thenReturn(Optional.empty());
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
         
         // Мокируем сохранение хода и матча
         Move savedMove = new Move();
@@ -177,7 +198,7 @@ class MoveServiceTest {
     @Test
     void shouldThrowExceptionWhenMatchNotFound() {
         // Настройка мока: матч не найден
-        when(matchRepository.findById(matchId)).thenReturn(Optional.empty());
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.empty());
 
         // Выполняем метод и ожидаем исключение
         assertThrows(MatchNotFoundException.class, () -> {
@@ -196,7 +217,7 @@ class MoveServiceTest {
         UUID otherPlayerId = UUID.randomUUID();
         
         // Настройка моков: матч существует, но игрок не является участником
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
 
         // Выполняем метод и ожидаем исключение
         PlayerNotParticipantException exception = assertThrows(PlayerNotParticipantException.class, () -> {
@@ -215,7 +236,7 @@ class MoveServiceTest {
     void shouldThrowExceptionWhenMatchFinished() {
         // Устанавливаем статус матча как FINISHED
         match.setStatus(Match.MatchStatus.FINISHED);
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
 
         // Выполняем метод и ожидаем исключение
         MatchFinishedException exception = assertThrows(MatchFinishedException.class, () -> {
@@ -236,7 +257,7 @@ class MoveServiceTest {
         moveRequest.setTurnNumber(5);
         match.setTurnNumber(1); // Текущий ход матча - 1
         
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
 
         // Выполняем метод и ожидаем исключение
         InvalidTurnNumberException exception = assertThrows(InvalidTurnNumberException.class, () -> {
@@ -254,12 +275,13 @@ class MoveServiceTest {
     @Test
     void shouldThrowExceptionWhenMoveAlreadyExists() {
         // Настройка моков: матч существует, но ход уже был сделан
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
         
+        // Ход игрока приходит тем же запросом, что и ход соперника - отдельной проверки дубля нет
         Move existingMove = new Move();
         existingMove.setId(moveId);
-        when(moveRepository.findByMatchIdAndPlayerIdAndTurnNumber(matchId, player1Id, 1))
-                .thenReturn(Optional.of(existingMove));
+        existingMove.setPlayerId(player1Id);
+        when(moveRepository.findAllByMatchIdAndTurnNumber(matchId, 1)).thenReturn(List.of(existingMove));
 
         // Выполняем метод и ожидаем исключение
         MoveAlreadyExistsException exception = assertThrows(MoveAlreadyExistsException.class, () -> {
@@ -271,6 +293,37 @@ class MoveServiceTest {
         verify(moveRepository, never()).save(any(Move.class));
     }
 
+    /**
+     * Тест: параллельный дубль хода отсекается уникальным индексом game.moves и отдается как MoveAlreadyExistsException
+     */
+    @Test
+    void shouldTranslateUniqueViolationToMoveAlreadyExists() {
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // INSERT хода выполняется при коммите, когда параллельный запрос того же игрока уже закоммитил свой ход
+        doThrow(new DataIntegrityViolationException("duplicate key", new ConstraintViolationException(
+                "duplicate key", new SQLException("duplicate key", "23505"), Move.TURN_MOVE_CONSTRAINT)))
+                .when(transactionManager).commit(any());
+
+        MoveAlreadyExistsException exception = assertThrows(MoveAlreadyExistsException.class,
+                () -> moveService.makeMove(moveRequest, player1Id));
+        assertTrue(exception.getMessage().contains("already made a move"));
+    }
+
+    /**
+     * Тест: нарушение других ограничений не выдается за повторный ход
+     */
+    @Test
+    void shouldRethrowOtherIntegrityViolations() {
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new DataIntegrityViolationException("not null", new ConstraintViolationException(
+                "not null", new SQLException("not null", "23502"), null)))
+                .when(transactionManager).commit(any());
+
+        assertThrows(DataIntegrityViolationException.class, () -> moveService.makeMove(moveRequest, player1Id));
+    }
+
     /**
      * Тест: статус матча не обновляется, если матч уже в статусе IN_PROGRESS
      */
@@ -279,9 +332,7 @@ class MoveServiceTest {
         // Устанавливаем статус матча как IN_PROGRESS
         match.setStatus(Match.MatchStatus.IN_PROGRESS);
         
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
-        when(moveRepository.findByMatchIdAndPlayerIdAndTurnNumber(matchId, player1Id, 1))
-                .thenReturn(Optional.empty());
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
         
         Move savedMove = new Move();
         savedMove.setId(moveId);
@@ -305,11 +356,8 @@ class MoveServiceTest {
         // Настройка моков: матч существует, первый игрок уже сделал ход
         // Статус матча уже IN_PROGRESS, так как первый игрок уже сделал ход
         match.setStatus(Match.MatchStatus.IN_PROGRESS);
-        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
         
-        // Второй игрок еще не делал ход
-        when(moveRepository.findByMatchIdAndPlayerIdAndTurnNumber(matchId, player2Id, 1))
-                .thenReturn(Optional.empty());
         
         Move savedMove = new Move();
         savedMove.setId(moveId);
@@ -328,5 +376,161 @@ class MoveServiceTest {
         verify(moveRepository, times(1)).save(moveCaptor.capture());
         assertEquals(player2Id, moveCaptor.getValue().getPlayerId());
     }
-}
 
+    /**
+     * Тест: второй ход раунда разрешает раунд - урон записывается в оба хода, HP и номер хода обновляются
+     */
+    @Test
+    void shouldResolveTurnWhenSecondMoveArrives() {
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
+
+        // Второй игрок уже походил: бьет в корпус, защищает голову
+        Move opponentMove = opponentMove(Move.Target.BODY, Move.Target.HEAD);
+        when(moveRepository.findAllByMatchIdAndTurnNumber(matchId, 1)).thenReturn(List.of(opponentMove));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Первый игрок бьет в голову (заблокировано) и защищает корпус (блокирует удар соперника)
+        moveService.makeMove(moveRequest, player1Id);
+
+        ArgumentCaptor<Move> moveCaptor = ArgumentCaptor.forClass(Move.class);
+        verify(moveRepository).save(moveCaptor.capture());
+        assertEquals(10, moveCaptor.getValue().getDamage());
+        assertEquals(7, opponentMove.getDamage());
+
+        verify(matchRepository).save(match);
+        assertEquals(93, match.getPlayer1HP());
+        assertEquals(90, match.getPlayer2HP());
+        assertEquals(2, match.getTurnNumber());
+        assertEquals(1, match.getTurnCount());
+        assertEquals(Match.MatchStatus.IN_PROGRESS, match.getStatus());
+        verify(turnDeadlineScheduler).track(match);
+    }
+
+    /**
+     * Тест: матч завершается, когда HP соперника опускается до нуля
+     */
+    @Test
+    void shouldFinishMatchWhenOpponentHpDropsToZero() {
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setPlayer2HP(15);
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
+        when(moveRepository.findAllByMatchIdAndTurnNumber(matchId, 1))
+                .thenReturn(List.of(opponentMove(Move.Target.LEGS, Move.Target.LEGS)));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        moveService.makeMove(moveRequest, player1Id);
+
+        verify(matchRepository).save(match);
+        assertEquals(Match.MatchStatus.FINISHED, match.getStatus());
+        assertEquals(0, match.getPlayer2HP());
+        assertEquals(90, match.getPlayer1HP());
+        assertEquals(player1Id, match.getWinnerId());
+        assertNotNull(match.getFinishedAt());
+        assertNotNull(match.getDuration());
+        assertEquals(1, match.getTurnNumber());
+        verify(turnDeadlineScheduler).track(match);
+    }
+
+    private Move opponentMove(Move.Target attackTarget, Move.Target defenseTarget) {
+        Move move = new Move();
+        move.setId(UUID.randomUUID());
+        move.setMatchId(matchId);
+        move.setPlayerId(player2Id);
+        move.setAttackTarget(attackTarget);
+        move.setDefenseTarget(defenseTarget);
+        move.setTurnNumber(1);
+        move.setCreated(Instant.now());
+        return move;
+    }
+
+    /**
+     * Тест: при конфликте версии с параллельным ходом ход повторяется новой транзакцией
+     */
+    @Test
+    void shouldRetryMoveOnVersionConflict() {
+        // Каждая попытка читает матч заново, как новая транзакция
+        when(matchRepository.findByIdForMove(matchId)).thenAnswer(invocation -> Optional.of(waitingMatch()));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // Первый коммит проигрывает параллельному ходу соперника
+        doThrow(new ObjectOptimisticLockingFailureException(Match.class, matchId))
+                .doNothing()
+                .when(transactionManager).commit(any());
+
+        MoveResponse response = moveService.makeMove(moveRequest, player1Id);
+
+        assertEquals("Move accepted", response.getMessage());
+        verify(matchRepository, times(2)).findByIdForMove(matchId);
+        verify(transactionManager, times(2)).commit(any());
+        // Таймер ставится один раз - после закоммиченной попытки
+        verify(turnDeadlineScheduler, times(1)).track(any());
+    }
+
+    private Match waitingMatch() {
+        Match fresh = new Match();
+        fresh.setId(matchId);
+        fresh.setPlayer1Id(player1Id);
+        fresh.setPlayer2Id(player2Id);
+        fresh.setStatus(Match.MatchStatus.WAITING);
+        fresh.setPlayer1HP(100);
+        fresh.setPlayer2HP(100);
+        fresh.setTurnNumber(1);
+        fresh.setCreated(match.getCreated());
+        fresh.setUpdated(match.getUpdated());
+        return fresh;
+    }
+
+    /**
+     * Тест: ход, прочитавший матч до того, как таймер разрешил ход, проигрывает по версии и при повторе
+     * отклоняется по номеру хода - опоздавший ход не попадает в следующий раунд
+     */
+    @Test
+    void shouldRejectMoveThatLostRaceToTurnTimer() {
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        Match resolvedByTimer = waitingMatch();
+        resolvedByTimer.setStatus(Match.MatchStatus.IN_PROGRESS);
+        resolvedByTimer.setTurnNumber(2);
+        when(matchRepository.findByIdForMove(matchId))
+                .thenReturn(Optional.of(match))
+                .thenReturn(Optional.of(resolvedByTimer));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        // Таймер закоммитил разрешение хода раньше: версия матча уже другая
+        doThrow(new ObjectOptimisticLockingFailureException(Match.class, matchId))
+                .when(transactionManager).commit(any());
+
+        assertThrows(InvalidTurnNumberException.class, () -> moveService.makeMove(moveRequest, player1Id));
+        verify(matchRepository, times(2)).findByIdForMove(matchId);
+        verify(transactionManager, times(1)).commit(any());
+        verify(turnDeadlineScheduler, never()).track(any());
+    }
+
+    /**
+     * Тест: если конфликты не прекращаются, после max-attempts попыток ход отклоняется
+     */
+    @Test
+    void shouldGiveUpAfterMaxAttemptsOnVersionConflicts() {
+        when(matchRepository.findByIdForMove(matchId)).thenReturn(Optional.of(match));
+        when(moveRepository.save(any(Move.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new ObjectOptimisticLockingFailureException(Match.class, matchId))
+                .when(transactionManager).commit(any());
+
+        assertThrows(ConcurrentMoveException.class, () -> moveService.makeMove(moveRequest, player1Id));
+        verify(transactionManager, times(3)).commit(any());
+        // Ни одна попытка не закоммитилась - таймер не ставится
+        verify(turnDeadlineScheduler, never()).track(any());
+    }
+
+    /**
+     * Тест: при включенном реестре ход принимается в памяти без обращений к базе
+     */
+    @Test
+    void shouldAcceptMoveInMemoryWhenRegistryEnabled() {
+        when(activeMatchRegistry.enabled()).thenReturn(true);
+
+        MoveResponse response = moveService.makeMove(moveRequest, player1Id);
+
+        assertEquals("Move accepted", response.getMessage());
+        verify(activeMatchRegistry).accept(moveRequest, player1Id);
+        verifyNoInteractions(matchRepository, moveRepository, transactionManager);
+    }
+}
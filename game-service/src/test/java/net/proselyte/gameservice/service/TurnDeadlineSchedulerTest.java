@@ -0,0 +1,196 @@
+package net.proselyte.gameservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.repository.RedisTurnDeadlineRepository;
+import net.proselyte.gameservice.service.match.ActiveMatchRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для TurnDeadlineScheduler - таймеров ходов в колесе и в Redis
+ */
+@ExtendWith(MockitoExtension.class)
+class TurnDeadlineSchedulerTest {
+
+    @Mock
+    private RedisTurnDeadlineRepository deadlineRepository;
+
+    @Mock
+    private TurnTimeoutService turnTimeoutService;
+
+    @Mock
+    private ActiveMatchRegistry activeMatchRegistry;
+
+    private SimpleMeterRegistry registry;
+    private TurnDeadlineScheduler scheduler;
+    private Match match;
+    private Instant turnStart;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        TurnDeadlineProperties properties = new TurnDeadlineProperties(true, Duration.ofSeconds(30),
+                Duration.ofMillis(100), 512, 2, Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(10), 3, 2);
+        scheduler = new TurnDeadlineScheduler(deadlineRepository, turnTimeoutService, activeMatchRegistry,
+                properties, registry);
+        // По умолчанию матчей в памяти нет - все разрешается по базе
+        lenient().when(activeMatchRegistry.resolveExpired(any(), any()))
+                .thenAnswer(invocation -> List.copyOf(invocation.<List<UUID>>getArgument(0)));
+
+        turnStart = Instant.now();
+        match = new Match();
+        match.setId(UUID.randomUUID());
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setCurrentTurnStart(turnStart);
+    }
+
+    /**
+     * Тест: дедлайн хода ставится в колесо и в Redis
+     */
+    @Test
+    void shouldTrackTurnDeadline() {
+        scheduler.track(match);
+
+        long deadline = turnStart.plusSeconds(30).toEpochMilli();
+        verify(deadlineRepository).schedule(match.getId(), deadline);
+        assertEquals(1, scheduler.pending());
+        assertEquals(1, registry.get("game_turn_deadlines_pending").gauge().value());
+    }
+
+    /**
+     * Тест: таймер завершенного матча снимается
+     */
+    @Test
+    void shouldCancelDeadlineOfFinishedMatch() {
+        scheduler.track(match);
+        match.setStatus(Match.MatchStatus.FINISHED);
+
+        scheduler.track(match);
+
+        verify(deadlineRepository).cancel(match.getId());
+        assertEquals(0, scheduler.pending());
+    }
+
+    /**
+     * Тест: ошибка Redis не мешает локальному таймеру
+     */
+    @Test
+    void shouldKeepLocalDeadlineWhenRedisFails() {
+        doThrow(new QueryTimeoutException("timeout")).when(deadlineRepository).schedule(any(), anyLong());
+
+        scheduler.track(match);
+
+        assertEquals(1, scheduler.pending());
+    }
+
+    /**
+     * Тест: наступивший дедлайн разрешается, и ставится дедлайн следующего хода
+     */
+    @Test
+    void shouldResolveExpiredTurnAndTrackNextOne() {
+        scheduler.track(match);
+        long deadline = turnStart.plusSeconds(30).toEpochMilli();
+        // Колесо срабатывает на границе шага, не позже чем через один шаг после дедлайна
+        long now = deadline + 100;
+        Instant nextTurnStart = Instant.ofEpochMilli(now);
+        when(turnTimeoutService.resolveExpired(List.of(match.getId()), nextTurnStart)).thenAnswer(invocation -> {
+            match.setTurnNumber(2);
+            match.setCurrentTurnStart(nextTurnStart);
+            return List.of(match);
+        });
+
+        scheduler.tick(deadline - 200);
+        verifyNoInteractions(turnTimeoutService);
+
+        scheduler.tick(now);
+
+        verify(turnTimeoutService).resolveExpired(List.of(match.getId()), nextTurnStart);
+        verify(deadlineRepository).schedule(match.getId(), nextTurnStart.plusSeconds(30).toEpochMilli());
+        assertEquals(1, scheduler.pending());
+    }
+
+    /**
+     * Тест: просроченные дедлайны других реплик забираются из Redis пачками до исчерпания
+     */
+    @Test
+    void shouldTakeOverExpiredDeadlinesInBatches() {
+        long now = System.currentTimeMillis();
+        List<UUID> first = List.of(UUID.randomUUID(), UUID.randomUUID());
+        List<UUID> second = List.of(UUID.randomUUID());
+        when(deadlineRepository.claimExpired(now - 2_000, now + 10_000, 2)).thenReturn(first, second);
+        when(turnTimeoutService.resolveExpired(any(), eq(Instant.ofEpochMilli(now)))).thenReturn(List.of());
+
+        scheduler.takeOver(now);
+
+        verify(deadlineRepository, times(2)).claimExpired(now - 2_000, now + 10_000, 2);
+        verify(turnTimeoutService).resolveExpired(first, Instant.ofEpochMilli(now));
+        verify(turnTimeoutService).resolveExpired(second, Instant.ofEpochMilli(now));
+        assertEquals(3, registry.get("game_turn_deadlines_taken_over").counter().count());
+    }
+
+    /**
+     * Тест: за один проход забирается не больше max-takeover-batches пачек, остаток - следующим проходом
+     */
+    @Test
+    void shouldLimitBatchesPerTakeOverPass() {
+        long now = System.currentTimeMillis();
+        when(deadlineRepository.claimExpired(anyLong(), anyLong(), anyInt()))
+                .thenAnswer(invocation -> List.of(UUID.randomUUID(), UUID.randomUUID()));
+        when(turnTimeoutService.resolveExpired(any(), any())).thenReturn(List.of());
+
+        scheduler.takeOver(now);
+
+        verify(deadlineRepository, times(2)).claimExpired(anyLong(), anyLong(), anyInt());
+        assertEquals(4, registry.get("game_turn_deadlines_taken_over").counter().count());
+    }
+
+    /**
+     * Тест: матчи из памяти реплики разрешает реестр, в базу идут только остальные
+     */
+    @Test
+    void shouldResolveHeldMatchesInMemory() {
+        long now = System.currentTimeMillis();
+        UUID held = UUID.randomUUID();
+        UUID notHeld = UUID.randomUUID();
+        when(activeMatchRegistry.resolveExpired(List.of(held, notHeld), Instant.ofEpochMilli(now)))
+                .thenReturn(List.of(notHeld));
+        when(deadlineRepository.claimExpired(anyLong(), anyLong(), anyInt()))
+                .thenReturn(List.of(held, notHeld), List.of());
+        when(turnTimeoutService.resolveExpired(List.of(notHeld), Instant.ofEpochMilli(now))).thenReturn(List.of());
+
+        scheduler.takeOver(now);
+
+        verify(turnTimeoutService).resolveExpired(List.of(notHeld), Instant.ofEpochMilli(now));
+    }
+
+    /**
+     * Тест: ошибка разрешения пачки не останавливает таймер - дедлайны остаются в Redis
+     */
+    @Test
+    void shouldSurviveResolutionFailure() {
+        when(deadlineRepository.claimExpired(anyLong(), anyLong(), anyInt())).thenReturn(List.of(match.getId()));
+        when(turnTimeoutService.resolveExpired(any(), any())).thenThrow(new IllegalStateException("db down"));
+
+        assertDoesNotThrow(() -> scheduler.takeOver(System.currentTimeMillis()));
+
+        verify(deadlineRepository, never()).cancel(any());
+    }
+}
@@ -0,0 +1,98 @@
+package net.proselyte.gameservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для TurnDeadlineWheel - колеса таймеров дедлайнов ходов
+ */
+class TurnDeadlineWheelTest {
+
+    private static final long START = 1_000_000L;
+
+    private final TurnDeadlineWheel wheel = new TurnDeadlineWheel(Duration.ofMillis(100), 8, START);
+
+    /**
+     * Тест: дедлайн срабатывает не раньше своего времени и ровно один раз
+     */
+    @Test
+    void shouldExpireDeadlineOnce() {
+        UUID matchId = UUID.randomUUID();
+        wheel.schedule(matchId, START + 250);
+
+        assertTrue(wheel.advance(START + 200).isEmpty());
+        assertEquals(List.of(matchId), wheel.advance(START + 300));
+        assertTrue(wheel.advance(START + 400).isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Тест: дедлайн дальше одного оборота колеса пропускается, пока не наступит
+     */
+    @Test
+    void shouldKeepDeadlineBeyondOneRotation() {
+        UUID matchId = UUID.randomUUID();
+        // 8 ячеек по 100 мс - оборот 800 мс
+        wheel.schedule(matchId, START + 2_050);
+
+        assertTrue(wheel.advance(START + 1_000).isEmpty());
+        assertTrue(wheel.advance(START + 2_000).isEmpty());
+        assertEquals(List.of(matchId), wheel.advance(START + 2_100));
+    }
+
+    /**
+     * Тест: отмененный и переставленный дедлайны не срабатывают по старому времени
+     */
+    @Test
+    void shouldCancelAndReschedule() {
+        UUID cancelled = UUID.randomUUID();
+        UUID rescheduled = UUID.randomUUID();
+        wheel.schedule(cancelled, START + 100);
+        wheel.schedule(rescheduled, START + 100);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        wheel.schedule(rescheduled, START + 500);
+
+        assertTrue(wheel.advance(START + 300).isEmpty());
+        assertEquals(List.of(rescheduled), wheel.advance(START + 500));
+    }
+
+    /**
+     * Тест: уже наступивший дедлайн срабатывает на следующем продвижении
+     */
+    @Test
+    void shouldExpirePastDeadlineOnNextAdvance() {
+        UUID matchId = UUID.randomUUID();
+        wheel.advance(START + 1_000);
+        wheel.schedule(matchId, START + 10);
+
+        assertEquals(List.of(matchId), wheel.advance(START + 1_100));
+    }
+
+    /**
+     * Тест: после паузы дольше оборота срабатывают все просроченные дедлайны
+     */
+    @Test
+    void shouldExpireEverythingAfterLongPause() {
+        Set<UUID> scheduled = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            UUID matchId = UUID.randomUUID();
+            scheduled.add(matchId);
+            wheel.schedule(matchId, START + 100 + i * 37L);
+        }
+
+        List<UUID> expired = wheel.advance(START + 60_000);
+
+        assertEquals(scheduled, new HashSet<>(expired));
+        assertEquals(100, expired.size());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,143 @@
+package net.proselyte.gameservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для TurnTimeoutService - разрешения ходов по таймеру
+ */
+@ExtendWith(MockitoExtension.class)
+class TurnTimeoutServiceTest {
+
+    @Mock
+    private MatchRepository matchRepository;
+
+    @Mock
+    private MoveRepository moveRepository;
+
+    private SimpleMeterRegistry registry;
+    private TurnTimeoutService turnTimeoutService;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        TurnDeadlineProperties properties = new TurnDeadlineProperties(true, Duration.ofSeconds(30),
+                Duration.ofMillis(100), 512, 200, Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(10), 3, 10);
+        turnTimeoutService = new TurnTimeoutService(matchRepository, moveRepository, new TurnResolver(), properties, registry);
+        now = Instant.parse("2025-01-01T10:05:00Z");
+    }
+
+    private Match match(Instant turnStart) {
+        Match match = new Match();
+        match.setId(UUID.randomUUID());
+        match.setPlayer1Id(UUID.randomUUID());
+        match.setPlayer2Id(UUID.randomUUID());
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setPlayer1HP(100);
+        match.setPlayer2HP(100);
+        match.setTurnNumber(2);
+        match.setCurrentTurnStart(turnStart);
+        match.setCreated(now.minusSeconds(120));
+        match.setUpdated(turnStart);
+        return match;
+    }
+
+    /**
+     * Тест: учитывается только успевший ход, защита опоздавшего не засчитывается
+     */
+    @Test
+    void shouldResolveExpiredTurnWithSingleMove() {
+        Match expired = match(now.minusSeconds(30));
+        Move move = new Move();
+        move.setMatchId(expired.getId());
+        move.setPlayerId(expired.getPlayer1Id());
+        move.setAttackTarget(Move.Target.HEAD);
+        move.setDefenseTarget(Move.Target.LEGS);
+        move.setTurnNumber(2);
+        when(matchRepository.findAllByIdInForUpdateSkipLocked(List.of(expired.getId()))).thenReturn(List.of(expired));
+        when(moveRepository.findCurrentTurnMoves(List.of(expired.getId()))).thenReturn(List.of(move));
+
+        List<Match> result = turnTimeoutService.resolveExpired(List.of(expired.getId()), now);
+
+        assertEquals(List.of(expired), result);
+        assertEquals(20, move.getDamage());
+        assertEquals(100, expired.getPlayer1HP());
+        assertEquals(80, expired.getPlayer2HP());
+        assertEquals(3, expired.getTurnNumber());
+        assertEquals(now, expired.getCurrentTurnStart());
+        verify(matchRepository).saveAll(List.of(expired));
+        assertEquals(1, registry.get("game_turn_timeouts").counter().count());
+    }
+
+    /**
+     * Тест: матч, ход которого уже сменился или который завершен, не разрешается повторно
+     */
+    @Test
+    void shouldSkipStaleDeadlines() {
+        Match advanced = match(now.minusSeconds(5));
+        Match finished = match(now.minusSeconds(60));
+        finished.setStatus(Match.MatchStatus.FINISHED);
+        List<UUID> ids = List.of(advanced.getId(), finished.getId());
+        when(matchRepository.findAllByIdInForUpdateSkipLocked(ids)).thenReturn(List.of(advanced, finished));
+
+        List<Match> result = turnTimeoutService.resolveExpired(ids, now);
+
+        assertEquals(List.of(advanced, finished), result);
+        assertEquals(2, advanced.getTurnNumber());
+        verify(moveRepository, never()).findCurrentTurnMoves(any());
+        verify(matchRepository, never()).saveAll(anyList());
+    }
+
+    /**
+     * Тест: брошенный матч (оба игрока пропустили max-missed-turns ходов подряд) завершается ничьей,
+     * чтобы таймер не переставлялся бесконечно
+     */
+    @Test
+    void shouldFinishAbandonedMatchAsDraw() {
+        Match abandoned = match(now.minusSeconds(30));
+        abandoned.setMissedTurns(2);
+        Match idle = match(now.minusSeconds(30));
+        idle.setMissedTurns(1);
+        List<UUID> ids = List.of(abandoned.getId(), idle.getId());
+        when(matchRepository.findAllByIdInForUpdateSkipLocked(ids)).thenReturn(List.of(abandoned, idle));
+        when(moveRepository.findCurrentTurnMoves(ids)).thenReturn(List.of());
+
+        turnTimeoutService.resolveExpired(ids, now);
+
+        assertEquals(Match.MatchStatus.FINISHED, abandoned.getStatus());
+        assertNull(abandoned.getWinnerId());
+        assertEquals(now, abandoned.getFinishedAt());
+        assertEquals(2, abandoned.getTurnNumber());
+        assertEquals(2, abandoned.getTurnCount());
+        assertEquals(3, abandoned.getMissedTurns());
+        assertEquals(100, abandoned.getPlayer1HP());
+        assertEquals(100, abandoned.getPlayer2HP());
+
+        // Пропусков меньше порога - матч переходит к следующему ходу
+        assertEquals(Match.MatchStatus.IN_PROGRESS, idle.getStatus());
+        assertEquals(3, idle.getTurnNumber());
+        assertEquals(2, idle.getMissedTurns());
+        verify(matchRepository).saveAll(List.of(abandoned, idle));
+    }
+}
@@ -0,0 +1,312 @@
+package net.proselyte.gameservice.service.match;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.game.dto.MoveRequest;
+import net.proselyte.gameservice.config.ActiveMatchProperties;
+import net.proselyte.gameservice.config.MoveProperties;
+import net.proselyte.gameservice.config.TurnDeadlineProperties;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import net.proselyte.gameservice.exception.ConcurrentMoveException;
+import net.proselyte.gameservice.exception.MatchFinishedException;
+import net.proselyte.gameservice.exception.MoveAlreadyExistsException;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.repository.MoveRepository;
+import net.proselyte.gameservice.service.TurnDeadlineScheduler;
+import net.proselyte.gameservice.service.move.MoveFactory;
+import net.proselyte.gameservice.service.move.MoveTargetMapper;
+import net.proselyte.gameservice.service.move.MoveValidator;
+import net.proselyte.gameservice.service.move.TurnResolver;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты для ActiveMatchRegistry - ходов в памяти с синхронной записью
+ */
+@ExtendWith(MockitoExtension.class)
+class ActiveMatchRegistryTest {
+
+    @Mock
+    private MatchRepository matchRepository;
+
+    @Mock
+    private MoveRepository moveRepository;
+
+    @Mock
+    private MatchStateWriter writer;
+
+    @Mock
+    private ObjectProvider<TurnDeadlineScheduler> schedulerProvider;
+
+    @Mock
+    private TurnDeadlineScheduler scheduler;
+
+    private ActiveMatchRegistry registry;
+    private UUID matchId;
+    private UUID player1Id;
+    private UUID player2Id;
+    private Match match;
+
+    @BeforeEach
+    void setUp() {
+        matchId = UUID.randomUUID();
+        player1Id = UUID.randomUUID();
+        player2Id = UUID.randomUUID();
+
+        match = new Match();
+        match.setId(matchId);
+        match.setPlayer1Id(player1Id);
+        match.setPlayer2Id(player2Id);
+        match.setStatus(Match.MatchStatus.WAITING);
+        match.setPlayer1HP(100);
+        match.setPlayer2HP(100);
+        match.setTurnNumber(1);
+        match.setCreated(Instant.now());
+        match.setUpdated(Instant.now());
+
+        TurnDeadlineProperties deadlineProperties = new TurnDeadlineProperties(true, Duration.ofSeconds(30),
+                Duration.ofMillis(100), 512, 200, Duration.ofSeconds(1), Duration.ofSeconds(2), Duration.ofSeconds(10), 3, 10);
+        registry = new ActiveMatchRegistry(matchRepository, moveRepository, new MoveValidator(),
+                new MoveFactory(new MoveTargetMapper()), new TurnResolver(), writer,
+                new ActiveMatchProperties(true), new MoveProperties(3), deadlineProperties,
+                schedulerProvider, new SimpleMeterRegistry());
+    }
+
+    private void matchInDatabase() {
+        when(matchRepository.findById(matchId)).thenReturn(Optional.of(match));
+        when(moveRepository.findAllByMatchIdAndTurnNumber(matchId, 1)).thenReturn(List.of());
+    }
+
+    private MoveRequest request(String attackTarget, String defenseTarget, int turnNumber) {
+        MoveRequest request = new MoveRequest();
+        request.setMatchId(matchId);
+        setEnumValue(request, "setAttackTarget", attackTarget);
+        setEnumValue(request, "setDefenseTarget", defenseTarget);
+        request.setTurnNumber(turnNumber);
+        return request;
+    }
+
+    /**
+     * Установка enum значений OpenAPI DTO через рефлексию, как в MoveServiceTest
+     */
+    private static void setEnumValue(Object obj, String methodName, String enumValue) {
+        for (Method method : obj.getClass().getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == 1
+                    && method.getParameterTypes()[0].isEnum()) {
+                try {
+                    method.invoke(obj, valueOfEnum(method.getParameterTypes()[0], enumValue));
+                    return;
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No enum setter " + methodName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> E valueOfEnum(Class<?> enumType, String enumValue) {
+        return Enum.valueOf((Class<E>) enumType, enumValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<Move>> captureWrittenMoves(int writes) {
+        ArgumentCaptor<List<Move>> captor = ArgumentCaptor.forClass(List.class);
+        verify(writer, times(writes)).write(any(Match.class), captor.capture());
+        return captor.getAllValues();
+    }
+
+    /**
+     * Тест: каждый ход записывается сразу, раунд разрешается в памяти без повторного чтения матча
+     */
+    @Test
+    void shouldWriteEachMoveAndResolveTurnInMemory() {
+        matchInDatabase();
+        when(writer.write(any(), anyList())).thenReturn(1L, 2L);
+        when(schedulerProvider.getIfAvailable()).thenReturn(scheduler);
+
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+        registry.accept(request("LEGS", "HEAD", 1), player2Id);
+
+        // Матч читается из базы один раз, дубликаты проверяются в памяти
+        verify(matchRepository, times(1)).findById(matchId);
+
+        List<List<Move>> writes = captureWrittenMoves(2);
+        // Первый ход записан до ответа, второй - вместе с ходом соперника, получившим урон
+        assertEquals(1, writes.get(0).size());
+        assertEquals(2, writes.get(1).size());
+        ArgumentCaptor<Match> written = ArgumentCaptor.forClass(Match.class);
+        verify(scheduler, times(2)).track(written.capture());
+        Match state = written.getValue();
+        assertEquals(2, state.getTurnNumber());
+        assertEquals(Match.MatchStatus.IN_PROGRESS, state.getStatus());
+        // Голова заблокирована (10), ноги не заблокированы (10)
+        assertEquals(90, state.getPlayer1HP());
+        assertEquals(90, state.getPlayer2HP());
+        // Следующая запись проверяет версию, полученную от предыдущей
+        assertEquals(2L, state.getVersion());
+    }
+
+    /**
+     * Тест: повторный ход в раунде отклоняется по памяти
+     */
+    @Test
+    void shouldRejectDuplicateMoveFromMemory() {
+        matchInDatabase();
+        when(writer.write(any(), anyList())).thenReturn(1L);
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+
+        assertThrows(MoveAlreadyExistsException.class, () -> registry.accept(request("BODY", "BODY", 1), player1Id));
+        verify(writer, times(1)).write(any(), anyList());
+    }
+
+    /**
+     * Тест: завершенный матч удаляется из реестра после записи, следующий ход отклоняется по базе
+     */
+    @Test
+    void shouldEvictFinishedMatch() {
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setCurrentTurnStart(Instant.now());
+        match.setPlayer2HP(20);
+        matchInDatabase();
+        when(writer.write(any(), anyList())).thenReturn(1L);
+
+        registry.accept(request("HEAD", "LEGS", 1), player1Id);
+        registry.accept(request("BODY", "BODY", 1), player2Id);
+
+        assertEquals(0, registry.size());
+        // Запись завершила матч в базе
+        match.setStatus(Match.MatchStatus.FINISHED);
+        assertThrows(MatchFinishedException.class, () -> registry.accept(request("HEAD", "LEGS", 2), player1Id));
+        verify(matchRepository, times(2)).findById(matchId);
+    }
+
+    /**
+     * Тест: если строку матча изменил кто-то другой, матч перечитывается из базы и ход повторяется
+     */
+    @Test
+    void shouldRetryMoveOnVersionConflict() {
+        matchInDatabase();
+        when(writer.write(any(), anyList()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Match.class, matchId))
+                .thenReturn(1L);
+
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+
+        verify(matchRepository, times(2)).findById(matchId);
+        verify(writer, times(2)).write(any(), anyList());
+        assertEquals(1, registry.size());
+    }
+
+    /**
+     * Тест: если конфликты версии не прекращаются, ход отклоняется после game.moves.max-attempts попыток
+     */
+    @Test
+    void shouldGiveUpAfterMaxAttemptsOnVersionConflict() {
+        matchInDatabase();
+        when(writer.write(any(), anyList()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Match.class, matchId));
+
+        assertThrows(ConcurrentMoveException.class, () -> registry.accept(request("HEAD", "BODY", 1), player1Id));
+
+        verify(writer, times(3)).write(any(), anyList());
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * Тест: ход, уже записанный в базу вне реестра, отклоняется как повторный
+     */
+    @Test
+    void shouldRejectMoveAlreadyWrittenOutsideRegistry() {
+        matchInDatabase();
+        when(writer.write(any(), anyList()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key", new ConstraintViolationException(
+                        "duplicate key", new SQLException("duplicate key", "23505"), Move.TURN_MOVE_CONSTRAINT)));
+
+        assertThrows(MoveAlreadyExistsException.class, () -> registry.accept(request("HEAD", "BODY", 1), player1Id));
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * Тест: ход, который не удалось записать, не подтверждается и не остается в памяти
+     */
+    @Test
+    void shouldNotKeepMoveThatFailedToWrite() {
+        matchInDatabase();
+        when(schedulerProvider.getIfAvailable()).thenReturn(scheduler);
+        when(writer.write(any(), anyList())).thenThrow(new QueryTimeoutException("timeout")).thenReturn(1L);
+
+        assertThrows(QueryTimeoutException.class, () -> registry.accept(request("HEAD", "BODY", 1), player1Id));
+        assertEquals(0, registry.size());
+        verify(scheduler, never()).track(any());
+
+        // Повтор того же хода принимается: в памяти его нет, матч перечитан из базы
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+        verify(writer, times(2)).write(any(), anyList());
+    }
+
+    /**
+     * Тест: просроченный ход матча из памяти разрешается и записывается сразу, остальные матчи возвращаются для базы
+     */
+    @Test
+    void shouldResolveExpiredTurnsOfHeldMatches() {
+        Instant turnStart = Instant.now().minusSeconds(31);
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setCurrentTurnStart(turnStart);
+        matchInDatabase();
+        when(writer.write(any(), anyList())).thenReturn(1L, 2L);
+        when(schedulerProvider.getIfAvailable()).thenReturn(scheduler);
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+        UUID otherMatchId = UUID.randomUUID();
+
+        List<UUID> notHeld = registry.resolveExpired(List.of(matchId, otherMatchId), Instant.now());
+
+        assertEquals(List.of(otherMatchId), notHeld);
+        List<List<Move>> writes = captureWrittenMoves(2);
+        assertEquals(1, writes.get(1).size());
+        ArgumentCaptor<Match> written = ArgumentCaptor.forClass(Match.class);
+        verify(scheduler).track(written.capture());
+        assertEquals(100, written.getValue().getPlayer1HP());
+        assertEquals(80, written.getValue().getPlayer2HP());
+        assertEquals(2, written.getValue().getTurnNumber());
+    }
+
+    /**
+     * Тест: если разрешение по таймеру не записалось, матч отдается таймеру по базе, а не пропускается
+     */
+    @Test
+    void shouldHandOverExpiredMatchWhenWriteFails() {
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setCurrentTurnStart(Instant.now().minusSeconds(31));
+        matchInDatabase();
+        when(writer.write(any(), anyList())).thenReturn(1L).thenThrow(new QueryTimeoutException("timeout"));
+        registry.accept(request("HEAD", "BODY", 1), player1Id);
+
+        List<UUID> notHeld = registry.resolveExpired(List.of(matchId), Instant.now());
+
+        assertEquals(List.of(matchId), notHeld);
+        assertEquals(0, registry.size());
+    }
+}
@@ -0,0 +1,150 @@
+package net.proselyte.gameservice.service.move;
+
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.entity.Move;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты для TurnResolver - таблица урона, блоки и завершение матча
+ */
+class TurnResolverTest {
+
+    private final TurnResolver turnResolver = new TurnResolver();
+
+    private Match match;
+    private Instant created;
+
+    @BeforeEach
+    void setUp() {
+        created = Instant.parse("2025-01-01T10:00:00Z");
+
+        match = new Match();
+        match.setId(UUID.randomUUID());
+        match.setPlayer1Id(UUID.randomUUID());
+        match.setPlayer2Id(UUID.randomUUID());
+        match.setStatus(Match.MatchStatus.IN_PROGRESS);
+        match.setPlayer1HP(100);
+        match.setPlayer2HP(100);
+        match.setTurnNumber(3);
+        match.setCreated(created);
+        match.setUpdated(created);
+    }
+
+    private static Move move(Move.Target attackTarget, Move.Target defenseTarget) {
+        Move move = new Move();
+        move.setAttackTarget(attackTarget);
+        move.setDefenseTarget(defenseTarget);
+        return move;
+    }
+
+    /**
+     * Тест: урон по зонам без блока и вдвое меньший урон при блоке той же зоны
+     */
+    @Test
+    void shouldApplyDamageTable() {
+        assertEquals(20, TurnResolver.damage(move(Move.Target.HEAD, Move.Target.BODY), move(Move.Target.BODY, Move.Target.LEGS)));
+        assertEquals(15, TurnResolver.damage(move(Move.Target.BODY, Move.Target.BODY), move(Move.Target.BODY, Move.Target.HEAD)));
+        assertEquals(10, TurnResolver.damage(move(Move.Target.LEGS, Move.Target.BODY), move(Move.Target.BODY, Move.Target.HEAD)));
+
+        assertEquals(10, TurnResolver.damage(move(Move.Target.HEAD, Move.Target.BODY), move(Move.Target.BODY, Move.Target.HEAD)));
+        assertEquals(7, TurnResolver.damage(move(Move.Target.BODY, Move.Target.BODY), move(Move.Target.BODY, Move.Target.BODY)));
+        assertEquals(5, TurnResolver.damage(move(Move.Target.LEGS, Move.Target.BODY), move(Move.Target.BODY, Move.Target.LEGS)));
+    }
+
+    /**
+     * Тест: раунд без завершения - HP уменьшаются, матч переходит к следующему ходу
+     */
+    @Test
+    void shouldAdvanceToNextTurn() {
+        Instant now = created.plusSeconds(40);
+        Move player1Move = move(Move.Target.HEAD, Move.Target.LEGS);
+        Move player2Move = move(Move.Target.LEGS, Move.Target.HEAD);
+
+        turnResolver.resolve(match, player1Move, player2Move, now);
+
+        // Удар в голову заблокирован, удар в ноги тоже
+        assertEquals(10, player1Move.getDamage());
+        assertEquals(5, player2Move.getDamage());
+        assertEquals(95, match.getPlayer1HP());
+        assertEquals(90, match.getPlayer2HP());
+        assertEquals(4, match.getTurnNumber());
+        assertEquals(3, match.getTurnCount());
+        assertEquals(now, match.getCurrentTurnStart());
+        assertEquals(Match.MatchStatus.IN_PROGRESS, match.getStatus());
+        assertNull(match.getFinishedAt());
+    }
+
+    /**
+     * Тест: пропущенный ход не атакует и не защищает
+     */
+    @Test
+    void shouldTreatMissingMoveAsNoAttackAndNoDefense() {
+        Move player2Move = move(Move.Target.BODY, Move.Target.HEAD);
+
+        turnResolver.resolve(match, null, player2Move, created.plusSeconds(30));
+
+        assertEquals(85, match.getPlayer1HP());
+        assertEquals(100, match.getPlayer2HP());
+        assertEquals(15, player2Move.getDamage());
+        assertEquals(4, match.getTurnNumber());
+    }
+
+    /**
+     * Тест: HP не уходят ниже нуля, матч завершается с победителем и длительностью
+     */
+    @Test
+    void shouldFinishMatchWithWinner() {
+        Instant now = created.plusSeconds(125);
+        match.setPlayer1HP(5);
+
+        turnResolver.resolve(match, move(Move.Target.LEGS, Move.Target.HEAD), move(Move.Target.BODY, Move.Target.HEAD), now);
+
+        assertEquals(0, match.getPlayer1HP());
+        assertEquals(90, match.getPlayer2HP());
+        assertEquals(Match.MatchStatus.FINISHED, match.getStatus());
+        assertEquals(match.getPlayer2Id(), match.getWinnerId());
+        assertEquals(now, match.getFinishedAt());
+        assertEquals(125, match.getDuration());
+        assertEquals(3, match.getTurnCount());
+        assertEquals(3, match.getTurnNumber());
+    }
+
+    /**
+     * Тест: оба игрока на нуле - ничья без победителя
+     */
+    @Test
+    void shouldFinishMatchAsDrawWhenBothReachZero() {
+        match.setPlayer1HP(10);
+        match.setPlayer2HP(10);
+
+        turnResolver.resolve(match, move(Move.Target.HEAD, Move.Target.BODY), move(Move.Target.HEAD, Move.Target.BODY),
+                created.plusSeconds(60));
+
+        assertEquals(0, match.getPlayer1HP());
+        assertEquals(0, match.getPlayer2HP());
+        assertEquals(Match.MatchStatus.FINISHED, match.getStatus());
+        assertNull(match.getWinnerId());
+    }
+
+    /**
+     * Тест: счетчик пропущенных ходов растет, только пока не ходит ни один игрок, и сбрасывается любым ходом
+     */
+    @Test
+    void shouldCountTurnsMissedByBothPlayers() {
+        Instant now = created.plusSeconds(30);
+
+        turnResolver.resolveExpired(match, null, null, now, 3);
+        assertEquals(1, match.getMissedTurns());
+        turnResolver.resolveExpired(match, move(Move.Target.LEGS, Move.Target.HEAD), null, now, 3);
+        assertEquals(0, match.getMissedTurns());
+
+        assertEquals(Match.MatchStatus.IN_PROGRESS, match.getStatus());
+        assertEquals(5, match.getTurnNumber());
+    }
+}
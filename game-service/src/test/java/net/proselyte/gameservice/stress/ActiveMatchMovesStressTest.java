@@ -0,0 +1,15 @@
+package net.proselyte.gameservice.stress;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Ходы принимаются в памяти реплики ({@code game.active-matches.enabled}) и записываются синхронно.
+ */
+class ActiveMatchMovesStressTest extends ConcurrentMovesStressTest {
+
+    @DynamicPropertySource
+    static void configureMode(DynamicPropertyRegistry registry) {
+        registry.add("game.active-matches.enabled", () -> "true");
+    }
+}
@@ -0,0 +1,185 @@
+package net.proselyte.gameservice.stress;
+
+import net.proselyte.game.dto.MoveRequest;
+import net.proselyte.gameservice.GameServiceApplication;
+import net.proselyte.gameservice.entity.Match;
+import net.proselyte.gameservice.repository.MatchRepository;
+import net.proselyte.gameservice.service.MoveService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Стресс-тест ходов: оба игрока тысяч матчей ходят одновременно несколько раундов подряд.
+ * Проверяет, что ни один ход, урон или переход хода не потерян при параллельных ходах одного матча.
+ * Режим обработки ходов задают наследники: {@link DatabaseMovesStressTest} и {@link ActiveMatchMovesStressTest}.
+ * Запуск: {@code ./gradlew stress}.
+ */
+@Tag("stress")
+@Testcontainers
+@SpringBootTest(classes = GameServiceApplication.class)
+abstract class ConcurrentMovesStressTest {
+
+    private static final int MATCHES = 2_000;
+    private static final int TURNS = 3;
+    private static final int THREADS = 32;
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17")
+            .withDatabaseName("game")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> String.valueOf(THREADS));
+        registry.add("SHOW_SQL", () -> "false");
+        // Таймеры ходов (и Redis) не нужны
+        registry.add("game.turn-deadline.enabled", () -> "false");
+        registry.add("otel.sdk.disabled", () -> "true");
+    }
+
+    @Autowired
+    private MoveService moveService;
+
+    @Autowired
+    private MatchRepository matchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void shouldNotLoseUpdatesWhenBothPlayersMoveAtOnce() throws InterruptedException {
+        List<Match> matches = matchRepository.saveAll(newMatches());
+
+        // Первый игрок бьет в голову (20, не заблокировано), второй - в ноги (10, не заблокировано)
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(THREADS)) {
+            for (int turn = 1; turn <= TURNS; turn++) {
+                CountDownLatch start = new CountDownLatch(1);
+                CountDownLatch done = new CountDownLatch(matches.size() * 2);
+                for (Match match : matches) {
+                    submit(executor, start, done, failures, request(match.getId(), "HEAD", "BODY", turn), match.getPlayer1Id());
+                    submit(executor, start, done, failures, request(match.getId(), "LEGS", "LEGS", turn), match.getPlayer2Id());
+                }
+                start.countDown();
+                assertTrue(done.await(5, TimeUnit.MINUTES), "turn " + turn + " did not finish");
+                assertTrue(failures.isEmpty(), () -> failures.size() + " moves failed, first: " + failures.peek());
+            }
+        }
+
+        Map<UUID, long[]> moveStats = new HashMap<>();
+        jdbcTemplate.query("SELECT match_id, count(*), count(damage), coalesce(sum(damage), 0) FROM game.moves GROUP BY match_id",
+                rs -> {
+                    moveStats.put(rs.getObject(1, UUID.class), new long[]{rs.getLong(2), rs.getLong(3), rs.getLong(4)});
+                });
+
+        List<UUID> ids = matches.stream().map(Match::getId).toList();
+        for (Match match : matchRepository.findAllById(ids)) {
+            UUID matchId = match.getId();
+            assertEquals(Match.MatchStatus.IN_PROGRESS, match.getStatus(), matchId::toString);
+            assertEquals(TURNS + 1, match.getTurnNumber(), matchId::toString);
+            assertEquals(TURNS, match.getTurnCount(), matchId::toString);
+            assertEquals(100 - 10 * TURNS, match.getPlayer1HP(), matchId::toString);
+            assertEquals(100 - 20 * TURNS, match.getPlayer2HP(), matchId::toString);
+            // Каждый разрешенный раунд увеличил версию хотя бы на единицу
+            assertTrue(match.getVersion() >= TURNS, matchId::toString);
+
+            long[] stats = moveStats.get(matchId);
+            assertNotNull(stats, matchId::toString);
+            assertEquals(2L * TURNS, stats[0], matchId::toString);
+            assertEquals(2L * TURNS, stats[1], matchId::toString);
+            assertEquals(30L * TURNS, stats[2], matchId::toString);
+        }
+    }
+
+    private static List<Match> newMatches() {
+        Instant now = Instant.now();
+        List<Match> matches = new ArrayList<>(MATCHES);
+        for (int i = 0; i < MATCHES; i++) {
+            Match match = new Match();
+            match.setPlayer1Id(UUID.randomUUID());
+            match.setPlayer2Id(UUID.randomUUID());
+            match.setStatus(Match.MatchStatus.WAITING);
+            match.setPlayer1HP(100);
+            match.setPlayer2HP(100);
+            match.setTurnNumber(1);
+            match.setCreated(now);
+            match.setUpdated(now);
+            matches.add(match);
+        }
+        return matches;
+    }
+
+    private void submit(ExecutorService executor, CountDownLatch start, CountDownLatch done,
+                        Queue<Throwable> failures, MoveRequest request, UUID playerId) {
+        executor.execute(() -> {
+            try {
+                start.await();
+                moveService.makeMove(request, playerId);
+            } catch (Throwable e) {
+                failures.add(e);
+            } finally {
+                done.countDown();
+            }
+        });
+    }
+
+    private static MoveRequest request(UUID matchId, String attackTarget, String defenseTarget, int turnNumber) {
+        MoveRequest request = new MoveRequest();
+        request.setMatchId(matchId);
+        setEnumValue(request, "setAttackTarget", attackTarget);
+        setEnumValue(request, "setDefenseTarget", defenseTarget);
+        request.setTurnNumber(turnNumber);
+        return request;
+    }
+
+    /**
+     * Установка enum значений OpenAPI DTO через рефлексию, как в MoveServiceTest
+     */
+    private static void setEnumValue(Object obj, String methodName, String enumValue) {
+        for (Method method : obj.getClass().getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == 1
+                    && method.getParameterTypes()[0].isEnum()) {
+                try {
+                    method.invoke(obj, valueOfEnum(method.getParameterTypes()[0], enumValue));
+                    return;
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No enum setter " + methodName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> E valueOfEnum(Class<?> enumType, String enumValue) {
+        return Enum.valueOf((Class<E>) enumType, enumValue);
+    }
+}
@@ -0,0 +1,15 @@
+package net.proselyte.gameservice.stress;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Каждый ход - транзакция в базе (режим по умолчанию): оптимистичная блокировка по версии матча + повтор.
+ */
+class DatabaseMovesStressTest extends ConcurrentMovesStressTest {
+
+    @DynamicPropertySource
+    static void configureMode(DynamicPropertyRegistry registry) {
+        registry.add("game.active-matches.enabled", () -> "false");
+    }
+}
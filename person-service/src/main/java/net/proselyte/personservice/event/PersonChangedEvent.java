@@ -0,0 +1,9 @@
+package net.proselyte.personservice.event;
+
+import java.util.UUID;
+
+/**
+ * Пользователь изменен или удален. Публикуется внутри транзакции, наружу уходит после коммита.
+ */
+public record PersonChangedEvent(UUID personId) {
+}
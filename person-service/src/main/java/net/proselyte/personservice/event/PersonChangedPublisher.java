@@ -0,0 +1,33 @@
+package net.proselyte.personservice.event;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Рассылает сигнал об изменении пользователя через Redis pub/sub.
+ * Подписчики (queue-service) сбрасывают закэшированные данные пользователя.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PersonChangedPublisher {
+
+    public static final String PERSON_CHANGED_CHANNEL = "person:changed";
+
+    private final StringRedisTemplate redisTemplate;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onPersonChanged(PersonChangedEvent event) {
+        try {
+            redisTemplate.convertAndSend(PERSON_CHANGED_CHANNEL, event.personId().toString());
+        } catch (DataAccessException e) {
+            // Подписчики ограничивают устаревание кэша TTL, поэтому потеря сигнала не критична
+            log.warn("Failed to publish person change for id=[{}]: {}", event.personId(), e.getMessage());
+        }
+    }
+}
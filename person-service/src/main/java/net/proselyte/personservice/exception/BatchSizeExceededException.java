@@ -0,0 +1,8 @@
+package net.proselyte.personservice.exception;
+
+public class BatchSizeExceededException extends RuntimeException {
+
+    public BatchSizeExceededException(int requested, int maxSize) {
+        super(String.format("Batch size %d exceeds the limit of %d ids", requested, maxSize));
+    }
+}
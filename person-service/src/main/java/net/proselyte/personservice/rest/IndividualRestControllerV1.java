@@ -2,6 +2,7 @@ package net.proselyte.personservice.rest;
 
 import lombok.RequiredArgsConstructor;
 import net.proselyte.person.api.PersonApi;
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.person.dto.IndividualPageDto;
 import net.proselyte.person.dto.IndividualWriteDto;
@@ -33,6 +34,11 @@ public class IndividualRestControllerV1 implements PersonApi {
         return ResponseEntity.status(HttpStatus.CREATED).body(users);
     }
 
+    @Override
+    public ResponseEntity<IndividualBatchDto> findAllByIds(List<UUID> ids) {
+        return ResponseEntity.ok(userService.findAllByIds(ids));
+    }
+
     @Override
     public ResponseEntity<IndividualDto> findById(UUID id) {
         var user = userService.findById(id);
@@ -3,16 +3,24 @@ package net.proselyte.personservice.service;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.person.dto.IndividualPageDto;
 import net.proselyte.person.dto.IndividualWriteDto;
 import net.proselyte.person.dto.IndividualWriteResponseDto;
+import net.proselyte.personservice.event.PersonChangedEvent;
+import net.proselyte.personservice.exception.BatchSizeExceededException;
 import net.proselyte.personservice.exception.PersonException;
 import net.proselyte.personservice.mapper.UserMapper;
 import net.proselyte.personservice.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -26,6 +34,10 @@ public class UserService {
 
     private final UserMapper userMapper;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${person.batch.max-size:100}")
+    private int maxBatchSize;
 
     @Transactional
     public IndividualWriteResponseDto register(IndividualWriteDto writeDto) {
@@ -48,6 +60,31 @@ public class UserService {
         return individualPageDto;
     }
 
+    /**
+     * Находит пользователей по списку id одним запросом {@code WHERE id IN (...)} по первичному ключу.
+     * Ненайденные id возвращаются в {@code missing}, исключение не выбрасывается.
+     */
+    public IndividualBatchDto findAllByIds(List<UUID> ids) {
+        var uniqueIds = new LinkedHashSet<>(ids);
+        if (uniqueIds.size() > maxBatchSize) {
+            throw new BatchSizeExceededException(uniqueIds.size(), maxBatchSize);
+        }
+
+        var items = new LinkedHashMap<String, IndividualDto>();
+        for (var user : userRepository.findAllById(uniqueIds)) {
+            items.put(user.getId().toString(), userMapper.from(user));
+        }
+        var missing = uniqueIds.stream()
+                .filter(id -> !items.containsKey(id.toString()))
+                .toList();
+        log.info("IN - findAllByIds: found [{}] of [{}] users", items.size(), uniqueIds.size());
+
+        var batchDto = new IndividualBatchDto();
+        batchDto.setItems(items);
+        batchDto.setMissing(new ArrayList<>(missing));
+        return batchDto;
+    }
+
     public IndividualDto findById(UUID id) {
         var user = userRepository.findById(id)
                 .orElseThrow(() -> new PersonException("User not found by id=[%s]", id));
@@ -61,6 +98,7 @@ public class UserService {
                 .orElseThrow(() -> new PersonException("User not found by id=[%s]", id));
         log.info("IN - delete: user with id = [{}] successfully deleted", id);
         userRepository.delete(user);
+        eventPublisher.publishEvent(new PersonChangedEvent(id));
     }
 
     @Transactional
@@ -69,6 +107,7 @@ public class UserService {
                 .orElseThrow(() -> new PersonException("User not found by id=[%s]", id));
         userMapper.update(user, writeDto);
         userRepository.save(user);
+        eventPublisher.publishEvent(new PersonChangedEvent(id));
         return new IndividualWriteResponseDto(user.getId().toString());
     }
 }
@@ -1,10 +1,12 @@
 package net.proselyte.personservice.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.person.dto.IndividualPageDto;
 import net.proselyte.person.dto.IndividualWriteDto;
 import net.proselyte.person.dto.IndividualWriteResponseDto;
+import net.proselyte.personservice.exception.BatchSizeExceededException;
 import net.proselyte.personservice.service.UserService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +17,7 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
@@ -74,6 +77,39 @@ class IndividualRestControllerV1Test {
         verify(userService).findById(userId);
     }
 
+    @Test
+    void shouldFindAllByIdsReturnMapAndMissing() throws Exception {
+        UUID userId = UUID.randomUUID();
+        UUID missingId = UUID.randomUUID();
+        IndividualDto dto = new IndividualDto();
+        dto.setId(userId);
+        dto.setEmail("test@example.com");
+        dto.setNickname("testuser");
+
+        IndividualBatchDto batchDto = new IndividualBatchDto();
+        batchDto.setItems(Map.of(userId.toString(), dto));
+        batchDto.setMissing(List.of(missingId));
+
+        when(userService.findAllByIds(List.of(userId, missingId))).thenReturn(batchDto);
+
+        mockMvc.perform(get("/v1/persons/batch")
+                        .param("ids", userId.toString(), missingId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items['" + userId + "'].nickname").value("testuser"))
+                .andExpect(jsonPath("$.missing[0]").value(missingId.toString()));
+
+        verify(userService).findAllByIds(List.of(userId, missingId));
+    }
+
+    @Test
+    void shouldReturnBadRequestWhenBatchIsTooLarge() throws Exception {
+        when(userService.findAllByIds(any())).thenThrow(new BatchSizeExceededException(2, 1));
+
+        mockMvc.perform(get("/v1/persons/batch")
+                        .param("ids", UUID.randomUUID().toString(), UUID.randomUUID().toString()))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldFindAllByEmailReturnUsers() throws Exception {
         List<String> emails = List.of("test@example.com");
@@ -1,10 +1,13 @@
 package net.proselyte.personservice.service;
 
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.person.dto.IndividualPageDto;
 import net.proselyte.person.dto.IndividualWriteDto;
 import net.proselyte.person.dto.IndividualWriteResponseDto;
 import net.proselyte.personservice.entity.User;
+import net.proselyte.personservice.event.PersonChangedEvent;
+import net.proselyte.personservice.exception.BatchSizeExceededException;
 import net.proselyte.personservice.exception.PersonException;
 import net.proselyte.personservice.mapper.UserMapper;
 import net.proselyte.personservice.repository.UserRepository;
@@ -14,8 +17,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -23,6 +29,7 @@ import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -35,6 +42,9 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserService userService;
 
@@ -139,6 +149,7 @@ class UserServiceTest {
 
         verify(userRepository).findById(userId);
         verify(userRepository).delete(testUser);
+        verify(eventPublisher).publishEvent(new PersonChangedEvent(userId));
     }
 
     @Test
@@ -152,6 +163,7 @@ class UserServiceTest {
         assertEquals("User not found by id=[" + userId + "]", exception.getMessage());
         verify(userRepository).findById(userId);
         verify(userRepository, never()).delete(any());
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -172,6 +184,7 @@ class UserServiceTest {
         verify(userRepository).findById(userId);
         verify(userMapper).update(testUser, updateDto);
         verify(userRepository).save(testUser);
+        verify(eventPublisher).publishEvent(new PersonChangedEvent(userId));
     }
 
     @Test
@@ -187,4 +200,30 @@ class UserServiceTest {
         verify(userMapper, never()).update(any(), any());
         verify(userRepository, never()).save(any());
     }
+
+    @Test
+    void shouldFindAllByIdsAndReportMissing() {
+        ReflectionTestUtils.setField(userService, "maxBatchSize", 100);
+        UUID missingId = UUID.randomUUID();
+        dto.setId(userId);
+        when(userRepository.findAllById(any())).thenReturn(List.of(testUser));
+        when(userMapper.from(testUser)).thenReturn(dto);
+
+        IndividualBatchDto result = userService.findAllByIds(List.of(userId, missingId, userId));
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(dto, result.getItems().get(userId.toString()));
+        assertEquals(List.of(missingId), result.getMissing());
+        // Дубликаты id не уходят в запрос
+        verify(userRepository).findAllById(argThat(ids -> ((Collection<?>) ids).size() == 2));
+    }
+
+    @Test
+    void shouldRejectBatchLargerThanMaxSize() {
+        ReflectionTestUtils.setField(userService, "maxBatchSize", 1);
+
+        assertThrows(BatchSizeExceededException.class,
+                () -> userService.findAllByIds(List.of(UUID.randomUUID(), UUID.randomUUID())));
+        verify(userRepository, never()).findAllById(any());
+    }
 }
@@ -14,7 +14,8 @@ val versions = mapOf(
     "logbackClassicVersion" to "1.5.18",
     "testContainersVersion" to "1.19.3",
     "junitJupiterVersion" to "5.10.0",
-    "feignMicrometerVersion" to "13.6"
+    "feignMicrometerVersion" to "13.6",
+    "feignHc5Version" to "13.6"
 )
 
 plugins {
@@ -23,6 +24,7 @@ plugins {
     id("org.springframework.boot") version "3.5.0"
     id("io.spring.dependency-management") version "1.1.7"
     id("org.openapi.generator") version "7.13.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "net.proselyte"
@@ -60,6 +62,8 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-oauth2-resource-server")
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:${versions["springdocOpenapiStarterWebmvcUiVersion"]}")
     implementation("org.springframework.cloud:spring-cloud-starter-openfeign:${versions["springCloudStarterOpenfeign"]}")
+    implementation("io.github.openfeign:feign-hc5:${versions["feignHc5Version"]}")
+    implementation("com.github.ben-manes.caffeine:caffeine")
 
     // OBSERVABILITY
     implementation("io.micrometer:micrometer-registry-prometheus")
@@ -96,8 +100,40 @@ dependencies {
     testImplementation("org.testcontainers:junit-jupiter:${versions["testContainersVersion"]}")
 }
 
-tasks.withType<Test> {
-    useJUnitPlatform()
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark", "simulation")
+    }
+}
+
+// Замеры (память Redis на игрока и т.п.): ./gradlew benchmark
+tasks.register<Test>("benchmark") {
+    group = "verification"
+    description = "Runs benchmark tests"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+}
+
+// Симулятор матчмейкинга на Redis из Testcontainers: ./gradlew simulation
+tasks.register<Test>("simulation") {
+    group = "verification"
+    description = "Runs matchmaking simulation against Redis and prints a per-algorithm report"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    testLogging.showStandardStreams = true
+    useJUnitPlatform {
+        includeTags("simulation")
+    }
+}
+
+// Микробенчмарки шага подбора пар (src/jmh): ./gradlew jmh
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
 }
 
 /*
@@ -0,0 +1,58 @@
+package net.proselyte.queueservice.service;
+
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.repository.QueueClaim;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Шаг раскладки пачки на пары в пакетном режиме, без Redis и клиентов.
+ * Запуск: {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerPairingBenchmark {
+
+    @Param({"16", "64", "256"})
+    private int batchSize;
+
+    /**
+     * Доля игроков с рейтингом; игроки без рейтинга забирают самого старого свободного.
+     */
+    @Param({"0.0", "0.9", "1.0"})
+    private double ratedShare;
+
+    private List<QueueClaim.Player> players;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        now = System.currentTimeMillis();
+        players = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            Double rating = random.nextDouble() < ratedShare ? 1500 + random.nextGaussian() * 300 : null;
+            // Самые старые первыми, как их отдает claim
+            players.add(new QueueClaim.Player(UUID.randomUUID(), now - (batchSize - i) * 100L, rating));
+        }
+    }
+
+    @Benchmark
+    public List<PlayerPairing.Pair> pairPlayers() {
+        return PlayerPairing.pairPlayers(players, new boolean[players.size()], now,
+                MatchmakingProperties.Rating.DEFAULT);
+    }
+}
@@ -1,7 +1,9 @@
 package net.proselyte.queueservice.client;
 
 import net.proselyte.game.dto.CreateMatchRequest;
+import net.proselyte.game.dto.CreateMatchesRequest;
 import net.proselyte.game.dto.MatchResponse;
+import net.proselyte.game.dto.MatchesResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,6 +17,9 @@ public interface GameServiceClient {
     
     @PostMapping("/match")
     MatchResponse createMatch(@RequestBody CreateMatchRequest request);
+    
+    @PostMapping("/matches")
+    MatchesResponse createMatches(@RequestBody CreateMatchesRequest request);
 }
 
 
@@ -1,5 +1,6 @@
 package net.proselyte.queueservice.client;
 
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.person.dto.IndividualPageDto;
 import org.springframework.cloud.openfeign.FeignClient;
@@ -22,5 +23,8 @@ public interface PersonServiceClient {
     
     @GetMapping
     IndividualPageDto findByEmail(@RequestParam("email") List<String> email);
+    
+    @GetMapping("/batch")
+    IndividualBatchDto findAllByIds(@RequestParam("ids") List<UUID> ids);
 }
 
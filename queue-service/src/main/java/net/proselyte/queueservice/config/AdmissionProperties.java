@@ -0,0 +1,25 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Допуск запросов к очереди: token bucket на пользователя и потолок размера очереди.
+ *
+ * @param enabled             проверять ли запросы join/leave
+ * @param burst               сколько запросов подряд допускается без ожидания (емкость bucket'а)
+ * @param refillPeriod        за сколько восстанавливается один токен
+ * @param maxQueueSize        при скольких игроках в очереди новые входы отклоняются; 0 - без ограничения
+ * @param queueFullRetryAfter что отдается в Retry-After, когда очередь заполнена
+ */
+@ConfigurationProperties("queue.admission")
+public record AdmissionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("5") int burst,
+        @DefaultValue("2s") Duration refillPeriod,
+        @DefaultValue("100000") long maxQueueSize,
+        @DefaultValue("5s") Duration queueFullRetryAfter
+) {
+}
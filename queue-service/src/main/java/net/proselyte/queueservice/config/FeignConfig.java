@@ -1,6 +1,8 @@
 package net.proselyte.queueservice.config;
 
+import feign.Client;
 import feign.RequestInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.core.Authentication;
@@ -10,6 +12,15 @@ import org.springframework.security.oauth2.jwt.Jwt;
 @Configuration
 public class FeignConfig {
     
+    /**
+     * HTTP-клиент всех Feign-клиентов: пул keep-alive соединений на каждый upstream (queue.http-client),
+     * таймауты - из spring.cloud.openfeign.client.config.
+     */
+    @Bean
+    public Client feignClient(HttpClientProperties httpClientProperties, MeterRegistry meterRegistry) {
+        return new PooledFeignClient(httpClientProperties, meterRegistry);
+    }
+    
     /**
      * Передает JWT токен из текущего контекста безопасности в Feign запросы
      */
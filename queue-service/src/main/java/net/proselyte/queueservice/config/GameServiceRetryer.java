@@ -0,0 +1,16 @@
+package net.proselyte.queueservice.config;
+
+import feign.Retryer;
+
+/**
+ * Повторы запросов к game-service при сетевых ошибках и таймаутах.
+ * Безопасны, потому что создание матча идемпотентно по {@code pairingId}.
+ * Подключается через {@code spring.cloud.openfeign.client.config.game-service.retryer}.
+ */
+public class GameServiceRetryer extends Retryer.Default {
+
+    public GameServiceRetryer() {
+        // 50 мс, затем с множителем 1.5 до 500 мс; всего 3 попытки
+        super(50, 500, 3);
+    }
+}
@@ -0,0 +1,48 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Пулы HTTP-соединений Feign-клиентов: у каждого upstream свой пул, чтобы медленный сервис
+ * не занимал соединения другого. Таймауты запросов задаются по клиенту в
+ * {@code spring.cloud.openfeign.client.config.<name>}.
+ *
+ * @param defaults  пул для upstream'ов без отдельной настройки
+ * @param upstreams настройки по имени Feign-клиента ({@code game-service}, {@code person-service})
+ */
+@ConfigurationProperties("queue.http-client")
+public record HttpClientProperties(
+        @DefaultValue Pool defaults,
+        Map<String, Pool> upstreams
+) {
+
+    public HttpClientProperties {
+        if (upstreams == null) {
+            upstreams = Map.of();
+        }
+    }
+
+    public Pool pool(String upstream) {
+        return upstreams.getOrDefault(upstream, defaults);
+    }
+
+    /**
+     * @param maxConnections          сколько keep-alive соединений держится к upstream'у
+     * @param acquireTimeout          сколько запрос ждет свободного соединения, когда пул исчерпан
+     * @param idleTimeout             через сколько простоя соединение закрывается фоновой очисткой
+     * @param timeToLive              максимальный срок жизни соединения (переподключение к новым экземплярам за балансировщиком)
+     * @param validateAfterInactivity после какого простоя соединение проверяется перед повторным использованием
+     */
+    public record Pool(
+            @DefaultValue("50") int maxConnections,
+            @DefaultValue("1s") Duration acquireTimeout,
+            @DefaultValue("30s") Duration idleTimeout,
+            @DefaultValue("5m") Duration timeToLive,
+            @DefaultValue("2s") Duration validateAfterInactivity
+    ) {
+    }
+}
@@ -0,0 +1,19 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Координация матчмейкинга между репликами через аренду в Redis.
+ *
+ * @param enabled включена ли координация; без нее матчмейкер работает на каждой реплике
+ * @param ttl     время жизни аренды; должно быть в несколько раз больше периода продления
+ */
+@ConfigurationProperties("queue.matchmaking.leader")
+public record LeaderLeaseProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("10s") Duration ttl
+) {
+}
@@ -0,0 +1,50 @@
+package net.proselyte.queueservice.config;
+
+import net.proselyte.queueservice.service.ClusterNotificationRelay;
+import net.proselyte.queueservice.service.WebSocketNotificationService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.UUID;
+
+/**
+ * После того как брокер зарегистрировал подписку на {@code /topic/queue/{userId}},
+ * отдает клиенту событие из его почтового ящика (режим cluster).
+ * Реле берется лениво: оно зависит от SimpMessagingTemplate, который создается позже каналов.
+ */
+class MailboxReplayInterceptor implements ExecutorChannelInterceptor {
+
+    private final ObjectProvider<ClusterNotificationRelay> relayProvider;
+
+    MailboxReplayInterceptor(ObjectProvider<ClusterNotificationRelay> relayProvider) {
+        this.relayProvider = relayProvider;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.SUBSCRIBE) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(WebSocketNotificationService.QUEUE_TOPIC_PREFIX)) {
+            return;
+        }
+        ClusterNotificationRelay relay = relayProvider.getIfAvailable();
+        if (relay == null || !relay.enabled()) {
+            return;
+        }
+        try {
+            relay.replayMailbox(UUID.fromString(
+                    destination.substring(WebSocketNotificationService.QUEUE_TOPIC_PREFIX.length())));
+        } catch (IllegalArgumentException e) {
+            // Подписка не на персональный топик пользователя
+        }
+    }
+}
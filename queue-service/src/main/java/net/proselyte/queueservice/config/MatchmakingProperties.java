@@ -0,0 +1,102 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки матчмейкинга.
+ *
+ * @param mode        режим запуска матчмейкера: периодический тик или пробуждение по событию входа в очередь
+ * @param rating      окно допустимой разницы рейтингов при подборе пары
+ * @param batchSize   сколько игроков забирать из очереди за один шаг; меньше 2 — подбор по одной паре,
+ *                    не больше {@link #MAX_BATCH_SIZE}
+ * @param concurrency сколько шагов подбора событийный матчмейкер выполняет параллельно (на виртуальных потоках);
+ *                    1 — последовательно
+ */
+@ConfigurationProperties("queue.matchmaking")
+public record MatchmakingProperties(
+        Mode mode,
+        Rating rating,
+        int batchSize,
+        int concurrency
+) {
+
+    /**
+     * Пары одного шага уходят одним {@code POST /v1/game/matches}, а game-service принимает не больше 500 пар
+     * ({@code CreateMatchesRequest.matches maxItems}); из {@code batchSize} игроков получается не больше
+     * {@code batchSize / 2} пар.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    public MatchmakingProperties {
+        if (batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("queue.matchmaking.batch-size must not exceed " + MAX_BATCH_SIZE
+                    + " (game-service accepts at most " + MAX_BATCH_SIZE / 2 + " matches per request), got " + batchSize);
+        }
+        if (mode == null) {
+            mode = Mode.SCHEDULED;
+        }
+        if (rating == null) {
+            rating = Rating.DEFAULT;
+        }
+        if (concurrency < 1) {
+            concurrency = 1;
+        }
+    }
+
+    public boolean eventDriven() {
+        return mode == Mode.EVENT_DRIVEN;
+    }
+
+    public boolean batchEnabled() {
+        return batchSize >= 2;
+    }
+
+    public boolean concurrent() {
+        return concurrency > 1;
+    }
+
+    public enum Mode {
+        /**
+         * Очередь проверяется только периодическим тиком {@code MatchmakingScheduler}.
+         */
+        SCHEDULED,
+        /**
+         * Вход в очередь будит матчмейкер; периодический тик остается страховкой.
+         */
+        EVENT_DRIVEN
+    }
+
+    /**
+     * Окно поиска соперника по рейтингу: {@code min(maxGap, baseGap + gapPerSecond * ожидание)}.
+     * Чем дольше игрок ждет, тем шире допустимая разница рейтингов.
+     *
+     * @param baseGap         допустимая разница рейтингов сразу после входа в очередь
+     * @param gapPerSecond    расширение окна за каждую секунду ожидания
+     * @param maxGap          верхняя граница окна
+     * @param anchorScan      сколько игроков (якорей) просматривать за одну страницу claim'а, начиная с самых старых
+     * @param candidateLimit  сколько ближайших по рейтингу кандидатов читать в каждую сторону от игрока
+     * @param maxAnchorScan   сколько якорей всего можно просмотреть за один claim, если на первых страницах
+     *                        ни у кого нет соперника в окне; ограничивает время работы Lua-скрипта
+     */
+    public record Rating(
+            @DefaultValue("50") double baseGap,
+            @DefaultValue("10") double gapPerSecond,
+            @DefaultValue("400") double maxGap,
+            @DefaultValue("16") int anchorScan,
+            @DefaultValue("4") int candidateLimit,
+            @DefaultValue("1024") int maxAnchorScan
+    ) {
+
+        public static final Rating DEFAULT = new Rating(50, 10, 400, 16, 4, 1024);
+
+        public Rating {
+            if (anchorScan < 1) {
+                anchorScan = 1;
+            }
+            if (maxAnchorScan < anchorScan) {
+                maxAnchorScan = anchorScan;
+            }
+        }
+    }
+}
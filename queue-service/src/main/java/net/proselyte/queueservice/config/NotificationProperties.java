@@ -0,0 +1,43 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Настройки доставки WebSocket-уведомлений.
+ *
+ * @param delivery   доставка только через брокер своей реплики или через Redis pub/sub на все реплики
+ * @param mailboxTtl сколько хранится последний {@code match_found} для клиента, который переподключается
+ */
+@ConfigurationProperties("queue.notifications")
+public record NotificationProperties(
+        Delivery delivery,
+        @DefaultValue("30s") Duration mailboxTtl
+) {
+
+    public NotificationProperties {
+        if (delivery == null) {
+            delivery = Delivery.LOCAL;
+        }
+        if (mailboxTtl == null) {
+            mailboxTtl = Duration.ofSeconds(30);
+        }
+    }
+
+    public boolean cluster() {
+        return delivery == Delivery.CLUSTER;
+    }
+
+    public enum Delivery {
+        /**
+         * Событие отправляется в брокер той реплики, которая создала матч. Подходит для одной реплики.
+         */
+        LOCAL,
+        /**
+         * Событие рассылается через Redis pub/sub, и его доставляет реплика, к которой подключен клиент.
+         */
+        CLUSTER
+    }
+}
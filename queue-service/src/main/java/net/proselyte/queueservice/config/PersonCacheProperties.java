@@ -0,0 +1,19 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Настройки локального кэша email -> person id.
+ *
+ * @param maximumSize максимальное количество записей в кэше
+ * @param ttl         время жизни записи; ограничивает устаревание, если сигнал об изменении пользователя потерян
+ */
+@ConfigurationProperties("person.cache")
+public record PersonCacheProperties(
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("10m") Duration ttl
+) {
+}
@@ -0,0 +1,122 @@
+package net.proselyte.queueservice.config;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import feign.hc5.ApacheHttp5Client;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Feign {@link Client} с отдельным пулом keep-alive соединений Apache HttpClient 5 на каждый upstream.
+ * Upstream определяется по имени Feign-клиента. Для каждого пула публикуются метрики
+ * {@code httpcomponents.httpclient.pool.*} (тег {@code httpclient}) и счетчик
+ * {@code queue_http_client_timeouts} по типу таймаута: {@code pool} - не дождались соединения из пула,
+ * {@code connect} - установки соединения, {@code read} - ответа. Прочие прерывания ввода-вывода
+ * (например, прерывание потока) таймаутом не считаются. Латентность запросов пишет
+ * Feign micrometer capability в {@code http.client.requests}.
+ */
+@Slf4j
+public class PooledFeignClient implements Client, DisposableBean {
+
+    public static final String TIMEOUTS_METRIC = "queue_http_client_timeouts";
+
+    private static final String DEFAULT_UPSTREAM = "default";
+
+    private final HttpClientProperties properties;
+    private final MeterRegistry registry;
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    public PooledFeignClient(HttpClientProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        Upstream upstream = upstreams.computeIfAbsent(upstreamName(request), this::createUpstream);
+        try {
+            return upstream.client().execute(request, options);
+        } catch (ConnectionRequestTimeoutException e) {
+            // Не дождались свободного соединения в пуле
+            upstream.poolTimeouts().increment();
+            throw e;
+        } catch (ConnectTimeoutException e) {
+            upstream.connectTimeouts().increment();
+            throw e;
+        } catch (SocketTimeoutException e) {
+            upstream.readTimeouts().increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        upstreams.values().forEach(upstream -> upstream.httpClient().close(CloseMode.GRACEFUL));
+    }
+
+    private static String upstreamName(Request request) {
+        if (request.requestTemplate() != null && request.requestTemplate().feignTarget() != null) {
+            return request.requestTemplate().feignTarget().name();
+        }
+        return DEFAULT_UPSTREAM;
+    }
+
+    private Upstream createUpstream(String name) {
+        HttpClientProperties.Pool pool = properties.pool(name);
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(pool.maxConnections())
+                // Все соединения пула идут к одному upstream'у
+                .setMaxConnPerRoute(pool.maxConnections())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setTimeToLive(TimeValue.of(pool.timeToLive()))
+                        .setValidateAfterInactivity(TimeValue.of(pool.validateAfterInactivity()))
+                        .build())
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                // Feign копирует эту конфигурацию и задает поверх нее таймауты клиента
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(pool.acquireTimeout()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(pool.idleTimeout()))
+                .disableAutomaticRetries()
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(registry);
+        log.info("Created HTTP connection pool for {}: max {} connections", name, pool.maxConnections());
+        return new Upstream(httpClient, new ApacheHttp5Client(httpClient),
+                timeoutCounter(name, "connect"), timeoutCounter(name, "read"), timeoutCounter(name, "pool"));
+    }
+
+    private Counter timeoutCounter(String upstream, String type) {
+        return Counter.builder(TIMEOUTS_METRIC)
+                .description("Feign requests that timed out, by upstream and timeout type")
+                .tags(Tags.of("client", upstream, "type", type))
+                .register(registry);
+    }
+
+    private record Upstream(CloseableHttpClient httpClient, Client client,
+                            Counter connectTimeouts, Counter readTimeouts, Counter poolTimeouts) {
+    }
+}
@@ -0,0 +1,23 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Присутствие игроков очереди по WebSocket.
+ *
+ * @param enabled        удалять из очереди и пропускать при подборе игроков без живой WebSocket-подписки
+ * @param ttl            через сколько после последнего heartbeat игрок считается отключившимся
+ * @param joinGrace      сколько после входа в очередь игрок не считается отсутствующим (успевает подключиться)
+ * @param sweepBatchSize сколько игроков очереди проверяет один вызов скрипта чистки
+ */
+@ConfigurationProperties("queue.presence")
+public record PresenceProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("30s") Duration ttl,
+        @DefaultValue("30s") Duration joinGrace,
+        @DefaultValue("500") int sweepBatchSize
+) {
+}
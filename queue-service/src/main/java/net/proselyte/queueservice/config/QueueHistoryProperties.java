@@ -0,0 +1,20 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Асинхронная запись истории очереди в {@code queue.queue_items}.
+ *
+ * @param enabled    записывать ли переходы WAITING/MATCHED/LEFT
+ * @param bufferSize сколько игроков с незаписанным переходом держится в памяти; сверх этого новые переходы
+ *                   отбрасываются, чтобы вход в очередь не ждал базу
+ * @param batchSize  сколько строк уходит в базу одним JDBC batch
+ */
+@ConfigurationProperties("queue.history")
+public record QueueHistoryProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") int bufferSize,
+        @DefaultValue("500") int batchSize
+) {
+}
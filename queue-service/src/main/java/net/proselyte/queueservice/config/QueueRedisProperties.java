@@ -0,0 +1,18 @@
+package net.proselyte.queueservice.config;
+
+import net.proselyte.queueservice.repository.QueueMemberCodec;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Формат хранения игроков в ключах очереди.
+ *
+ * @param memberEncoding text - строка UUID, binary - 16 байт
+ * @param migrateMembers при старте перекодировать живые ключи очереди в {@code memberEncoding}
+ */
+@ConfigurationProperties("queue.redis")
+public record QueueRedisProperties(
+        @DefaultValue("text") QueueMemberCodec.Encoding memberEncoding,
+        @DefaultValue("false") boolean migrateMembers
+) {
+}
@@ -0,0 +1,17 @@
+package net.proselyte.queueservice.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки рассылки {@code queue_status} по WebSocket.
+ *
+ * @param broadcastEnabled рассылать ли положение в очереди ожидающим игрокам
+ * @param maxRecipients    сколько первых игроков очереди получают событие за тик; остальные опрашивают /status
+ */
+@ConfigurationProperties("queue.status")
+public record QueueStatusProperties(
+        @DefaultValue("true") boolean broadcastEnabled,
+        @DefaultValue("5000") int maxRecipients
+) {
+}
@@ -1,15 +1,26 @@
 package net.proselyte.queueservice.config;
 
+import net.proselyte.queueservice.repository.QueueMemberCodec;
+import net.proselyte.queueservice.service.ClusterNotificationRelay;
+import net.proselyte.queueservice.service.MatchmakingWorker;
+import net.proselyte.queueservice.service.PersonIdResolver;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 @Configuration
 public class RedisConfig {
 
     @Bean
+    @Primary
     public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
@@ -20,4 +31,46 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * Шаблон ключей очереди. ISO-8859-1 отображает каждый байт в один символ,
+     * поэтому бинарные члены ({@link QueueMemberCodec.Encoding#BINARY}) проходят через String без потерь,
+     * а текстовые UUID (ASCII) записываются теми же байтами, что и в UTF-8.
+     */
+    @Bean
+    public RedisTemplate<String, String> queueRedisTemplate(RedisConnectionFactory connectionFactory) {
+        StringRedisSerializer serializer = new StringRedisSerializer(StandardCharsets.ISO_8859_1);
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(serializer);
+        template.setValueSerializer(serializer);
+        template.setHashKeySerializer(serializer);
+        template.setHashValueSerializer(serializer);
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Bean
+    public QueueMemberCodec queueMemberCodec(QueueRedisProperties properties) {
+        return new QueueMemberCodec(properties.memberEncoding());
+    }
+
+    /**
+     * Подписки Redis pub/sub: пробуждение матчмейкера другими репликами,
+     * сброс кэша person ID по сигналу person-service и доставка match_found и queue_status между репликами.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       MatchmakingWorker matchmakingWorker,
+                                                                       PersonIdResolver personIdResolver,
+                                                                       ClusterNotificationRelay clusterNotificationRelay) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(matchmakingWorker, new ChannelTopic(MatchmakingWorker.WAKEUP_CHANNEL));
+        container.addMessageListener(personIdResolver, new ChannelTopic(PersonIdResolver.PERSON_CHANGED_CHANNEL));
+        container.addMessageListener(clusterNotificationRelay, List.of(
+                new ChannelTopic(ClusterNotificationRelay.NOTIFICATION_CHANNEL),
+                new ChannelTopic(ClusterNotificationRelay.STATUS_CHANNEL)));
+        return container;
+    }
 }
@@ -1,6 +1,9 @@
 package net.proselyte.queueservice.config;
 
+import net.proselyte.queueservice.service.ClusterNotificationRelay;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -10,6 +13,12 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final ObjectProvider<ClusterNotificationRelay> clusterNotificationRelay;
+
+    public WebSocketConfig(ObjectProvider<ClusterNotificationRelay> clusterNotificationRelay) {
+        this.clusterNotificationRelay = clusterNotificationRelay;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Включаем простой брокер сообщений для отправки сообщений клиентам
@@ -25,4 +34,10 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*") // В продакшене указать конкретные домены
                 .withSockJS(); // Поддержка SockJS для fallback
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Переподключившийся клиент получает match_found, разосланный пока он был отключен
+        registration.interceptors(new MailboxReplayInterceptor(clusterNotificationRelay));
+    }
 }
@@ -0,0 +1,97 @@
+package net.proselyte.queueservice.metric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+public class MatchmakingMetrics {
+
+    public static final String TIME_TO_MATCH_METRIC = "queue_matchmaking_time_to_match";
+    public static final String MATCHES_PER_TICK_METRIC = "queue_matchmaking_matches_per_tick";
+    public static final String PAIRING_RATE_METRIC = "queue_matchmaking_pairing_rate";
+    public static final String GHOST_PAIRS_AVOIDED_METRIC = "queue_matchmaking_ghost_pairs_avoided";
+    public static final String GHOSTS_EVICTED_METRIC = "queue_presence_evicted";
+
+    public static final String TRIGGER_SCHEDULED = "scheduled";
+    public static final String TRIGGER_EVENT = "event";
+
+    private static final int PAIRING_RATE_WINDOW_SECONDS = 60;
+
+    private final Timer timeToMatch;
+    private final DistributionSummary scheduledMatchesPerTick;
+    private final DistributionSummary eventMatchesPerTick;
+    private final PairingRate pairingRate = new PairingRate(PAIRING_RATE_WINDOW_SECONDS);
+    private final Counter ghostPairsAvoided;
+    private final Counter ghostsEvicted;
+
+    public MatchmakingMetrics(MeterRegistry registry, MatchmakingProperties properties) {
+        String mode = properties.mode().name().toLowerCase();
+        timeToMatch = Timer.builder(TIME_TO_MATCH_METRIC)
+                .description("Time from joining the queue until a match is created")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+        scheduledMatchesPerTick = matchesPerTick(registry, mode, TRIGGER_SCHEDULED);
+        eventMatchesPerTick = matchesPerTick(registry, mode, TRIGGER_EVENT);
+        Gauge.builder(PAIRING_RATE_METRIC, this, MatchmakingMetrics::pairedPlayersPerSecond)
+                .description("Players matched per second over the last minute on this instance")
+                .tag("mode", mode)
+                .register(registry);
+        ghostPairsAvoided = Counter.builder(GHOST_PAIRS_AVOIDED_METRIC)
+                .description("Pairs not sent to persons-api and game-service because a player had no live presence")
+                .tag("mode", mode)
+                .register(registry);
+        ghostsEvicted = Counter.builder(GHOSTS_EVICTED_METRIC)
+                .description("Players removed from the queue by the presence sweeper")
+                .register(registry);
+    }
+
+    /**
+     * Вызывается для каждого сматченного игрока.
+     */
+    public void recordTimeToMatch(Duration waited) {
+        timeToMatch.record(waited.isNegative() ? Duration.ZERO : waited);
+        pairingRate.record(System.currentTimeMillis(), 1);
+    }
+
+    /**
+     * @return среднее количество игроков, сматченных этой репликой за секунду, за последнюю минуту
+     */
+    public double pairedPlayersPerSecond() {
+        return pairingRate.perSecond(System.currentTimeMillis());
+    }
+
+    /**
+     * @param trigger {@link #TRIGGER_SCHEDULED} или {@link #TRIGGER_EVENT}
+     * @param matches количество матчей, созданных за один проход матчмейкера
+     */
+    public void recordMatchesPerTick(String trigger, int matches) {
+        (TRIGGER_EVENT.equals(trigger) ? eventMatchesPerTick : scheduledMatchesPerTick).record(matches);
+    }
+
+    /**
+     * @param pairs пары, не отправленные в persons-api и game-service из-за отключившегося игрока
+     */
+    public void recordGhostPairsAvoided(int pairs) {
+        ghostPairsAvoided.increment(pairs);
+    }
+
+    public void recordGhostsEvicted(long players) {
+        ghostsEvicted.increment(players);
+    }
+
+    private static DistributionSummary matchesPerTick(MeterRegistry registry, String mode, String trigger) {
+        return DistributionSummary.builder(MATCHES_PER_TICK_METRIC)
+                .description("Matches created by a single matchmaking pass")
+                .tag("mode", mode)
+                .tag("trigger", trigger)
+                .register(registry);
+    }
+}
@@ -0,0 +1,42 @@
+package net.proselyte.queueservice.metric;
+
+/**
+ * Скользящее окно количества сматченных игроков, разбитое на секундные корзины.
+ * Корзина, отставшая от текущего времени больше чем на длину окна, переиспользуется.
+ */
+class PairingRate {
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private final long[] counts;
+    private final long[] buckets;
+
+    PairingRate(int windowSeconds) {
+        counts = new long[windowSeconds];
+        buckets = new long[windowSeconds];
+    }
+
+    synchronized void record(long nowMillis, int players) {
+        long bucket = nowMillis / BUCKET_MILLIS;
+        int index = (int) (bucket % counts.length);
+        if (buckets[index] != bucket) {
+            buckets[index] = bucket;
+            counts[index] = 0;
+        }
+        counts[index] += players;
+    }
+
+    /**
+     * @return среднее количество сматченных игроков в секунду за окно
+     */
+    synchronized double perSecond(long nowMillis) {
+        long current = nowMillis / BUCKET_MILLIS;
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (current - buckets[i] < counts.length) {
+                total += counts[i];
+            }
+        }
+        return (double) total / counts.length;
+    }
+}
@@ -0,0 +1,21 @@
+package net.proselyte.queueservice.repository;
+
+/**
+ * Фенсинг-токен лидера матчмейкинга. Claim-скрипты забирают игроков из очереди,
+ * только если ключ аренды все еще содержит {@code value}: реплика, потерявшая аренду
+ * (например, после долгой GC-паузы), не сможет забрать игроков вместе с новым лидером.
+ *
+ * @param key   ключ аренды в Redis
+ * @param value ожидаемое значение ключа: владелец и номер токена
+ */
+public record LeaseFence(String key, String value) {
+
+    /**
+     * Координация выключена, claim выполняется без проверки аренды.
+     */
+    public static final LeaseFence NONE = new LeaseFence(null, null);
+
+    public boolean enabled() {
+        return key != null;
+    }
+}
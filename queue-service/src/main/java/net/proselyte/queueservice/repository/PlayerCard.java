@@ -0,0 +1,41 @@
+package net.proselyte.queueservice.repository;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Карточка игрока, сохраняемая в {@code queue:cards} при входе в очередь, чтобы матчмейкеру
+ * не нужно было ходить в persons-api за существованием игрока и никнеймом.
+ * Хранится одной строкой {@code joinedAt|rating|nickname} (рейтинг пустой, если неизвестен).
+ *
+ * @param nickname никнейм игрока
+ * @param rating   рейтинг игрока, или null если неизвестен
+ * @param joinedAt время входа в очередь в миллисекундах
+ */
+public record PlayerCard(String nickname, Double rating, long joinedAt) {
+
+    private static final char SEPARATOR = '|';
+
+    /**
+     * Ключи очереди пишутся шаблоном с ISO-8859-1, поэтому UTF-8 байты никнейма
+     * упаковываются в строку по одному символу на байт.
+     */
+    String encode() {
+        String value = joinedAt + String.valueOf(SEPARATOR) + (rating != null ? rating : "") + SEPARATOR + nickname;
+        return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    static PlayerCard decode(String stored) {
+        String value = new String(stored.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+        int first = value.indexOf(SEPARATOR);
+        int second = value.indexOf(SEPARATOR, first + 1);
+        if (first < 0 || second < 0) {
+            throw new IllegalArgumentException("Malformed player card: " + value);
+        }
+        String rating = value.substring(first + 1, second);
+        return new PlayerCard(
+                value.substring(second + 1),
+                rating.isEmpty() ? null : Double.valueOf(rating),
+                Long.parseLong(value.substring(0, first))
+        );
+    }
+}
@@ -0,0 +1,50 @@
+package net.proselyte.queueservice.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Игроки, атомарно извлеченные из очереди в pending-ключ claim'а.
+ * Пока claim не завершен, игроки не видны другим матчмейкерам и могут быть возвращены
+ * в очередь с исходным временем входа.
+ *
+ * @param claimId идентификатор claim'а (часть pending-ключа в Redis)
+ * @param players игроки в порядке времени входа в очередь (самые старые первыми)
+ */
+public record QueueClaim(String claimId, List<Player> players) {
+
+    public List<UUID> playerIds() {
+        return players.stream().map(Player::userId).toList();
+    }
+
+    /**
+     * Ключ идемпотентности создания матча для пары. Зависит от игроков и их времени входа в очередь:
+     * повтор запроса и повторный claim той же пары после отката дают тот же ключ,
+     * а новый вход в очередь - новый.
+     */
+    public static UUID pairingId(Player player1, Player player2) {
+        String key = player1.userId() + ":" + player1.joinedAt() + ":" + player2.userId() + ":" + player2.joinedAt();
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param userId   идентификатор игрока
+     * @param joinedAt исходный score в очереди (timestamp входа в миллисекундах)
+     * @param rating   рейтинг игрока, или null если неизвестен или не запрашивался
+     */
+    public record Player(UUID userId, long joinedAt, Double rating) {
+
+        public Player(UUID userId, long joinedAt) {
+            this(userId, joinedAt, null);
+        }
+
+        /**
+         * Вход игрока в очередь: не меняется при откате claim'а, поэтому game-service не создаст второй матч
+         * игроку, чья пара откатана после потерянного ответа и собрана заново с другим соперником.
+         */
+        public UUID ticket() {
+            return UUID.nameUUIDFromBytes((userId + ":" + joinedAt).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package net.proselyte.queueservice.repository;
+
+/**
+ * Положение игрока в очереди, прочитанное одним обращением к Redis.
+ *
+ * @param joinedAt время входа в очередь в миллисекундах
+ * @param rank     позиция в очереди, начиная с 0 (0 = первый в очереди)
+ */
+public record QueueEntry(long joinedAt, long rank) {
+}
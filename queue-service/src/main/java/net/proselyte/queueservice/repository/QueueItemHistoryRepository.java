@@ -0,0 +1,42 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Пакетная запись истории очереди в {@code queue.queue_items}: одна строка на игрока с последним статусом.
+ * Используется JDBC batch вместо JPA, чтобы сброс буфера был одним обращением к базе без загрузки сущностей.
+ */
+@Repository
+@RequiredArgsConstructor
+public class QueueItemHistoryRepository {
+
+    /**
+     * Время входа обновляется только при новом входе (WAITING); MATCHED и LEFT сохраняют исходное.
+     * joined_at - TIMESTAMP WITHOUT TIME ZONE в UTC.
+     */
+    private static final String UPSERT_SQL = """
+            INSERT INTO queue.queue_items (user_id, joined_at, status)
+            VALUES (?, ?, ?)
+            ON CONFLICT (user_id) DO UPDATE SET
+                status = EXCLUDED.status,
+                joined_at = CASE WHEN EXCLUDED.status = 'WAITING'
+                                 THEN EXCLUDED.joined_at
+                                 ELSE queue.queue_items.joined_at END
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void upsertAll(List<QueueTransition> transitions) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, transitions, transitions.size(), (statement, transition) -> {
+            statement.setObject(1, transition.userId());
+            statement.setObject(2, LocalDateTime.ofInstant(transition.joinedAt(), ZoneOffset.UTC));
+            statement.setString(3, transition.status().name());
+        });
+    }
+}
@@ -0,0 +1,10 @@
+package net.proselyte.queueservice.repository;
+
+/**
+ * Результат атомарного входа в очередь.
+ *
+ * @param added    true, если игрок добавлен этим вызовом; false, если он уже был в очереди
+ * @param joinedAt время входа в очередь в миллисекундах (для повторного входа - исходное)
+ */
+public record QueueJoin(boolean added, long joinedAt) {
+}
@@ -0,0 +1,78 @@
+package net.proselyte.queueservice.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Кодирование игроков в членах Sorted Set'ов очереди.
+ * <p>
+ * {@link Encoding#TEXT} - строка UUID (36 байт), {@link Encoding#BINARY} - 16 байт UUID.
+ * Ключи очереди пишутся шаблоном с ISO-8859-1, в котором каждый символ строки - ровно один байт,
+ * поэтому бинарный член передается в Redis и Lua-скрипты без искажений.
+ * Декодирование понимает оба формата, так что очередь читается и во время миграции.
+ * <p>
+ * Пока в ключах могут быть игроки в другом формате (миграция не закончена или реплики со старой настройкой
+ * еще пишут в очередь), точечные операции ищут и удаляют игрока в обоих форматах: член в текущем
+ * формате - {@link #encode(UUID)}, в другом - {@link #alternate(UUID)}.
+ */
+public class QueueMemberCodec {
+
+    public static final int BINARY_LENGTH = 16;
+
+    private final Encoding encoding;
+
+    public QueueMemberCodec(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    public String encode(UUID userId) {
+        return encoding == Encoding.BINARY ? toBinary(userId) : userId.toString();
+    }
+
+    /**
+     * @param userId UUID в строковом виде, как его передают вызывающие репозиторий
+     */
+    public String encode(String userId) {
+        return encoding == Encoding.BINARY ? toBinary(UUID.fromString(userId)) : userId;
+    }
+
+    /**
+     * @return член игрока в формате, отличном от текущего
+     */
+    public String alternate(UUID userId) {
+        return encoding == Encoding.BINARY ? userId.toString() : toBinary(userId);
+    }
+
+    public UUID decode(String member) {
+        if (member.length() == BINARY_LENGTH) {
+            ByteBuffer buffer = ByteBuffer.wrap(member.getBytes(StandardCharsets.ISO_8859_1));
+            return new UUID(buffer.getLong(), buffer.getLong());
+        }
+        return UUID.fromString(member);
+    }
+
+    /**
+     * @return UUID в строковом виде независимо от формата хранения
+     */
+    public String decodeToText(String member) {
+        return member.length() == BINARY_LENGTH ? decode(member).toString() : member;
+    }
+
+    static String toBinary(UUID userId) {
+        byte[] bytes = ByteBuffer.allocate(BINARY_LENGTH)
+                .putLong(userId.getMostSignificantBits())
+                .putLong(userId.getLeastSignificantBits())
+                .array();
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    public enum Encoding {
+        TEXT,
+        BINARY
+    }
+}
@@ -0,0 +1,107 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Перекодирует живые ключи очереди ({@code queue:waiting}, {@code queue:rating}, {@code queue:cards})
+ * в формат {@link QueueMemberCodec}.
+ * Ключи обходятся ZSCAN, игроки переносятся пачками одним скриптом: score и рейтинг сохраняются,
+ * уже перекодированные игроки пропускаются. Повторный или параллельный запуск безопасен.
+ * Pending-ключи claim'ов не переносятся: они живут не дольше минуты и декодируются в любом формате.
+ */
+@Slf4j
+@Repository
+public class QueueMemberMigrator {
+
+    private static final String QUEUE_KEY = "queue:waiting";
+    private static final String RATING_KEY = "queue:rating";
+    private static final String CARDS_KEY = "queue:cards";
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - карточки игроков; ARGV - пары (старый член, новый член).
+     * Возвращает количество перенесенных игроков очереди.
+     */
+    private static final RedisScript<Long> MIGRATE_SCRIPT = new DefaultRedisScript<>("""
+            local moved = 0
+            for i = 1, #ARGV, 2 do
+                for k = 1, 2 do
+                    local score = redis.call('ZSCORE', KEYS[k], ARGV[i])
+                    if score then
+                        redis.call('ZREM', KEYS[k], ARGV[i])
+                        redis.call('ZADD', KEYS[k], 'NX', score, ARGV[i + 1])
+                        if k == 1 then
+                            moved = moved + 1
+                        end
+                    end
+                end
+                local card = redis.call('HGET', KEYS[3], ARGV[i])
+                if card then
+                    redis.call('HDEL', KEYS[3], ARGV[i])
+                    redis.call('HSETNX', KEYS[3], ARGV[i + 1], card)
+                end
+            end
+            return moved
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final QueueMemberCodec memberCodec;
+
+    public QueueMemberMigrator(@Qualifier("queueRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                               QueueMemberCodec memberCodec) {
+        this.redisTemplate = redisTemplate;
+        this.memberCodec = memberCodec;
+    }
+
+    /**
+     * Переводит всех игроков очереди в текущий формат кодека.
+     *
+     * @return количество перенесенных игроков очереди
+     */
+    public long migrate() {
+        long moved = migrateKey(QUEUE_KEY) + migrateKey(RATING_KEY);
+        log.info("Queue members migrated to {} encoding: {} players moved", memberCodec.encoding(), moved);
+        return moved;
+    }
+
+    private long migrateKey(String key) {
+        long moved = 0;
+        List<String> batch = new ArrayList<>(BATCH_SIZE * 2);
+        ScanOptions options = ScanOptions.scanOptions().count(BATCH_SIZE).build();
+        try (Cursor<ZSetOperations.TypedTuple<String>> cursor = redisTemplate.opsForZSet().scan(key, options)) {
+            while (cursor.hasNext()) {
+                String member = cursor.next().getValue();
+                String target = memberCodec.encode(memberCodec.decode(member));
+                if (!target.equals(member)) {
+                    batch.add(member);
+                    batch.add(target);
+                }
+                if (batch.size() >= BATCH_SIZE * 2) {
+                    moved += migrateBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            moved += migrateBatch(batch);
+        }
+        return moved;
+    }
+
+    private long migrateBatch(List<String> pairs) {
+        Long moved = redisTemplate.execute(MIGRATE_SCRIPT, List.of(QUEUE_KEY, RATING_KEY, CARDS_KEY),
+                pairs.toArray());
+        return moved != null ? moved : 0L;
+    }
+}
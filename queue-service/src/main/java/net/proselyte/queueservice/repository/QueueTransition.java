@@ -0,0 +1,16 @@
+package net.proselyte.queueservice.repository;
+
+import net.proselyte.queueservice.entity.QueueItem;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Переход игрока в очереди для истории {@code queue.queue_items}.
+ *
+ * @param userId   идентификатор игрока
+ * @param status   новый статус
+ * @param joinedAt время входа в очередь; для MATCHED и LEFT используется, только если записи еще нет
+ */
+public record QueueTransition(UUID userId, QueueItem.QueueStatus status, Instant joinedAt) {
+}
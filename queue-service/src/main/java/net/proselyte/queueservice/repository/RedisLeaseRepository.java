@@ -0,0 +1,97 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Аренды в Redis с фенсинг-токенами. Значение ключа аренды - {@code владелец:токен},
+ * токен выдается INCR отдельного счетчика и растет при каждой смене владельца.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class RedisLeaseRepository {
+
+    private static final String FENCING_KEY_SUFFIX = ":fencing";
+
+    /**
+     * KEYS[1] - ключ аренды, KEYS[2] - счетчик токенов; ARGV[1] - владелец, ARGV[2] - TTL в миллисекундах.
+     * Владелец продлевает аренду и получает свой текущий токен; свободная аренда захватывается с новым токеном.
+     * Возвращает токен или 0, если аренда принадлежит другому владельцу.
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+            local prefix = ARGV[1] .. ':'
+            local current = redis.call('GET', KEYS[1])
+            if current then
+                if string.sub(current, 1, #prefix) == prefix then
+                    redis.call('PEXPIRE', KEYS[1], ARGV[2])
+                    return tonumber(string.sub(current, #prefix + 1))
+                end
+                return 0
+            end
+            local token = redis.call('INCR', KEYS[2])
+            redis.call('SET', KEYS[1], prefix .. token, 'PX', ARGV[2])
+            return token
+            """, Long.class);
+
+    /**
+     * KEYS[1] - ключ аренды; ARGV[1] - владелец. Удаляет ключ, только если аренда принадлежит владельцу.
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            local prefix = ARGV[1] .. ':'
+            local current = redis.call('GET', KEYS[1])
+            if current and string.sub(current, 1, #prefix) == prefix then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Захватывает или продлевает аренду.
+     *
+     * @return фенсинг-токен, или 0 если аренда принадлежит другому владельцу или Redis недоступен
+     */
+    public long tryAcquire(String key, String owner, Duration ttl) {
+        try {
+            Long token = redisTemplate.execute(
+                    ACQUIRE_SCRIPT,
+                    List.of(key, key + FENCING_KEY_SUFFIX),
+                    owner,
+                    String.valueOf(ttl.toMillis())
+            );
+            return token != null ? token : 0L;
+        } catch (DataAccessException | CancellationException e) {
+            log.warn("Failed to acquire lease {} (likely during shutdown): {}", key, e.getMessage());
+            return 0L;
+        }
+    }
+
+    /**
+     * Освобождает аренду, если она принадлежит владельцу.
+     */
+    public void release(String key, String owner) {
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(key), owner);
+        } catch (DataAccessException | CancellationException e) {
+            log.debug("Failed to release lease {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * @return значение ключа аренды, с которым работают claim-скрипты очереди
+     */
+    public static LeaseFence fence(String key, String owner, long token) {
+        return new LeaseFence(key, owner + ":" + token);
+    }
+}
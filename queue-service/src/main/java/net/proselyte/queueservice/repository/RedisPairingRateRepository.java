@@ -0,0 +1,81 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Темп подбора, общий для всех реплик: количество сматченных игроков по секундным счетчикам
+ * {@code queue:paired:{epochSecond}}. Счетчик живет два окна, поэтому чтение окна не требует очистки.
+ * В отличие от {@code queue_matchmaking_pairing_rate} (темп своей реплики), видит матчи, созданные лидером,
+ * с любой реплики.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class RedisPairingRateRepository {
+
+    public static final int WINDOW_SECONDS = 60;
+
+    private static final String KEY_PREFIX = "queue:paired:";
+
+    /**
+     * KEYS[1] - счетчик секунды; ARGV[1] - сматченные игроки, ARGV[2] - TTL счетчика в секундах.
+     */
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>("""
+            local count = redis.call('INCRBY', KEYS[1], ARGV[1])
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            return count
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Учитывает сматченных игроков. Ошибка Redis не должна ломать матчмейкинг, поэтому только логируется.
+     */
+    public void record(long nowMillis, int players) {
+        if (players <= 0) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RECORD_SCRIPT, List.of(key(nowMillis / 1000)),
+                    String.valueOf(players), String.valueOf(2 * WINDOW_SECONDS));
+        } catch (DataAccessException e) {
+            log.debug("Failed to record pairing rate: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return среднее количество игроков, сматченных всеми репликами за секунду, за последние
+     *         {@link #WINDOW_SECONDS} секунд (текущая неполная секунда не учитывается)
+     */
+    public double pairedPlayersPerSecond(long nowMillis) {
+        long current = nowMillis / 1000;
+        List<String> keys = new ArrayList<>(WINDOW_SECONDS);
+        for (int i = 1; i <= WINDOW_SECONDS; i++) {
+            keys.add(key(current - i));
+        }
+        List<String> counts = redisTemplate.opsForValue().multiGet(keys);
+        if (counts == null) {
+            return 0;
+        }
+        long total = 0;
+        for (String count : counts) {
+            if (count != null) {
+                total += Long.parseLong(count);
+            }
+        }
+        return (double) total / WINDOW_SECONDS;
+    }
+
+    private static String key(long epochSecond) {
+        return KEY_PREFIX + epochSecond;
+    }
+}
@@ -0,0 +1,153 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Присутствие игроков в Sorted Set {@code queue:presence}: член - игрок, score - время последнего heartbeat.
+ * Heartbeat пишет реплика, у которой открыта WebSocket-подписка игрока; если реплика упала
+ * или вкладка закрыта, запись просто перестает обновляться и устаревает.
+ */
+@Slf4j
+@Repository
+public class RedisPresenceRepository {
+
+    private static final String QUEUE_KEY = "queue:waiting";
+    private static final String RATING_KEY = "queue:rating";
+    private static final String PRESENCE_KEY = "queue:presence";
+    private static final String CARDS_KEY = "queue:cards";
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - присутствие, KEYS[4] - карточки игроков;
+     * ARGV[1] - вошли в очередь не позже, ARGV[2] - heartbeat не раньше, ARGV[3] - смещение, ARGV[4] - размер пачки.
+     * Проверяет пачку игроков, вошедших до ARGV[1], и удаляет тех, у кого нет свежего heartbeat.
+     * Heartbeat ищется в обоих форматах игрока: реплика пишет его в своем формате, а в очереди игрок
+     * может лежать в другом, пока не закончена миграция (см. {@link QueueMemberCodec}).
+     * Возвращает [просмотрено, удалено].
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SWEEP_SCRIPT = new DefaultRedisScript<>("""
+            local function alternate(member)
+                if #member == 16 then
+                    local hex = string.gsub(member, '.', function(c) return string.format('%02x', string.byte(c)) end)
+                    return string.sub(hex, 1, 8) .. '-' .. string.sub(hex, 9, 12) .. '-' .. string.sub(hex, 13, 16)
+                            .. '-' .. string.sub(hex, 17, 20) .. '-' .. string.sub(hex, 21, 32)
+                end
+                local hex = string.gsub(member, '-', '')
+                return (string.gsub(hex, '..', function(h) return string.char(tonumber(h, 16)) end))
+            end
+
+            local members = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', ARGV[3], ARGV[4])
+            local removed = 0
+            for _, member in ipairs(members) do
+                local other = alternate(member)
+                local seen = math.max(tonumber(redis.call('ZSCORE', KEYS[3], member) or '-1'),
+                        tonumber(redis.call('ZSCORE', KEYS[3], other) or '-1'))
+                if seen < tonumber(ARGV[2]) then
+                    redis.call('ZREM', KEYS[1], member)
+                    redis.call('ZREM', KEYS[2], member)
+                    redis.call('ZREM', KEYS[3], member, other)
+                    redis.call('HDEL', KEYS[4], member)
+                    removed = removed + 1
+                end
+            end
+            return {#members, removed}
+            """, List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final QueueMemberCodec memberCodec;
+
+    public RedisPresenceRepository(@Qualifier("queueRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                   QueueMemberCodec memberCodec) {
+        this.redisTemplate = redisTemplate;
+        this.memberCodec = memberCodec;
+    }
+
+    /**
+     * Отмечает игроков присутствующими на момент {@code now} одной командой ZADD.
+     */
+    public void heartbeat(Collection<UUID> userIds, long now) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(userIds.size());
+        for (UUID userId : userIds) {
+            tuples.add(new DefaultTypedTuple<>(memberCodec.encode(userId), (double) now));
+        }
+        redisTemplate.opsForZSet().add(PRESENCE_KEY, tuples);
+    }
+
+    /**
+     * Возвращает игроков без heartbeat начиная с {@code seenAfter}, одной командой ZMSCORE.
+     * Heartbeat ищется в обоих форматах игрока: его могла записать реплика с другой настройкой формата.
+     */
+    public Set<UUID> findAbsent(List<UUID> userIds, long seenAfter) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        Object[] members = userIds.stream()
+                .flatMap(userId -> Stream.of(memberCodec.encode(userId), memberCodec.alternate(userId)))
+                .toArray();
+        List<Double> seen = redisTemplate.opsForZSet().score(PRESENCE_KEY, members);
+        Set<UUID> absent = new HashSet<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Double lastSeen = seen != null ? latest(seen.get(2 * i), seen.get(2 * i + 1)) : null;
+            if (lastSeen == null || lastSeen < seenAfter) {
+                absent.add(userIds.get(i));
+            }
+        }
+        return absent;
+    }
+
+    private static Double latest(Double first, Double second) {
+        if (first == null) {
+            return second;
+        }
+        return second != null ? Math.max(first, second) : first;
+    }
+
+    /**
+     * Удаляет из очереди игроков, вошедших не позже {@code joinedBefore} и не подававших heartbeat
+     * начиная с {@code seenAfter}. Очередь проверяется пачками по {@code batchSize}, каждая пачка - один скрипт.
+     *
+     * @return количество удаленных игроков
+     */
+    public long evictAbsent(long joinedBefore, long seenAfter, int batchSize) {
+        long evicted = 0;
+        long offset = 0;
+        while (true) {
+            @SuppressWarnings("unchecked")
+            List<Long> result = redisTemplate.execute(SWEEP_SCRIPT,
+                    List.of(QUEUE_KEY, RATING_KEY, PRESENCE_KEY, CARDS_KEY),
+                    String.valueOf(joinedBefore), String.valueOf(seenAfter),
+                    String.valueOf(offset), String.valueOf(batchSize));
+            if (result == null || result.size() < 2) {
+                break;
+            }
+            long scanned = result.get(0);
+            long removed = result.get(1);
+            evicted += removed;
+            // Удаленные игроки сдвигают оставшихся к началу диапазона
+            offset += scanned - removed;
+            if (scanned < batchSize) {
+                break;
+            }
+        }
+        // Записи присутствия игроков, давно покинувших очередь
+        redisTemplate.opsForZSet().removeRangeByScore(PRESENCE_KEY, Double.NEGATIVE_INFINITY, seenAfter - 1);
+        return evicted;
+    }
+}
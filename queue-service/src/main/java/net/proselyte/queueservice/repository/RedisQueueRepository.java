@@ -1,28 +1,369 @@
 package net.proselyte.queueservice.repository;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.DefaultTypedTuple;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для управления очередью в Redis с использованием Sorted Set.
  * Использует timestamp в качестве score для поддержания хронологического порядка игроков.
+ * Рейтинги игроков хранятся во втором Sorted Set ({@code queue:rating}), который изменяется
+ * только вместе с очередью в одних и тех же скриптах.
  */
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class RedisQueueRepository {
 
     private static final String QUEUE_KEY = "queue:waiting";
+    private static final String RATING_KEY = "queue:rating";
+    private static final String CARDS_KEY = "queue:cards";
+    /**
+     * Отметки выхода из очереди: игрок -> время выхода. Игрок, вышедший, пока он был забран в claim,
+     * не возвращается в очередь при откате claim'а. Отметка нужна не дольше жизни claim'а.
+     */
+    private static final String LEFT_KEY = "queue:left";
+    /**
+     * Карточки без игрока в очереди: игрок -> когда это впервые замечено. Карточка игрока, забранного в claim,
+     * нужна, пока claim жив; если реплика упала, не завершив claim, карточку удаляет {@link #evictOrphanCards}.
+     */
+    private static final String CARD_ORPHANS_KEY = "queue:cards:orphans";
+    private static final String CLAIM_KEY_PREFIX = "queue:claim:";
+    private static final String CLAIM_RATING_KEY_SUFFIX = ":rating";
+
+    /**
+     * Время жизни pending-ключа claim'а. Если реплика упала, не завершив claim,
+     * ключ истекает и игроки выпадают из очереди (клиент увидит 404 в /status и перезайдет).
+     */
+    private static final long CLAIM_TTL_SECONDS = 60;
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - карточки игроков, KEYS[4] - отметки выхода,
+     * KEYS[5] - карточки без игрока в очереди; ARGV[1] - timestamp, ARGV[2] - игрок, ARGV[3] - рейтинг или пустая строка, ARGV[4] - карточка или пустая строка,
+     * ARGV[5] - игрок в другом формате (см. {@link QueueMemberCodec#alternate(UUID)}).
+     * ZADD NX не трогает score игрока, который уже в очереди, поэтому повторный вход не сбрасывает время ожидания;
+     * игрок, записанный в другом формате, тоже считается уже стоящим в очереди.
+     * Новый вход снимает отметку выхода в обоих форматах.
+     * Возвращает ['1', timestamp], если игрок добавлен, или ['0', исходный timestamp], если уже был в очереди.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> JOIN_SCRIPT = new DefaultRedisScript<>("""
+            local existing = redis.call('ZSCORE', KEYS[1], ARGV[5])
+            if existing then
+                return {'0', existing}
+            end
+            if redis.call('ZADD', KEYS[1], 'NX', ARGV[1], ARGV[2]) == 0 then
+                return {'0', redis.call('ZSCORE', KEYS[1], ARGV[2])}
+            end
+            redis.call('ZREM', KEYS[4], ARGV[2], ARGV[5])
+            redis.call('ZREM', KEYS[5], ARGV[2])
+            if ARGV[3] ~= '' then
+                redis.call('ZADD', KEYS[2], ARGV[3], ARGV[2])
+            else
+                redis.call('ZREM', KEYS[2], ARGV[2])
+            end
+            if ARGV[4] ~= '' then
+                redis.call('HSET', KEYS[3], ARGV[2], ARGV[4])
+            else
+                redis.call('HDEL', KEYS[3], ARGV[2])
+            end
+            return {'1', ARGV[1]}
+            """, List.class);
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - карточки игроков;
+     * ARGV - игроки для удаления (каждый в обоих форматах).
+     * Возвращает количество игроков, удаленных из очереди.
+     */
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+            local removed = redis.call('ZREM', KEYS[1], unpack(ARGV))
+            redis.call('ZREM', KEYS[2], unpack(ARGV))
+            redis.call('HDEL', KEYS[3], unpack(ARGV))
+            return removed
+            """, Long.class);
+
+    /**
+     * Выход игрока: то же, что {@link #REMOVE_SCRIPT}, плюс отметка выхода в KEYS[4], которую проверяет
+     * {@link #FINISH_CLAIM_SCRIPT}. Отметки старше ARGV[3] удаляются.
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - карточки игроков, KEYS[4] - отметки выхода;
+     * ARGV[1] - игрок, ARGV[2] - текущее время в миллисекундах, ARGV[3] - граница устаревших отметок,
+     * ARGV[4] - игрок в другом формате. Игрок удаляется и отмечается в обоих форматах.
+     * Возвращает 1, если игрок был в очереди, иначе 0.
+     */
+    private static final RedisScript<Long> LEAVE_SCRIPT = new DefaultRedisScript<>("""
+            local removed = redis.call('ZREM', KEYS[1], ARGV[1], ARGV[4])
+            redis.call('ZREM', KEYS[2], ARGV[1], ARGV[4])
+            redis.call('HDEL', KEYS[3], ARGV[1], ARGV[4])
+            redis.call('ZADD', KEYS[4], ARGV[2], ARGV[1], ARGV[2], ARGV[4])
+            redis.call('ZREMRANGEBYSCORE', KEYS[4], '-inf', '(' .. ARGV[3])
+            return removed
+            """, Long.class);
+
+    /**
+     * KEYS[1] - очередь; ARGV - игрок в текущем и в другом формате.
+     * Возвращает [score, rank] или пустой список, если игрока нет в очереди.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ENTRY_SCRIPT = new DefaultRedisScript<>("""
+            for _, member in ipairs(ARGV) do
+                local score = redis.call('ZSCORE', KEYS[1], member)
+                if score then
+                    return {score, tostring(redis.call('ZRANK', KEYS[1], member))}
+                end
+            end
+            return {}
+            """, List.class);
+
+    /**
+     * Проверка фенсинг-токена в начале claim-скрипта: если передан KEYS[5] (ключ аренды лидера),
+     * его значение должно совпадать с последним аргументом, иначе игроки не забираются.
+     */
+    private static final String FENCE_CHECK = """
+            if #KEYS > 4 and redis.call('GET', KEYS[5]) ~= ARGV[#ARGV] then
+                return {}
+            end
+            """;
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - pending-ключ claim'а, KEYS[4] - рейтинги claim'а,
+     * опционально KEYS[5] - ключ аренды лидера;
+     * ARGV[1] - TTL claim'а в секундах, ARGV[2] - сколько игроков забрать, последний ARGV - значение аренды.
+     * Возвращает [member1, score1, rating1, ...] (рейтинг - пустая строка, если неизвестен)
+     * или пустой список, если игроков меньше двух.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_OLDEST_SCRIPT = new DefaultRedisScript<>(FENCE_CHECK + """
+            if redis.call('ZCARD', KEYS[1]) < 2 then
+                return {}
+            end
+            local popped = redis.call('ZPOPMIN', KEYS[1], ARGV[2])
+            local result = {}
+            for i = 1, #popped, 2 do
+                local member = popped[i]
+                redis.call('ZADD', KEYS[3], popped[i + 1], member)
+                local rating = redis.call('ZSCORE', KEYS[2], member)
+                if rating then
+                    redis.call('ZREM', KEYS[2], member)
+                    redis.call('ZADD', KEYS[4], rating, member)
+                else
+                    rating = ''
+                end
+                table.insert(result, member)
+                table.insert(result, popped[i + 1])
+                table.insert(result, rating)
+            end
+            redis.call('EXPIRE', KEYS[3], ARGV[1])
+            if redis.call('EXISTS', KEYS[4]) == 1 then
+                redis.call('EXPIRE', KEYS[4], ARGV[1])
+            end
+            return result
+            """, List.class);
+
+    /**
+     * Подбор пары с учетом рейтинга. Якоря (игроки в порядке входа в очередь) просматриваются страницами
+     * по ARGV[6], пока не найдется пара, но не больше ARGV[8] якорей:
+     * <ul>
+     *     <li>якорь без рейтинга получает самого старого из остальных игроков (FIFO);</li>
+     *     <li>для якоря с рейтингом окно {@code min(maxGap, baseGap + gapPerSecond * ожидание)}
+     *     просматривается двумя ZRANGEBYSCORE с LIMIT вверх и вниз от его рейтинга, выбирается ближайший.</li>
+     * </ul>
+     * Старые игроки, для которых пока нет соперника в окне, не блокируют подбор пар среди следующих за ними.
+     * Скрипт читает O(maxAnchorScan * candidateLimit) элементов независимо от размера очереди.
+     * <p>
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - pending-ключ claim'а, KEYS[4] - рейтинги claim'а,
+     * опционально KEYS[5] - ключ аренды лидера;
+     * ARGV[1] - TTL claim'а в секундах, ARGV[2] - текущее время в миллисекундах, ARGV[3] - baseGap,
+     * ARGV[4] - gapPerSecond, ARGV[5] - maxGap, ARGV[6] - anchorScan, ARGV[7] - candidateLimit,
+     * ARGV[8] - maxAnchorScan, ARGV[9] - значение аренды (если передан KEYS[5]).
+     * Возвращает [member1, score1, member2, score2] в порядке входа в очередь или пустой список.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_CLOSEST_PAIR_SCRIPT = new DefaultRedisScript<>(FENCE_CHECK + """
+            if redis.call('ZCARD', KEYS[1]) < 2 then
+                return {}
+            end
+            local now = tonumber(ARGV[2])
+            local baseGap = tonumber(ARGV[3])
+            local gapPerSecond = tonumber(ARGV[4])
+            local maxGap = tonumber(ARGV[5])
+            local limit = tonumber(ARGV[7])
+
+            local function closest(anchor, rating, candidates)
+                for j = 1, #candidates, 2 do
+                    local candidate = candidates[j]
+                    if candidate ~= anchor then
+                        if redis.call('ZSCORE', KEYS[1], candidate) then
+                            return candidate, math.abs(tonumber(candidates[j + 1]) - rating)
+                        end
+                        -- рейтинг без игрока в очереди: чистим, чтобы не находить его повторно
+                        redis.call('ZREM', KEYS[2], candidate)
+                    end
+                end
+                return nil, nil
+            end
+
+            local page = tonumber(ARGV[6])
+            local maxAnchors = tonumber(ARGV[8])
+            local offset = 0
+            while offset < maxAnchors do
+                local anchors = redis.call('ZRANGE', KEYS[1], offset,
+                        math.min(offset + page, maxAnchors) - 1, 'WITHSCORES')
+                if #anchors == 0 then
+                    break
+                end
+                for i = 1, #anchors, 2 do
+                    local anchor = anchors[i]
+                    local partner = nil
+                    local rating = redis.call('ZSCORE', KEYS[2], anchor)
+                    if not rating then
+                        local head = redis.call('ZRANGE', KEYS[1], 0, 1)
+                        if head[1] == anchor then
+                            partner = head[2]
+                        else
+                            partner = head[1]
+                        end
+                    else
+                        rating = tonumber(rating)
+                        local waitedSeconds = math.max(0, now - tonumber(anchors[i + 1])) / 1000
+                        local gap = math.min(maxGap, baseGap + gapPerSecond * waitedSeconds)
+                        local above, aboveDiff = closest(anchor, rating, redis.call('ZRANGEBYSCORE',
+                                KEYS[2], rating, rating + gap, 'WITHSCORES', 'LIMIT', 0, limit))
+                        local below, belowDiff = closest(anchor, rating, redis.call('ZREVRANGEBYSCORE',
+                                KEYS[2], rating, rating - gap, 'WITHSCORES', 'LIMIT', 0, limit))
+                        if above and (not below or aboveDiff <= belowDiff) then
+                            partner = above
+                        else
+                            partner = below
+                        end
+                    end
+
+                    if partner then
+                        local anchorScore = anchors[i + 1]
+                        local partnerScore = redis.call('ZSCORE', KEYS[1], partner)
+                        redis.call('ZREM', KEYS[1], anchor, partner)
+                        redis.call('ZADD', KEYS[3], anchorScore, anchor, partnerScore, partner)
+                        redis.call('EXPIRE', KEYS[3], ARGV[1])
+                        for _, member in ipairs({anchor, partner}) do
+                            local memberRating = redis.call('ZSCORE', KEYS[2], member)
+                            if memberRating then
+                                redis.call('ZREM', KEYS[2], member)
+                                redis.call('ZADD', KEYS[4], memberRating, member)
+                                redis.call('EXPIRE', KEYS[4], ARGV[1])
+                            end
+                        end
+                        if tonumber(partnerScore) < tonumber(anchorScore) then
+                            return {partner, partnerScore, anchor, anchorScore}
+                        end
+                        return {anchor, anchorScore, partner, partnerScore}
+                    end
+                end
+                offset = offset + page
+            end
+            return {}
+            """, List.class);
+
+    /**
+     * KEYS[1] - очередь, KEYS[2] - рейтинги, KEYS[3] - pending-ключ claim'а, KEYS[4] - рейтинги claim'а,
+     * KEYS[5] - карточки игроков, KEYS[6] - отметки выхода;
+     * ARGV - пары (игрок в текущем формате, игрок в другом формате) для возврата в очередь.
+     * Игрок возвращается в том формате, в котором лежит в claim'е, с исходным score и рейтингом из claim'а.
+     * Не возвращаются игрок, снова вошедший в очередь (в любом формате), и игрок с отметкой выхода
+     * (вышел, пока был в claim'е).
+     * Карточки остальных игроков claim'а удаляются, если игрок не вошел в очередь заново.
+     * Возвращает количество возвращенных игроков.
+     */
+    private static final RedisScript<Long> FINISH_CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local restored = 0
+            local function present(key, i)
+                return redis.call('ZSCORE', key, ARGV[i]) or redis.call('ZSCORE', key, ARGV[i + 1])
+            end
+            for i = 1, #ARGV, 2 do
+                local member = ARGV[i]
+                local score = redis.call('ZSCORE', KEYS[3], member)
+                if not score then
+                    member = ARGV[i + 1]
+                    score = redis.call('ZSCORE', KEYS[3], member)
+                end
+                if score and not present(KEYS[6], i) and not present(KEYS[1], i) then
+                    redis.call('ZADD', KEYS[1], score, member)
+                    restored = restored + 1
+                    local rating = redis.call('ZSCORE', KEYS[4], member)
+                    if rating then
+                        redis.call('ZADD', KEYS[2], rating, member)
+                    end
+                end
+            end
+            for _, member in ipairs(redis.call('ZRANGE', KEYS[3], 0, -1)) do
+                if not redis.call('ZSCORE', KEYS[1], member) then
+                    redis.call('HDEL', KEYS[5], member)
+                end
+            end
+            redis.call('DEL', KEYS[3], KEYS[4])
+            return restored
+            """, Long.class);
+
+    /**
+     * Чистка карточек, оставшихся от claim'ов, которые истекли не завершившись.
+     * KEYS[1] - карточки игроков, KEYS[2] - очередь, KEYS[3] - карточки без игрока в очереди;
+     * ARGV[1] - курсор HSCAN, ARGV[2] - размер пачки, ARGV[3] - текущее время в миллисекундах,
+     * ARGV[4] - карточки, замеченные без игрока раньше этого времени, удаляются.
+     * Карточка игрока из живого claim'а переживает первую проверку: claim успевает завершиться или истечь.
+     * Возвращает [следующий курсор, удалено].
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> EVICT_ORPHAN_CARDS_SCRIPT = new DefaultRedisScript<>("""
+            local scan = redis.call('HSCAN', KEYS[1], ARGV[1], 'COUNT', ARGV[2])
+            local fields = scan[2]
+            local removed = 0
+            for i = 1, #fields, 2 do
+                local member = fields[i]
+                if redis.call('ZSCORE', KEYS[2], member) then
+                    redis.call('ZREM', KEYS[3], member)
+                else
+                    local since = redis.call('ZSCORE', KEYS[3], member)
+                    if not since then
+                        redis.call('ZADD', KEYS[3], ARGV[3], member)
+                    elseif tonumber(since) < tonumber(ARGV[4]) then
+                        redis.call('HDEL', KEYS[1], member)
+                        redis.call('ZREM', KEYS[3], member)
+                        removed = removed + 1
+                    end
+                end
+            end
+            return {scan[1], tostring(removed)}
+            """, List.class);
 
     private final RedisTemplate<String, String> redisTemplate;
+    private final QueueMemberCodec memberCodec;
+
+    /**
+     * @param redisTemplate шаблон ключей очереди (ISO-8859-1, см. {@link QueueMemberCodec})
+     * @param memberCodec   формат хранения игроков в Sorted Set'ах
+     */
+    public RedisQueueRepository(@Qualifier("queueRedisTemplate") RedisTemplate<String, String> redisTemplate,
+                                QueueMemberCodec memberCodec) {
+        this.redisTemplate = redisTemplate;
+        this.memberCodec = memberCodec;
+    }
 
     /**
      * Добавляет пользователя в очередь с текущим timestamp в качестве score.
@@ -32,12 +373,20 @@ public class RedisQueueRepository {
      * @return true если пользователь был добавлен, false если уже существует
      */
     public boolean addToQueue(UUID userId, long timestamp) {
+        return addToQueue(userId, timestamp, null);
+    }
+
+    /**
+     * Добавляет пользователя в очередь и, если рейтинг известен, в Sorted Set рейтингов.
+     *
+     * @param userId идентификатор пользователя для добавления
+     * @param timestamp timestamp (score) в миллисекундах
+     * @param rating рейтинг игрока, или null если неизвестен (игрок подбирается по FIFO)
+     * @return true если пользователь был добавлен, false если уже существует
+     */
+    public boolean addToQueue(UUID userId, long timestamp, Double rating) {
         try {
-            String userIdStr = userId.toString();
-            Boolean added = redisTemplate.opsForZSet().add(QUEUE_KEY, userIdStr, timestamp);
-            boolean result = Boolean.TRUE.equals(added);
-            log.debug("User {} {} to queue with timestamp {}", userId, result ? "added" : "already exists", timestamp);
-            return result;
+            return joinQueue(userId, timestamp, rating).added();
         } catch (DataAccessException | CancellationException e) {
             log.warn("Failed to add user {} to queue (likely during shutdown): {}", userId, e.getMessage());
             return false;
@@ -45,15 +394,60 @@ public class RedisQueueRepository {
     }
 
     /**
-     * Удаляет пользователя из очереди.
+     * Атомарно добавляет пользователя в очередь одним обращением к Redis.
+     * Если пользователь уже в очереди, его время входа и рейтинг не меняются.
+     *
+     * @param userId идентификатор пользователя для добавления
+     * @param timestamp timestamp (score) в миллисекундах
+     * @param rating рейтинг игрока, или null если неизвестен (игрок подбирается по FIFO)
+     * @return добавлен ли пользователь и его время входа в очередь
+     */
+    public QueueJoin joinQueue(UUID userId, long timestamp, Double rating) {
+        return joinQueue(userId, timestamp, rating, null);
+    }
+
+    /**
+     * Атомарно добавляет пользователя в очередь вместе с карточкой игрока.
+     * Карточка живет столько же, сколько запись в очереди: удаляется при выходе, матче или удалении игрока,
+     * а если claim игрока истек, не завершившись, - чисткой {@link #evictOrphanCards}.
+     *
+     * @param nickname никнейм для карточки, или null чтобы не сохранять карточку
+     */
+    public QueueJoin joinQueue(UUID userId, long timestamp, Double rating, String nickname) {
+        @SuppressWarnings("unchecked")
+        List<String> result = redisTemplate.execute(
+                JOIN_SCRIPT,
+                List.of(QUEUE_KEY, RATING_KEY, CARDS_KEY, LEFT_KEY, CARD_ORPHANS_KEY),
+                String.valueOf(timestamp),
+                memberCodec.encode(userId),
+                rating != null ? String.valueOf(rating) : "",
+                nickname != null ? new PlayerCard(nickname, rating, timestamp).encode() : "",
+                memberCodec.alternate(userId)
+        );
+        if (result == null || result.size() < 2) {
+            throw new IllegalStateException("Unexpected join script result for user " + userId);
+        }
+        QueueJoin join = new QueueJoin("1".equals(result.get(0)), (long) Double.parseDouble(result.get(1)));
+        log.debug("User {} {} to queue with timestamp {} and rating {}",
+                userId, join.added() ? "added" : "already exists", join.joinedAt(), rating);
+        return join;
+    }
+
+    /**
+     * Удаляет пользователя из очереди по его запросу. Если игрок сейчас забран в claim,
+     * отметка выхода не даст откату claim'а вернуть его в очередь.
      *
      * @param userId идентификатор пользователя для удаления
      * @return true если пользователь был удален, false если не найден
      */
     public boolean removeFromQueue(UUID userId) {
         try {
-            String userIdStr = userId.toString();
-            Long removed = redisTemplate.opsForZSet().remove(QUEUE_KEY, userIdStr);
+            long now = System.currentTimeMillis();
+            Long removed = redisTemplate.execute(LEAVE_SCRIPT, List.of(QUEUE_KEY, RATING_KEY, CARDS_KEY, LEFT_KEY),
+                    memberCodec.encode(userId),
+                    String.valueOf(now),
+                    String.valueOf(now - CLAIM_TTL_SECONDS * 1000),
+                    memberCodec.alternate(userId));
             boolean result = removed != null && removed > 0;
             log.debug("User {} {} from queue", userId, result ? "removed" : "not found");
             return result;
@@ -70,9 +464,7 @@ public class RedisQueueRepository {
      * @return true если пользователь в очереди, false в противном случае
      */
     public boolean isInQueue(UUID userId) {
-        String userIdStr = userId.toString();
-        Double score = redisTemplate.opsForZSet().score(QUEUE_KEY, userIdStr);
-        boolean result = score != null;
+        boolean result = score(QUEUE_KEY, userId) != null;
         log.debug("User {} {} in queue", userId, result ? "is" : "is not");
         return result;
     }
@@ -84,8 +476,7 @@ public class RedisQueueRepository {
      * @return timestamp в миллисекундах, или null если пользователь не в очереди
      */
     public Long getJoinTimestamp(UUID userId) {
-        String userIdStr = userId.toString();
-        Double score = redisTemplate.opsForZSet().score(QUEUE_KEY, userIdStr);
+        Double score = score(QUEUE_KEY, userId);
         return score != null ? score.longValue() : null;
     }
 
@@ -97,14 +488,30 @@ public class RedisQueueRepository {
      * @return позиция (ранг), или null если пользователь не в очереди
      */
     public Long getPosition(UUID userId) {
-        String userIdStr = userId.toString();
-        Long rank = redisTemplate.opsForZSet().rank(QUEUE_KEY, userIdStr);
+        Long rank = getQueueEntry(userId).map(QueueEntry::rank).orElse(null);
         if (rank != null) {
             log.debug("User {} position in queue: {}", userId, rank);
         }
         return rank;
     }
 
+    /**
+     * Получает время входа и позицию пользователя в очереди за одно обращение к Redis
+     * вместо отдельных {@link #isInQueue}, {@link #getJoinTimestamp} и {@link #getPosition}.
+     *
+     * @param userId идентификатор пользователя
+     * @return время входа и позиция, или пустой Optional если пользователь не в очереди
+     */
+    public Optional<QueueEntry> getQueueEntry(UUID userId) {
+        @SuppressWarnings("unchecked")
+        List<String> entry = redisTemplate.execute(ENTRY_SCRIPT, List.of(QUEUE_KEY),
+                memberCodec.encode(userId), memberCodec.alternate(userId));
+        if (entry == null || entry.size() < 2) {
+            return Optional.empty();
+        }
+        return Optional.of(new QueueEntry((long) Double.parseDouble(entry.get(0)), Long.parseLong(entry.get(1))));
+    }
+
     /**
      * Получает размер очереди.
      *
@@ -132,7 +539,7 @@ public class RedisQueueRepository {
         try {
             Set<String> players = redisTemplate.opsForZSet().range(QUEUE_KEY, 0, count - 1);
             log.debug("Retrieved {} oldest players from queue", players != null ? players.size() : 0);
-            return players != null ? players : Set.of();
+            return decodeMembers(players);
         } catch (DataAccessException | CancellationException e) {
             log.debug("Failed to get oldest players (likely during shutdown): {}", e.getMessage());
             return Set.of();
@@ -150,7 +557,8 @@ public class RedisQueueRepository {
             return 0L;
         }
         try {
-            Long removed = redisTemplate.opsForZSet().remove(QUEUE_KEY, userIds.toArray(new Object[0]));
+            Long removed = redisTemplate.execute(REMOVE_SCRIPT, List.of(QUEUE_KEY, RATING_KEY, CARDS_KEY),
+                    userIds.stream().map(UUID::fromString).flatMap(this::members).toArray());
             long result = removed != null ? removed : 0L;
             log.debug("Removed {} users from queue", result);
             return result;
@@ -170,13 +578,283 @@ public class RedisQueueRepository {
     public Set<ZSetOperations.TypedTuple<String>> getPlayersWithScores(long start, long end) {
         Set<ZSetOperations.TypedTuple<String>> players = redisTemplate.opsForZSet()
                 .rangeWithScores(QUEUE_KEY, start, end);
-        return players != null ? players : Set.of();
+        if (players == null) {
+            return Set.of();
+        }
+        Set<ZSetOperations.TypedTuple<String>> decoded = new LinkedHashSet<>(players.size());
+        for (ZSetOperations.TypedTuple<String> player : players) {
+            decoded.add(new DefaultTypedTuple<>(memberCodec.decodeToText(player.getValue()), player.getScore()));
+        }
+        return decoded;
+    }
+
+    /**
+     * Получает рейтинг игрока, стоящего в очереди.
+     *
+     * @param userId идентификатор пользователя
+     * @return рейтинг, или null если игрок не в очереди или его рейтинг неизвестен
+     */
+    public Double getRating(UUID userId) {
+        return score(RATING_KEY, userId);
+    }
+
+    /**
+     * Читает карточки игроков одной командой HMGET (каждый игрок - в обоих форматах).
+     *
+     * @return карточки найденных игроков; игроки без карточки (вошли до ее появления) в результат не попадают
+     */
+    public Map<UUID, PlayerCard> getPlayerCards(List<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        List<Object> members = userIds.stream().<Object>flatMap(this::members).toList();
+        List<Object> stored = redisTemplate.opsForHash().multiGet(CARDS_KEY, members);
+        Map<UUID, PlayerCard> cards = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Object card = stored != null ? firstNonNull(stored.get(2 * i), stored.get(2 * i + 1)) : null;
+            if (card == null) {
+                continue;
+            }
+            try {
+                cards.put(userIds.get(i), PlayerCard.decode((String) card));
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring malformed card of player {}: {}", userIds.get(i), e.getMessage());
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * Удаляет карточки игроков, которых нет в очереди дольше жизни claim'а: их claim истек, не завершившись
+     * (реплика упала между claim'ом и созданием матча). Карточки проверяются пачками по {@code batchSize}.
+     *
+     * @return количество удаленных карточек
+     */
+    public long evictOrphanCards(long now, int batchSize) {
+        long evicted = 0;
+        String cursor = "0";
+        do {
+            @SuppressWarnings("unchecked")
+            List<String> result = redisTemplate.execute(EVICT_ORPHAN_CARDS_SCRIPT,
+                    List.of(CARDS_KEY, QUEUE_KEY, CARD_ORPHANS_KEY),
+                    cursor, String.valueOf(batchSize), String.valueOf(now),
+                    String.valueOf(now - CLAIM_TTL_SECONDS * 1000));
+            if (result == null || result.size() < 2) {
+                break;
+            }
+            cursor = result.get(0);
+            evicted += Long.parseLong(result.get(1));
+        } while (!"0".equals(cursor));
+        // Отметки карточек, удаленных при выходе или матче
+        redisTemplate.opsForZSet().removeRangeByScore(CARD_ORPHANS_KEY, Double.NEGATIVE_INFINITY,
+                now - 2 * CLAIM_TTL_SECONDS * 1000);
+        return evicted;
     }
 
     public Set<String> findPlayersByScoreRange(long minScore, long maxScore, int limit) {
         Set<String> players = redisTemplate.opsForZSet()
                 .rangeByScore(QUEUE_KEY, minScore, maxScore, 0, limit);
-        return players != null ? players : Set.of();
+        return decodeMembers(players);
     }
-}
 
+    /**
+     * Атомарно забирает пару игроков с близким рейтингом в pending-ключ claim'а.
+     * Окно допустимой разницы рейтингов расширяется со временем ожидания игрока;
+     * игроки без рейтинга подбираются по FIFO: самый старый из них получает следующего по времени входа.
+     * Один скриптовый вызов, поэтому две реплики не могут забрать одного и того же игрока.
+     *
+     * @param now    текущее время в миллисекундах (от него считается время ожидания)
+     * @param window параметры окна поиска соперника
+     * @return claim с двумя игроками в порядке входа в очередь, или пустой Optional если пара не найдена
+     */
+    public Optional<QueueClaim> claimClosestPair(long now, MatchmakingProperties.Rating window) {
+        return claimClosestPair(now, window, LeaseFence.NONE);
+    }
+
+    /**
+     * То же, что {@link #claimClosestPair(long, MatchmakingProperties.Rating)}, но игроки забираются,
+     * только если аренда лидера все еще принадлежит вызывающей реплике.
+     *
+     * @param fence фенсинг-токен лидера или {@link LeaseFence#NONE}
+     */
+    public Optional<QueueClaim> claimClosestPair(long now, MatchmakingProperties.Rating window, LeaseFence fence) {
+        String claimId = UUID.randomUUID().toString();
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> popped = redisTemplate.execute(
+                    CLAIM_CLOSEST_PAIR_SCRIPT,
+                    claimKeys(claimId, fence),
+                    fencedArgs(fence,
+                            String.valueOf(CLAIM_TTL_SECONDS),
+                            String.valueOf(now),
+                            String.valueOf(window.baseGap()),
+                            String.valueOf(window.gapPerSecond()),
+                            String.valueOf(window.maxGap()),
+                            String.valueOf(window.anchorScan()),
+                            String.valueOf(window.candidateLimit()),
+                            String.valueOf(window.maxAnchorScan()))
+            );
+            return toClaim(claimId, popped);
+        } catch (DataAccessException | CancellationException e) {
+            log.debug("Failed to claim players from queue (likely during shutdown): {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Атомарно забирает до {@code count} самых старых игроков вместе с их рейтингами
+     * для пакетного подбора пар. Игроков, не попавших в пары, нужно вернуть через
+     * {@link #finishClaim(QueueClaim, Collection)}.
+     *
+     * @param count максимальное количество игроков
+     * @return claim с игроками в порядке входа в очередь, или пустой Optional если в очереди меньше двух игроков
+     */
+    public Optional<QueueClaim> claimOldestPlayers(int count) {
+        return claimOldestPlayers(count, LeaseFence.NONE);
+    }
+
+    /**
+     * То же, что {@link #claimOldestPlayers(int)}, но с проверкой аренды лидера.
+     *
+     * @param fence фенсинг-токен лидера или {@link LeaseFence#NONE}
+     */
+    public Optional<QueueClaim> claimOldestPlayers(int count, LeaseFence fence) {
+        String claimId = UUID.randomUUID().toString();
+        try {
+            @SuppressWarnings("unchecked")
+            List<String> popped = redisTemplate.execute(
+                    CLAIM_OLDEST_SCRIPT,
+                    claimKeys(claimId, fence),
+                    fencedArgs(fence, String.valueOf(CLAIM_TTL_SECONDS), String.valueOf(count))
+            );
+            if (popped == null || popped.size() < 6) {
+                return Optional.empty();
+            }
+            List<QueueClaim.Player> players = new ArrayList<>(popped.size() / 3);
+            for (int i = 0; i + 2 < popped.size(); i += 3) {
+                String rating = popped.get(i + 2);
+                players.add(new QueueClaim.Player(
+                        memberCodec.decode(popped.get(i)),
+                        (long) Double.parseDouble(popped.get(i + 1)),
+                        rating.isEmpty() ? null : Double.valueOf(rating)
+                ));
+            }
+            log.debug("Claimed {} players under claim {}", players.size(), claimId);
+            return Optional.of(new QueueClaim(claimId, players));
+        } catch (DataAccessException | CancellationException e) {
+            log.debug("Failed to claim players from queue (likely during shutdown): {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Завершает claim: указанные игроки возвращаются в очередь с исходным временем входа,
+     * остальные считаются обработанными. Pending-ключ удаляется.
+     *
+     * @param claim            claim, полученный из одного из методов claim*
+     * @param playersToRequeue игроки, которых нужно вернуть в очередь
+     * @return количество возвращенных в очередь игроков
+     */
+    public long finishClaim(QueueClaim claim, Collection<UUID> playersToRequeue) {
+        try {
+            Long restored = redisTemplate.execute(
+                    FINISH_CLAIM_SCRIPT,
+                    finishKeys(claim.claimId()),
+                    playersToRequeue.stream().flatMap(this::members).toArray()
+            );
+            long result = restored != null ? restored : 0L;
+            log.debug("Claim {} finished, {} players returned to queue", claim.claimId(), result);
+            return result;
+        } catch (DataAccessException | CancellationException e) {
+            log.warn("Failed to finish claim {} (players {} may expire with the claim): {}",
+                    claim.claimId(), playersToRequeue, e.getMessage());
+            return 0L;
+        }
+    }
+
+    /**
+     * Откатывает claim целиком: все игроки возвращаются в очередь с исходным временем входа.
+     *
+     * @param claim claim, полученный из одного из методов claim*
+     * @return количество возвращенных в очередь игроков
+     */
+    public long rollbackClaim(QueueClaim claim) {
+        return finishClaim(claim, claim.playerIds());
+    }
+
+    private Optional<QueueClaim> toClaim(String claimId, List<String> popped) {
+        if (popped == null || popped.size() < 4) {
+            return Optional.empty();
+        }
+        List<QueueClaim.Player> players = new ArrayList<>(popped.size() / 2);
+        for (int i = 0; i + 1 < popped.size(); i += 2) {
+            players.add(new QueueClaim.Player(
+                    memberCodec.decode(popped.get(i)),
+                    (long) Double.parseDouble(popped.get(i + 1))
+            ));
+        }
+        log.debug("Claimed players {} under claim {}", players, claimId);
+        return Optional.of(new QueueClaim(claimId, players));
+    }
+
+    /**
+     * @return игрок в текущем и в другом формате
+     */
+    private Stream<String> members(UUID userId) {
+        return Stream.of(memberCodec.encode(userId), memberCodec.alternate(userId));
+    }
+
+    /**
+     * Score игрока в Sorted Set'е в любом из форматов одной командой ZMSCORE.
+     */
+    private Double score(String key, UUID userId) {
+        List<Double> scores = redisTemplate.opsForZSet().score(key, members(userId).toArray());
+        return scores != null ? firstNonNull(scores.get(0), scores.get(1)) : null;
+    }
+
+    private static <T> T firstNonNull(T first, T second) {
+        return first != null ? first : second;
+    }
+
+    private Set<String> decodeMembers(Set<String> members) {
+        if (members == null) {
+            return Set.of();
+        }
+        Set<String> decoded = new LinkedHashSet<>(members.size());
+        for (String member : members) {
+            decoded.add(memberCodec.decodeToText(member));
+        }
+        return decoded;
+    }
+
+    private static List<String> claimKeys(String claimId) {
+        String claimKey = CLAIM_KEY_PREFIX + claimId;
+        return List.of(QUEUE_KEY, RATING_KEY, claimKey, claimKey + CLAIM_RATING_KEY_SUFFIX);
+    }
+
+    private static List<String> finishKeys(String claimId) {
+        List<String> keys = new ArrayList<>(claimKeys(claimId));
+        keys.add(CARDS_KEY);
+        keys.add(LEFT_KEY);
+        return keys;
+    }
+
+    private static List<String> claimKeys(String claimId, LeaseFence fence) {
+        List<String> keys = claimKeys(claimId);
+        if (!fence.enabled()) {
+            return keys;
+        }
+        List<String> fenced = new ArrayList<>(keys);
+        fenced.add(fence.key());
+        return fenced;
+    }
+
+    private static Object[] fencedArgs(LeaseFence fence, String... args) {
+        if (!fence.enabled()) {
+            return args;
+        }
+        Object[] fenced = Arrays.copyOf(args, args.length + 1, Object[].class);
+        fenced[args.length] = fence.value();
+        return fenced;
+    }
+}
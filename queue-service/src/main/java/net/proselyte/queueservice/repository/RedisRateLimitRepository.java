@@ -0,0 +1,61 @@
+package net.proselyte.queueservice.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Token bucket в Redis: состояние общее для всех реплик, поэтому лимит не умножается на их количество.
+ * Bucket пользователя - hash {@code queue:ratelimit:{subject}} с полями tokens и ts;
+ * ключ истекает, когда bucket снова полон.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RedisRateLimitRepository {
+
+    private static final String KEY_PREFIX = "queue:ratelimit:";
+
+    /**
+     * KEYS[1] - bucket; ARGV[1] - текущее время (мс), ARGV[2] - емкость, ARGV[3] - мс на один токен.
+     * Пополняет bucket за прошедшее время и забирает токен.
+     * Возвращает 0, если токен выдан, иначе сколько миллисекунд ждать следующего.
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>("""
+            local now = tonumber(ARGV[1])
+            local burst = tonumber(ARGV[2])
+            local refill = tonumber(ARGV[3])
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or burst
+            local ts = tonumber(state[2]) or now
+            if now > ts then
+                tokens = math.min(burst, tokens + (now - ts) / refill)
+                ts = now
+            end
+            local wait = 0
+            if tokens >= 1 then
+                tokens = tokens - 1
+            else
+                wait = math.ceil((1 - tokens) * refill)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+            redis.call('PEXPIRE', KEYS[1], math.ceil((burst - tokens) * refill) + 1)
+            return wait
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Забирает токен из bucket'а {@code subject}.
+     *
+     * @return 0, если запрос допущен, иначе через сколько миллисекунд появится токен
+     */
+    public long tryAcquire(String subject, long now, int burst, long refillMillis) {
+        Long wait = redisTemplate.execute(ACQUIRE_SCRIPT, List.of(KEY_PREFIX + subject),
+                String.valueOf(now), String.valueOf(burst), String.valueOf(refillMillis));
+        return wait != null ? wait : 0L;
+    }
+}
@@ -2,14 +2,14 @@ package net.proselyte.queueservice.rest;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.proselyte.person.dto.IndividualDto;
-import net.proselyte.person.dto.IndividualPageDto;
 import net.proselyte.queue.api.QueueApi;
 import net.proselyte.queue.dto.QueueJoinResponseDto;
 import net.proselyte.queue.dto.QueueLeaveResponseDto;
 import net.proselyte.queue.dto.QueueStatusResponseDto;
-import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.service.PersonIdResolver;
+import net.proselyte.queueservice.service.QueueAdmissionControl;
 import net.proselyte.queueservice.service.QueueService;
+import net.proselyte.queueservice.service.ResolvedPerson;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -18,8 +18,6 @@ import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -27,22 +25,23 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class QueueRestControllerV1 implements QueueApi {
 
+    private static final String RATING_CLAIM = "rating";
+
     private final QueueService queueService;
-    private final PersonServiceClient personServiceClient;
+    private final PersonIdResolver personIdResolver;
+    private final QueueAdmissionControl admissionControl;
 
     @Override
     public ResponseEntity<QueueJoinResponseDto> joinQueue() {
-        UUID personId = getCurrentPersonId();
-        queueService.joinQueue(personId);
-        
-        QueueJoinResponseDto response = new QueueJoinResponseDto();
-        response.setMessage("waiting");
-        response.setPersonId(personId);
+        admissionControl.admitJoin(getRateLimitKey());
+        ResolvedPerson person = personIdResolver.resolvePerson(getCurrentEmail());
+        QueueJoinResponseDto response = queueService.joinQueue(person.id(), person.nickname(), getCurrentRating());
         return ResponseEntity.ok(response);
     }
 
     @Override
     public ResponseEntity<QueueLeaveResponseDto> leaveQueue() {
+        admissionControl.admitLeave(getRateLimitKey());
         UUID personId = getCurrentPersonId();
         queueService.leaveQueue(personId);
         
@@ -58,12 +57,48 @@ public class QueueRestControllerV1 implements QueueApi {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Извлекает рейтинг игрока из claim'а {@code rating} JWT токена.
+     * Если рейтинг не передан, игрок подбирается в порядке входа в очередь.
+     */
+    private Double getCurrentRating() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt
+                && jwt.getClaim(RATING_CLAIM) instanceof Number rating) {
+            return rating.doubleValue();
+        }
+        return null;
+    }
+
     /**
      * Извлекает person ID из JWT токена.
-     * Сначала получает email из JWT, затем находит person по email в persons-api.
+     * Сначала получает email из JWT, затем находит person по email в persons-api (через локальный кэш).
      * Это необходимо, потому что в очереди должен храниться person ID, а не Keycloak user ID.
      */
     private UUID getCurrentPersonId() {
+        return personIdResolver.resolve(getCurrentEmail());
+    }
+
+    /**
+     * Ключ лимита запросов: subject JWT токена, а если его нет - email.
+     * Берется из токена, чтобы отклонить запрос до обращения к persons-api.
+     */
+    private String getRateLimitKey() {
+        Jwt jwt = getCurrentJwt();
+        String subject = jwt.getSubject();
+        return subject != null && !subject.isBlank() ? subject : getCurrentEmail();
+    }
+
+    private String getCurrentEmail() {
+        // Извлекаем email из JWT токена
+        String email = getCurrentJwt().getClaimAsString("email");
+        if (email == null || email.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Email not found in JWT token");
+        }
+        return email;
+    }
+
+    private Jwt getCurrentJwt() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !authentication.isAuthenticated()) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not authenticated");
@@ -72,40 +107,6 @@ public class QueueRestControllerV1 implements QueueApi {
         if (!(authentication.getPrincipal() instanceof Jwt jwt)) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid authentication principal");
         }
-        
-        // Извлекаем email из JWT токена
-        String email = jwt.getClaimAsString("email");
-        if (email == null || email.isBlank()) {
-            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Email not found in JWT token");
-        }
-        
-        log.debug("Extracting person ID for email: {}", email);
-        
-        try {
-            // Находим person по email в persons-api
-            IndividualPageDto page = personServiceClient.findByEmail(Collections.singletonList(email));
-            
-            if (page == null || page.getItems() == null || page.getItems().isEmpty()) {
-                log.error("Person not found for email: {}", email);
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person not found for email: " + email);
-            }
-            
-            IndividualDto person = page.getItems().get(0);
-            if (person.getId() == null) {
-                log.error("Person ID is null for email: {}", email);
-                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Person ID is null");
-            }
-            
-            UUID personId = person.getId();
-            log.debug("Found person ID: {} for email: {}", personId, email);
-            return personId;
-            
-        } catch (ResponseStatusException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("Error getting person ID for email: {}", email, e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, 
-                    "Failed to get person ID: " + e.getMessage());
-        }
+        return jwt;
     }
 }
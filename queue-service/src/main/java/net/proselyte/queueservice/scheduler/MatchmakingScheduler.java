@@ -2,6 +2,8 @@ package net.proselyte.queueservice.scheduler;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.service.MatchStep;
 import net.proselyte.queueservice.service.MatchmakingService;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -15,6 +17,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class MatchmakingScheduler implements SmartLifecycle {
     
     private final MatchmakingService matchmakingService;
+    private final MatchmakingMetrics matchmakingMetrics;
     private final AtomicBoolean running = new AtomicBoolean(true); // Start as true for tests; Spring will manage lifecycle
     
     @Override
@@ -43,9 +46,11 @@ public class MatchmakingScheduler implements SmartLifecycle {
     }
     
     /**
-     * Проверяет очередь каждые 5 секунд и пытается найти пары игроков
+     * Проверяет очередь каждые 5 секунд (по умолчанию) и пытается найти пары игроков.
+     * В режиме event-driven основная работа выполняется MatchmakingWorker, а тик остается страховкой
+     * на случай потерянного сигнала.
      */
-    @Scheduled(fixedDelay = 5_000) // 5 секунд
+    @Scheduled(fixedDelayString = "${queue.matchmaking.safety-net-interval-ms:5000}")
     public void processQueue() {
         // Skip processing if scheduler is stopping/stopped
         if (!running.get()) {
@@ -57,15 +62,19 @@ public class MatchmakingScheduler implements SmartLifecycle {
             log.debug("Running matchmaking check");
             
             // Пытаемся создать столько матчей, сколько возможно
-            // (если в очереди 4 игрока, создадим 2 матча)
-            boolean matched = true;
+            // (если в очереди 4 игрока, создадим 2 матча); шаг, убравший несуществующих игроков, не останавливает проход
+            boolean proceed = true;
             int attempts = 0;
+            int matches = 0;
             int maxAttempts = 10; // Защита от бесконечного цикла
             
-            while (matched && attempts < maxAttempts && running.get()) {
-                matched = matchmakingService.tryMatchPlayers();
+            while (proceed && attempts < maxAttempts && running.get()) {
+                MatchStep step = matchmakingService.matchNext();
                 attempts++;
+                matches += step.matches();
+                proceed = step.proceed();
             }
+            matchmakingMetrics.recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, matches);
         } catch (Exception e) {
             // During shutdown, Redis operations may fail
             if (running.get()) {
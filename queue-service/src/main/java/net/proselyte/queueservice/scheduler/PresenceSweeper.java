@@ -0,0 +1,55 @@
+package net.proselyte.queueservice.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.PresenceProperties;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.service.PresenceTracker;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Периодически удаляет из очереди игроков, закрывших вкладку: у них нет свежего heartbeat присутствия.
+ * Чистка идет пачками атомарными скриптами, поэтому одновременный запуск на нескольких репликах безопасен.
+ * Независимо от присутствия удаляет карточки игроков, чей claim истек, не завершившись.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceSweeper {
+
+    private final PresenceTracker presenceTracker;
+    private final MatchmakingMetrics matchmakingMetrics;
+    private final RedisQueueRepository redisQueueRepository;
+    private final PresenceProperties presenceProperties;
+
+    @Scheduled(fixedDelayString = "${queue.presence.sweep-interval-ms:15000}")
+    public void sweep() {
+        if (!presenceTracker.enabled()) {
+            return;
+        }
+        try {
+            long evicted = presenceTracker.evictAbsent();
+            if (evicted > 0) {
+                matchmakingMetrics.recordGhostsEvicted(evicted);
+                log.info("Removed {} disconnected players from the queue", evicted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sweep disconnected players: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${queue.presence.sweep-interval-ms:15000}")
+    public void sweepOrphanCards() {
+        try {
+            long evicted = redisQueueRepository.evictOrphanCards(System.currentTimeMillis(),
+                    presenceProperties.sweepBatchSize());
+            if (evicted > 0) {
+                log.info("Removed {} player cards left by expired claims", evicted);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sweep orphan player cards: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package net.proselyte.queueservice.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.QueueStatusProperties;
+import net.proselyte.queueservice.repository.RedisPairingRateRepository;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.service.MatchmakingLeaderLease;
+import net.proselyte.queueservice.service.WebSocketNotificationService;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Периодически рассылает ожидающим игрокам их позицию, время ожидания и оценку времени до матча.
+ * Все события тика строятся по одному чтению очереди (ZRANGE WITHSCORES), без запроса на каждого игрока.
+ * При включенной координации рассылает только лидер матчмейкинга, а до игроков, подключенных к другим репликам,
+ * события доходят через Redis pub/sub ({@code queue.notifications.delivery=cluster}).
+ * Оценка строится по общему для реплик темпу подбора.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueueStatusBroadcaster {
+
+    private final RedisQueueRepository redisQueueRepository;
+    private final WebSocketNotificationService notificationService;
+    private final RedisPairingRateRepository pairingRateRepository;
+    private final MatchmakingLeaderLease leaderLease;
+    private final QueueStatusProperties queueStatusProperties;
+
+    @Scheduled(fixedDelayString = "${queue.status.broadcast-interval-ms:2000}")
+    public void broadcast() {
+        if (!queueStatusProperties.broadcastEnabled()) {
+            return;
+        }
+        if (leaderLease.enabled() && leaderLease.fence() == null) {
+            log.debug("Skipping queue status broadcast: this instance is not the matchmaking leader");
+            return;
+        }
+        try {
+            Set<ZSetOperations.TypedTuple<String>> players =
+                    redisQueueRepository.getPlayersWithScores(0, queueStatusProperties.maxRecipients() - 1);
+            if (players.isEmpty()) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            double pairedPerSecond = pairingRateRepository.pairedPlayersPerSecond(now);
+            List<WebSocketNotificationService.QueueStatus> statuses = new ArrayList<>(players.size());
+            // Набор отсортирован по времени входа, поэтому позиция - это порядковый номер в выборке
+            int position = 0;
+            for (ZSetOperations.TypedTuple<String> player : players) {
+                position++;
+                if (player.getValue() == null || player.getScore() == null) {
+                    continue;
+                }
+                int waitingTime = (int) Math.max(0, (now - player.getScore().longValue()) / 1000);
+                statuses.add(new WebSocketNotificationService.QueueStatus(UUID.fromString(player.getValue()),
+                        position, waitingTime, estimateWaitSeconds(position, pairedPerSecond)));
+            }
+            notificationService.sendQueueStatuses(statuses);
+            log.debug("Broadcast queue_status to {} players", statuses.size());
+        } catch (Exception e) {
+            log.warn("Failed to broadcast queue status: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Игрок на позиции N будет сматчен, когда из очереди уйдут N игроков, включая его самого.
+     */
+    static Integer estimateWaitSeconds(int position, double pairedPerSecond) {
+        if (pairedPerSecond <= 0) {
+            return null;
+        }
+        return (int) Math.ceil(position / pairedPerSecond);
+    }
+}
@@ -0,0 +1,137 @@
+package net.proselyte.queueservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.NotificationProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Доставка {@code match_found} между репликами. Событие публикуется в Redis pub/sub, каждая реплика
+ * отправляет его в свой брокер, и до клиента его доводит та реплика, к которой он подключен.
+ * Дополнительно событие кладется в почтовый ящик пользователя с коротким TTL и отдается клиенту,
+ * который подписался на свой топик уже после рассылки (например, после переподключения).
+ * <p>
+ * Так же, пачками и без почтового ящика, рассылается {@code queue_status}: его строит только лидер матчмейкинга.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ClusterNotificationRelay implements MessageListener {
+
+    public static final String NOTIFICATION_CHANNEL = "queue:notifications";
+    public static final String STATUS_CHANNEL = "queue:status";
+    private static final String MAILBOX_KEY_PREFIX = "queue:mailbox:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final NotificationProperties notificationProperties;
+
+    public boolean enabled() {
+        return notificationProperties.cluster();
+    }
+
+    /**
+     * Кладет событие в почтовый ящик пользователя и рассылает его всем репликам.
+     *
+     * @return false если Redis недоступен и событие не было разослано
+     */
+    public boolean publish(UUID userId, WebSocketNotificationService.MatchFoundEvent event) {
+        try {
+            String payload = objectMapper.writeValueAsString(event);
+            redisTemplate.opsForValue().set(mailboxKey(userId), payload, notificationProperties.mailboxTtl());
+            redisTemplate.convertAndSend(NOTIFICATION_CHANNEL,
+                    objectMapper.writeValueAsString(new ClusterMessage(userId, event)));
+            return true;
+        } catch (JsonProcessingException | DataAccessException e) {
+            log.warn("Failed to publish match_found for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Рассылает пачку {@code queue_status} всем репликам одним сообщением.
+     *
+     * @return false если Redis недоступен и пачка не была разослана
+     */
+    public boolean publishQueueStatuses(List<WebSocketNotificationService.QueueStatus> statuses) {
+        try {
+            redisTemplate.convertAndSend(STATUS_CHANNEL, objectMapper.writeValueAsString(new StatusMessage(statuses)));
+            return true;
+        } catch (JsonProcessingException | DataAccessException e) {
+            log.warn("Failed to publish queue_status for {} users: {}", statuses.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            if (STATUS_CHANNEL.equals(new String(message.getChannel(), StandardCharsets.UTF_8))) {
+                StatusMessage statusMessage = objectMapper.readValue(message.getBody(), StatusMessage.class);
+                for (WebSocketNotificationService.QueueStatus status : statusMessage.statuses()) {
+                    messagingTemplate.convertAndSend(WebSocketNotificationService.QUEUE_TOPIC_PREFIX + status.userId(),
+                            WebSocketNotificationService.queueStatusEvent(status));
+                }
+                return;
+            }
+            ClusterMessage clusterMessage = objectMapper.readValue(message.getBody(), ClusterMessage.class);
+            deliverLocally(clusterMessage.userId(), clusterMessage.event());
+        } catch (IOException e) {
+            log.warn("Ignoring malformed cluster notification: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Отдает событие из почтового ящика пользователю, только что подписавшемуся на свой топик.
+     * Событие забирается из ящика, поэтому повторная подписка его уже не получит.
+     */
+    public void replayMailbox(UUID userId) {
+        try {
+            String payload = redisTemplate.opsForValue().getAndDelete(mailboxKey(userId));
+            if (payload != null) {
+                deliverLocally(userId, objectMapper.readValue(payload, WebSocketNotificationService.MatchFoundEvent.class));
+                log.info("Replayed match_found from mailbox to user {}", userId);
+            }
+        } catch (IOException | DataAccessException e) {
+            log.warn("Failed to replay mailbox for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Удаляет событие прошлого матча, чтобы оно не было отдано после повторного входа в очередь.
+     */
+    public void clearMailbox(UUID userId) {
+        try {
+            redisTemplate.delete(mailboxKey(userId));
+        } catch (DataAccessException e) {
+            log.debug("Failed to clear mailbox for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void deliverLocally(UUID userId, WebSocketNotificationService.MatchFoundEvent event) {
+        messagingTemplate.convertAndSend(WebSocketNotificationService.QUEUE_TOPIC_PREFIX + userId, event);
+    }
+
+    private static String mailboxKey(UUID userId) {
+        return MAILBOX_KEY_PREFIX + userId;
+    }
+
+    record ClusterMessage(UUID userId, WebSocketNotificationService.MatchFoundEvent event) {
+    }
+
+    record StatusMessage(List<WebSocketNotificationService.QueueStatus> statuses) {
+    }
+}
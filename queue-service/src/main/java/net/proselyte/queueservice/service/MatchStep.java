@@ -0,0 +1,38 @@
+package net.proselyte.queueservice.service;
+
+/**
+ * Результат одного шага матчмейкинга.
+ * Проход продолжается, пока шаг что-то сдвигает в очереди: создает матчи или убирает из нее игроков,
+ * с которыми матч невозможен. Пустой шаг и ошибка (claim откатан) проход останавливают.
+ *
+ * @param outcome чем закончился шаг
+ * @param matches количество созданных матчей
+ */
+public record MatchStep(Outcome outcome, int matches) {
+
+    public static final MatchStep EMPTY = new MatchStep(Outcome.EMPTY, 0);
+    public static final MatchStep SKIPPED = new MatchStep(Outcome.SKIPPED, 0);
+    public static final MatchStep FAILED = new MatchStep(Outcome.FAILED, 0);
+
+    public static MatchStep paired(int matches) {
+        return new MatchStep(Outcome.PAIRED, matches);
+    }
+
+    /**
+     * @return true, если после этого шага есть смысл делать следующий
+     */
+    public boolean proceed() {
+        return outcome == Outcome.PAIRED || outcome == Outcome.SKIPPED;
+    }
+
+    public enum Outcome {
+        /** Созданы матчи. */
+        PAIRED,
+        /** Матчей нет, но из очереди убраны игроки, которых нельзя свести (не найдены в persons-api или отключились). */
+        SKIPPED,
+        /** Ошибка persons-api, game-service или Redis; claim откатан, игроки возвращены в очередь. */
+        FAILED,
+        /** В очереди нет пары или эта реплика не лидер. */
+        EMPTY
+    }
+}
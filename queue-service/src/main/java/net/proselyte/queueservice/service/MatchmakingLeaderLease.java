@@ -0,0 +1,115 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.LeaderLeaseProperties;
+import net.proselyte.queueservice.repository.LeaseFence;
+import net.proselyte.queueservice.repository.RedisLeaseRepository;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Выбор единственной реплики, на которой работает матчмейкер. Реплики периодически пытаются
+ * захватить аренду {@code queue:matchmaking:leader}; владелец продлевает ее и получает фенсинг-токен,
+ * который проверяется claim-скриптами очереди. Остальные реплики принимают запросы и будят лидера,
+ * но игроков из очереди не забирают.
+ */
+@Slf4j
+@Component
+public class MatchmakingLeaderLease implements SmartLifecycle {
+
+    public static final String LEASE_KEY = "queue:matchmaking:leader";
+    public static final String LEADER_METRIC = "queue_matchmaking_leader";
+    public static final String FENCING_TOKEN_METRIC = "queue_matchmaking_fencing_token";
+
+    private final RedisLeaseRepository leaseRepository;
+    private final LeaderLeaseProperties properties;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private volatile long token;
+    private volatile long validUntilNanos;
+    private volatile boolean running;
+
+    public MatchmakingLeaderLease(RedisLeaseRepository leaseRepository,
+                                  LeaderLeaseProperties properties,
+                                  MeterRegistry registry) {
+        this.leaseRepository = leaseRepository;
+        this.properties = properties;
+        Gauge.builder(LEADER_METRIC, this, lease -> lease.fence() != null ? 1 : 0)
+                .description("1 if this instance holds the matchmaking lease")
+                .register(registry);
+        Gauge.builder(FENCING_TOKEN_METRIC, this, lease -> lease.token)
+                .description("Fencing token of the matchmaking lease held by this instance, 0 if none")
+                .register(registry);
+    }
+
+    public boolean enabled() {
+        return properties.enabled();
+    }
+
+    /**
+     * @return фенсинг-токен, если эта реплика - лидер и аренда еще не истекла по локальным часам; иначе null
+     */
+    public LeaseFence fence() {
+        long current = token;
+        if (current == 0 || System.nanoTime() - validUntilNanos >= 0) {
+            return null;
+        }
+        return RedisLeaseRepository.fence(LEASE_KEY, instanceId, current);
+    }
+
+    @Scheduled(fixedDelayString = "${queue.matchmaking.leader.renew-interval-ms:3000}")
+    public void renew() {
+        if (!enabled() || !running) {
+            return;
+        }
+        // Срок отсчитывается от момента до запроса: в Redis аренда истечет не раньше
+        long started = System.nanoTime();
+        long acquired = leaseRepository.tryAcquire(LEASE_KEY, instanceId, properties.ttl());
+        long previous = token;
+        if (acquired > 0) {
+            validUntilNanos = started + properties.ttl().toNanos();
+            token = acquired;
+            if (acquired != previous) {
+                log.info("Instance {} became matchmaking leader with fencing token {}", instanceId, acquired);
+            }
+        } else {
+            token = 0;
+            if (previous != 0) {
+                log.info("Instance {} lost matchmaking leadership (token {})", instanceId, previous);
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        renew();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (enabled() && token != 0) {
+            token = 0;
+            // Освобождаем аренду сразу, чтобы при rolling deploy новый лидер не ждал TTL
+            leaseRepository.release(LEASE_KEY, instanceId);
+            log.info("Instance {} released matchmaking leadership", instanceId);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Как и матчмейкер, останавливаемся раньше Redis-соединений
+        return 0;
+    }
+}
@@ -3,13 +3,32 @@ package net.proselyte.queueservice.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.proselyte.game.dto.CreateMatchRequest;
+import net.proselyte.game.dto.CreateMatchesRequest;
 import net.proselyte.game.dto.MatchResponse;
+import net.proselyte.game.dto.MatchesResponse;
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.queueservice.client.GameServiceClient;
 import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.repository.LeaseFence;
+import net.proselyte.queueservice.repository.PlayerCard;
+import net.proselyte.queueservice.repository.QueueClaim;
+import net.proselyte.queueservice.repository.RedisPairingRateRepository;
 import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.service.PlayerPairing.Pair;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -18,96 +37,387 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class MatchmakingService {
     
+    /**
+     * Совпадает со значением person.batch.max-size по умолчанию в person-service.
+     */
+    private static final int PERSON_LOOKUP_CHUNK = 100;
+    
     private final RedisQueueRepository redisQueueRepository;
     private final GameServiceClient gameServiceClient;
     private final PersonServiceClient personServiceClient;
     private final WebSocketNotificationService notificationService;
+    private final MatchmakingMetrics matchmakingMetrics;
+    private final MatchmakingProperties matchmakingProperties;
+    private final MatchmakingLeaderLease leaderLease;
+    private final PresenceTracker presenceTracker;
+    private final QueueHistoryRecorder queueHistoryRecorder;
+    private final RedisPairingRateRepository pairingRateRepository;
     
     /**
-     * Пытается найти пару игроков и создать матч
-     * @return true если матч был создан, false если недостаточно игроков
+     * Один шаг матчмейкинга: в пакетном режиме — пачка пар, иначе — одна пара.
+     *
+     * @return результат шага; {@link MatchStep#proceed()} говорит, есть ли смысл продолжать проход
      */
-    public boolean tryMatchPlayers() {
+    public MatchStep matchNext() {
+        if (matchmakingProperties.batchEnabled()) {
+            return tryMatchBatch();
+        }
+        return tryMatchPlayers();
+    }
+    
+    /**
+     * Пытается найти пару игроков и создать матч.
+     * Пара атомарно забирается из очереди (claim), поэтому матчмейкер безопасно запускать на каждой реплике.
+     * При включенной координации ({@code queue.matchmaking.leader.enabled}) пары забирает только лидер.
+     * Игроки с рейтингом подбираются по ближайшему рейтингу в окне, которое расширяется со временем ожидания;
+     * игроки без рейтинга — по времени входа в очередь.
+     * Если матч создать не удалось, claim откатывается и игроки возвращаются в очередь с исходным временем входа.
+     * Если вход игрока в очередь уже сведен в матч (ответ на прошлую попытку был потерян), game-service
+     * возвращает тот матч: игрок убирается из очереди, соперник возвращается в нее.
+     *
+     * @return {@link MatchStep.Outcome#PAIRED}, если матч создан; {@link MatchStep.Outcome#SKIPPED}, если
+     *         несуществующие или отключившиеся игроки убраны из очереди; {@link MatchStep.Outcome#FAILED}, если claim откатан;
+     *         {@link MatchStep.Outcome#EMPTY}, если пары нет
+     */
+    public MatchStep tryMatchPlayers() {
+        LeaseFence fence = currentFence();
+        if (fence == null) {
+            log.debug("Skipping matchmaking: this instance is not the matchmaking leader");
+            return MatchStep.EMPTY;
+        }
+
+        Optional<QueueClaim> claimed;
         try {
-            long queueSize = redisQueueRepository.getQueueSize();
-            
-            if (queueSize < 2) {
-                log.debug("Not enough players in queue: {}", queueSize);
-                return false;
-            }
-            
-            // Получаем двух самых старых игроков (которые ждут дольше всего)
-            Set<String> oldestPlayers = redisQueueRepository.getOldestPlayers(2);
-            
-            if (oldestPlayers == null || oldestPlayers.size() < 2) {
-                log.debug("Could not get 2 players from queue");
-                return false;
+            claimed = redisQueueRepository.claimClosestPair(
+                    Instant.now().toEpochMilli(), matchmakingProperties.rating(), fence);
+        } catch (Exception e) {
+            // Catch any Redis exceptions during shutdown
+            log.debug("Matchmaking interrupted (likely during shutdown): {}", e.getMessage());
+            return MatchStep.FAILED;
+        }
+
+        if (claimed.isEmpty()) {
+            log.debug("Not enough players in queue");
+            return MatchStep.EMPTY;
+        }
+
+        QueueClaim claim = claimed.get();
+        UUID player1Id = claim.players().get(0).userId();
+        UUID player2Id = claim.players().get(1).userId();
+
+        log.info("Attempting to match players: {} and {}", player1Id, player2Id);
+
+        try {
+            // Отключившиеся игроки отбрасываются до обращения к persons-api и game-service
+            Set<UUID> absent = presenceTracker.findAbsent(claim.players());
+            if (!absent.isEmpty()) {
+                log.info("Players {} have no live presence, removing them from queue", absent);
+                matchmakingMetrics.recordGhostPairsAvoided(1);
+                redisQueueRepository.finishClaim(claim,
+                        claim.playerIds().stream().filter(id -> !absent.contains(id)).toList());
+                return MatchStep.SKIPPED;
             }
-            
-            String[] playerIds = oldestPlayers.toArray(new String[0]);
-            UUID player1Id = UUID.fromString(playerIds[0]);
-            UUID player2Id = UUID.fromString(playerIds[1]);
-            
-            log.info("Attempting to match players: {} and {}", player1Id, player2Id);
-            
-            try {
-                // ВАЖНО: Сначала проверяем, что оба игрока существуют в persons-api
-                // Это предотвращает создание матчей с несуществующими игроками
-                IndividualDto player1;
-                IndividualDto player2;
-                
-                try {
-                    player1 = personServiceClient.getPersonById(player1Id);
-                } catch (Exception e) {
-                    log.warn("Player {} not found in persons-api, removing from queue: {}", 
-                            player1Id, e.getMessage());
-                    redisQueueRepository.removeFromQueue(player1Id);
-                    return false;
+
+            // ВАЖНО: Сначала проверяем, что оба игрока существуют (карточки из очереди, иначе persons-api)
+            // Это предотвращает создание матчей с несуществующими игроками
+            Map<UUID, String> nicknames = findNicknames(claim.playerIds());
+            String player1Nickname = nicknames.get(player1Id);
+            String player2Nickname = nicknames.get(player2Id);
+
+            if (player1Nickname == null || player2Nickname == null) {
+                List<UUID> playersToRequeue = new ArrayList<>(1);
+                if (player1Nickname == null) {
+                    log.warn("Player {} not found in persons-api, removing from queue", player1Id);
+                } else {
+                    playersToRequeue.add(player1Id);
                 }
-                
-                try {
-                    player2 = personServiceClient.getPersonById(player2Id);
-                } catch (Exception e) {
-                    log.warn("Player {} not found in persons-api, removing from queue: {}", 
-                            player2Id, e.getMessage());
-                    redisQueueRepository.removeFromQueue(player2Id);
-                    return false;
+                if (player2Nickname == null) {
+                    log.warn("Player {} not found in persons-api, removing from queue", player2Id);
+                } else {
+                    playersToRequeue.add(player2Id);
                 }
-                
-                // Теперь создаем матч через game-service (оба игрока существуют)
-                CreateMatchRequest request = new CreateMatchRequest();
-                request.setPlayer1Id(player1Id);
-                request.setPlayer2Id(player2Id);
-                
-                MatchResponse match = gameServiceClient.createMatch(request);
-                log.info("Match created: {}", match.getId());
-                
-                // Удаляем игроков из очереди
-                redisQueueRepository.removeMultipleFromQueue(oldestPlayers);
-                log.info("Removed players {} and {} from queue", player1Id, player2Id);
-                
-                // Отправляем уведомления через WebSocket
-                notificationService.notifyBothPlayers(
-                    player1Id, 
-                    player2Id, 
-                    match.getId(),
-                    player1.getNickname(),
-                    player2.getNickname()
-                );
-                
-                return true;
-                
-            } catch (Exception e) {
-                log.error("Error creating match for players {} and {}: {}", 
-                         player1Id, player2Id, e.getMessage(), e);
-                // В случае ошибки игроки остаются в очереди
-                return false;
+                redisQueueRepository.finishClaim(claim, playersToRequeue);
+                return MatchStep.SKIPPED;
+            }
+
+            // Теперь создаем матч через game-service (оба игрока существуют)
+            CreateMatchRequest request = new CreateMatchRequest();
+            request.setPlayer1Id(player1Id);
+            request.setPlayer2Id(player2Id);
+            request.setPairingId(QueueClaim.pairingId(claim.players().get(0), claim.players().get(1)));
+            request.setPlayer1Ticket(claim.players().get(0).ticket());
+            request.setPlayer2Ticket(claim.players().get(1).ticket());
+
+            MatchResponse match = gameServiceClient.createMatch(request);
+            if (!isMatchOf(match, player1Id, player2Id)) {
+                // Вход игрока в очередь уже сведен в матч, ответ о котором был потерян: второй матч не создан
+                List<UUID> alreadyMatched = claim.playerIds().stream().filter(id -> isPlayerOf(match, id)).toList();
+                log.warn("Players {} are already matched in {}, not creating another match",
+                        alreadyMatched, match.getId());
+                redisQueueRepository.finishClaim(claim,
+                        claim.playerIds().stream().filter(id -> !alreadyMatched.contains(id)).toList());
+                return MatchStep.SKIPPED;
             }
+            log.info("Match created: {}", match.getId());
+            recordMatched(claim.players());
+            pairingRateRepository.record(Instant.now().toEpochMilli(), claim.players().size());
+
+            // Игроки уже извлечены из очереди, удаляем pending-ключ claim'а
+            redisQueueRepository.finishClaim(claim, List.of());
+            log.info("Removed players {} and {} from queue", player1Id, player2Id);
+
+            // Отправляем уведомления через WebSocket
+            notificationService.notifyBothPlayers(
+                player1Id,
+                player2Id,
+                match.getId(),
+                player1Nickname,
+                player2Nickname
+            );
+
+            return MatchStep.paired(1);
+
+        } catch (Exception e) {
+            log.error("Error creating match for players {} and {}: {}",
+                     player1Id, player2Id, e.getMessage(), e);
+            // В случае ошибки возвращаем игроков в очередь с исходным временем входа
+            redisQueueRepository.rollbackClaim(claim);
+            return MatchStep.FAILED;
+        }
+    }
+
+    /**
+     * Пакетный подбор: забирает до {@code batchSize} самых старых игроков, проверяет их существование,
+     * раскладывает на пары в памяти (по тем же правилам окна рейтинга, что и {@code claimClosestPair})
+     * и создает все матчи одним запросом {@code POST /v1/game/matches}.
+     * Игроки без пары и пары, для которых матч не создан, возвращаются в очередь по отдельности;
+     * игроки, чей вход в очередь уже сведен в матч с другим соперником, не возвращаются.
+     *
+     * @return {@link MatchStep.Outcome#PAIRED} с количеством созданных матчей; {@link MatchStep.Outcome#SKIPPED},
+     *         если матчей нет, но часть игроков убрана из очереди; {@link MatchStep.Outcome#FAILED}, если ни один
+     *         матч не создан из-за ошибки; {@link MatchStep.Outcome#EMPTY}, если свести некого
+     */
+    public MatchStep tryMatchBatch() {
+        LeaseFence fence = currentFence();
+        if (fence == null) {
+            log.debug("Skipping matchmaking: this instance is not the matchmaking leader");
+            return MatchStep.EMPTY;
+        }
+
+        Optional<QueueClaim> claimed;
+        try {
+            claimed = redisQueueRepository.claimOldestPlayers(matchmakingProperties.batchSize(), fence);
         } catch (Exception e) {
-            // Catch any Redis exceptions during shutdown
             log.debug("Matchmaking interrupted (likely during shutdown): {}", e.getMessage());
-            return false;
+            return MatchStep.FAILED;
+        }
+
+        if (claimed.isEmpty()) {
+            log.debug("Not enough players in queue");
+            return MatchStep.EMPTY;
+        }
+
+        QueueClaim claim = claimed.get();
+        List<UUID> playersToRequeue = new ArrayList<>();
+        List<CreatedMatch> createdMatches = new ArrayList<>();
+
+        try {
+            // Отключившиеся игроки отбрасываются до обращения к persons-api; каждый из них занял бы пару
+            Set<UUID> absent = presenceTracker.findAbsent(claim.players());
+            List<QueueClaim.Player> presentPlayers = claim.players();
+            if (!absent.isEmpty()) {
+                log.info("{} claimed players have no live presence, removing them from queue", absent.size());
+                matchmakingMetrics.recordGhostPairsAvoided(absent.size());
+                presentPlayers = presentPlayers.stream().filter(player -> !absent.contains(player.userId())).toList();
+            }
+
+            Map<UUID, String> nicknames = findNicknames(
+                    presentPlayers.stream().map(QueueClaim.Player::userId).toList());
+            List<QueueClaim.Player> validPlayers = new ArrayList<>(presentPlayers.size());
+            for (QueueClaim.Player player : presentPlayers) {
+                if (nicknames.containsKey(player.userId())) {
+                    validPlayers.add(player);
+                } else {
+                    log.warn("Player {} not found in persons-api, removing from queue", player.userId());
+                }
+            }
+
+            boolean[] paired = new boolean[validPlayers.size()];
+            List<Pair> pairs = PlayerPairing.pairPlayers(
+                    validPlayers, paired, Instant.now().toEpochMilli(), matchmakingProperties.rating());
+            for (int i = 0; i < validPlayers.size(); i++) {
+                if (!paired[i]) {
+                    playersToRequeue.add(validPlayers.get(i).userId());
+                }
+            }
+
+            if (!pairs.isEmpty()) {
+                CreateMatchesRequest request = new CreateMatchesRequest();
+                request.setMatches(pairs.stream().map(pair -> {
+                    CreateMatchRequest matchRequest = new CreateMatchRequest();
+                    matchRequest.setPlayer1Id(pair.player1().userId());
+                    matchRequest.setPlayer2Id(pair.player2().userId());
+                    matchRequest.setPairingId(QueueClaim.pairingId(pair.player1(), pair.player2()));
+                    matchRequest.setPlayer1Ticket(pair.player1().ticket());
+                    matchRequest.setPlayer2Ticket(pair.player2().ticket());
+                    return matchRequest;
+                }).toList());
+
+                MatchesResponse response = gameServiceClient.createMatches(request);
+                Set<List<UUID>> requested = new HashSet<>();
+                for (Pair pair : pairs) {
+                    requested.add(List.of(pair.player1().userId(), pair.player2().userId()));
+                }
+                Map<List<UUID>, MatchResponse> matchByPair = new HashMap<>();
+                // Игроки, чей вход в очередь уже сведен в матч с другим соперником (пара не создана)
+                Set<UUID> alreadyMatched = new HashSet<>();
+                if (response != null && response.getItems() != null) {
+                    for (MatchResponse match : response.getItems()) {
+                        List<UUID> players = List.of(match.getPlayer1Id(), match.getPlayer2Id());
+                        if (requested.contains(players)) {
+                            matchByPair.put(players, match);
+                        } else {
+                            alreadyMatched.addAll(players);
+                        }
+                    }
+                }
+
+                for (Pair pair : pairs) {
+                    MatchResponse match = matchByPair.get(List.of(pair.player1().userId(), pair.player2().userId()));
+                    if (match == null) {
+                        for (UUID playerId : List.of(pair.player1().userId(), pair.player2().userId())) {
+                            if (alreadyMatched.contains(playerId)) {
+                                log.warn("Player {} is already matched, not returning to queue", playerId);
+                            } else {
+                                log.warn("Match was not created for player {}, returning to queue", playerId);
+                                playersToRequeue.add(playerId);
+                            }
+                        }
+                        continue;
+                    }
+                    createdMatches.add(new CreatedMatch(pair, match.getId()));
+                    recordMatched(List.of(pair.player1(), pair.player2()));
+                }
+            }
+
+            redisQueueRepository.finishClaim(claim, playersToRequeue);
+            pairingRateRepository.record(Instant.now().toEpochMilli(), createdMatches.size() * 2);
+            log.info("Batch of {} players produced {} matches, {} players returned to queue",
+                    claim.players().size(), createdMatches.size(), playersToRequeue.size());
+
+            for (CreatedMatch created : createdMatches) {
+                notifyPair(created, nicknames);
+            }
+            return batchStep(createdMatches.size(), claim.players().size() - playersToRequeue.size(), pairs.size());
+
+        } catch (Exception e) {
+            log.error("Error creating matches for batch claim {}: {}", claim.claimId(), e.getMessage(), e);
+            // В случае ошибки возвращаем всех игроков в очередь с исходным временем входа
+            redisQueueRepository.rollbackClaim(claim);
+            return MatchStep.FAILED;
+        }
+    }
+
+    /**
+     * @param matches созданные матчи
+     * @param removed игроки, не вернувшиеся в очередь (сведены в матчи или удалены из нее)
+     * @param pairs   пары, для которых запрашивалось создание матча
+     */
+    private static MatchStep batchStep(int matches, int removed, int pairs) {
+        if (matches > 0) {
+            return MatchStep.paired(matches);
+        }
+        if (removed > 0) {
+            return MatchStep.SKIPPED;
+        }
+        // Ни одна из запрошенных пар не создана: game-service не справляется, продолжать нет смысла
+        return pairs > 0 ? MatchStep.FAILED : MatchStep.EMPTY;
+    }
+
+    /**
+     * Никнеймы игроков из карточек, сохраненных при входе в очередь (одна команда HMGET).
+     * В persons-api запрашиваются только игроки без карточки - вошедшие в очередь до ее появления.
+     *
+     * @return никнеймы найденных игроков; отсутствующие игроки считаются несуществующими
+     */
+    private Map<UUID, String> findNicknames(List<UUID> playerIds) {
+        Map<UUID, String> nicknames = new HashMap<>();
+        List<UUID> withoutCard = new ArrayList<>();
+        Map<UUID, PlayerCard> cards = redisQueueRepository.getPlayerCards(playerIds);
+        for (UUID playerId : playerIds) {
+            PlayerCard card = cards.get(playerId);
+            if (card != null && card.nickname() != null) {
+                nicknames.put(playerId, card.nickname());
+            } else {
+                withoutCard.add(playerId);
+            }
+        }
+        if (!withoutCard.isEmpty()) {
+            findPersons(withoutCard).forEach((id, person) -> nicknames.put(id, person.getNickname()));
+        }
+        return nicknames;
+    }
+
+    /**
+     * Ищет игроков в persons-api bulk-запросами (не больше {@link #PERSON_LOOKUP_CHUNK} id в запросе).
+     * Отсутствующие в ответе игроки считаются несуществующими; ошибка запроса пробрасывается,
+     * чтобы claim был откатан целиком, а не игроки удалены из очереди.
+     */
+    private Map<UUID, IndividualDto> findPersons(List<UUID> playerIds) {
+        Map<UUID, IndividualDto> persons = new HashMap<>();
+        for (int from = 0; from < playerIds.size(); from += PERSON_LOOKUP_CHUNK) {
+            List<UUID> chunk = playerIds.subList(from, Math.min(from + PERSON_LOOKUP_CHUNK, playerIds.size()));
+            IndividualBatchDto batch = personServiceClient.findAllByIds(chunk);
+            if (batch != null && batch.getItems() != null) {
+                for (IndividualDto person : batch.getItems().values()) {
+                    persons.put(person.getId(), person);
+                }
+            }
+        }
+        return persons;
+    }
+
+    private static boolean isMatchOf(MatchResponse match, UUID player1Id, UUID player2Id) {
+        return player1Id.equals(match.getPlayer1Id()) && player2Id.equals(match.getPlayer2Id());
+    }
+
+    private static boolean isPlayerOf(MatchResponse match, UUID playerId) {
+        return playerId.equals(match.getPlayer1Id()) || playerId.equals(match.getPlayer2Id());
+    }
+
+    private void notifyPair(CreatedMatch created, Map<UUID, String> nicknames) {
+        UUID player1Id = created.pair().player1().userId();
+        UUID player2Id = created.pair().player2().userId();
+        try {
+            notificationService.notifyBothPlayers(
+                player1Id,
+                player2Id,
+                created.matchId(),
+                nicknames.get(player1Id),
+                nicknames.get(player2Id)
+            );
+        } catch (Exception e) {
+            log.error("Failed to notify players {} and {} about match {}: {}",
+                    player1Id, player2Id, created.matchId(), e.getMessage(), e);
         }
     }
-}
 
+    /**
+     * @return {@link LeaseFence#NONE} без координации, токен лидера, или null если эта реплика не лидер
+     */
+    private LeaseFence currentFence() {
+        return leaderLease.enabled() ? leaderLease.fence() : LeaseFence.NONE;
+    }
+
+    private void recordMatched(List<QueueClaim.Player> players) {
+        long now = Instant.now().toEpochMilli();
+        for (QueueClaim.Player player : players) {
+            matchmakingMetrics.recordTimeToMatch(Duration.ofMillis(now - player.joinedAt()));
+            queueHistoryRecorder.record(player.userId(), QueueItem.QueueStatus.MATCHED,
+                    Instant.ofEpochMilli(player.joinedAt()));
+        }
+    }
+
+    private record CreatedMatch(Pair pair, UUID matchId) {
+    }
+}
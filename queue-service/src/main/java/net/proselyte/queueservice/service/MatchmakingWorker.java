@@ -0,0 +1,197 @@
+package net.proselyte.queueservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Событийный матчмейкер: вход игрока в очередь будит воркер, который разбирает очередь
+ * до тех пор, пока в ней есть пара или очередной шаг не закончится ошибкой (см. {@link MatchStep#proceed()}).
+ * Другие реплики будятся через Redis pub/sub. Сигналы схлопываются: пока проход уже запланирован,
+ * повторные сигналы ничего не стоят.
+ * <p>
+ * При {@code queue.matchmaking.concurrency > 1} проход ведут несколько параллельных полос на виртуальных потоках:
+ * пока одна попытка ждет persons-api или game-service, другие забирают и создают свои пары.
+ * Claim атомарен в Redis, поэтому полосы не делят игроков, а ошибка попытки откатывает только ее claim.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MatchmakingWorker implements SmartLifecycle, MessageListener {
+
+    public static final String WAKEUP_CHANNEL = "queue:matchmaking:wakeup";
+
+    private final MatchmakingService matchmakingService;
+    private final MatchmakingMetrics matchmakingMetrics;
+    private final MatchmakingProperties matchmakingProperties;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile ExecutorService executor;
+    private volatile ExecutorService laneExecutor;
+
+    /**
+     * Будит матчмейкер на этой реплике и на остальных репликах через Redis pub/sub.
+     */
+    public void requestMatchmaking() {
+        if (!matchmakingProperties.eventDriven()) {
+            return;
+        }
+        signal();
+        try {
+            redisTemplate.convertAndSend(WAKEUP_CHANNEL, instanceId);
+        } catch (DataAccessException e) {
+            log.debug("Failed to publish matchmaking wake-up: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String origin = new String(message.getBody(), StandardCharsets.UTF_8);
+        // Собственные сообщения игнорируем: локальный сигнал уже отправлен в requestMatchmaking
+        if (!instanceId.equals(origin)) {
+            signal();
+        }
+    }
+
+    /**
+     * Планирует проход матчмейкера, если он еще не запланирован.
+     */
+    void signal() {
+        ExecutorService current = executor;
+        if (current == null || !matchmakingProperties.eventDriven()) {
+            return;
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                current.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                log.debug("Matchmaking worker is stopping, wake-up ignored");
+            }
+        }
+    }
+
+    void drain() {
+        // Сбрасываем флаг до прохода: сигнал, пришедший во время прохода, запланирует следующий
+        drainScheduled.set(false);
+        ExecutorService lanes = laneExecutor;
+        int matches = lanes != null ? drainConcurrently(lanes) : drainLane();
+        matchmakingMetrics.recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, matches);
+        log.debug("Event-driven matchmaking pass created {} matches", matches);
+    }
+
+    /**
+     * Запускает {@code concurrency} полос и ждет, пока каждая не упрется в пустой или неудачный шаг.
+     */
+    private int drainConcurrently(ExecutorService lanes) {
+        List<Callable<Integer>> tasks = Collections.nCopies(matchmakingProperties.concurrency(), this::drainLane);
+        List<Future<Integer>> results;
+        try {
+            results = lanes.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.debug("Event-driven matchmaking interrupted during shutdown");
+            return 0;
+        } catch (RejectedExecutionException e) {
+            log.debug("Matchmaking worker is stopping, pass skipped");
+            return 0;
+        }
+        int matches = 0;
+        for (Future<Integer> result : results) {
+            try {
+                matches += result.get();
+            } catch (ExecutionException | CancellationException e) {
+                log.debug("Matchmaking lane did not complete: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Шаги матчмейкинга подряд, пока шаг создает матчи или убирает из очереди игроков, которых нельзя свести.
+     */
+    private int drainLane() {
+        int matches = 0;
+        try {
+            MatchStep step;
+            do {
+                if (!isRunning()) {
+                    break;
+                }
+                step = matchmakingService.matchNext();
+                matches += step.matches();
+            } while (step.proceed());
+        } catch (Exception e) {
+            if (isRunning()) {
+                log.error("Error during event-driven matchmaking", e);
+            } else {
+                log.debug("Event-driven matchmaking interrupted during shutdown");
+            }
+        }
+        return matches;
+    }
+
+    @Override
+    public void start() {
+        if (matchmakingProperties.concurrent()) {
+            laneExecutor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("matchmaking-lane-", 0).factory());
+        }
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "matchmaking-worker"));
+        log.info("MatchmakingWorker started in {} mode with concurrency {}",
+                matchmakingProperties.mode(), matchmakingProperties.concurrency());
+        // Разбираем игроков, накопившихся пока реплика была недоступна
+        signal();
+    }
+
+    @Override
+    public void stop() {
+        ExecutorService current = executor;
+        executor = null;
+        if (current != null) {
+            current.shutdownNow();
+        }
+        ExecutorService lanes = laneExecutor;
+        laneExecutor = null;
+        if (lanes != null) {
+            lanes.shutdownNow();
+        }
+        log.info("MatchmakingWorker stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    @Override
+    public int getPhase() {
+        // Как и MatchmakingScheduler, останавливаемся раньше Redis-соединений
+        return 0;
+    }
+}
@@ -0,0 +1,112 @@
+package net.proselyte.queueservice.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.person.dto.IndividualDto;
+import net.proselyte.person.dto.IndividualPageDto;
+import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.config.PersonCacheProperties;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+
+/**
+ * Определяет person ID по email из JWT токена.
+ * Результаты кэшируются локально, чтобы опрос статуса очереди не ходил в persons-api на каждый запрос.
+ * Записи сбрасываются по TTL и по сигналу person-service об изменении или удалении пользователя.
+ */
+@Slf4j
+@Component
+public class PersonIdResolver implements MessageListener {
+
+    public static final String PERSON_CHANGED_CHANNEL = "person:changed";
+    public static final String CACHE_NAME = "queue_person_id";
+
+    private final PersonServiceClient personServiceClient;
+    private final Cache<String, ResolvedPerson> cache;
+
+    public PersonIdResolver(PersonServiceClient personServiceClient,
+                            PersonCacheProperties properties,
+                            MeterRegistry registry) {
+        this.personServiceClient = personServiceClient;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.ttl())
+                .recordStats()
+                .build();
+        // cache_gets{result=hit|miss}, cache_evictions, cache_size с тегом cache=queue_person_id
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Возвращает person ID для email. Ненайденные пользователи и ошибки persons-api не кэшируются.
+     */
+    public UUID resolve(String email) {
+        return resolvePerson(email).id();
+    }
+
+    /**
+     * Возвращает person ID и никнейм для email из того же кэша, что и {@link #resolve(String)}.
+     */
+    public ResolvedPerson resolvePerson(String email) {
+        return cache.get(email, this::findPerson);
+    }
+
+    /**
+     * Удаляет из кэша все записи пользователя. Email мог измениться, поэтому поиск идет по значению.
+     */
+    public void invalidate(UUID personId) {
+        cache.asMap().values().removeIf(person -> person.id().equals(personId));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            invalidate(UUID.fromString(body));
+            log.debug("Person cache invalidated for person ID: {}", body);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed person change signal: {}", body);
+        }
+    }
+
+    private ResolvedPerson findPerson(String email) {
+        log.debug("Extracting person ID for email: {}", email);
+
+        try {
+            // Находим person по email в persons-api
+            IndividualPageDto page = personServiceClient.findByEmail(Collections.singletonList(email));
+
+            if (page == null || page.getItems() == null || page.getItems().isEmpty()) {
+                log.error("Person not found for email: {}", email);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Person not found for email: " + email);
+            }
+
+            IndividualDto person = page.getItems().get(0);
+            if (person.getId() == null) {
+                log.error("Person ID is null for email: {}", email);
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Person ID is null");
+            }
+
+            UUID personId = person.getId();
+            log.debug("Found person ID: {} for email: {}", personId, email);
+            return new ResolvedPerson(personId, person.getNickname());
+
+        } catch (ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error getting person ID for email: {}", email, e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Failed to get person ID: " + e.getMessage());
+        }
+    }
+}
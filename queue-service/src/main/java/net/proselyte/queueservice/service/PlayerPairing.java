@@ -0,0 +1,69 @@
+package net.proselyte.queueservice.service;
+
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.repository.QueueClaim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Раскладка забранных из очереди игроков на пары в памяти для пакетного подбора.
+ * Правила окна рейтинга те же, что у {@code claimClosestPair}. Отдельно от {@link MatchmakingService},
+ * чтобы шаг подбора можно было мерить без Redis и клиентов.
+ */
+final class PlayerPairing {
+
+    private PlayerPairing() {
+    }
+
+    /**
+     * Раскладывает игроков (в порядке входа в очередь) на пары: игрок без рейтинга получает
+     * самого старого свободного игрока, игрок с рейтингом — ближайшего по рейтингу в своем окне.
+     *
+     * @param paired отметки игроков, попавших в пару; заполняется по ходу раскладки
+     */
+    static List<Pair> pairPlayers(List<QueueClaim.Player> players, boolean[] paired, long now,
+                                  MatchmakingProperties.Rating window) {
+        List<Pair> pairs = new ArrayList<>(players.size() / 2);
+        for (int i = 0; i < players.size(); i++) {
+            if (paired[i]) {
+                continue;
+            }
+            QueueClaim.Player anchor = players.get(i);
+            int partner = -1;
+            if (anchor.rating() == null) {
+                for (int j = 0; j < players.size() && partner < 0; j++) {
+                    if (j != i && !paired[j]) {
+                        partner = j;
+                    }
+                }
+            } else {
+                double waitedSeconds = Math.max(0, now - anchor.joinedAt()) / 1000.0;
+                double gap = Math.min(window.maxGap(), window.baseGap() + window.gapPerSecond() * waitedSeconds);
+                double bestDiff = Double.MAX_VALUE;
+                for (int j = 0; j < players.size(); j++) {
+                    Double candidateRating = players.get(j).rating();
+                    if (j == i || paired[j] || candidateRating == null) {
+                        continue;
+                    }
+                    double diff = Math.abs(candidateRating - anchor.rating());
+                    if (diff <= gap && diff < bestDiff) {
+                        bestDiff = diff;
+                        partner = j;
+                    }
+                }
+            }
+            if (partner >= 0) {
+                paired[i] = true;
+                paired[partner] = true;
+                pairs.add(i < partner
+                        ? new Pair(anchor, players.get(partner))
+                        : new Pair(players.get(partner), anchor));
+            }
+        }
+        return pairs;
+    }
+
+    record Pair(QueueClaim.Player player1, QueueClaim.Player player2) {
+    }
+}
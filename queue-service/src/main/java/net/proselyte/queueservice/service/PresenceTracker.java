@@ -0,0 +1,144 @@
+package net.proselyte.queueservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.PresenceProperties;
+import net.proselyte.queueservice.repository.QueueClaim;
+import net.proselyte.queueservice.repository.RedisPresenceRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отслеживает WebSocket-подписки игроков на {@code /topic/queue/{userId}} на этой реплике
+ * и периодически продлевает их присутствие в Redis. После отключения heartbeat прекращается,
+ * и через {@code queue.presence.ttl} игрок считается отсутствующим.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PresenceTracker {
+
+    private final RedisPresenceRepository presenceRepository;
+    private final PresenceProperties properties;
+
+    /**
+     * sessionId -> (subscriptionId -> userId)
+     */
+    private final Map<String, Map<String, UUID>> subscriptions = new ConcurrentHashMap<>();
+
+    public boolean enabled() {
+        return properties.enabled();
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null || destination == null
+                || !destination.startsWith(WebSocketNotificationService.QUEUE_TOPIC_PREFIX)) {
+            return;
+        }
+        UUID userId;
+        try {
+            userId = UUID.fromString(destination.substring(WebSocketNotificationService.QUEUE_TOPIC_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), userId);
+        if (enabled()) {
+            try {
+                presenceRepository.heartbeat(List.of(userId), System.currentTimeMillis());
+            } catch (Exception e) {
+                log.warn("Failed to record presence for user {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        subscriptions.computeIfPresent(accessor.getSessionId(), (id, bySubscription) -> {
+            bySubscription.remove(accessor.getSubscriptionId());
+            return bySubscription.isEmpty() ? null : bySubscription;
+        });
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        subscriptions.remove(event.getSessionId());
+    }
+
+    /**
+     * Продлевает присутствие всех подключенных к этой реплике игроков одной командой.
+     */
+    @Scheduled(fixedDelayString = "${queue.presence.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        if (!enabled()) {
+            return;
+        }
+        Set<UUID> connected = connectedUsers();
+        if (connected.isEmpty()) {
+            return;
+        }
+        try {
+            presenceRepository.heartbeat(connected, System.currentTimeMillis());
+            log.debug("Presence heartbeat for {} connected players", connected.size());
+        } catch (Exception e) {
+            log.warn("Failed to send presence heartbeat: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Проверяет забранных из очереди игроков одним обращением к Redis. Игроки, вошедшие в очередь
+     * меньше {@code queue.presence.join-grace} назад, считаются присутствующими: они могли еще не подключиться.
+     *
+     * @return игроки без свежего heartbeat; пустое множество, если отслеживание присутствия выключено
+     */
+    public Set<UUID> findAbsent(List<QueueClaim.Player> players) {
+        if (!enabled()) {
+            return Set.of();
+        }
+        long now = System.currentTimeMillis();
+        long joinedBefore = now - properties.joinGrace().toMillis();
+        List<UUID> candidates = players.stream()
+                .filter(player -> player.joinedAt() <= joinedBefore)
+                .map(QueueClaim.Player::userId)
+                .toList();
+        return presenceRepository.findAbsent(candidates, now - properties.ttl().toMillis());
+    }
+
+    /**
+     * Удаляет из очереди игроков без свежего heartbeat, вошедших раньше {@code queue.presence.join-grace}.
+     *
+     * @return количество удаленных игроков
+     */
+    public long evictAbsent() {
+        long now = System.currentTimeMillis();
+        return presenceRepository.evictAbsent(now - properties.joinGrace().toMillis(),
+                now - properties.ttl().toMillis(), properties.sweepBatchSize());
+    }
+
+    Set<UUID> connectedUsers() {
+        Set<UUID> connected = new HashSet<>();
+        for (Map<String, UUID> bySubscription : subscriptions.values()) {
+            connected.addAll(bySubscription.values());
+        }
+        return connected;
+    }
+}
@@ -0,0 +1,96 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.AdmissionProperties;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.repository.RedisRateLimitRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Допуск запросов join/leave до любых обращений к persons-api и записи в очередь.
+ * Каждый пользователь тратит токен из своего bucket'а в Redis; вход дополнительно отклоняется,
+ * когда очередь достигла {@code queue.admission.max-queue-size}.
+ * Если Redis недоступен, запросы пропускаются: сама очередь в этом случае тоже не работает,
+ * и ошибка будет получена дальше по обычному пути.
+ */
+@Slf4j
+@Component
+public class QueueAdmissionControl {
+
+    public static final String REJECTED_METRIC = "queue_admission_rejected";
+
+    private final RedisRateLimitRepository rateLimitRepository;
+    private final RedisQueueRepository redisQueueRepository;
+    private final AdmissionProperties properties;
+    private final Counter joinRateLimited;
+    private final Counter leaveRateLimited;
+    private final Counter joinQueueFull;
+
+    public QueueAdmissionControl(RedisRateLimitRepository rateLimitRepository,
+                                 RedisQueueRepository redisQueueRepository,
+                                 AdmissionProperties properties,
+                                 MeterRegistry registry) {
+        this.rateLimitRepository = rateLimitRepository;
+        this.redisQueueRepository = redisQueueRepository;
+        this.properties = properties;
+        this.joinRateLimited = rejectedCounter(registry, "join", "rate_limit");
+        this.leaveRateLimited = rejectedCounter(registry, "leave", "rate_limit");
+        this.joinQueueFull = rejectedCounter(registry, "join", "queue_full");
+    }
+
+    /**
+     * @param subject ключ пользователя из JWT (не требует обращения к persons-api)
+     * @throws QueueAdmissionException если лимит пользователя исчерпан или очередь заполнена
+     */
+    public void admitJoin(String subject) {
+        if (!properties.enabled()) {
+            return;
+        }
+        acquire(subject, joinRateLimited);
+        if (properties.maxQueueSize() > 0 && redisQueueRepository.getQueueSize() >= properties.maxQueueSize()) {
+            joinQueueFull.increment();
+            log.warn("Queue is full ({} players), rejecting join", properties.maxQueueSize());
+            throw new QueueAdmissionException("Queue is full", properties.queueFullRetryAfter());
+        }
+    }
+
+    /**
+     * @throws QueueAdmissionException если лимит пользователя исчерпан
+     */
+    public void admitLeave(String subject) {
+        if (!properties.enabled()) {
+            return;
+        }
+        acquire(subject, leaveRateLimited);
+    }
+
+    private void acquire(String subject, Counter rejected) {
+        long waitMillis;
+        try {
+            waitMillis = rateLimitRepository.tryAcquire(subject, Instant.now().toEpochMilli(),
+                    properties.burst(), properties.refillPeriod().toMillis());
+        } catch (DataAccessException e) {
+            log.warn("Rate limiter unavailable, admitting request: {}", e.getMessage());
+            return;
+        }
+        if (waitMillis > 0) {
+            rejected.increment();
+            log.debug("Rate limit exceeded for {}, retry in {} ms", subject, waitMillis);
+            throw new QueueAdmissionException("Too many queue requests", Duration.ofMillis(waitMillis));
+        }
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String operation, String reason) {
+        return Counter.builder(REJECTED_METRIC)
+                .description("Queue requests rejected by admission control")
+                .tag("operation", operation)
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
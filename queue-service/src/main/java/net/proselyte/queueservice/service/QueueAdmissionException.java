@@ -0,0 +1,32 @@
+package net.proselyte.queueservice.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * Запрос к очереди отклонен допуском: 429 с заголовком Retry-After в секундах.
+ */
+public class QueueAdmissionException extends ResponseStatusException {
+
+    private final long retryAfterSeconds;
+
+    public QueueAdmissionException(String reason, Duration retryAfter) {
+        super(HttpStatus.TOO_MANY_REQUESTS, reason);
+        // Retry-After целый; округляем вверх, чтобы клиент не пришел раньше появления токена
+        this.retryAfterSeconds = Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
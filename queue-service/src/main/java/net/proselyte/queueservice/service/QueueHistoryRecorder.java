@@ -0,0 +1,134 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.config.QueueHistoryProperties;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.repository.QueueItemHistoryRepository;
+import net.proselyte.queueservice.repository.QueueTransition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind истории очереди: переходы складываются в ограниченный буфер в памяти
+ * и периодически сбрасываются в {@code queue.queue_items} пакетным upsert'ом.
+ * <p>
+ * Буфер хранит последний переход на игрока, поэтому WAITING и MATCHED одного игрока между сбросами
+ * дают одну строку. Если буфер заполнен, переход нового игрока отбрасывается (метрика
+ * {@code queue_history_dropped}): история - аналитика, вход в очередь не должен ее ждать.
+ * При ошибке базы пачка теряется, а не возвращается в буфер.
+ */
+@Slf4j
+@Component
+public class QueueHistoryRecorder {
+
+    public static final String BUFFER_DEPTH_METRIC = "queue_history_buffer_depth";
+    public static final String FLUSH_METRIC = "queue_history_flush";
+    public static final String DROPPED_METRIC = "queue_history_dropped";
+
+    private final QueueItemHistoryRepository historyRepository;
+    private final QueueHistoryProperties properties;
+    private final Map<UUID, QueueTransition> buffer = new ConcurrentHashMap<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Timer flushTimer;
+    private final Counter dropped;
+    private final Counter failed;
+
+    public QueueHistoryRecorder(QueueItemHistoryRepository historyRepository,
+                                QueueHistoryProperties properties,
+                                MeterRegistry registry) {
+        this.historyRepository = historyRepository;
+        this.properties = properties;
+        Gauge.builder(BUFFER_DEPTH_METRIC, depth, AtomicInteger::get)
+                .description("Players with a queue transition not yet written to queue_items")
+                .register(registry);
+        flushTimer = Timer.builder(FLUSH_METRIC)
+                .description("Time to write one batch of queue transitions to queue_items")
+                .publishPercentileHistogram()
+                .register(registry);
+        dropped = Counter.builder(DROPPED_METRIC)
+                .description("Queue transitions dropped because the history buffer was full")
+                .tag("reason", "buffer_full")
+                .register(registry);
+        failed = Counter.builder(DROPPED_METRIC)
+                .description("Queue transitions dropped because writing to queue_items failed")
+                .tag("reason", "write_failed")
+                .register(registry);
+    }
+
+    /**
+     * Не блокирует: только кладет переход в буфер.
+     */
+    public void record(UUID userId, QueueItem.QueueStatus status, Instant joinedAt) {
+        if (!properties.enabled()) {
+            return;
+        }
+        QueueTransition transition = new QueueTransition(userId, status, joinedAt);
+        if (buffer.replace(userId, transition) != null) {
+            return;
+        }
+        if (depth.incrementAndGet() > properties.bufferSize()) {
+            depth.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        if (buffer.putIfAbsent(userId, transition) != null) {
+            // Параллельный переход того же игрока уже занял место в буфере
+            depth.decrementAndGet();
+            buffer.put(userId, transition);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${queue.history.flush-interval-ms:250}")
+    public void flush() {
+        List<QueueTransition> batch = new ArrayList<>(Math.min(depth.get(), properties.batchSize()));
+        Iterator<UUID> userIds = buffer.keySet().iterator();
+        while (userIds.hasNext()) {
+            QueueTransition transition = buffer.remove(userIds.next());
+            if (transition == null) {
+                continue;
+            }
+            depth.decrementAndGet();
+            batch.add(transition);
+            if (batch.size() >= properties.batchSize()) {
+                write(batch);
+                batch = new ArrayList<>(properties.batchSize());
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    private void write(List<QueueTransition> batch) {
+        try {
+            flushTimer.record(() -> historyRepository.upsertAll(batch));
+            log.debug("Wrote {} queue transitions to queue_items", batch.size());
+        } catch (Exception e) {
+            failed.increment(batch.size());
+            log.warn("Failed to write {} queue transitions to queue_items: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    int bufferDepth() {
+        return depth.get();
+    }
+}
@@ -0,0 +1,29 @@
+package net.proselyte.queueservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queueservice.repository.QueueMemberMigrator;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Одноразовая миграция живых ключей очереди в формат {@code queue.redis.member-encoding}.
+ * Включается {@code queue.redis.migrate-members=true} на время выката смены формата и затем выключается.
+ * Репозиторий читает оба формата, поэтому очередь продолжает работать, пока миграция идет.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "queue.redis.migrate-members", havingValue = "true")
+public class QueueMemberMigration implements ApplicationRunner {
+
+    private final QueueMemberMigrator migrator;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        log.info("Starting queue member migration");
+        migrator.migrate();
+    }
+}
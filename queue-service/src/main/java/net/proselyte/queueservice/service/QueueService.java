@@ -2,7 +2,11 @@ package net.proselyte.queueservice.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.proselyte.queue.dto.QueueJoinResponseDto;
 import net.proselyte.queue.dto.QueueStatusResponseDto;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.repository.QueueEntry;
+import net.proselyte.queueservice.repository.QueueJoin;
 import net.proselyte.queueservice.repository.RedisQueueRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -19,30 +23,44 @@ import java.util.UUID;
 public class QueueService {
 
     private final RedisQueueRepository redisQueueRepository;
+    private final MatchmakingWorker matchmakingWorker;
+    private final WebSocketNotificationService notificationService;
+    private final QueueHistoryRecorder queueHistoryRecorder;
 
     /**
      * Adds a user to the queue in Redis (sorted set with timestamp).
+     * The check and the insert are a single atomic Redis command, so repeated joins are idempotent:
+     * the player keeps the original join time. In event-driven mode a successful join wakes up the matchmaker.
+     *
+     * The player's card (nickname, rating, join time) is stored next to the queue entry,
+     * so the matchmaker does not need persons-api to pair the player.
      *
      * @param userId the user ID to add to the queue
+     * @param nickname the player's nickname for the card, or null if unknown
+     * @param rating the player's rating, or null if unknown (the player is then matched in join order)
+     * @return join response with the join time and whether this call added the user
      */
-    public void joinQueue(UUID userId) {
+    public QueueJoinResponseDto joinQueue(UUID userId, String nickname, Double rating) {
         log.info("User {} joining the queue", userId);
         
-        // Check if user is already in queue
-        if (redisQueueRepository.isInQueue(userId)) {
-            log.warn("User {} is already in the queue", userId);
-            return;
-        }
-        
-        // Add to Redis sorted set with current timestamp as score
-        long timestamp = Instant.now().toEpochMilli();
-        boolean added = redisQueueRepository.addToQueue(userId, timestamp);
+        QueueJoin join = redisQueueRepository.joinQueue(userId, Instant.now().toEpochMilli(), rating, nickname);
         
-        if (added) {
-            log.info("User {} successfully joined the queue at timestamp {}", userId, timestamp);
+        if (join.added()) {
+            log.info("User {} successfully joined the queue at timestamp {}", userId, join.joinedAt());
+            notificationService.clearPendingNotifications(userId);
+            queueHistoryRecorder.record(userId, QueueItem.QueueStatus.WAITING, Instant.ofEpochMilli(join.joinedAt()));
+            matchmakingWorker.requestMatchmaking();
         } else {
-            log.warn("Failed to add user {} to Redis queue", userId);
+            log.warn("User {} is already in the queue since {}", userId, join.joinedAt());
         }
+        
+        QueueJoinResponseDto response = new QueueJoinResponseDto();
+        response.setMessage("waiting");
+        response.setStatus(QueueJoinResponseDto.StatusEnum.WAITING);
+        response.setPersonId(userId);
+        response.setJoinedAt(Instant.ofEpochMilli(join.joinedAt()).atOffset(ZoneOffset.UTC));
+        response.setNewlyJoined(join.added());
+        return response;
     }
 
     /**
@@ -58,6 +76,8 @@ public class QueueService {
         
         if (removed) {
             log.info("User {} successfully left the queue", userId);
+            // Время входа нужно, только если WAITING еще не записан; иначе сохраняется исходное
+            queueHistoryRecorder.record(userId, QueueItem.QueueStatus.LEFT, Instant.now());
         } else {
             log.warn("User {} was not found in the queue", userId);
         }
@@ -71,35 +91,22 @@ public class QueueService {
      * @return queue status response with waiting time and position
      */
     public QueueStatusResponseDto getQueueStatus(UUID userId) {
-        // Check if user is in Redis queue
-        if (!redisQueueRepository.isInQueue(userId)) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found in queue");
-        }
-        
-        // Get data from Redis
-        Long joinTimestamp = redisQueueRepository.getJoinTimestamp(userId);
-        Long position = redisQueueRepository.getPosition(userId);
-        
-        if (joinTimestamp == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found in queue");
-        }
+        // Join timestamp and rank are read in a single Redis round-trip
+        QueueEntry entry = redisQueueRepository.getQueueEntry(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found in queue"));
         
         QueueStatusResponseDto response = new QueueStatusResponseDto();
         response.setStatus(QueueStatusResponseDto.StatusEnum.WAITING);
         
-        Instant joinedAt = Instant.ofEpochMilli(joinTimestamp);
+        Instant joinedAt = Instant.ofEpochMilli(entry.joinedAt());
         response.setJoinedAt(joinedAt.atOffset(ZoneOffset.UTC));
         
         // Calculate waiting time in seconds
         long waitingTimeSeconds = Duration.between(joinedAt, Instant.now()).getSeconds();
         response.setWaitingTime((int) waitingTimeSeconds);
         
-        // Set position in queue (convert 0-based to 1-based for user-friendly display)
-        if (position != null) {
-            // Position is already 0-based from Redis, but we might want to show 1-based to users
-            // For now, keeping it as-is (0-based)
-            // response.setPosition(position.intValue() + 1);
-        }
+        // Redis rank is 0-based, users see 1-based position
+        response.setPosition((int) entry.rank() + 1);
         
         return response;
     }
@@ -0,0 +1,12 @@
+package net.proselyte.queueservice.service;
+
+import java.util.UUID;
+
+/**
+ * Пользователь persons-api, найденный по email из JWT токена.
+ *
+ * @param id       person ID
+ * @param nickname никнейм для карточки игрока в очереди
+ */
+public record ResolvedPerson(UUID id, String nickname) {
+}
@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.UUID;
 
 @Slf4j
@@ -12,20 +13,31 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class WebSocketNotificationService {
     
+    public static final String QUEUE_TOPIC_PREFIX = "/topic/queue/";
+    
+    /**
+     * Сколько {@code queue_status} уходит одним сообщением Redis pub/sub в режиме cluster.
+     */
+    static final int QUEUE_STATUS_CHUNK = 500;
+    
     private final SimpMessagingTemplate messagingTemplate;
+    private final ClusterNotificationRelay clusterNotificationRelay;
     
     /**
-     * Отправляет уведомление о найденном матче пользователю
+     * Отправляет уведомление о найденном матче пользователю.
+     * В режиме cluster событие доставляет реплика, к которой подключен пользователь.
      */
     public void sendMatchFound(UUID userId, UUID matchId, String opponentNickname) {
-        String destination = "/topic/queue/" + userId;
+        String destination = QUEUE_TOPIC_PREFIX + userId;
         
         MatchFoundEvent event = new MatchFoundEvent();
         event.setType("match_found");
         event.setMatchId(matchId);
         event.setOpponentNickname(opponentNickname);
         
-        messagingTemplate.convertAndSend(destination, event);
+        if (!clusterNotificationRelay.enabled() || !clusterNotificationRelay.publish(userId, event)) {
+            messagingTemplate.convertAndSend(destination, event);
+        }
         log.info("Sent match_found event to user {}: matchId={}, opponent={}", 
                 userId, matchId, opponentNickname);
     }
@@ -41,6 +53,62 @@ public class WebSocketNotificationService {
         sendMatchFound(player2Id, matchId, player1Nickname);
     }
     
+    /**
+     * Отправляет пользователю текущее положение в очереди
+     *
+     * @param estimatedWaitSeconds оценка времени до матча, или null если темп подбора пока неизвестен
+     */
+    public void sendQueueStatus(UUID userId, int position, int waitingTime, Integer estimatedWaitSeconds) {
+        deliverQueueStatus(new QueueStatus(userId, position, waitingTime, estimatedWaitSeconds));
+    }
+    
+    /**
+     * Рассылает положение в очереди пачке игроков.
+     * В режиме cluster события уходят через Redis pub/sub пачками по {@link #QUEUE_STATUS_CHUNK},
+     * и каждое доставляет реплика, к которой подключен игрок; пачка, которую не удалось разослать,
+     * отправляется в брокер этой реплики.
+     */
+    public void sendQueueStatuses(List<QueueStatus> statuses) {
+        for (int from = 0; from < statuses.size(); from += QUEUE_STATUS_CHUNK) {
+            List<QueueStatus> chunk = statuses.subList(from, Math.min(from + QUEUE_STATUS_CHUNK, statuses.size()));
+            if (!clusterNotificationRelay.enabled() || !clusterNotificationRelay.publishQueueStatuses(chunk)) {
+                chunk.forEach(this::deliverQueueStatus);
+            }
+        }
+    }
+    
+    private void deliverQueueStatus(QueueStatus status) {
+        messagingTemplate.convertAndSend(QUEUE_TOPIC_PREFIX + status.userId(), queueStatusEvent(status));
+        log.debug("Sent queue_status event to user {}: position={}, eta={}", 
+                status.userId(), status.position(), status.estimatedWaitSeconds());
+    }
+    
+    static QueueStatusEvent queueStatusEvent(QueueStatus status) {
+        QueueStatusEvent event = new QueueStatusEvent();
+        event.setType("queue_status");
+        event.setPosition(status.position());
+        event.setWaitingTime(status.waitingTime());
+        event.setEstimatedWaitSeconds(status.estimatedWaitSeconds());
+        return event;
+    }
+    
+    /**
+     * Сбрасывает недоставленное уведомление прошлого матча при новом входе в очередь
+     */
+    public void clearPendingNotifications(UUID userId) {
+        if (clusterNotificationRelay.enabled()) {
+            clusterNotificationRelay.clearMailbox(userId);
+        }
+    }
+    
+    /**
+     * Положение игрока в очереди для {@link #sendQueueStatuses(List)}.
+     *
+     * @param estimatedWaitSeconds оценка времени до матча, или null если темп подбора пока неизвестен
+     */
+    public record QueueStatus(UUID userId, int position, int waitingTime, Integer estimatedWaitSeconds) {
+    }
+    
     // DTO для события
     public static class MatchFoundEvent {
         private String type;
@@ -59,5 +127,25 @@ public class WebSocketNotificationService {
             this.opponentNickname = opponentNickname; 
         }
     }
+    
+    public static class QueueStatusEvent {
+        private String type;
+        private int position;
+        private int waitingTime;
+        private Integer estimatedWaitSeconds;
+        
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        
+        public int getPosition() { return position; }
+        public void setPosition(int position) { this.position = position; }
+        
+        public int getWaitingTime() { return waitingTime; }
+        public void setWaitingTime(int waitingTime) { this.waitingTime = waitingTime; }
+        
+        public Integer getEstimatedWaitSeconds() { return estimatedWaitSeconds; }
+        public void setEstimatedWaitSeconds(Integer estimatedWaitSeconds) { 
+            this.estimatedWaitSeconds = estimatedWaitSeconds; 
+        }
+    }
 }
-
@@ -0,0 +1,148 @@
+package net.proselyte.queueservice.config;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.Target;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PooledFeignClient Unit Tests")
+class PooledFeignClientTest {
+
+    private static final Request.Options OPTIONS = new Request.Options(
+            500, TimeUnit.MILLISECONDS, 200, TimeUnit.MILLISECONDS, false);
+
+    private final CountDownLatch slowRequests = new CountDownLatch(1);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private SimpleMeterRegistry registry;
+    private PooledFeignClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", exchange -> {
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            slowRequests.countDown();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        // Медленный запрос не должен блокировать остальные
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        registry = new SimpleMeterRegistry();
+        HttpClientProperties.Pool defaults = new HttpClientProperties.Pool(
+                10, Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(2));
+        HttpClientProperties.Pool gamePool = new HttpClientProperties.Pool(
+                2, Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(2));
+        HttpClientProperties.Pool singlePool = new HttpClientProperties.Pool(
+                1, Duration.ofMillis(100), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(2));
+        client = new PooledFeignClient(new HttpClientProperties(defaults,
+                Map.of("game-service", gamePool, "single-service", singlePool)), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private Request request(String upstream, String path) {
+        String url = "http://localhost:" + server.getAddress().getPort();
+        RequestTemplate template = new RequestTemplate();
+        template.feignTarget(new Target.HardCodedTarget<>(Object.class, upstream, url));
+        return Request.create(Request.HttpMethod.GET, url + path, Map.of(), null, StandardCharsets.UTF_8, template);
+    }
+
+    private double timeouts(String upstream, String type) {
+        return registry.get(PooledFeignClient.TIMEOUTS_METRIC).tag("client", upstream).tag("type", type)
+                .counter().count();
+    }
+
+    @Test
+    @DisplayName("Should create a separate pool with metrics per upstream")
+    void shouldCreatePoolPerUpstream() throws IOException {
+        // when
+        try (Response response = client.execute(request("game-service", "/ok"), OPTIONS)) {
+            assertEquals(200, response.status());
+        }
+        try (Response response = client.execute(request("person-service", "/ok"), OPTIONS)) {
+            assertEquals(200, response.status());
+        }
+
+        // then
+        assertEquals(2, registry.get("httpcomponents.httpclient.pool.total.max")
+                .tag("httpclient", "game-service").gauge().value());
+        assertEquals(10, registry.get("httpcomponents.httpclient.pool.total.max")
+                .tag("httpclient", "person-service").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should count read timeout for the upstream")
+    void shouldCountReadTimeout() {
+        // when & then
+        assertThrows(SocketTimeoutException.class, () -> client.execute(request("game-service", "/slow"), OPTIONS));
+        assertEquals(1, timeouts("game-service", "read"));
+        assertEquals(0, timeouts("game-service", "connect"));
+        assertEquals(0, timeouts("game-service", "pool"));
+    }
+
+    @Test
+    @DisplayName("Should count pool timeout when no connection is released in time")
+    void shouldCountPoolTimeout() throws Exception {
+        // given - единственное соединение пула занято медленным запросом
+        Request.Options patient = new Request.Options(500, TimeUnit.MILLISECONDS, 2, TimeUnit.SECONDS, false);
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> {
+            try (Response ignored = client.execute(request("single-service", "/slow"), patient)) {
+                // ответ не нужен
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertTrue(slowRequests.await(2, TimeUnit.SECONDS));
+
+        // when & then
+        assertThrows(ConnectionRequestTimeoutException.class,
+                () -> client.execute(request("single-service", "/ok"), OPTIONS));
+        assertEquals(1, timeouts("single-service", "pool"));
+        assertEquals(0, timeouts("single-service", "read"));
+        slow.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -1,8 +1,11 @@
 package net.proselyte.queueservice.integration;
 
+import jakarta.persistence.EntityManager;
 import net.proselyte.queueservice.QueueServiceApplication;
 import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.repository.QueueItemHistoryRepository;
 import net.proselyte.queueservice.repository.QueueItemRepository;
+import net.proselyte.queueservice.repository.QueueTransition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +21,8 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -58,6 +63,12 @@ class QueueRedisIntegrationTest {
     @Autowired
     private QueueItemRepository queueItemRepository;
 
+    @Autowired
+    private QueueItemHistoryRepository queueItemHistoryRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
     private static final String QUEUE_KEY = "queue:waiting";
     private static final String QUEUE_POSITION_KEY_PREFIX = "queue:position:";
 
@@ -243,4 +254,26 @@ class QueueRedisIntegrationTest {
         Set<String> users = redisTemplate.opsForZSet().range(QUEUE_KEY, 0, -1);
         assertTrue(users == null || users.isEmpty());
     }
+
+    @Test
+    void shouldUpsertQueueHistoryKeepingOriginalJoinTime() {
+        // given
+        UUID userId = UUID.randomUUID();
+        Instant joinedAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        queueItemHistoryRepository.upsertAll(List.of(
+                new QueueTransition(userId, QueueItem.QueueStatus.WAITING, joinedAt)));
+        Instant storedJoin = queueItemRepository.findByUserId(userId).orElseThrow().getJoinedAt();
+
+        // when
+        queueItemHistoryRepository.upsertAll(List.of(
+                new QueueTransition(userId, QueueItem.QueueStatus.MATCHED, joinedAt.plusSeconds(60))));
+        // JDBC upsert идет мимо persistence context, поэтому сущность перечитывается из базы
+        entityManager.clear();
+
+        // then - одна строка на игрока, MATCHED не переписывает время входа
+        QueueItem fromDb = queueItemRepository.findByUserId(userId).orElseThrow();
+        assertEquals(QueueItem.QueueStatus.MATCHED, fromDb.getStatus());
+        assertEquals(storedJoin, fromDb.getJoinedAt());
+        assertEquals(1, queueItemRepository.count());
+    }
 }
@@ -0,0 +1,73 @@
+package net.proselyte.queueservice.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("QueueMemberCodec Unit Tests")
+class QueueMemberCodecTest {
+
+    private final QueueMemberCodec textCodec = new QueueMemberCodec(QueueMemberCodec.Encoding.TEXT);
+    private final QueueMemberCodec binaryCodec = new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY);
+
+    @Test
+    @DisplayName("Should encode player as 16 bytes in binary mode")
+    void shouldEncodeBinaryMember() {
+        // given
+        UUID userId = UUID.randomUUID();
+
+        // when
+        String member = binaryCodec.encode(userId);
+
+        // then
+        assertEquals(QueueMemberCodec.BINARY_LENGTH, member.getBytes(StandardCharsets.ISO_8859_1).length);
+        assertEquals(userId, binaryCodec.decode(member));
+        assertEquals(member, binaryCodec.encode(userId.toString()));
+    }
+
+    @Test
+    @DisplayName("Should keep UUID string in text mode")
+    void shouldEncodeTextMember() {
+        // given
+        UUID userId = UUID.randomUUID();
+
+        // when & then
+        assertEquals(userId.toString(), textCodec.encode(userId));
+        assertEquals(userId, textCodec.decode(userId.toString()));
+    }
+
+    @Test
+    @DisplayName("Should decode both encodings regardless of configured mode")
+    void shouldDecodeBothEncodings() {
+        // given
+        UUID userId = UUID.randomUUID();
+        String binary = QueueMemberCodec.toBinary(userId);
+
+        // when & then
+        assertEquals(userId, textCodec.decode(binary));
+        assertEquals(userId, binaryCodec.decode(userId.toString()));
+        assertEquals(userId.toString(), textCodec.decodeToText(binary));
+        assertEquals(userId.toString(), binaryCodec.decodeToText(userId.toString()));
+    }
+
+    @Test
+    @DisplayName("Should return member in the other encoding")
+    void shouldReturnAlternateMember() {
+        // given
+        UUID userId = UUID.randomUUID();
+
+        // when & then
+        assertEquals(binaryCodec.encode(userId), textCodec.alternate(userId));
+        assertEquals(textCodec.encode(userId), binaryCodec.alternate(userId));
+    }
+
+    @Test
+    @DisplayName("Should reject malformed member")
+    void shouldRejectMalformedMember() {
+        assertThrows(IllegalArgumentException.class, () -> textCodec.decode("not-a-uuid"));
+    }
+}
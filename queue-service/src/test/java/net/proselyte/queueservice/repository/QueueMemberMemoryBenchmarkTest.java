@@ -0,0 +1,95 @@
+package net.proselyte.queueservice.repository;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Память Redis на игрока в {@code queue:waiting} и {@code queue:rating} для обоих форматов членов.
+ * Запускается отдельно: {@code ./gradlew benchmark}.
+ */
+@Tag("benchmark")
+@Testcontainers
+class QueueMemberMemoryBenchmarkTest {
+
+    private static final int PLAYERS = 100_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTemplate<String, String> template;
+
+    @BeforeAll
+    static void setUp() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisSerializer serializer = new StringRedisSerializer(StandardCharsets.ISO_8859_1);
+        template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(serializer);
+        template.setValueSerializer(serializer);
+        template.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void binaryMembersShouldUseLessMemoryThanText() {
+        long text = bytesPerPlayer(new QueueMemberCodec(QueueMemberCodec.Encoding.TEXT));
+        long binary = bytesPerPlayer(new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY));
+
+        System.out.printf("Queue memory per player (%d players): text=%d bytes, binary=%d bytes, saved=%d bytes%n",
+                PLAYERS, text, binary, text - binary);
+        assertTrue(binary < text);
+    }
+
+    private long bytesPerPlayer(QueueMemberCodec codec) {
+        template.delete(Set.of("queue:waiting", "queue:rating"));
+        long now = System.currentTimeMillis();
+        for (int offset = 0; offset < PLAYERS; offset += BATCH_SIZE) {
+            Set<ZSetOperations.TypedTuple<String>> waiting = new HashSet<>();
+            Set<ZSetOperations.TypedTuple<String>> ratings = new HashSet<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String member = codec.encode(UUID.randomUUID());
+                waiting.add(new DefaultTypedTuple<>(member, (double) (now + offset + i)));
+                ratings.add(new DefaultTypedTuple<>(member, 1000.0 + (offset + i) % 1000));
+            }
+            template.opsForZSet().add("queue:waiting", waiting);
+            template.opsForZSet().add("queue:rating", ratings);
+        }
+        return (memoryUsage("queue:waiting") + memoryUsage("queue:rating")) / PLAYERS;
+    }
+
+    private long memoryUsage(String key) {
+        Long bytes = template.execute((RedisCallback<Long>) connection -> (Long) connection.execute(
+                "MEMORY", "USAGE".getBytes(StandardCharsets.US_ASCII), key.getBytes(StandardCharsets.US_ASCII),
+                "SAMPLES".getBytes(StandardCharsets.US_ASCII), "0".getBytes(StandardCharsets.US_ASCII)));
+        return bytes != null ? bytes : 0L;
+    }
+}
@@ -1,9 +1,11 @@
 package net.proselyte.queueservice.repository;
 
 import net.proselyte.queueservice.QueueServiceApplication;
+import net.proselyte.queueservice.config.MatchmakingProperties;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -14,6 +16,10 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -50,11 +56,29 @@ class RedisQueueRepositoryTest {
     @Autowired
     private RedisQueueRepository redisQueueRepository;
 
+    @Autowired
+    private RedisLeaseRepository redisLeaseRepository;
+
+    @Autowired
+    private RedisPresenceRepository redisPresenceRepository;
+
+    @Autowired
+    private RedisRateLimitRepository redisRateLimitRepository;
+
+    @Autowired
+    private RedisPairingRateRepository redisPairingRateRepository;
+
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    @Qualifier("queueRedisTemplate")
+    private RedisTemplate<String, String> queueRedisTemplate;
+
     private static final String QUEUE_KEY = "queue:waiting";
 
+    private static final MatchmakingProperties.Rating RATING_WINDOW = new MatchmakingProperties.Rating(50, 10, 400, 16, 4, 1024);
+
     @BeforeEach
     void setUp() {
         // Очистка Redis перед каждым тестом
@@ -184,5 +208,579 @@ class RedisQueueRepositoryTest {
         assertNotNull(result);
         assertEquals(limit, result.size(), "Should return exactly limit players");
     }
-}
 
+    @Test
+    void shouldClaimTwoOldestUnratedPlayersAtomically() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID oldest = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID newest = UUID.randomUUID();
+        redisQueueRepository.addToQueue(newest, baseTime + 2000);
+        redisQueueRepository.addToQueue(oldest, baseTime);
+        redisQueueRepository.addToQueue(second, baseTime + 1000);
+
+        // when
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW);
+
+        // then - игроки без рейтинга подбираются по FIFO: забраны два самых старых, в очереди остался только новый
+        assertTrue(claim.isPresent());
+        assertEquals(List.of(oldest, second), claim.get().playerIds());
+        assertEquals(baseTime, claim.get().players().get(0).joinedAt());
+        assertEquals(1L, redisQueueRepository.getQueueSize());
+        assertTrue(redisQueueRepository.isInQueue(newest));
+        assertFalse(redisQueueRepository.isInQueue(oldest));
+    }
+
+    @Test
+    void shouldNotClaimWhenLessThanTwoPlayers() {
+        // given
+        UUID player = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        redisQueueRepository.addToQueue(player, now);
+
+        // when
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(now, RATING_WINDOW);
+
+        // then - единственный игрок остается в очереди
+        assertTrue(claim.isEmpty());
+        assertTrue(redisQueueRepository.isInQueue(player));
+    }
+
+    @Test
+    void shouldReadJoinTimestampAndRankInOneCall() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        redisQueueRepository.addToQueue(first, baseTime);
+        redisQueueRepository.addToQueue(second, baseTime + 1000);
+
+        // when
+        QueueEntry entry = redisQueueRepository.getQueueEntry(second).orElseThrow();
+
+        // then
+        assertEquals(baseTime + 1000, entry.joinedAt());
+        assertEquals(1L, entry.rank());
+        assertTrue(redisQueueRepository.getQueueEntry(UUID.randomUUID()).isEmpty());
+    }
+
+    @Test
+    void shouldIssueIncreasingFencingTokensOnLeaseTakeover() {
+        // given
+        String key = "queue:test:lease";
+        Duration ttl = Duration.ofSeconds(10);
+        long first = redisLeaseRepository.tryAcquire(key, "replica-a", ttl);
+
+        // when - другой владелец не может захватить аренду, пока она не освобождена
+        long rejected = redisLeaseRepository.tryAcquire(key, "replica-b", ttl);
+        long renewed = redisLeaseRepository.tryAcquire(key, "replica-a", ttl);
+        redisLeaseRepository.release(key, "replica-a");
+        long takeover = redisLeaseRepository.tryAcquire(key, "replica-b", ttl);
+
+        // then
+        assertTrue(first > 0);
+        assertEquals(0L, rejected);
+        assertEquals(first, renewed);
+        assertTrue(takeover > first);
+    }
+
+    @Test
+    void shouldRejectClaimWithStaleFencingToken() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        redisQueueRepository.addToQueue(UUID.randomUUID(), baseTime);
+        redisQueueRepository.addToQueue(UUID.randomUUID(), baseTime + 1000);
+        String key = "queue:test:lease";
+        Duration ttl = Duration.ofSeconds(10);
+        long staleToken = redisLeaseRepository.tryAcquire(key, "replica-a", ttl);
+        redisLeaseRepository.release(key, "replica-a");
+        long currentToken = redisLeaseRepository.tryAcquire(key, "replica-b", ttl);
+
+        // when
+        Optional<QueueClaim> stale = redisQueueRepository.claimClosestPair(baseTime, RATING_WINDOW,
+                RedisLeaseRepository.fence(key, "replica-a", staleToken));
+        Optional<QueueClaim> current = redisQueueRepository.claimOldestPlayers(10,
+                RedisLeaseRepository.fence(key, "replica-b", currentToken));
+
+        // then
+        assertTrue(stale.isEmpty());
+        assertTrue(current.isPresent());
+        assertEquals(2, current.get().players().size());
+    }
+
+    @Test
+    void shouldRestoreOriginalScoresOnRollback() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        redisQueueRepository.addToQueue(player1, baseTime);
+        redisQueueRepository.addToQueue(player2, baseTime + 1000);
+        QueueClaim claim = redisQueueRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW).orElseThrow();
+
+        // when
+        long restored = redisQueueRepository.rollbackClaim(claim);
+
+        // then
+        assertEquals(2L, restored);
+        assertEquals(baseTime, redisQueueRepository.getJoinTimestamp(player1));
+        assertEquals(baseTime + 1000, redisQueueRepository.getJoinTimestamp(player2));
+        assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey("queue:claim:" + claim.claimId())));
+    }
+
+    @Test
+    void shouldNotRestorePlayerWhoLeftWhileClaimed() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID leaving = UUID.randomUUID();
+        UUID staying = UUID.randomUUID();
+        redisQueueRepository.addToQueue(leaving, baseTime);
+        redisQueueRepository.addToQueue(staying, baseTime + 1000);
+        QueueClaim claim = redisQueueRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW).orElseThrow();
+
+        // when
+        boolean removed = redisQueueRepository.removeFromQueue(leaving);
+        long restored = redisQueueRepository.rollbackClaim(claim);
+
+        // then
+        assertFalse(removed);
+        assertEquals(1L, restored);
+        assertFalse(redisQueueRepository.isInQueue(leaving));
+        assertTrue(redisQueueRepository.isInQueue(staying));
+
+        // повторный вход снимает отметку выхода
+        assertTrue(redisQueueRepository.joinQueue(leaving, baseTime + 2000, null).added());
+        QueueClaim next = redisQueueRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW).orElseThrow();
+        assertEquals(2L, redisQueueRepository.rollbackClaim(next));
+        assertTrue(redisQueueRepository.isInQueue(leaving));
+    }
+
+    @Test
+    void shouldRequeueOnlyRequestedPlayersWhenFinishingClaim() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID missing = UUID.randomUUID();
+        UUID valid = UUID.randomUUID();
+        redisQueueRepository.addToQueue(missing, baseTime);
+        redisQueueRepository.addToQueue(valid, baseTime + 1000);
+        QueueClaim claim = redisQueueRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW).orElseThrow();
+
+        // when
+        long restored = redisQueueRepository.finishClaim(claim, List.of(valid));
+
+        // then
+        assertEquals(1L, restored);
+        assertTrue(redisQueueRepository.isInQueue(valid));
+        assertFalse(redisQueueRepository.isInQueue(missing));
+        assertEquals(baseTime + 1000, redisQueueRepository.getJoinTimestamp(valid));
+    }
+
+    @Test
+    void shouldClaimClosestRatedPlayerWithinWindow() {
+        // given - самый старый игрок 1500, кандидаты 1900 (вне окна), 1530 и 1480
+        long now = System.currentTimeMillis();
+        UUID anchor = UUID.randomUUID();
+        UUID far = UUID.randomUUID();
+        UUID near = UUID.randomUUID();
+        UUID closest = UUID.randomUUID();
+        redisQueueRepository.addToQueue(anchor, now, 1500.0);
+        redisQueueRepository.addToQueue(far, now + 1, 1900.0);
+        redisQueueRepository.addToQueue(near, now + 2, 1530.0);
+        redisQueueRepository.addToQueue(closest, now + 3, 1480.0);
+
+        // when
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(now, RATING_WINDOW);
+
+        // then - выбран ближайший по рейтингу, рейтинги забранных игроков убраны из очереди
+        assertTrue(claim.isPresent());
+        assertEquals(List.of(anchor, closest), claim.get().playerIds());
+        assertEquals(2L, redisQueueRepository.getQueueSize());
+        assertNull(redisQueueRepository.getRating(anchor));
+        assertEquals(1530.0, redisQueueRepository.getRating(near));
+    }
+
+    @Test
+    void shouldPairPlayersBehindOldestPlayersWithoutOpponent() {
+        // given - первая страница якорей (16) занята игроками, у которых нет соперника в окне
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++) {
+            redisQueueRepository.addToQueue(UUID.randomUUID(), now + i, 1000.0 + i * 1000);
+        }
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        redisQueueRepository.addToQueue(first, now + 100, 55_500.0);
+        redisQueueRepository.addToQueue(second, now + 101, 55_510.0);
+
+        // when
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(now, RATING_WINDOW);
+
+        // then - старые игроки не блокируют пару за ними
+        assertTrue(claim.isPresent());
+        assertEquals(List.of(first, second), claim.get().playerIds());
+        assertEquals(20L, redisQueueRepository.getQueueSize());
+    }
+
+    @Test
+    void shouldWidenRatingWindowWithWaitTime() {
+        // given - разница 200 не проходит в базовое окно 50
+        long joinedAt = System.currentTimeMillis();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        redisQueueRepository.addToQueue(player1, joinedAt, 1500.0);
+        redisQueueRepository.addToQueue(player2, joinedAt + 1, 1700.0);
+
+        // when / then - сразу после входа пары нет, через 15 секунд окно 50 + 10 * 15 = 200
+        assertTrue(redisQueueRepository.claimClosestPair(joinedAt, RATING_WINDOW).isEmpty());
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(joinedAt + 15_000, RATING_WINDOW);
+        assertTrue(claim.isPresent());
+        assertEquals(List.of(player1, player2), claim.get().playerIds());
+    }
+
+    @Test
+    void shouldFallBackToFifoWhenRatingUnknown() {
+        // given - у самого старого игрока нет рейтинга
+        long now = System.currentTimeMillis();
+        UUID unrated = UUID.randomUUID();
+        UUID rated = UUID.randomUUID();
+        UUID newest = UUID.randomUUID();
+        redisQueueRepository.addToQueue(unrated, now);
+        redisQueueRepository.addToQueue(rated, now + 1, 2500.0);
+        redisQueueRepository.addToQueue(newest, now + 2, 1000.0);
+
+        // when
+        Optional<QueueClaim> claim = redisQueueRepository.claimClosestPair(now, RATING_WINDOW);
+
+        // then
+        assertTrue(claim.isPresent());
+        assertEquals(List.of(unrated, rated), claim.get().playerIds());
+    }
+
+    @Test
+    void shouldRestoreRatingOnRollbackAndDropItOnLeave() {
+        // given
+        long now = System.currentTimeMillis();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        redisQueueRepository.addToQueue(player1, now, 1500.0);
+        redisQueueRepository.addToQueue(player2, now + 1, 1510.0);
+        QueueClaim claim = redisQueueRepository.claimClosestPair(now, RATING_WINDOW).orElseThrow();
+
+        // when
+        redisQueueRepository.rollbackClaim(claim);
+
+        // then
+        assertEquals(1500.0, redisQueueRepository.getRating(player1));
+        assertEquals(1510.0, redisQueueRepository.getRating(player2));
+
+        redisQueueRepository.removeFromQueue(player1);
+        assertNull(redisQueueRepository.getRating(player1));
+    }
+
+    @Test
+    void shouldClaimBatchOfOldestPlayersWithRatings() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID rated = UUID.randomUUID();
+        UUID unrated = UUID.randomUUID();
+        UUID newest = UUID.randomUUID();
+        redisQueueRepository.addToQueue(rated, baseTime, 1500.0);
+        redisQueueRepository.addToQueue(unrated, baseTime + 1000);
+        redisQueueRepository.addToQueue(newest, baseTime + 2000, 1600.0);
+
+        // when
+        QueueClaim claim = redisQueueRepository.claimOldestPlayers(2).orElseThrow();
+
+        // then
+        assertEquals(List.of(rated, unrated), claim.playerIds());
+        assertEquals(1500.0, claim.players().get(0).rating());
+        assertNull(claim.players().get(1).rating());
+        assertEquals(1L, redisQueueRepository.getQueueSize());
+
+        // игрок без пары возвращается в очередь вместе с рейтингом
+        redisQueueRepository.finishClaim(claim, List.of(rated));
+        assertEquals(baseTime, redisQueueRepository.getJoinTimestamp(rated));
+        assertEquals(1500.0, redisQueueRepository.getRating(rated));
+        assertFalse(redisQueueRepository.isInQueue(unrated));
+    }
+
+    @Test
+    void shouldStoreBinaryMembersAndReadBothEncodings() {
+        // given - один игрок записан старой репликой в текстовом формате
+        RedisQueueRepository binaryRepository =
+                new RedisQueueRepository(queueRedisTemplate, new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY));
+        long baseTime = System.currentTimeMillis();
+        UUID textPlayer = UUID.randomUUID();
+        UUID binaryPlayer = UUID.randomUUID();
+        redisQueueRepository.addToQueue(textPlayer, baseTime, 1500.0);
+        binaryRepository.addToQueue(binaryPlayer, baseTime + 1000, 1510.0);
+
+        // when
+        QueueClaim claim = binaryRepository.claimClosestPair(baseTime + 2000, RATING_WINDOW).orElseThrow();
+
+        // then
+        assertEquals(Set.of(textPlayer, binaryPlayer), Set.copyOf(claim.playerIds()));
+        assertEquals(0L, binaryRepository.getQueueSize());
+    }
+
+    @Test
+    void shouldMigrateMembersBetweenEncodings() {
+        // given
+        QueueMemberCodec binaryCodec = new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY);
+        RedisQueueRepository binaryRepository = new RedisQueueRepository(queueRedisTemplate, binaryCodec);
+        long baseTime = System.currentTimeMillis();
+        UUID player1 = UUID.randomUUID();
+        UUID player2 = UUID.randomUUID();
+        redisQueueRepository.addToQueue(player1, baseTime, 1500.0);
+        redisQueueRepository.addToQueue(player2, baseTime + 1000);
+
+        // when
+        long moved = new QueueMemberMigrator(queueRedisTemplate, binaryCodec).migrate();
+
+        // then
+        assertEquals(2L, moved);
+        assertEquals(List.of(player1.toString(), player2.toString()), List.copyOf(binaryRepository.getOldestPlayers(2)));
+        assertEquals(1500.0, binaryRepository.getRating(player1));
+        assertEquals(baseTime + 1000, binaryRepository.getJoinTimestamp(player2));
+        Set<String> stored = queueRedisTemplate.opsForZSet().range(QUEUE_KEY, 0, -1);
+        assertNotNull(stored);
+        assertTrue(stored.stream().allMatch(member -> member.length() == QueueMemberCodec.BINARY_LENGTH));
+
+        // повторный запуск ничего не переносит, обратная миграция возвращает текст
+        assertEquals(0L, new QueueMemberMigrator(queueRedisTemplate, binaryCodec).migrate());
+        QueueMemberCodec textCodec = new QueueMemberCodec(QueueMemberCodec.Encoding.TEXT);
+        assertEquals(2L, new QueueMemberMigrator(queueRedisTemplate, textCodec).migrate());
+        assertTrue(redisQueueRepository.isInQueue(player1));
+        assertEquals(1500.0, redisQueueRepository.getRating(player1));
+    }
+
+    @Test
+    void shouldFindAndRemovePlayerStoredInOtherEncoding() {
+        // given - игрок вошел через реплику со старым (текстовым) форматом
+        RedisQueueRepository binaryRepository =
+                new RedisQueueRepository(queueRedisTemplate, new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY));
+        long baseTime = System.currentTimeMillis();
+        UUID player = UUID.randomUUID();
+        redisQueueRepository.joinQueue(player, baseTime, 1500.0, "legacy");
+
+        // when - повторный вход через реплику с бинарным форматом
+        QueueJoin join = binaryRepository.joinQueue(player, baseTime + 5000, 1500.0, "legacy");
+
+        // then - второго члена нет, точечные чтения находят текстового
+        assertFalse(join.added());
+        assertEquals(baseTime, join.joinedAt());
+        assertEquals(1L, binaryRepository.getQueueSize());
+        assertTrue(binaryRepository.isInQueue(player));
+        assertEquals(baseTime, binaryRepository.getJoinTimestamp(player));
+        assertEquals(0L, binaryRepository.getPosition(player));
+        assertEquals(Optional.of(new QueueEntry(baseTime, 0)), binaryRepository.getQueueEntry(player));
+        assertEquals(1500.0, binaryRepository.getRating(player));
+        assertTrue(binaryRepository.getPlayerCards(List.of(player)).containsKey(player));
+
+        // when - выход через бинарную реплику
+        assertTrue(binaryRepository.removeFromQueue(player));
+
+        // then
+        assertEquals(0L, redisQueueRepository.getQueueSize());
+        assertNull(redisQueueRepository.getRating(player));
+        assertTrue(redisQueueRepository.getPlayerCards(List.of(player)).isEmpty());
+    }
+
+    @Test
+    void shouldRestoreClaimedPlayerStoredInOtherEncoding() {
+        // given
+        RedisQueueRepository binaryRepository =
+                new RedisQueueRepository(queueRedisTemplate, new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY));
+        long baseTime = System.currentTimeMillis();
+        UUID textPlayer = UUID.randomUUID();
+        UUID binaryPlayer = UUID.randomUUID();
+        redisQueueRepository.addToQueue(textPlayer, baseTime, 1500.0);
+        binaryRepository.addToQueue(binaryPlayer, baseTime + 1000, 1510.0);
+        QueueClaim claim = binaryRepository.claimOldestPlayers(2).orElseThrow();
+
+        // when
+        long restored = binaryRepository.rollbackClaim(claim);
+
+        // then - текстовый игрок вернулся в своем формате и с рейтингом
+        assertEquals(2L, restored);
+        assertEquals(2L, binaryRepository.getQueueSize());
+        assertEquals(baseTime, redisQueueRepository.getJoinTimestamp(textPlayer));
+        assertEquals(1500.0, binaryRepository.getRating(textPlayer));
+
+        // when - игрок в старом формате вышел, пока был в claim'е
+        claim = binaryRepository.claimOldestPlayers(2).orElseThrow();
+        binaryRepository.removeFromQueue(textPlayer);
+        binaryRepository.rollbackClaim(claim);
+
+        // then
+        assertFalse(binaryRepository.isInQueue(textPlayer));
+        assertTrue(binaryRepository.isInQueue(binaryPlayer));
+    }
+
+    @Test
+    void shouldNotEvictPlayerWithHeartbeatInOtherEncoding() {
+        // given - игрок в очереди в текстовом формате, heartbeat пишет бинарная реплика
+        QueueMemberCodec binaryCodec = new QueueMemberCodec(QueueMemberCodec.Encoding.BINARY);
+        RedisPresenceRepository binaryPresence = new RedisPresenceRepository(queueRedisTemplate, binaryCodec);
+        long now = System.currentTimeMillis();
+        UUID connected = UUID.randomUUID();
+        UUID absent = UUID.randomUUID();
+        redisQueueRepository.addToQueue(connected, now - 60_000);
+        redisQueueRepository.addToQueue(absent, now - 59_000);
+        binaryPresence.heartbeat(List.of(connected), now);
+
+        // when
+        long evicted = redisPresenceRepository.evictAbsent(now - 30_000, now - 30_000, 10);
+
+        // then
+        assertEquals(1L, evicted);
+        assertTrue(redisQueueRepository.isInQueue(connected));
+        assertFalse(redisQueueRepository.isInQueue(absent));
+        assertEquals(Set.of(absent), redisPresenceRepository.findAbsent(List.of(connected, absent), now - 30_000));
+    }
+
+    @Test
+    void shouldKeepOriginalJoinTimeAndRatingOnRepeatedJoin() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID player = UUID.randomUUID();
+
+        // when
+        QueueJoin first = redisQueueRepository.joinQueue(player, baseTime, 1500.0);
+        QueueJoin second = redisQueueRepository.joinQueue(player, baseTime + 5000, 1700.0);
+
+        // then
+        assertTrue(first.added());
+        assertEquals(baseTime, first.joinedAt());
+        assertFalse(second.added());
+        assertEquals(baseTime, second.joinedAt());
+        assertEquals(baseTime, redisQueueRepository.getJoinTimestamp(player));
+        assertEquals(1500.0, redisQueueRepository.getRating(player));
+        assertEquals(1L, redisQueueRepository.getQueueSize());
+    }
+
+    @Test
+    void shouldEvictQueuedPlayersWithoutFreshPresence() {
+        // given
+        long now = System.currentTimeMillis();
+        UUID connected = UUID.randomUUID();
+        UUID stale = UUID.randomUUID();
+        UUID neverConnected = UUID.randomUUID();
+        UUID justJoined = UUID.randomUUID();
+        redisQueueRepository.addToQueue(connected, now - 60_000, 1500.0);
+        redisQueueRepository.addToQueue(stale, now - 59_000, 1510.0);
+        redisQueueRepository.addToQueue(neverConnected, now - 58_000);
+        redisQueueRepository.addToQueue(justJoined, now);
+        redisPresenceRepository.heartbeat(List.of(connected), now);
+        redisPresenceRepository.heartbeat(List.of(stale), now - 45_000);
+
+        // when - пачки по 1 игроку, чтобы проверить сдвиг смещения после удаления
+        long evicted = redisPresenceRepository.evictAbsent(now - 30_000, now - 30_000, 1);
+
+        // then
+        assertEquals(2L, evicted);
+        assertTrue(redisQueueRepository.isInQueue(connected));
+        assertTrue(redisQueueRepository.isInQueue(justJoined));
+        assertFalse(redisQueueRepository.isInQueue(stale));
+        assertFalse(redisQueueRepository.isInQueue(neverConnected));
+        assertNull(redisQueueRepository.getRating(stale));
+        assertEquals(Set.of(stale, neverConnected),
+                redisPresenceRepository.findAbsent(List.of(connected, stale, neverConnected), now - 30_000));
+    }
+
+    @Test
+    void shouldKeepPlayerCardForQueueEntryLifetime() {
+        // given
+        long baseTime = System.currentTimeMillis();
+        UUID leaving = UUID.randomUUID();
+        UUID matched = UUID.randomUUID();
+        UUID requeued = UUID.randomUUID();
+        redisQueueRepository.joinQueue(leaving, baseTime, 1500.0, "Игрок");
+        redisQueueRepository.joinQueue(matched, baseTime + 1000, 1500.0, "matched");
+        redisQueueRepository.joinQueue(requeued, baseTime + 2000, null, "requeued");
+
+        // then - карточка читается одной командой вместе с UTF-8 никнеймом
+        Map<UUID, PlayerCard> cards = redisQueueRepository.getPlayerCards(List.of(leaving, matched, requeued));
+        assertEquals(new PlayerCard("Игрок", 1500.0, baseTime), cards.get(leaving));
+        assertEquals(new PlayerCard("requeued", null, baseTime + 2000), cards.get(requeued));
+
+        // when - выход из очереди удаляет карточку
+        redisQueueRepository.removeFromQueue(leaving);
+
+        // then
+        assertFalse(redisQueueRepository.getPlayerCards(List.of(leaving)).containsKey(leaving));
+
+        // when - сматченный игрок теряет карточку, возвращенный в очередь сохраняет
+        QueueClaim claim = redisQueueRepository.claimOldestPlayers(2).orElseThrow();
+        redisQueueRepository.finishClaim(claim, List.of(requeued));
+
+        // then
+        assertEquals(Set.of(requeued), redisQueueRepository.getPlayerCards(List.of(matched, requeued)).keySet());
+    }
+
+    @Test
+    void shouldEvictCardsLeftByExpiredClaim() {
+        // given - claim забрал двух игроков и не был завершен (реплика упала)
+        long now = System.currentTimeMillis();
+        UUID claimed1 = UUID.randomUUID();
+        UUID claimed2 = UUID.randomUUID();
+        UUID waiting = UUID.randomUUID();
+        redisQueueRepository.joinQueue(claimed1, now - 3000, null, "claimed1");
+        redisQueueRepository.joinQueue(claimed2, now - 2000, null, "claimed2");
+        redisQueueRepository.claimOldestPlayers(2).orElseThrow();
+        redisQueueRepository.joinQueue(waiting, now - 1000, null, "waiting");
+
+        // when - первая проверка только отмечает карточки без игрока в очереди
+        long firstPass = redisQueueRepository.evictOrphanCards(now, 1);
+
+        // then - claim мог быть еще жив, карточки на месте
+        assertEquals(0L, firstPass);
+        assertEquals(Set.of(claimed1, claimed2, waiting),
+                redisQueueRepository.getPlayerCards(List.of(claimed1, claimed2, waiting)).keySet());
+
+        // when - проверка после истечения claim'а
+        long secondPass = redisQueueRepository.evictOrphanCards(now + 61_000, 1);
+
+        // then
+        assertEquals(2L, secondPass);
+        assertEquals(Set.of(waiting),
+                redisQueueRepository.getPlayerCards(List.of(claimed1, claimed2, waiting)).keySet());
+    }
+
+    @Test
+    void shouldRefillTokenBucketOverTime() {
+        // given - емкость 2, один токен за секунду
+        long now = System.currentTimeMillis();
+        assertEquals(0L, redisRateLimitRepository.tryAcquire("user-1", now, 2, 1000));
+        assertEquals(0L, redisRateLimitRepository.tryAcquire("user-1", now, 2, 1000));
+
+        // when & then - bucket пуст, следующий токен через секунду
+        assertEquals(1000L, redisRateLimitRepository.tryAcquire("user-1", now, 2, 1000));
+        assertEquals(500L, redisRateLimitRepository.tryAcquire("user-1", now + 500, 2, 1000));
+        assertEquals(0L, redisRateLimitRepository.tryAcquire("user-1", now + 1000, 2, 1000));
+        // у другого пользователя свой bucket
+        assertEquals(0L, redisRateLimitRepository.tryAcquire("user-2", now, 2, 1000));
+        Long ttl = redisTemplate.getExpire("queue:ratelimit:user-1");
+        assertNotNull(ttl);
+        assertTrue(ttl > 0);
+    }
+
+    @Test
+    void shouldShareRecentPairingRateAcrossRecords() {
+        // given - две реплики записали матчи в прошлые секунды окна, одна - в текущую
+        long now = System.currentTimeMillis();
+        redisPairingRateRepository.record(now - 1_000, 2);
+        redisPairingRateRepository.record(now - 30_000, 4);
+        redisPairingRateRepository.record(now - 120_000, 100);
+        redisPairingRateRepository.record(now, 2);
+
+        // when
+        double perSecond = redisPairingRateRepository.pairedPlayersPerSecond(now);
+
+        // then - учитываются только завершенные секунды окна
+        assertEquals(6.0 / RedisPairingRateRepository.WINDOW_SECONDS, perSecond, 1e-9);
+        Long ttl = redisTemplate.getExpire("queue:paired:" + (now / 1000));
+        assertNotNull(ttl);
+        assertTrue(ttl > 0);
+    }
+}
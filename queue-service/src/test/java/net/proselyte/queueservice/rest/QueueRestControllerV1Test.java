@@ -1,10 +1,12 @@
 package net.proselyte.queueservice.rest;
 
-import net.proselyte.person.dto.IndividualDto;
-import net.proselyte.person.dto.IndividualPageDto;
+import net.proselyte.queue.dto.QueueJoinResponseDto;
 import net.proselyte.queue.dto.QueueStatusResponseDto;
-import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.service.PersonIdResolver;
+import net.proselyte.queueservice.service.QueueAdmissionControl;
+import net.proselyte.queueservice.service.QueueAdmissionException;
 import net.proselyte.queueservice.service.QueueService;
+import net.proselyte.queueservice.service.ResolvedPerson;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,16 +21,14 @@ import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
-import java.util.Collections;
-import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -38,6 +38,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @DisplayName("QueueRestControllerV1 Unit Tests")
 class QueueRestControllerV1Test {
 
+    private static final String NICKNAME = "Player1";
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -45,14 +47,16 @@ class QueueRestControllerV1Test {
     private QueueService queueService;
 
     @MockitoBean
-    private PersonServiceClient personServiceClient;
+    private PersonIdResolver personIdResolver;
+
+    @MockitoBean
+    private QueueAdmissionControl admissionControl;
 
     private UUID testUserId;
     private String testEmail;
     private Authentication mockAuthentication;
     private SecurityContext mockSecurityContext;
     private Jwt mockJwt;
-    private IndividualPageDto mockPersonPage;
 
     @BeforeEach
     void setUp() {
@@ -73,26 +77,90 @@ class QueueRestControllerV1Test {
         
         SecurityContextHolder.setContext(mockSecurityContext);
         
-        // Setup PersonServiceClient mock - default response
-        mockPersonPage = new IndividualPageDto();
-        IndividualDto personDto = new IndividualDto();
-        personDto.setId(testUserId);
-        personDto.setEmail(testEmail);
-        mockPersonPage.setItems(Collections.singletonList(personDto));
-        when(personServiceClient.findByEmail(anyList())).thenReturn(mockPersonPage);
+        // Setup PersonIdResolver mock - default response
+        when(personIdResolver.resolve(testEmail)).thenReturn(testUserId);
+        when(personIdResolver.resolvePerson(testEmail)).thenReturn(new ResolvedPerson(testUserId, NICKNAME));
+    }
+
+    private static QueueJoinResponseDto joinResponse(UUID personId, boolean newlyJoined) {
+        QueueJoinResponseDto response = new QueueJoinResponseDto();
+        response.setMessage("waiting");
+        response.setStatus(QueueJoinResponseDto.StatusEnum.WAITING);
+        response.setPersonId(personId);
+        response.setJoinedAt(OffsetDateTime.now(ZoneOffset.UTC));
+        response.setNewlyJoined(newlyJoined);
+        return response;
     }
 
     @Test
     @DisplayName("Should successfully join queue and return waiting message")
     void shouldJoinQueueSuccessfully() throws Exception {
-        doNothing().when(queueService).joinQueue(testUserId);
+        when(queueService.joinQueue(testUserId, NICKNAME, null)).thenReturn(joinResponse(testUserId, true));
 
         mockMvc.perform(post("/v1/queue/join")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("waiting"));
 
-        verify(queueService, times(1)).joinQueue(testUserId);
+        verify(queueService, times(1)).joinQueue(testUserId, NICKNAME, null);
+    }
+
+    @Test
+    @DisplayName("Should report repeated join with original join time")
+    void shouldReportRepeatedJoin() throws Exception {
+        QueueJoinResponseDto response = joinResponse(testUserId, false);
+        response.setJoinedAt(OffsetDateTime.of(2026, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC));
+        when(queueService.joinQueue(testUserId, NICKNAME, null)).thenReturn(response);
+
+        mockMvc.perform(post("/v1/queue/join")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.newlyJoined").value(false))
+                .andExpect(jsonPath("$.personId").value(testUserId.toString()))
+                .andExpect(jsonPath("$.joinedAt").exists());
+    }
+
+    @Test
+    @DisplayName("Should pass rating from JWT claim when joining queue")
+    void shouldPassRatingFromJwtClaimWhenJoiningQueue() throws Exception {
+        when(mockJwt.getClaim("rating")).thenReturn(1500);
+        when(queueService.joinQueue(testUserId, NICKNAME, 1500.0)).thenReturn(joinResponse(testUserId, true));
+
+        mockMvc.perform(post("/v1/queue/join")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        verify(queueService, times(1)).joinQueue(testUserId, NICKNAME, 1500.0);
+    }
+
+    @Test
+    @DisplayName("Should reject join with 429 and Retry-After before looking up the person")
+    void shouldRejectRateLimitedJoin() throws Exception {
+        when(mockJwt.getSubject()).thenReturn("keycloak-user");
+        doThrow(new QueueAdmissionException("Too many queue requests", Duration.ofMillis(1500)))
+                .when(admissionControl).admitJoin("keycloak-user");
+
+        mockMvc.perform(post("/v1/queue/join")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verify(personIdResolver, never()).resolvePerson(any());
+        verify(queueService, never()).joinQueue(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should reject leave with 429 when rate limit is exceeded")
+    void shouldRejectRateLimitedLeave() throws Exception {
+        doThrow(new QueueAdmissionException("Too many queue requests", Duration.ofSeconds(2)))
+                .when(admissionControl).admitLeave(testEmail);
+
+        mockMvc.perform(post("/v1/queue/leave")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verify(queueService, never()).leaveQueue(any());
     }
 
     @Test
@@ -145,7 +213,7 @@ class QueueRestControllerV1Test {
                             "Should throw ResponseStatusException when user is not authenticated");
                 });
 
-        verify(queueService, never()).joinQueue(any());
+        verify(queueService, never()).joinQueue(any(), any(), any());
     }
 
     @Test
@@ -154,22 +222,18 @@ class QueueRestControllerV1Test {
         String nonStandardEmail = "testuser@example.com";
         UUID generatedUserId = UUID.nameUUIDFromBytes("testuser".getBytes());
         when(mockJwt.getClaimAsString("email")).thenReturn(nonStandardEmail);
+        when(personIdResolver.resolvePerson(nonStandardEmail))
+                .thenReturn(new ResolvedPerson(generatedUserId, NICKNAME));
 
-        IndividualPageDto personPage = new IndividualPageDto();
-        IndividualDto personDto = new IndividualDto();
-        personDto.setId(generatedUserId);
-        personDto.setEmail(nonStandardEmail);
-        personPage.setItems(Collections.singletonList(personDto));
-        when(personServiceClient.findByEmail(anyList())).thenReturn(personPage);
-
-        doNothing().when(queueService).joinQueue(generatedUserId);
+        when(queueService.joinQueue(generatedUserId, NICKNAME, null))
+                .thenReturn(joinResponse(generatedUserId, true));
 
         mockMvc.perform(post("/v1/queue/join")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.message").value("waiting"));
 
-        verify(queueService, times(1)).joinQueue(generatedUserId);
+        verify(queueService, times(1)).joinQueue(generatedUserId, NICKNAME, null);
     }
 
     @Test
@@ -178,21 +242,15 @@ class QueueRestControllerV1Test {
         UUID specificUserId = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
         String specificEmail = "specific@example.com";
         when(mockJwt.getClaimAsString("email")).thenReturn(specificEmail);
+        when(personIdResolver.resolvePerson(specificEmail)).thenReturn(new ResolvedPerson(specificUserId, NICKNAME));
 
-        IndividualPageDto personPage = new IndividualPageDto();
-        IndividualDto personDto = new IndividualDto();
-        personDto.setId(specificUserId);
-        personDto.setEmail(specificEmail);
-        personPage.setItems(Collections.singletonList(personDto));
-        when(personServiceClient.findByEmail(anyList())).thenReturn(personPage);
-
-        doNothing().when(queueService).joinQueue(specificUserId);
+        when(queueService.joinQueue(specificUserId, NICKNAME, null)).thenReturn(joinResponse(specificUserId, true));
 
         mockMvc.perform(post("/v1/queue/join")
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk());
 
-        verify(queueService, times(1)).joinQueue(specificUserId);
+        verify(queueService, times(1)).joinQueue(specificUserId, NICKNAME, null);
     }
 
     @Test
@@ -224,30 +282,11 @@ class QueueRestControllerV1Test {
                 .thenReturn(email2)
                 .thenReturn(email3);
 
-        IndividualPageDto page1 = new IndividualPageDto();
-        IndividualDto dto1 = new IndividualDto();
-        dto1.setId(user1);
-        dto1.setEmail(email1);
-        page1.setItems(Collections.singletonList(dto1));
-
-        IndividualPageDto page2 = new IndividualPageDto();
-        IndividualDto dto2 = new IndividualDto();
-        dto2.setId(user2);
-        dto2.setEmail(email2);
-        page2.setItems(Collections.singletonList(dto2));
-
-        IndividualPageDto page3 = new IndividualPageDto();
-        IndividualDto dto3 = new IndividualDto();
-        dto3.setId(user3);
-        dto3.setEmail(email3);
-        page3.setItems(Collections.singletonList(dto3));
-
-        when(personServiceClient.findByEmail(anyList()))
-                .thenReturn(page1)
-                .thenReturn(page2)
-                .thenReturn(page3);
-
-        doNothing().when(queueService).joinQueue(any());
+        when(personIdResolver.resolvePerson(email1)).thenReturn(new ResolvedPerson(user1, NICKNAME));
+        when(personIdResolver.resolve(email2)).thenReturn(user2);
+        when(personIdResolver.resolve(email3)).thenReturn(user3);
+
+        when(queueService.joinQueue(any(), any(), any())).thenReturn(joinResponse(user1, true));
         doNothing().when(queueService).leaveQueue(any());
 
         QueueStatusResponseDto statusResponse = new QueueStatusResponseDto();
@@ -258,7 +297,7 @@ class QueueRestControllerV1Test {
 
         mockMvc.perform(post("/v1/queue/join"))
                 .andExpect(status().isOk());
-        verify(queueService, times(1)).joinQueue(user1);
+        verify(queueService, times(1)).joinQueue(user1, NICKNAME, null);
 
         mockMvc.perform(post("/v1/queue/leave"))
                 .andExpect(status().isOk());
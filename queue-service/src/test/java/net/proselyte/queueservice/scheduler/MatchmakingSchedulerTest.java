@@ -1,5 +1,7 @@
 package net.proselyte.queueservice.scheduler;
 
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.service.MatchStep;
 import net.proselyte.queueservice.service.MatchmakingService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -18,6 +20,9 @@ class MatchmakingSchedulerTest {
     @Mock
     private MatchmakingService matchmakingService;
 
+    @Mock
+    private MatchmakingMetrics matchmakingMetrics;
+
     @InjectMocks
     private MatchmakingScheduler matchmakingScheduler;
 
@@ -28,110 +33,112 @@ class MatchmakingSchedulerTest {
     }
 
     @Test
-    @DisplayName("Should call tryMatchPlayers once when no matches can be created")
-    void shouldCallTryMatchPlayersOnceWhenNoMatchesCanBeCreated() {
+    @DisplayName("Should call matchNext once when no matches can be created")
+    void shouldCallMatchNextOnceWhenNoMatchesCanBeCreated() {
         // given
-        when(matchmakingService.tryMatchPlayers()).thenReturn(false);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.EMPTY);
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        verify(matchmakingService, times(1)).tryMatchPlayers();
+        verify(matchmakingService, times(1)).matchNext();
+        verify(matchmakingMetrics).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, 0);
     }
 
     @Test
-    @DisplayName("Should call tryMatchPlayers multiple times when matches are successfully created")
-    void shouldCallTryMatchPlayersMultipleTimesWhenMatchesAreSuccessfullyCreated() {
+    @DisplayName("Should call matchNext multiple times when matches are successfully created")
+    void shouldCallMatchNextMultipleTimesWhenMatchesAreSuccessfullyCreated() {
         // given
-        // Первые 3 вызова успешны, 4-й возвращает false (нет больше игроков)
-        when(matchmakingService.tryMatchPlayers())
-                .thenReturn(true)   // 1-й матч создан
-                .thenReturn(true)   // 2-й матч создан
-                .thenReturn(true)   // 3-й матч создан
-                .thenReturn(false); // Больше нет игроков
+        // Первые 3 вызова успешны, 4-й возвращает 0 (нет больше игроков)
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(1))   // 1-й матч создан
+                .thenReturn(MatchStep.paired(1))   // 2-й матч создан
+                .thenReturn(MatchStep.paired(1))   // 3-й матч создан
+                .thenReturn(MatchStep.EMPTY); // Больше нет игроков
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        verify(matchmakingService, times(4)).tryMatchPlayers();
+        verify(matchmakingService, times(4)).matchNext();
+        verify(matchmakingMetrics).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, 3);
     }
 
     @Test
     @DisplayName("Should stop after maxAttempts even if matches are still being created")
     void shouldStopAfterMaxAttemptsEvenIfMatchesAreStillBeingCreated() {
         // given
-        // Всегда возвращаем true, чтобы проверить защиту от бесконечного цикла
-        when(matchmakingService.tryMatchPlayers()).thenReturn(true);
+        // Всегда создаем матч, чтобы проверить защиту от бесконечного цикла
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.paired(1));
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        // maxAttempts = 10, но цикл продолжается пока matched == true
+        // maxAttempts = 10, но цикл продолжается пока created > 0
         // После 10 попыток цикл должен остановиться
-        verify(matchmakingService, times(10)).tryMatchPlayers();
+        verify(matchmakingService, times(10)).matchNext();
     }
 
     @Test
     @DisplayName("Should handle single successful match creation")
     void shouldHandleSingleSuccessfulMatchCreation() {
         // given
-        when(matchmakingService.tryMatchPlayers())
-                .thenReturn(true)   // 1-й матч создан
-                .thenReturn(false);  // Больше нет игроков
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(1))   // 1-й матч создан
+                .thenReturn(MatchStep.EMPTY);  // Больше нет игроков
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        verify(matchmakingService, times(2)).tryMatchPlayers();
+        verify(matchmakingService, times(2)).matchNext();
     }
 
     @Test
     @DisplayName("Should handle empty queue scenario")
     void shouldHandleEmptyQueueScenario() {
         // given
-        when(matchmakingService.tryMatchPlayers()).thenReturn(false);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.EMPTY);
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        verify(matchmakingService, times(1)).tryMatchPlayers();
+        verify(matchmakingService, times(1)).matchNext();
     }
 
     @Test
     @DisplayName("Should handle exactly 2 matches creation")
     void shouldHandleExactlyTwoMatchesCreation() {
         // given
-        when(matchmakingService.tryMatchPlayers())
-                .thenReturn(true)   // 1-й матч создан (2 игрока)
-                .thenReturn(true)   // 2-й матч создан (еще 2 игрока)
-                .thenReturn(false); // Больше нет игроков
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(1))   // 1-й матч создан (2 игрока)
+                .thenReturn(MatchStep.paired(1))   // 2-й матч создан (еще 2 игрока)
+                .thenReturn(MatchStep.EMPTY); // Больше нет игроков
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        verify(matchmakingService, times(3)).tryMatchPlayers();
+        verify(matchmakingService, times(3)).matchNext();
     }
 
     @Test
-    @DisplayName("Should stop when tryMatchPlayers returns false")
-    void shouldStopWhenTryMatchPlayersReturnsFalse() {
+    @DisplayName("Should stop when matchNext finds no pair")
+    void shouldStopWhenMatchNextReturnsFalse() {
         // given
-        when(matchmakingService.tryMatchPlayers())
-                .thenReturn(true)   // 1-й матч создан
-                .thenReturn(false); // Недостаточно игроков, цикл останавливается
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(1))   // 1-й матч создан
+                .thenReturn(MatchStep.EMPTY); // Недостаточно игроков, цикл останавливается
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
-        // Цикл продолжается пока matched == true, останавливается на false
-        verify(matchmakingService, times(2)).tryMatchPlayers();
+        // Цикл продолжается пока шаг что-то сдвигает в очереди, останавливается на пустом шаге
+        verify(matchmakingService, times(2)).matchNext();
     }
 
     @Test
@@ -139,15 +146,66 @@ class MatchmakingSchedulerTest {
     void shouldRespectMaxAttemptsLimitWhenCreatingManyMatches() {
         // given
         // Симулируем ситуацию, когда в очереди очень много игроков
-        when(matchmakingService.tryMatchPlayers()).thenReturn(true);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.paired(1));
 
         // when
         matchmakingScheduler.processQueue();
 
         // then
         // Должно быть ровно 10 попыток (maxAttempts), даже если все успешны
-        verify(matchmakingService, times(10)).tryMatchPlayers();
+        verify(matchmakingService, times(10)).matchNext();
         verifyNoMoreInteractions(matchmakingService);
     }
-}
 
+    @Test
+    @DisplayName("Should continue after a step that skipped unmatchable players")
+    void shouldContinueAfterSkippedStep() {
+        // given
+        // Шаг убрал из очереди несуществующего игрока - в очереди еще могут быть пары
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.SKIPPED)
+                .thenReturn(MatchStep.paired(1))
+                .thenReturn(MatchStep.EMPTY);
+
+        // when
+        matchmakingScheduler.processQueue();
+
+        // then
+        verify(matchmakingService, times(3)).matchNext();
+        verify(matchmakingMetrics).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, 1);
+    }
+
+    @Test
+    @DisplayName("Should stop after a failed step")
+    void shouldStopAfterFailedStep() {
+        // given
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(1))
+                .thenReturn(MatchStep.FAILED);
+
+        // when
+        matchmakingScheduler.processQueue();
+
+        // then
+        verify(matchmakingService, times(2)).matchNext();
+        verify(matchmakingMetrics).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, 1);
+    }
+
+    @Test
+    @DisplayName("Should sum matches created by batch steps")
+    void shouldSumMatchesCreatedByBatchSteps() {
+        // given
+        // В пакетном режиме один шаг создает несколько матчей
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.paired(5))
+                .thenReturn(MatchStep.paired(3))
+                .thenReturn(MatchStep.EMPTY);
+
+        // when
+        matchmakingScheduler.processQueue();
+
+        // then
+        verify(matchmakingService, times(3)).matchNext();
+        verify(matchmakingMetrics).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_SCHEDULED, 8);
+    }
+}
@@ -0,0 +1,166 @@
+package net.proselyte.queueservice.scheduler;
+
+import net.proselyte.queueservice.config.QueueStatusProperties;
+import net.proselyte.queueservice.repository.LeaseFence;
+import net.proselyte.queueservice.repository.RedisPairingRateRepository;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.service.MatchmakingLeaderLease;
+import net.proselyte.queueservice.service.WebSocketNotificationService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QueueStatusBroadcaster Unit Tests")
+class QueueStatusBroadcasterTest {
+
+    @Mock
+    private RedisQueueRepository redisQueueRepository;
+
+    @Mock
+    private WebSocketNotificationService notificationService;
+
+    @Mock
+    private RedisPairingRateRepository pairingRateRepository;
+
+    @Mock
+    private MatchmakingLeaderLease leaderLease;
+
+    private QueueStatusBroadcaster createBroadcaster(boolean enabled) {
+        return new QueueStatusBroadcaster(redisQueueRepository, notificationService, pairingRateRepository,
+                leaderLease, new QueueStatusProperties(enabled, 100));
+    }
+
+    @Test
+    @DisplayName("Should send every waiting player its position from a single queue read")
+    void shouldSendPositionsFromSingleQueueRead() {
+        // given
+        long now = System.currentTimeMillis();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        Set<ZSetOperations.TypedTuple<String>> players = new LinkedHashSet<>();
+        players.add(new DefaultTypedTuple<>(first.toString(), (double) (now - 30_000)));
+        players.add(new DefaultTypedTuple<>(second.toString(), (double) (now - 5_000)));
+        when(redisQueueRepository.getPlayersWithScores(0, 99)).thenReturn(players);
+        when(pairingRateRepository.pairedPlayersPerSecond(anyLong())).thenReturn(0.5);
+
+        // when
+        createBroadcaster(true).broadcast();
+
+        // then
+        verify(redisQueueRepository, times(1)).getPlayersWithScores(0, 99);
+        List<WebSocketNotificationService.QueueStatus> statuses = sentStatuses();
+        assertEquals(2, statuses.size());
+        assertEquals(first, statuses.get(0).userId());
+        assertEquals(1, statuses.get(0).position());
+        assertTrue(statuses.get(0).waitingTime() >= 30);
+        assertEquals(2, statuses.get(0).estimatedWaitSeconds());
+        assertEquals(second, statuses.get(1).userId());
+        assertEquals(2, statuses.get(1).position());
+        assertTrue(statuses.get(1).waitingTime() >= 5 && statuses.get(1).waitingTime() < 30);
+        assertEquals(4, statuses.get(1).estimatedWaitSeconds());
+        verifyNoMoreInteractions(redisQueueRepository);
+    }
+
+    @Test
+    @DisplayName("Should omit estimate while pairing rate is unknown")
+    void shouldOmitEstimateWithoutPairingRate() {
+        // given
+        UUID player = UUID.randomUUID();
+        Set<ZSetOperations.TypedTuple<String>> players =
+                Set.of(new DefaultTypedTuple<>(player.toString(), (double) System.currentTimeMillis()));
+        when(redisQueueRepository.getPlayersWithScores(anyLong(), anyLong())).thenReturn(players);
+        when(pairingRateRepository.pairedPlayersPerSecond(anyLong())).thenReturn(0.0);
+
+        // when
+        createBroadcaster(true).broadcast();
+
+        // then
+        List<WebSocketNotificationService.QueueStatus> statuses = sentStatuses();
+        assertEquals(player, statuses.get(0).userId());
+        assertNull(statuses.get(0).estimatedWaitSeconds());
+    }
+
+    @Test
+    @DisplayName("Should broadcast only on the matchmaking leader")
+    void shouldSkipWhenNotLeader() {
+        // given
+        when(leaderLease.enabled()).thenReturn(true);
+        when(leaderLease.fence()).thenReturn(null);
+
+        // when
+        createBroadcaster(true).broadcast();
+
+        // then
+        verifyNoInteractions(redisQueueRepository, notificationService, pairingRateRepository);
+    }
+
+    @Test
+    @DisplayName("Should broadcast on the matchmaking leader")
+    void shouldBroadcastWhenLeader() {
+        // given
+        when(leaderLease.enabled()).thenReturn(true);
+        when(leaderLease.fence()).thenReturn(new LeaseFence(MatchmakingLeaderLease.LEASE_KEY, "instance:1"));
+        UUID player = UUID.randomUUID();
+        when(redisQueueRepository.getPlayersWithScores(anyLong(), anyLong())).thenReturn(
+                Set.of(new DefaultTypedTuple<>(player.toString(), (double) System.currentTimeMillis())));
+
+        // when
+        createBroadcaster(true).broadcast();
+
+        // then
+        assertEquals(player, sentStatuses().get(0).userId());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<WebSocketNotificationService.QueueStatus> sentStatuses() {
+        ArgumentCaptor<List<WebSocketNotificationService.QueueStatus>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationService).sendQueueStatuses(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    @DisplayName("Should not read the queue when broadcast is disabled")
+    void shouldSkipWhenDisabled() {
+        // when
+        createBroadcaster(false).broadcast();
+
+        // then
+        verifyNoInteractions(redisQueueRepository, notificationService);
+    }
+
+    @Test
+    @DisplayName("Should swallow Redis failures")
+    void shouldSwallowRedisFailures() {
+        // given
+        when(redisQueueRepository.getPlayersWithScores(anyLong(), anyLong()))
+                .thenThrow(new QueryTimeoutException("timeout"));
+
+        // when & then
+        assertDoesNotThrow(() -> createBroadcaster(true).broadcast());
+        verifyNoInteractions(notificationService);
+    }
+
+    @Test
+    @DisplayName("Should estimate wait from position and pairing rate")
+    void shouldEstimateWaitFromPositionAndRate() {
+        assertEquals(10, QueueStatusBroadcaster.estimateWaitSeconds(5, 0.5));
+        assertEquals(1, QueueStatusBroadcaster.estimateWaitSeconds(1, 4.0));
+        assertNull(QueueStatusBroadcaster.estimateWaitSeconds(1, 0.0));
+    }
+}
@@ -0,0 +1,184 @@
+package net.proselyte.queueservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.proselyte.queueservice.config.NotificationProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ClusterNotificationRelay Unit Tests")
+class ClusterNotificationRelayTest {
+
+    private static final Duration MAILBOX_TTL = Duration.ofSeconds(30);
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private ClusterNotificationRelay relay;
+    private UUID userId;
+    private WebSocketNotificationService.MatchFoundEvent event;
+
+    @BeforeEach
+    void setUp() {
+        relay = new ClusterNotificationRelay(redisTemplate, objectMapper, messagingTemplate,
+                new NotificationProperties(NotificationProperties.Delivery.CLUSTER, MAILBOX_TTL));
+        userId = UUID.randomUUID();
+        event = new WebSocketNotificationService.MatchFoundEvent();
+        event.setType("match_found");
+        event.setMatchId(UUID.randomUUID());
+        event.setOpponentNickname("opponent");
+    }
+
+    @Test
+    @DisplayName("Should store event in mailbox and publish it to all replicas")
+    void shouldStoreInMailboxAndPublish() throws Exception {
+        // given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        // when
+        boolean published = relay.publish(userId, event);
+
+        // then
+        assertTrue(published);
+        verify(valueOperations).set(eq("queue:mailbox:" + userId), anyString(), eq(MAILBOX_TTL));
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(ClusterNotificationRelay.NOTIFICATION_CHANNEL), payload.capture());
+        ClusterNotificationRelay.ClusterMessage message =
+                objectMapper.readValue(payload.getValue(), ClusterNotificationRelay.ClusterMessage.class);
+        assertEquals(userId, message.userId());
+        assertEquals(event.getMatchId(), message.event().getMatchId());
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should report failure when Redis is unavailable")
+    void shouldReportFailureWhenRedisUnavailable() {
+        // given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        doThrow(new QueryTimeoutException("timeout"))
+                .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+
+        // when & then
+        assertFalse(relay.publish(userId, event));
+    }
+
+    @Test
+    @DisplayName("Should deliver published event to local broker")
+    void shouldDeliverPublishedEventLocally() throws Exception {
+        // given
+        byte[] body = objectMapper.writeValueAsBytes(new ClusterNotificationRelay.ClusterMessage(userId, event));
+
+        // when
+        relay.onMessage(new DefaultMessage(
+                ClusterNotificationRelay.NOTIFICATION_CHANNEL.getBytes(StandardCharsets.UTF_8), body), null);
+
+        // then
+        ArgumentCaptor<WebSocketNotificationService.MatchFoundEvent> captor =
+                ArgumentCaptor.forClass(WebSocketNotificationService.MatchFoundEvent.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/queue/" + userId), captor.capture());
+        assertEquals(event.getMatchId(), captor.getValue().getMatchId());
+        assertEquals("opponent", captor.getValue().getOpponentNickname());
+    }
+
+    @Test
+    @DisplayName("Should publish a batch of queue statuses as one message")
+    void shouldPublishQueueStatusesAsOneMessage() throws Exception {
+        // given
+        UUID otherUserId = UUID.randomUUID();
+        List<WebSocketNotificationService.QueueStatus> statuses = List.of(
+                new WebSocketNotificationService.QueueStatus(userId, 1, 30, 2),
+                new WebSocketNotificationService.QueueStatus(otherUserId, 2, 5, null));
+
+        // when
+        boolean published = relay.publishQueueStatuses(statuses);
+
+        // then
+        assertTrue(published);
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(ClusterNotificationRelay.STATUS_CHANNEL), payload.capture());
+        assertEquals(statuses, objectMapper.readValue(payload.getValue(),
+                ClusterNotificationRelay.StatusMessage.class).statuses());
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should deliver each queue status of a published batch to local broker")
+    void shouldDeliverQueueStatusesLocally() throws Exception {
+        // given
+        UUID otherUserId = UUID.randomUUID();
+        byte[] body = objectMapper.writeValueAsBytes(new ClusterNotificationRelay.StatusMessage(List.of(
+                new WebSocketNotificationService.QueueStatus(userId, 1, 30, 2),
+                new WebSocketNotificationService.QueueStatus(otherUserId, 2, 5, null))));
+
+        // when
+        relay.onMessage(new DefaultMessage(
+                ClusterNotificationRelay.STATUS_CHANNEL.getBytes(StandardCharsets.UTF_8), body), null);
+
+        // then
+        ArgumentCaptor<WebSocketNotificationService.QueueStatusEvent> captor =
+                ArgumentCaptor.forClass(WebSocketNotificationService.QueueStatusEvent.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/queue/" + userId), captor.capture());
+        assertEquals("queue_status", captor.getValue().getType());
+        assertEquals(1, captor.getValue().getPosition());
+        assertEquals(2, captor.getValue().getEstimatedWaitSeconds());
+        verify(messagingTemplate).convertAndSend(eq("/topic/queue/" + otherUserId),
+                any(WebSocketNotificationService.QueueStatusEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should replay mailbox once to a subscribing client")
+    void shouldReplayMailbox() throws Exception {
+        // given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.getAndDelete("queue:mailbox:" + userId))
+                .thenReturn(objectMapper.writeValueAsString(event));
+
+        // when
+        relay.replayMailbox(userId);
+
+        // then
+        verify(messagingTemplate).convertAndSend(eq("/topic/queue/" + userId),
+                any(WebSocketNotificationService.MatchFoundEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should not send anything when mailbox is empty")
+    void shouldSkipEmptyMailbox() {
+        // given
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.getAndDelete("queue:mailbox:" + userId)).thenReturn(null);
+
+        // when
+        relay.replayMailbox(userId);
+
+        // then
+        verifyNoInteractions(messagingTemplate);
+    }
+}
@@ -0,0 +1,108 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.queueservice.config.LeaderLeaseProperties;
+import net.proselyte.queueservice.repository.LeaseFence;
+import net.proselyte.queueservice.repository.RedisLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MatchmakingLeaderLease Unit Tests")
+class MatchmakingLeaderLeaseTest {
+
+    @Mock
+    private RedisLeaseRepository leaseRepository;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    private MatchmakingLeaderLease createLease(boolean enabled) {
+        return new MatchmakingLeaderLease(leaseRepository,
+                new LeaderLeaseProperties(enabled, Duration.ofSeconds(10)), registry);
+    }
+
+    private double leaderGauge() {
+        return registry.get(MatchmakingLeaderLease.LEADER_METRIC).gauge().value();
+    }
+
+    @Test
+    @DisplayName("Should expose fencing token after acquiring the lease")
+    void shouldExposeFenceAfterAcquiring() {
+        // given
+        MatchmakingLeaderLease lease = createLease(true);
+        when(leaseRepository.tryAcquire(eq(MatchmakingLeaderLease.LEASE_KEY), anyString(), any())).thenReturn(5L);
+
+        // when
+        lease.start();
+
+        // then
+        LeaseFence fence = lease.fence();
+        assertNotNull(fence);
+        assertEquals(MatchmakingLeaderLease.LEASE_KEY, fence.key());
+        assertTrue(fence.value().endsWith(":5"));
+        assertEquals(1.0, leaderGauge());
+        assertEquals(5.0, registry.get(MatchmakingLeaderLease.FENCING_TOKEN_METRIC).gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should drop leadership when renewal is rejected")
+    void shouldDropLeadershipWhenRenewalRejected() {
+        // given
+        MatchmakingLeaderLease lease = createLease(true);
+        when(leaseRepository.tryAcquire(anyString(), anyString(), any())).thenReturn(5L, 0L);
+        lease.start();
+
+        // when
+        lease.renew();
+
+        // then
+        assertNull(lease.fence());
+        assertEquals(0.0, leaderGauge());
+    }
+
+    @Test
+    @DisplayName("Should release the lease on stop")
+    void shouldReleaseLeaseOnStop() {
+        // given
+        MatchmakingLeaderLease lease = createLease(true);
+        when(leaseRepository.tryAcquire(anyString(), anyString(), any())).thenReturn(5L);
+        lease.start();
+
+        // when
+        lease.stop();
+
+        // then
+        verify(leaseRepository).release(eq(MatchmakingLeaderLease.LEASE_KEY), anyString());
+        assertNull(lease.fence());
+    }
+
+    @Test
+    @DisplayName("Should not touch Redis when coordination is disabled")
+    void shouldNotTouchRedisWhenDisabled() {
+        // given
+        MatchmakingLeaderLease lease = createLease(false);
+
+        // when
+        lease.start();
+        lease.stop();
+
+        // then
+        verifyNoInteractions(leaseRepository);
+        assertFalse(lease.enabled());
+    }
+}
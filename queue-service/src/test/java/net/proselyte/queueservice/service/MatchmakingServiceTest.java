@@ -1,26 +1,46 @@
 package net.proselyte.queueservice.service;
 
 import net.proselyte.game.dto.CreateMatchRequest;
+import net.proselyte.game.dto.CreateMatchesRequest;
 import net.proselyte.game.dto.MatchResponse;
+import net.proselyte.game.dto.MatchesResponse;
+import net.proselyte.person.dto.IndividualBatchDto;
 import net.proselyte.person.dto.IndividualDto;
 import net.proselyte.queueservice.client.GameServiceClient;
 import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.repository.LeaseFence;
+import net.proselyte.queueservice.repository.PlayerCard;
+import net.proselyte.queueservice.repository.QueueClaim;
+import net.proselyte.queueservice.repository.RedisPairingRateRepository;
 import net.proselyte.queueservice.repository.RedisQueueRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -39,6 +59,24 @@ class MatchmakingServiceTest {
     @Mock
     private WebSocketNotificationService notificationService;
 
+    @Mock
+    private MatchmakingMetrics matchmakingMetrics;
+
+    @Mock
+    private MatchmakingLeaderLease leaderLease;
+
+    @Mock
+    private PresenceTracker presenceTracker;
+
+    @Mock
+    private QueueHistoryRecorder queueHistoryRecorder;
+
+    @Mock
+    private RedisPairingRateRepository pairingRateRepository;
+
+    @Spy
+    private MatchmakingProperties matchmakingProperties = new MatchmakingProperties(null, null, 0, 1);
+
     @InjectMocks
     private MatchmakingService matchmakingService;
 
@@ -47,7 +85,7 @@ class MatchmakingServiceTest {
     private UUID matchId;
     private String player1Nickname;
     private String player2Nickname;
-    private Set<String> oldestPlayers;
+    private QueueClaim claim;
 
     @BeforeEach
     void setUp() {
@@ -56,337 +94,554 @@ class MatchmakingServiceTest {
         matchId = UUID.randomUUID();
         player1Nickname = "Player1";
         player2Nickname = "Player2";
-        oldestPlayers = Set.of(player1Id.toString(), player2Id.toString());
+        long joinedAt = System.currentTimeMillis();
+        claim = new QueueClaim("claim-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1_000)
+        ));
     }
 
-    @Test
-    @DisplayName("Should successfully match players and create match when queue has 2+ players")
-    void shouldSuccessfullyMatchPlayersWhenQueueHasEnoughPlayers() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(oldestPlayers);
+    private IndividualDto person(UUID id, String nickname) {
+        IndividualDto dto = new IndividualDto();
+        dto.setId(id);
+        dto.setNickname(nickname);
+        dto.setEmail(nickname.toLowerCase() + "@test.com");
+        return dto;
+    }
 
-        MatchResponse matchResponse = new MatchResponse();
-        matchResponse.setId(matchId);
+    private IndividualBatchDto persons(IndividualDto... found) {
+        IndividualBatchDto batch = new IndividualBatchDto();
+        Map<String, IndividualDto> items = new HashMap<>();
+        for (IndividualDto dto : found) {
+            items.put(dto.getId().toString(), dto);
+        }
+        batch.setItems(items);
+        return batch;
+    }
 
-        IndividualDto player1Dto = new IndividualDto();
-        player1Dto.setNickname(player1Nickname);
-        player1Dto.setEmail("player1@test.com");
+    /**
+     * persons-api находит всех запрошенных игроков.
+     */
+    private void allPersonsExist() {
+        when(personServiceClient.findAllByIds(anyList())).thenAnswer(invocation -> {
+            List<UUID> ids = invocation.getArgument(0);
+            return persons(ids.stream().map(id -> person(id, "P" + id)).toArray(IndividualDto[]::new));
+        });
+    }
 
-        IndividualDto player2Dto = new IndividualDto();
-        player2Dto.setNickname(player2Nickname);
-        player2Dto.setEmail("player2@test.com");
+    @Test
+    @DisplayName("Should successfully match claimed players and finish the claim")
+    void shouldSuccessfullyMatchClaimedPlayers() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
 
+        MatchResponse matchResponse = match(player1Id, player2Id);
+        matchResponse.setId(matchId);
+
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
         when(gameServiceClient.createMatch(any(CreateMatchRequest.class))).thenReturn(matchResponse);
-        when(personServiceClient.getPersonById(player1Id)).thenReturn(player1Dto);
-        when(personServiceClient.getPersonById(player2Id)).thenReturn(player2Dto);
-        when(redisQueueRepository.removeMultipleFromQueue(oldestPlayers)).thenReturn(2L);
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        assertTrue(result);
+        assertEquals(MatchStep.paired(1), result);
 
         ArgumentCaptor<CreateMatchRequest> requestCaptor = ArgumentCaptor.forClass(CreateMatchRequest.class);
         verify(gameServiceClient, times(1)).createMatch(requestCaptor.capture());
-
-        CreateMatchRequest capturedRequest = requestCaptor.getValue();
-        assertNotNull(capturedRequest);
-        // Order is not guaranteed due to Set iteration, so check that both IDs are present
-        assertTrue(capturedRequest.getPlayer1Id().equals(player1Id) || capturedRequest.getPlayer1Id().equals(player2Id));
-        assertTrue(capturedRequest.getPlayer2Id().equals(player1Id) || capturedRequest.getPlayer2Id().equals(player2Id));
-        assertNotEquals(capturedRequest.getPlayer1Id(), capturedRequest.getPlayer2Id());
-
-        verify(personServiceClient, times(1)).getPersonById(player1Id);
-        verify(personServiceClient, times(1)).getPersonById(player2Id);
-        verify(redisQueueRepository, times(1)).removeMultipleFromQueue(oldestPlayers);
-        
-        // Verify notification - order of UUIDs may vary, but nicknames should match
-        ArgumentCaptor<UUID> uuid1Captor = ArgumentCaptor.forClass(UUID.class);
-        ArgumentCaptor<UUID> uuid2Captor = ArgumentCaptor.forClass(UUID.class);
-        ArgumentCaptor<String> nickname1Captor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> nickname2Captor = ArgumentCaptor.forClass(String.class);
-        
+        // Claim отдает игроков в порядке входа в очередь
+        assertEquals(player1Id, requestCaptor.getValue().getPlayer1Id());
+        assertEquals(player2Id, requestCaptor.getValue().getPlayer2Id());
+        // Ключ идемпотентности зависит от пары и времени входа, поэтому повтор дает тот же ключ
+        assertEquals(QueueClaim.pairingId(claim.players().get(0), claim.players().get(1)),
+                requestCaptor.getValue().getPairingId());
+        assertNotEquals(QueueClaim.pairingId(claim.players().get(0),
+                        new QueueClaim.Player(player2Id, claim.players().get(1).joinedAt() + 1)),
+                requestCaptor.getValue().getPairingId());
+        // Вход игрока в очередь не зависит от соперника
+        assertEquals(claim.players().get(0).ticket(), requestCaptor.getValue().getPlayer1Ticket());
+        assertEquals(claim.players().get(1).ticket(), requestCaptor.getValue().getPlayer2Ticket());
+
+        verify(redisQueueRepository, times(1)).finishClaim(claim, List.of());
+        verify(redisQueueRepository, never()).rollbackClaim(any());
         verify(notificationService, times(1)).notifyBothPlayers(
-                uuid1Captor.capture(),
-                uuid2Captor.capture(),
-                eq(matchId),
-                nickname1Captor.capture(),
-                nickname2Captor.capture()
-        );
-        
-        // Verify that both player IDs are present (order may vary)
-        Set<UUID> notifiedPlayerIds = Set.of(uuid1Captor.getValue(), uuid2Captor.getValue());
-        assertTrue(notifiedPlayerIds.contains(player1Id));
-        assertTrue(notifiedPlayerIds.contains(player2Id));
-        
-        // Verify that both nicknames are present (order may vary)
-        Set<String> notifiedNicknames = Set.of(nickname1Captor.getValue(), nickname2Captor.getValue());
-        assertTrue(notifiedNicknames.contains(player1Nickname));
-        assertTrue(notifiedNicknames.contains(player2Nickname));
+                player1Id, player2Id, matchId, player1Nickname, player2Nickname);
+        // Время до матча записывается для каждого игрока пары
+        verify(matchmakingMetrics, times(2)).recordTimeToMatch(any(Duration.class));
+        verify(queueHistoryRecorder, times(1)).record(eq(player1Id), eq(QueueItem.QueueStatus.MATCHED), any());
+        verify(queueHistoryRecorder, times(1)).record(eq(player2Id), eq(QueueItem.QueueStatus.MATCHED), any());
+        // Общий для реплик темп подбора
+        verify(pairingRateRepository, times(1)).record(anyLong(), eq(2));
     }
 
     @Test
-    @DisplayName("Should return false when queue has less than 2 players")
-    void shouldReturnFalseWhenQueueHasLessThanTwoPlayers() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(1L);
+    @DisplayName("Should drop already matched player and requeue the opponent when game-service returns another match")
+    void shouldRequeueOpponentWhenPlayerEntryIsAlreadyMatched() {
+        // Ответ о матче player1 был потерян, claim откатан, и player1 собран заново с другим соперником
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
+        when(gameServiceClient.createMatch(any(CreateMatchRequest.class)))
+                .thenReturn(match(player1Id, UUID.randomUUID()));
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        assertFalse(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, never()).getOldestPlayers(anyInt());
-        verify(gameServiceClient, never()).createMatch(any());
-        verify(personServiceClient, never()).getPersonById(any());
+        assertEquals(MatchStep.SKIPPED, result);
+        verify(redisQueueRepository, times(1)).finishClaim(claim, List.of(player2Id));
+        verify(redisQueueRepository, never()).rollbackClaim(any());
         verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
+        verify(pairingRateRepository, never()).record(anyLong(), anyInt());
     }
 
     @Test
-    @DisplayName("Should return false when queue is empty")
-    void shouldReturnFalseWhenQueueIsEmpty() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(0L);
+    @DisplayName("Should not claim players when this instance is not the matchmaking leader")
+    void shouldNotClaimWhenNotLeader() {
+        when(leaderLease.enabled()).thenReturn(true);
+        when(leaderLease.fence()).thenReturn(null);
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        assertEquals(MatchStep.EMPTY, matchmakingService.matchNext());
 
-        assertFalse(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, never()).getOldestPlayers(anyInt());
-        verify(gameServiceClient, never()).createMatch(any());
+        verify(redisQueueRepository, never()).claimClosestPair(anyLong(), any(), any());
+        verify(redisQueueRepository, never()).claimOldestPlayers(anyInt(), any());
     }
 
     @Test
-    @DisplayName("Should return false when cannot get 2 players from queue")
-    void shouldReturnFalseWhenCannotGetTwoPlayersFromQueue() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(Set.of(player1Id.toString()));
+    @DisplayName("Should pass leader fencing token to the claim")
+    void shouldPassLeaderFenceToClaim() {
+        LeaseFence fence = new LeaseFence(MatchmakingLeaderLease.LEASE_KEY, "instance:7");
+        when(leaderLease.enabled()).thenReturn(true);
+        when(leaderLease.fence()).thenReturn(fence);
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), eq(fence))).thenReturn(Optional.empty());
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        assertEquals(MatchStep.EMPTY, matchmakingService.tryMatchPlayers());
 
-        assertFalse(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, times(1)).getOldestPlayers(2);
+        verify(redisQueueRepository, times(1)).claimClosestPair(anyLong(), any(), eq(fence));
+    }
+
+    @Test
+    @DisplayName("Should report an empty step when fewer than 2 players can be claimed")
+    void shouldReportEmptyStepWhenNothingClaimed() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.empty());
+
+        MatchStep result = matchmakingService.tryMatchPlayers();
+
+        assertEquals(MatchStep.EMPTY, result);
+        verify(redisQueueRepository, times(1)).claimClosestPair(anyLong(), any(), any());
+        verify(redisQueueRepository, never()).finishClaim(any(), anyCollection());
         verify(gameServiceClient, never()).createMatch(any());
-        verify(personServiceClient, never()).getPersonById(any());
+        verify(personServiceClient, never()).findAllByIds(any());
+        verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
     }
 
     @Test
-    @DisplayName("Should return false and keep players in queue when match creation fails")
-    void shouldReturnFalseAndKeepPlayersInQueueWhenMatchCreationFails() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(oldestPlayers);
+    @DisplayName("Should report a failed step when claiming fails with Redis exception")
+    void shouldReportFailedStepWhenClaimThrows() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenThrow(new RuntimeException("Redis is shutting down"));
 
-        IndividualDto player1Dto = new IndividualDto();
-        player1Dto.setNickname(player1Nickname);
-        player1Dto.setEmail("player1@test.com");
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        IndividualDto player2Dto = new IndividualDto();
-        player2Dto.setNickname(player2Nickname);
-        player2Dto.setEmail("player2@test.com");
+        assertEquals(MatchStep.FAILED, result);
+        verify(gameServiceClient, never()).createMatch(any());
+    }
 
-        when(personServiceClient.getPersonById(player1Id)).thenReturn(player1Dto);
-        when(personServiceClient.getPersonById(player2Id)).thenReturn(player2Dto);
+    @Test
+    @DisplayName("Should roll back the claim when match creation fails")
+    void shouldRollbackClaimWhenMatchCreationFails() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
         when(gameServiceClient.createMatch(any(CreateMatchRequest.class)))
                 .thenThrow(new RuntimeException("Game service unavailable"));
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        assertFalse(result);
-        verify(personServiceClient, times(1)).getPersonById(player1Id);
-        verify(personServiceClient, times(1)).getPersonById(player2Id);
+        assertEquals(MatchStep.FAILED, result);
         verify(gameServiceClient, times(1)).createMatch(any(CreateMatchRequest.class));
-        verify(redisQueueRepository, never()).removeMultipleFromQueue(any());
+        verify(redisQueueRepository, times(1)).rollbackClaim(claim);
+        verify(redisQueueRepository, never()).finishClaim(any(), anyCollection());
         verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
+        verify(matchmakingMetrics, never()).recordTimeToMatch(any());
+        verify(queueHistoryRecorder, never()).record(any(), any(), any());
     }
 
     @Test
-    @DisplayName("Should return false and remove player1 from queue when player1 not found")
-    void shouldReturnFalseAndRemovePlayer1FromQueueWhenPlayer1NotFound() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(oldestPlayers);
-        when(redisQueueRepository.removeFromQueue(any(UUID.class))).thenReturn(true);
-
-        // Make player1Id fail when looked up
-        when(personServiceClient.getPersonById(player1Id))
-                .thenThrow(new RuntimeException("Person service unavailable"));
-        // Stub player2Id with lenient to avoid unnecessary stubbing exception
-        // (it won't be called if player1Id is processed first and fails)
-        lenient().when(personServiceClient.getPersonById(player2Id))
-                .thenReturn(new IndividualDto());
+    @DisplayName("Should take nicknames from player cards without calling persons-api")
+    void shouldUsePlayerCardsInsteadOfPersonsApi() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(redisQueueRepository.getPlayerCards(List.of(player1Id, player2Id))).thenReturn(Map.of(
+                player1Id, new PlayerCard(player1Nickname, null, 0),
+                player2Id, new PlayerCard(player2Nickname, null, 0)));
+        MatchResponse matchResponse = match(player1Id, player2Id);
+        matchResponse.setId(matchId);
+        when(gameServiceClient.createMatch(any(CreateMatchRequest.class))).thenReturn(matchResponse);
+
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        assertEquals(MatchStep.paired(1), result);
+        verify(personServiceClient, never()).findAllByIds(anyList());
+        verify(notificationService, times(1)).notifyBothPlayers(
+                player1Id, player2Id, matchId, player1Nickname, player2Nickname);
+    }
 
-        assertFalse(result);
-        // Verify that getPersonById was called at least once (for the first player processed)
-        verify(personServiceClient, atLeastOnce()).getPersonById(any(UUID.class));
+    @Test
+    @DisplayName("Should look up only players without a card in persons-api")
+    void shouldFallBackToPersonsApiForPlayersWithoutCard() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(redisQueueRepository.getPlayerCards(List.of(player1Id, player2Id)))
+                .thenReturn(Map.of(player1Id, new PlayerCard(player1Nickname, null, 0)));
+        when(personServiceClient.findAllByIds(List.of(player2Id)))
+                .thenReturn(persons(person(player2Id, player2Nickname)));
+        MatchResponse matchResponse = match(player1Id, player2Id);
+        matchResponse.setId(matchId);
+        when(gameServiceClient.createMatch(any(CreateMatchRequest.class))).thenReturn(matchResponse);
+
+        MatchStep result = matchmakingService.tryMatchPlayers();
+
+        assertEquals(MatchStep.paired(1), result);
+        verify(personServiceClient, times(1)).findAllByIds(List.of(player2Id));
+    }
+
+    @Test
+    @DisplayName("Should drop player1 and requeue player2 when player1 not found")
+    void shouldDropPlayer1AndRequeuePlayer2WhenPlayer1NotFound() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id)))
+                .thenReturn(persons(person(player2Id, player2Nickname)));
+
+        MatchStep result = matchmakingService.tryMatchPlayers();
+
+        assertEquals(MatchStep.SKIPPED, result);
         verify(gameServiceClient, never()).createMatch(any(CreateMatchRequest.class));
-        // Verify that removeFromQueue was called with the UUID that failed
-        ArgumentCaptor<UUID> uuidCaptor = ArgumentCaptor.forClass(UUID.class);
-        verify(redisQueueRepository, times(1)).removeFromQueue(uuidCaptor.capture());
-        UUID removedPlayerId = uuidCaptor.getValue();
-        // The removed player should be player1Id (the one that failed)
-        assertEquals(player1Id, removedPlayerId);
-        verify(redisQueueRepository, never()).removeMultipleFromQueue(any());
+        verify(redisQueueRepository, times(1)).finishClaim(claim, List.of(player2Id));
+        verify(redisQueueRepository, never()).rollbackClaim(any());
         verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
     }
 
     @Test
-    @DisplayName("Should return false and remove player2 from queue when player2 not found")
-    void shouldReturnFalseAndRemovePlayer2FromQueueWhenPlayer2NotFound() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(oldestPlayers);
-        when(redisQueueRepository.removeFromQueue(any(UUID.class))).thenReturn(true);
-
-        IndividualDto player1Dto = new IndividualDto();
-        player1Dto.setNickname(player1Nickname);
-        player1Dto.setEmail("player1@test.com");
-
-        // Since Set order is not guaranteed, we need to handle both cases:
-        // If player1Id comes first in the array, player2Id will fail
-        // If player2Id comes first in the array, it will fail first
-        // We'll use lenient stubbing to handle both scenarios
-        lenient().when(personServiceClient.getPersonById(player1Id)).thenReturn(player1Dto);
-        lenient().when(personServiceClient.getPersonById(player2Id))
-                .thenThrow(new RuntimeException("Person service unavailable"));
+    @DisplayName("Should drop disconnected player without calling persons-api and game-service")
+    void shouldSkipPairWithDisconnectedPlayer() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(presenceTracker.findAbsent(claim.players())).thenReturn(Set.of(player1Id));
+
+        MatchStep result = matchmakingService.tryMatchPlayers();
+
+        assertEquals(MatchStep.SKIPPED, result);
+        verify(personServiceClient, never()).findAllByIds(anyList());
+        verify(gameServiceClient, never()).createMatch(any(CreateMatchRequest.class));
+        verify(redisQueueRepository, times(1)).finishClaim(claim, List.of(player2Id));
+        verify(matchmakingMetrics, times(1)).recordGhostPairsAvoided(1);
+    }
+
+    @Test
+    @DisplayName("Should drop player2 and requeue player1 when player2 not found")
+    void shouldDropPlayer2AndRequeuePlayer1WhenPlayer2NotFound() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id)))
+                .thenReturn(persons(person(player1Id, player1Nickname)));
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        assertFalse(result);
-        // Verify that getPersonById was called at least once (for the first player processed)
-        verify(personServiceClient, atLeastOnce()).getPersonById(any(UUID.class));
+        assertEquals(MatchStep.SKIPPED, result);
         verify(gameServiceClient, never()).createMatch(any(CreateMatchRequest.class));
-        
-        // Verify that removeFromQueue was called with a UUID
-        ArgumentCaptor<UUID> uuidCaptor = ArgumentCaptor.forClass(UUID.class);
-        verify(redisQueueRepository, times(1)).removeFromQueue(uuidCaptor.capture());
-        UUID removedPlayerId = uuidCaptor.getValue();
-        // The removed player should be one of the players (depending on Set order)
-        assertTrue(removedPlayerId.equals(player1Id) || removedPlayerId.equals(player2Id));
-        
-        verify(redisQueueRepository, never()).removeMultipleFromQueue(any());
+        verify(redisQueueRepository, times(1)).finishClaim(claim, List.of(player1Id));
+        verify(redisQueueRepository, never()).rollbackClaim(any());
         verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
     }
 
     @Test
-    @DisplayName("Should successfully match players when queue has more than 2 players")
-    void shouldSuccessfullyMatchPlayersWhenQueueHasMoreThanTwoPlayers() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(5L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(oldestPlayers);
+    @DisplayName("Should roll back the claim when persons-api is unavailable")
+    void shouldRollbackClaimWhenPersonLookupFails() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(anyList()))
+                .thenThrow(new RuntimeException("Person service unavailable"));
 
-        MatchResponse matchResponse = new MatchResponse();
-        matchResponse.setId(matchId);
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        IndividualDto player1Dto = new IndividualDto();
-        player1Dto.setNickname(player1Nickname);
-        player1Dto.setEmail("player1@test.com");
+        assertEquals(MatchStep.FAILED, result);
+        // Недоступность persons-api не означает, что игроков не существует
+        verify(redisQueueRepository, times(1)).rollbackClaim(claim);
+        verify(redisQueueRepository, never()).finishClaim(any(), anyCollection());
+        verify(gameServiceClient, never()).createMatch(any(CreateMatchRequest.class));
+    }
 
-        IndividualDto player2Dto = new IndividualDto();
-        player2Dto.setNickname(player2Nickname);
-        player2Dto.setEmail("player2@test.com");
+    @Test
+    @DisplayName("Should not requeue players when notification fails after match creation")
+    void shouldNotRequeueWhenNotificationFailsAfterMatchCreated() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.of(claim));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
 
+        MatchResponse matchResponse = match(player1Id, player2Id);
+        matchResponse.setId(matchId);
         when(gameServiceClient.createMatch(any(CreateMatchRequest.class))).thenReturn(matchResponse);
-        when(personServiceClient.getPersonById(player1Id)).thenReturn(player1Dto);
-        when(personServiceClient.getPersonById(player2Id)).thenReturn(player2Dto);
-        when(redisQueueRepository.removeMultipleFromQueue(oldestPlayers)).thenReturn(2L);
+        doThrow(new RuntimeException("Broker unavailable"))
+                .when(notificationService).notifyBothPlayers(any(), any(), any(), any(), any());
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep result = matchmakingService.tryMatchPlayers();
 
-        assertTrue(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, times(1)).getOldestPlayers(2);
-        verify(gameServiceClient, times(1)).createMatch(any(CreateMatchRequest.class));
-        verify(redisQueueRepository, times(1)).removeMultipleFromQueue(oldestPlayers);
-        
-        // Verify notification - order of UUIDs may vary, but nicknames should match
-        ArgumentCaptor<UUID> uuid1Captor = ArgumentCaptor.forClass(UUID.class);
-        ArgumentCaptor<UUID> uuid2Captor = ArgumentCaptor.forClass(UUID.class);
-        ArgumentCaptor<String> nickname1Captor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<String> nickname2Captor = ArgumentCaptor.forClass(String.class);
-        
-        verify(notificationService, times(1)).notifyBothPlayers(
-                uuid1Captor.capture(),
-                uuid2Captor.capture(),
-                eq(matchId),
-                nickname1Captor.capture(),
-                nickname2Captor.capture()
-        );
-        
-        // Verify that both player IDs are present (order may vary)
-        Set<UUID> notifiedPlayerIds = Set.of(uuid1Captor.getValue(), uuid2Captor.getValue());
-        assertTrue(notifiedPlayerIds.contains(player1Id));
-        assertTrue(notifiedPlayerIds.contains(player2Id));
-        
-        // Verify that both nicknames are present (order may vary)
-        Set<String> notifiedNicknames = Set.of(nickname1Captor.getValue(), nickname2Captor.getValue());
-        assertTrue(notifiedNicknames.contains(player1Nickname));
-        assertTrue(notifiedNicknames.contains(player2Nickname));
+        assertEquals(MatchStep.FAILED, result);
+        // Pending-ключ уже удален до уведомления, поэтому откат не возвращает игроков в очередь
+        InOrder inOrder = inOrder(redisQueueRepository);
+        inOrder.verify(redisQueueRepository).finishClaim(claim, List.of());
+        inOrder.verify(redisQueueRepository).rollbackClaim(claim);
     }
 
-    @Test
-    @DisplayName("Should correctly parse player IDs from string set")
-    void shouldCorrectlyParsePlayerIdsFromStringSet() {
-        // given
-        UUID player3Id = UUID.randomUUID();
-        UUID player4Id = UUID.randomUUID();
-        Set<String> players = Set.of(player3Id.toString(), player4Id.toString());
+    private MatchResponse match(UUID player1, UUID player2) {
+        MatchResponse match = new MatchResponse();
+        match.setId(UUID.randomUUID());
+        match.setPlayer1Id(player1);
+        match.setPlayer2Id(player2);
+        return match;
+    }
 
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(players);
+    private void enableBatch() {
+        doReturn(true).when(matchmakingProperties).batchEnabled();
+        doReturn(10).when(matchmakingProperties).batchSize();
+    }
 
-        MatchResponse matchResponse = new MatchResponse();
-        matchResponse.setId(matchId);
+    @Test
+    @DisplayName("Should match a single pair per step when batch mode is disabled")
+    void shouldMatchSinglePairWhenBatchDisabled() {
+        when(redisQueueRepository.claimClosestPair(anyLong(), any(), any())).thenReturn(Optional.empty());
 
-        IndividualDto player3Dto = new IndividualDto();
-        player3Dto.setNickname("Player3");
-        player3Dto.setEmail("player3@test.com");
+        MatchStep step = matchmakingService.matchNext();
 
-        IndividualDto player4Dto = new IndividualDto();
-        player4Dto.setNickname("Player4");
-        player4Dto.setEmail("player4@test.com");
+        assertEquals(MatchStep.EMPTY, step);
+        verify(redisQueueRepository, never()).claimOldestPlayers(anyInt(), any());
+    }
 
-        when(gameServiceClient.createMatch(any(CreateMatchRequest.class))).thenReturn(matchResponse);
-        when(personServiceClient.getPersonById(player3Id)).thenReturn(player3Dto);
-        when(personServiceClient.getPersonById(player4Id)).thenReturn(player4Dto);
-        when(redisQueueRepository.removeMultipleFromQueue(players)).thenReturn(2L);
+    @Test
+    @DisplayName("Should create all batch pairs with one bulk request")
+    void shouldCreateAllBatchPairsWithOneBulkRequest() {
+        enableBatch();
+        UUID player3Id = UUID.randomUUID();
+        UUID player4Id = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1),
+                new QueueClaim.Player(player3Id, joinedAt + 2),
+                new QueueClaim.Player(player4Id, joinedAt + 3)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player2Id), match(player3Id, player4Id)));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(2), step);
+        ArgumentCaptor<CreateMatchesRequest> requestCaptor = ArgumentCaptor.forClass(CreateMatchesRequest.class);
+        verify(gameServiceClient, times(1)).createMatches(requestCaptor.capture());
+        assertEquals(2, requestCaptor.getValue().getMatches().size());
+        verify(gameServiceClient, never()).createMatch(any());
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of());
+        verify(notificationService, times(2)).notifyBothPlayers(any(), any(), any(), any(), any());
+        verify(matchmakingMetrics, times(4)).recordTimeToMatch(any(Duration.class));
+    }
 
-        boolean result = matchmakingService.tryMatchPlayers();
+    @Test
+    @DisplayName("Should requeue failed pairs and unpaired players individually")
+    void shouldRequeueFailedPairsAndUnpairedPlayers() {
+        enableBatch();
+        UUID player3Id = UUID.randomUUID();
+        UUID player4Id = UUID.randomUUID();
+        UUID player5Id = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1),
+                new QueueClaim.Player(player3Id, joinedAt + 2),
+                new QueueClaim.Player(player4Id, joinedAt + 3),
+                new QueueClaim.Player(player5Id, joinedAt + 4)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        // game-service создал матч только для первой пары
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player2Id)));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(1), step);
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of(player5Id, player3Id, player4Id));
+        verify(notificationService, times(1)).notifyBothPlayers(eq(player1Id), eq(player2Id), any(), any(), any());
+    }
 
-        assertTrue(result);
+    @Test
+    @DisplayName("Should skip batch pair whose player is already matched without affecting other pairs")
+    void shouldSkipBatchPairWithAlreadyMatchedPlayer() {
+        enableBatch();
+        UUID player3Id = UUID.randomUUID();
+        UUID player4Id = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1),
+                new QueueClaim.Player(player3Id, joinedAt + 2),
+                new QueueClaim.Player(player4Id, joinedAt + 3)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        // Вход player3 уже сведен в матч с другим соперником: game-service вернул тот матч вместо пары
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player2Id), match(player3Id, UUID.randomUUID())));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(1), step);
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of(player4Id));
+        verify(notificationService, times(1)).notifyBothPlayers(eq(player1Id), eq(player2Id), any(), any(), any());
+        verify(notificationService, never()).notifyBothPlayers(eq(player3Id), any(), any(), any(), any());
+    }
 
-        ArgumentCaptor<CreateMatchRequest> requestCaptor = ArgumentCaptor.forClass(CreateMatchRequest.class);
-        verify(gameServiceClient, times(1)).createMatch(requestCaptor.capture());
+    @Test
+    @DisplayName("Should drop batch players missing in persons-api and pair the rest")
+    void shouldDropMissingBatchPlayersAndPairTheRest() {
+        enableBatch();
+        UUID missingId = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(missingId, joinedAt + 1),
+                new QueueClaim.Player(player2Id, joinedAt + 2)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        when(personServiceClient.findAllByIds(List.of(player1Id, missingId, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player2Id)));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(1), step);
+        // Один bulk-запрос на всю пачку, отсутствующий игрок не возвращается в очередь
+        verify(personServiceClient, times(1)).findAllByIds(anyList());
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of());
+        verify(notificationService, times(1)).notifyBothPlayers(
+                eq(player1Id), eq(player2Id), any(), eq(player1Nickname), eq(player2Nickname));
+    }
 
-        CreateMatchRequest capturedRequest = requestCaptor.getValue();
-        assertNotNull(capturedRequest);
-        // Проверяем, что ID были правильно распарсены (порядок может быть разным из-за Set)
-        assertTrue(capturedRequest.getPlayer1Id().equals(player3Id) || capturedRequest.getPlayer1Id().equals(player4Id));
-        assertTrue(capturedRequest.getPlayer2Id().equals(player3Id) || capturedRequest.getPlayer2Id().equals(player4Id));
-        assertNotEquals(capturedRequest.getPlayer1Id(), capturedRequest.getPlayer2Id());
+    @Test
+    @DisplayName("Should drop disconnected batch players before persons-api lookup")
+    void shouldDropDisconnectedBatchPlayers() {
+        enableBatch();
+        UUID ghostId = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(ghostId, joinedAt + 1),
+                new QueueClaim.Player(player2Id, joinedAt + 2)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        when(presenceTracker.findAbsent(batch.players())).thenReturn(Set.of(ghostId));
+        when(personServiceClient.findAllByIds(List.of(player1Id, player2Id))).thenReturn(persons(
+                person(player1Id, player1Nickname), person(player2Id, player2Nickname)));
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player2Id)));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(1), step);
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of());
+        verify(matchmakingMetrics, times(1)).recordGhostPairsAvoided(1);
     }
 
     @Test
-    @DisplayName("Should handle empty set from getOldestPlayers")
-    void shouldHandleEmptySetFromGetOldestPlayers() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(Set.of());
+    @DisplayName("Should pair batch players by closest rating within the window")
+    void shouldPairBatchPlayersByClosestRating() {
+        enableBatch();
+        UUID player3Id = UUID.randomUUID();
+        UUID player4Id = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt, 1500.0),
+                new QueueClaim.Player(player2Id, joinedAt + 1, 1900.0),
+                new QueueClaim.Player(player3Id, joinedAt + 2, 1520.0),
+                new QueueClaim.Player(player4Id, joinedAt + 3, 1880.0)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        MatchesResponse response = new MatchesResponse();
+        response.setItems(List.of(match(player1Id, player3Id), match(player2Id, player4Id)));
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(response);
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.paired(2), step);
+        ArgumentCaptor<CreateMatchesRequest> requestCaptor = ArgumentCaptor.forClass(CreateMatchesRequest.class);
+        verify(gameServiceClient).createMatches(requestCaptor.capture());
+        List<CreateMatchRequest> pairs = requestCaptor.getValue().getMatches();
+        assertEquals(player1Id, pairs.get(0).getPlayer1Id());
+        assertEquals(player3Id, pairs.get(0).getPlayer2Id());
+        assertEquals(player2Id, pairs.get(1).getPlayer1Id());
+        assertEquals(player4Id, pairs.get(1).getPlayer2Id());
+    }
 
-        boolean result = matchmakingService.tryMatchPlayers();
+    @Test
+    @DisplayName("Should report a skipped batch step when only missing players were removed")
+    void shouldReportSkippedBatchStepWhenOnlyMissingPlayersRemoved() {
+        enableBatch();
+        UUID missingId = UUID.randomUUID();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(missingId, joinedAt + 1)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        when(personServiceClient.findAllByIds(List.of(player1Id, missingId)))
+                .thenReturn(persons(person(player1Id, player1Nickname)));
+
+        MatchStep step = matchmakingService.matchNext();
+
+        // Матча нет, но очередь сдвинулась: проход должен продолжиться
+        assertEquals(MatchStep.SKIPPED, step);
+        assertTrue(step.proceed());
+        verify(gameServiceClient, never()).createMatches(any());
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of(player1Id));
+    }
 
-        assertFalse(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, times(1)).getOldestPlayers(2);
-        verify(gameServiceClient, never()).createMatch(any());
+    @Test
+    @DisplayName("Should report a failed batch step when game-service created none of the pairs")
+    void shouldReportFailedBatchStepWhenNoPairCreated() {
+        enableBatch();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class))).thenReturn(new MatchesResponse());
+
+        MatchStep step = matchmakingService.matchNext();
+
+        assertEquals(MatchStep.FAILED, step);
+        verify(redisQueueRepository, times(1)).finishClaim(batch, List.of(player1Id, player2Id));
     }
 
     @Test
-    @DisplayName("Should handle null set from getOldestPlayers")
-    void shouldHandleNullSetFromGetOldestPlayers() {
-        when(redisQueueRepository.getQueueSize()).thenReturn(2L);
-        when(redisQueueRepository.getOldestPlayers(2)).thenReturn(null);
+    @DisplayName("Should roll back the whole batch when bulk match creation fails")
+    void shouldRollbackBatchWhenBulkCreationFails() {
+        enableBatch();
+        long joinedAt = System.currentTimeMillis();
+        QueueClaim batch = new QueueClaim("batch-1", List.of(
+                new QueueClaim.Player(player1Id, joinedAt),
+                new QueueClaim.Player(player2Id, joinedAt + 1)
+        ));
+        when(redisQueueRepository.claimOldestPlayers(eq(10), any())).thenReturn(Optional.of(batch));
+        allPersonsExist();
+        when(gameServiceClient.createMatches(any(CreateMatchesRequest.class)))
+                .thenThrow(new RuntimeException("Game service unavailable"));
 
-        boolean result = matchmakingService.tryMatchPlayers();
+        MatchStep step = matchmakingService.matchNext();
 
-        assertFalse(result);
-        verify(redisQueueRepository, times(1)).getQueueSize();
-        verify(redisQueueRepository, times(1)).getOldestPlayers(2);
-        verify(gameServiceClient, never()).createMatch(any());
+        assertEquals(MatchStep.FAILED, step);
+        verify(redisQueueRepository, times(1)).rollbackClaim(batch);
+        verify(redisQueueRepository, never()).finishClaim(any(), anyCollection());
+        verify(notificationService, never()).notifyBothPlayers(any(), any(), any(), any(), any());
     }
 }
-
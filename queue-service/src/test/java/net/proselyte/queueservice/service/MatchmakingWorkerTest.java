@@ -0,0 +1,190 @@
+package net.proselyte.queueservice.service;
+
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("MatchmakingWorker Unit Tests")
+class MatchmakingWorkerTest {
+
+    @Mock
+    private MatchmakingService matchmakingService;
+
+    @Mock
+    private MatchmakingMetrics matchmakingMetrics;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    private MatchmakingWorker worker;
+
+    @AfterEach
+    void tearDown() {
+        if (worker != null) {
+            worker.stop();
+        }
+    }
+
+    private MatchmakingWorker createWorker(MatchmakingProperties.Mode mode) {
+        return createWorker(mode, 1);
+    }
+
+    private MatchmakingWorker createWorker(MatchmakingProperties.Mode mode, int concurrency) {
+        worker = new MatchmakingWorker(matchmakingService, matchmakingMetrics,
+                new MatchmakingProperties(mode, null, 0, concurrency), redisTemplate);
+        return worker;
+    }
+
+    @Test
+    @DisplayName("Should drain queue on start until no more pairs can be matched")
+    void shouldDrainQueueOnStartUntilNoMorePairs() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.paired(1), MatchStep.paired(1), MatchStep.EMPTY);
+
+        // when
+        worker.start();
+
+        // then
+        verify(matchmakingMetrics, timeout(1000)).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, 2);
+        verify(matchmakingService, times(3)).matchNext();
+    }
+
+    @Test
+    @DisplayName("Should keep draining after a step that only removed unmatchable players")
+    void shouldKeepDrainingAfterSkippedStep() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN);
+        when(matchmakingService.matchNext())
+                .thenReturn(MatchStep.SKIPPED, MatchStep.paired(1), MatchStep.SKIPPED, MatchStep.paired(1), MatchStep.EMPTY);
+
+        // when
+        worker.start();
+
+        // then
+        verify(matchmakingMetrics, timeout(1000)).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, 2);
+        verify(matchmakingService, times(5)).matchNext();
+    }
+
+    @Test
+    @DisplayName("Should stop draining after a failed step")
+    void shouldStopDrainingAfterFailedStep() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.paired(1), MatchStep.FAILED, MatchStep.paired(1));
+
+        // when
+        worker.start();
+
+        // then
+        verify(matchmakingMetrics, timeout(1000)).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, 1);
+        verify(matchmakingService, times(2)).matchNext();
+    }
+
+    @Test
+    @DisplayName("Should drain queue with parallel lanes and sum their matches")
+    void shouldDrainQueueWithParallelLanes() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN, 4);
+        AtomicInteger pairsLeft = new AtomicInteger(10);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        when(matchmakingService.matchNext()).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return pairsLeft.getAndDecrement() > 0 ? MatchStep.paired(1) : MatchStep.EMPTY;
+        });
+
+        // when
+        worker.start();
+
+        // then - каждая полоса останавливается на своем пустом шаге
+        verify(matchmakingMetrics, timeout(1000)).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, 10);
+        verify(matchmakingService, times(14)).matchNext();
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("matchmaking-lane-")));
+    }
+
+    @Test
+    @DisplayName("Should keep other lanes running when one lane fails")
+    void shouldIsolateLaneFailure() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN, 2);
+        AtomicInteger calls = new AtomicInteger();
+        when(matchmakingService.matchNext()).thenAnswer(invocation -> {
+            int call = calls.incrementAndGet();
+            if (call == 1) {
+                throw new IllegalStateException("Redis unavailable");
+            }
+            return call <= 4 ? MatchStep.paired(1) : MatchStep.EMPTY;
+        });
+
+        // when
+        worker.start();
+
+        // then
+        verify(matchmakingMetrics, timeout(1000)).recordMatchesPerTick(MatchmakingMetrics.TRIGGER_EVENT, 3);
+    }
+
+    @Test
+    @DisplayName("Should wake up matchmaking and publish to other replicas on request")
+    void shouldWakeUpAndPublishOnRequest() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.EMPTY);
+        worker.start();
+
+        // when
+        worker.requestMatchmaking();
+
+        // then
+        verify(matchmakingService, timeout(1000).atLeastOnce()).matchNext();
+        verify(redisTemplate).convertAndSend(eq(MatchmakingWorker.WAKEUP_CHANNEL), anyString());
+    }
+
+    @Test
+    @DisplayName("Should react to wake-up from another replica")
+    void shouldReactToWakeUpFromAnotherReplica() {
+        // given
+        createWorker(MatchmakingProperties.Mode.EVENT_DRIVEN);
+        when(matchmakingService.matchNext()).thenReturn(MatchStep.EMPTY);
+        worker.start();
+        verify(matchmakingService, timeout(1000).times(1)).matchNext();
+
+        // when
+        worker.onMessage(new DefaultMessage(
+                MatchmakingWorker.WAKEUP_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "other-instance".getBytes(StandardCharsets.UTF_8)), null);
+
+        // then
+        verify(matchmakingService, timeout(1000).times(2)).matchNext();
+    }
+
+    @Test
+    @DisplayName("Should do nothing in scheduled mode")
+    void shouldDoNothingInScheduledMode() {
+        // given
+        createWorker(MatchmakingProperties.Mode.SCHEDULED);
+        worker.start();
+
+        // when
+        worker.requestMatchmaking();
+
+        // then
+        verifyNoInteractions(redisTemplate);
+        verify(matchmakingService, after(200).never()).matchNext();
+    }
+}
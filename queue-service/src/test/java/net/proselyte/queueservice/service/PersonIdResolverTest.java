@@ -0,0 +1,141 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.person.dto.IndividualDto;
+import net.proselyte.person.dto.IndividualPageDto;
+import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.config.PersonCacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PersonIdResolver Unit Tests")
+class PersonIdResolverTest {
+
+    private static final String EMAIL = "test@example.com";
+
+    @Mock
+    private PersonServiceClient personServiceClient;
+
+    private SimpleMeterRegistry registry;
+    private PersonIdResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        resolver = new PersonIdResolver(personServiceClient,
+                new PersonCacheProperties(100, Duration.ofMinutes(10)), registry);
+    }
+
+    private static IndividualPageDto page(IndividualDto... persons) {
+        IndividualPageDto page = new IndividualPageDto();
+        page.setItems(List.of(persons));
+        return page;
+    }
+
+    private static IndividualDto person(UUID id) {
+        IndividualDto dto = new IndividualDto();
+        dto.setId(id);
+        dto.setEmail(EMAIL);
+        return dto;
+    }
+
+    private double cacheGets(String result) {
+        return registry.get("cache.gets").tag("cache", PersonIdResolver.CACHE_NAME).tag("result", result)
+                .functionCounter().count();
+    }
+
+    @Test
+    @DisplayName("Should call persons-api once for repeated lookups of the same email")
+    void shouldCacheResolvedPersonId() {
+        // given
+        UUID personId = UUID.randomUUID();
+        when(personServiceClient.findByEmail(List.of(EMAIL))).thenReturn(page(person(personId)));
+
+        // when
+        UUID first = resolver.resolve(EMAIL);
+        UUID second = resolver.resolve(EMAIL);
+
+        // then
+        assertEquals(personId, first);
+        assertEquals(personId, second);
+        verify(personServiceClient, times(1)).findByEmail(List.of(EMAIL));
+        assertEquals(1, cacheGets("hit"));
+        assertEquals(1, cacheGets("miss"));
+    }
+
+    @Test
+    @DisplayName("Should not cache missing person")
+    void shouldNotCacheMissingPerson() {
+        // given
+        when(personServiceClient.findByEmail(List.of(EMAIL))).thenReturn(page());
+
+        // when & then
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> resolver.resolve(EMAIL));
+        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
+        assertThrows(ResponseStatusException.class, () -> resolver.resolve(EMAIL));
+        verify(personServiceClient, times(2)).findByEmail(List.of(EMAIL));
+    }
+
+    @Test
+    @DisplayName("Should wrap persons-api failure into internal server error")
+    void shouldWrapClientFailure() {
+        // given
+        when(personServiceClient.findByEmail(List.of(EMAIL))).thenThrow(new RuntimeException("connection refused"));
+
+        // when & then
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> resolver.resolve(EMAIL));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exception.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should look up person again after person change signal")
+    void shouldInvalidateOnPersonChangedSignal() {
+        // given
+        UUID personId = UUID.randomUUID();
+        when(personServiceClient.findByEmail(List.of(EMAIL))).thenReturn(page(person(personId)));
+        resolver.resolve(EMAIL);
+
+        // when
+        resolver.onMessage(new DefaultMessage(
+                PersonIdResolver.PERSON_CHANGED_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                personId.toString().getBytes(StandardCharsets.UTF_8)), null);
+        resolver.resolve(EMAIL);
+
+        // then
+        verify(personServiceClient, times(2)).findByEmail(List.of(EMAIL));
+    }
+
+    @Test
+    @DisplayName("Should ignore malformed person change signal")
+    void shouldIgnoreMalformedSignal() {
+        // given
+        UUID personId = UUID.randomUUID();
+        when(personServiceClient.findByEmail(List.of(EMAIL))).thenReturn(page(person(personId)));
+        resolver.resolve(EMAIL);
+
+        // when
+        resolver.onMessage(new DefaultMessage(
+                PersonIdResolver.PERSON_CHANGED_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                "not-a-uuid".getBytes(StandardCharsets.UTF_8)), null);
+        resolver.resolve(EMAIL);
+
+        // then
+        verify(personServiceClient, times(1)).findByEmail(List.of(EMAIL));
+    }
+}
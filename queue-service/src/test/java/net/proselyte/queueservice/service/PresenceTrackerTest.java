@@ -0,0 +1,145 @@
+package net.proselyte.queueservice.service;
+
+import net.proselyte.queueservice.config.PresenceProperties;
+import net.proselyte.queueservice.repository.QueueClaim;
+import net.proselyte.queueservice.repository.RedisPresenceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PresenceTracker Unit Tests")
+class PresenceTrackerTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    @Mock
+    private RedisPresenceRepository presenceRepository;
+
+    private PresenceTracker tracker;
+    private UUID userId;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new PresenceTracker(presenceRepository,
+                new PresenceProperties(true, Duration.ofSeconds(30), Duration.ofSeconds(30), 500));
+        userId = UUID.randomUUID();
+    }
+
+    private static Message<byte[]> stomp(StompCommand command, String subscriptionId, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(SESSION_ID);
+        accessor.setSubscriptionId(subscriptionId);
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private void subscribe(String subscriptionId, String destination) {
+        tracker.onSubscribe(new SessionSubscribeEvent(this, stomp(StompCommand.SUBSCRIBE, subscriptionId, destination)));
+    }
+
+    @Test
+    @DisplayName("Should track player subscription and record presence immediately")
+    void shouldTrackSubscription() {
+        // when
+        subscribe("sub-1", WebSocketNotificationService.QUEUE_TOPIC_PREFIX + userId);
+
+        // then
+        assertEquals(Set.of(userId), tracker.connectedUsers());
+        verify(presenceRepository, times(1)).heartbeat(eq(List.of(userId)), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should ignore subscriptions to other destinations")
+    void shouldIgnoreOtherDestinations() {
+        // when
+        subscribe("sub-1", "/topic/games");
+        subscribe("sub-2", WebSocketNotificationService.QUEUE_TOPIC_PREFIX + "not-a-uuid");
+
+        // then
+        assertTrue(tracker.connectedUsers().isEmpty());
+        verifyNoInteractions(presenceRepository);
+    }
+
+    @Test
+    @DisplayName("Should stop heartbeats after unsubscribe and disconnect")
+    void shouldStopHeartbeatAfterDisconnect() {
+        // given
+        UUID otherUserId = UUID.randomUUID();
+        subscribe("sub-1", WebSocketNotificationService.QUEUE_TOPIC_PREFIX + userId);
+        subscribe("sub-2", WebSocketNotificationService.QUEUE_TOPIC_PREFIX + otherUserId);
+
+        // when
+        tracker.onUnsubscribe(new SessionUnsubscribeEvent(this, stomp(StompCommand.UNSUBSCRIBE, "sub-2", null)));
+
+        // then
+        assertEquals(Set.of(userId), tracker.connectedUsers());
+
+        // when
+        tracker.onDisconnect(new SessionDisconnectEvent(this,
+                stomp(StompCommand.DISCONNECT, null, null), SESSION_ID, CloseStatus.NORMAL));
+        tracker.heartbeat();
+
+        // then
+        assertTrue(tracker.connectedUsers().isEmpty());
+        verify(presenceRepository, times(2)).heartbeat(anyCollection(), anyLong());
+    }
+
+    @Test
+    @DisplayName("Should not check presence of recently joined players")
+    void shouldSkipRecentlyJoinedPlayers() {
+        // given
+        UUID veteranId = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        List<QueueClaim.Player> players = List.of(
+                new QueueClaim.Player(veteranId, now - 60_000),
+                new QueueClaim.Player(userId, now));
+        when(presenceRepository.findAbsent(eq(List.of(veteranId)), anyLong())).thenReturn(Set.of(veteranId));
+
+        // when
+        Set<UUID> absent = tracker.findAbsent(players);
+
+        // then
+        assertEquals(Set.of(veteranId), absent);
+    }
+
+    @Test
+    @DisplayName("Should treat everyone as present when presence tracking is disabled")
+    void shouldReportNobodyAbsentWhenDisabled() {
+        // given
+        tracker = new PresenceTracker(presenceRepository,
+                new PresenceProperties(false, Duration.ofSeconds(30), Duration.ofSeconds(30), 500));
+
+        // when
+        Set<UUID> absent = tracker.findAbsent(List.of(new QueueClaim.Player(userId, 0)));
+        tracker.heartbeat();
+
+        // then
+        assertTrue(absent.isEmpty());
+        verifyNoInteractions(presenceRepository);
+    }
+}
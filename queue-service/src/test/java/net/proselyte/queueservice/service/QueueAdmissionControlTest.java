@@ -0,0 +1,132 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.queueservice.config.AdmissionProperties;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.repository.RedisRateLimitRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QueueAdmissionControl Unit Tests")
+class QueueAdmissionControlTest {
+
+    private static final String SUBJECT = "keycloak-user";
+
+    @Mock
+    private RedisRateLimitRepository rateLimitRepository;
+
+    @Mock
+    private RedisQueueRepository redisQueueRepository;
+
+    private SimpleMeterRegistry registry;
+    private QueueAdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        admissionControl = admissionControl(true, 100);
+    }
+
+    private QueueAdmissionControl admissionControl(boolean enabled, long maxQueueSize) {
+        return new QueueAdmissionControl(rateLimitRepository, redisQueueRepository,
+                new AdmissionProperties(enabled, 5, Duration.ofSeconds(2), maxQueueSize, Duration.ofSeconds(5)),
+                registry);
+    }
+
+    private double rejected(String operation, String reason) {
+        return registry.get(QueueAdmissionControl.REJECTED_METRIC)
+                .tag("operation", operation).tag("reason", reason).counter().count();
+    }
+
+    @Test
+    @DisplayName("Should admit join when a token is available and the queue has room")
+    void shouldAdmitJoin() {
+        // given
+        when(rateLimitRepository.tryAcquire(eq(SUBJECT), anyLong(), eq(5), eq(2000L))).thenReturn(0L);
+        when(redisQueueRepository.getQueueSize()).thenReturn(99L);
+
+        // when & then
+        assertDoesNotThrow(() -> admissionControl.admitJoin(SUBJECT));
+    }
+
+    @Test
+    @DisplayName("Should reject with 429 and Retry-After when the user's bucket is empty")
+    void shouldRejectWhenRateLimited() {
+        // given
+        when(rateLimitRepository.tryAcquire(eq(SUBJECT), anyLong(), eq(5), eq(2000L))).thenReturn(1200L);
+
+        // when
+        QueueAdmissionException exception = assertThrows(QueueAdmissionException.class,
+                () -> admissionControl.admitJoin(SUBJECT));
+
+        // then
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exception.getStatusCode());
+        assertEquals("2", exception.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, rejected("join", "rate_limit"));
+        verify(redisQueueRepository, never()).getQueueSize();
+    }
+
+    @Test
+    @DisplayName("Should reject join when the queue reached its ceiling")
+    void shouldRejectWhenQueueFull() {
+        // given
+        when(rateLimitRepository.tryAcquire(eq(SUBJECT), anyLong(), eq(5), eq(2000L))).thenReturn(0L);
+        when(redisQueueRepository.getQueueSize()).thenReturn(100L);
+
+        // when
+        QueueAdmissionException exception = assertThrows(QueueAdmissionException.class,
+                () -> admissionControl.admitJoin(SUBJECT));
+
+        // then
+        assertEquals(5, exception.getRetryAfterSeconds());
+        assertEquals(1, rejected("join", "queue_full"));
+    }
+
+    @Test
+    @DisplayName("Should not apply the queue ceiling to leave")
+    void shouldRateLimitLeaveOnly() {
+        // given
+        when(rateLimitRepository.tryAcquire(eq(SUBJECT), anyLong(), eq(5), eq(2000L))).thenReturn(500L);
+
+        // when & then
+        assertThrows(QueueAdmissionException.class, () -> admissionControl.admitLeave(SUBJECT));
+        assertEquals(1, rejected("leave", "rate_limit"));
+        verify(redisQueueRepository, never()).getQueueSize();
+    }
+
+    @Test
+    @DisplayName("Should admit requests when the rate limiter is unavailable")
+    void shouldFailOpenWhenRedisUnavailable() {
+        // given
+        when(rateLimitRepository.tryAcquire(eq(SUBJECT), anyLong(), eq(5), eq(2000L)))
+                .thenThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when & then
+        assertDoesNotThrow(() -> admissionControl.admitLeave(SUBJECT));
+    }
+
+    @Test
+    @DisplayName("Should skip all checks when admission control is disabled")
+    void shouldSkipWhenDisabled() {
+        // when
+        admissionControl(false, 1).admitJoin(SUBJECT);
+
+        // then
+        verifyNoInteractions(rateLimitRepository, redisQueueRepository);
+    }
+}
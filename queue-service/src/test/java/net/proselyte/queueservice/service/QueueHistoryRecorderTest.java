@@ -0,0 +1,141 @@
+package net.proselyte.queueservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.queueservice.config.QueueHistoryProperties;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.repository.QueueItemHistoryRepository;
+import net.proselyte.queueservice.repository.QueueTransition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("QueueHistoryRecorder Unit Tests")
+class QueueHistoryRecorderTest {
+
+    private static final Instant JOINED_AT = Instant.parse("2025-01-01T10:00:00Z");
+
+    @Mock
+    private QueueItemHistoryRepository historyRepository;
+
+    private SimpleMeterRegistry registry;
+    private QueueHistoryRecorder recorder;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        recorder = recorder(true, 3, 2);
+    }
+
+    private QueueHistoryRecorder recorder(boolean enabled, int bufferSize, int batchSize) {
+        return new QueueHistoryRecorder(historyRepository,
+                new QueueHistoryProperties(enabled, bufferSize, batchSize), registry);
+    }
+
+    private double dropped(String reason) {
+        return registry.get(QueueHistoryRecorder.DROPPED_METRIC).tag("reason", reason).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<QueueTransition>> capturedBatches(int times) {
+        ArgumentCaptor<List<QueueTransition>> captor = ArgumentCaptor.forClass(List.class);
+        verify(historyRepository, times(times)).upsertAll(captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    @DisplayName("Should keep only the latest transition per player between flushes")
+    void shouldCoalesceTransitionsOfSamePlayer() {
+        // given
+        UUID userId = UUID.randomUUID();
+        recorder.record(userId, QueueItem.QueueStatus.WAITING, JOINED_AT);
+        recorder.record(userId, QueueItem.QueueStatus.MATCHED, JOINED_AT);
+
+        // when
+        recorder.flush();
+
+        // then
+        assertEquals(List.of(List.of(new QueueTransition(userId, QueueItem.QueueStatus.MATCHED, JOINED_AT))),
+                capturedBatches(1));
+        assertEquals(0, recorder.bufferDepth());
+    }
+
+    @Test
+    @DisplayName("Should write buffered transitions in batches of batchSize")
+    void shouldFlushInBatches() {
+        // given
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.LEFT, JOINED_AT);
+
+        // when
+        recorder.flush();
+
+        // then
+        List<List<QueueTransition>> batches = capturedBatches(2);
+        assertEquals(3, batches.get(0).size() + batches.get(1).size());
+        assertEquals(0, registry.get(QueueHistoryRecorder.BUFFER_DEPTH_METRIC).gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should drop transitions of new players when the buffer is full")
+    void shouldDropWhenBufferFull() {
+        // given
+        UUID first = UUID.randomUUID();
+        recorder.record(first, QueueItem.QueueStatus.WAITING, JOINED_AT);
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+
+        // when
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+        // переход игрока, который уже в буфере, место не занимает
+        recorder.record(first, QueueItem.QueueStatus.LEFT, JOINED_AT);
+
+        // then
+        assertEquals(3, recorder.bufferDepth());
+        assertEquals(1, dropped("buffer_full"));
+    }
+
+    @Test
+    @DisplayName("Should count failed batch as dropped and keep flushing")
+    void shouldNotRethrowWriteFailure() {
+        // given
+        doThrow(new DataAccessResourceFailureException("connection refused"))
+                .when(historyRepository).upsertAll(anyList());
+        recorder.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+
+        // when
+        assertDoesNotThrow(recorder::flush);
+
+        // then
+        assertEquals(1, dropped("write_failed"));
+        assertEquals(0, recorder.bufferDepth());
+    }
+
+    @Test
+    @DisplayName("Should not buffer anything when history is disabled")
+    void shouldIgnoreTransitionsWhenDisabled() {
+        // given
+        QueueHistoryRecorder disabled = recorder(false, 3, 2);
+        disabled.record(UUID.randomUUID(), QueueItem.QueueStatus.WAITING, JOINED_AT);
+
+        // when
+        disabled.flush();
+
+        // then
+        verify(historyRepository, never()).upsertAll(anyList());
+    }
+}
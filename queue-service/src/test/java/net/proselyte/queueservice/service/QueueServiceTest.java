@@ -1,6 +1,10 @@
 package net.proselyte.queueservice.service;
 
+import net.proselyte.queue.dto.QueueJoinResponseDto;
 import net.proselyte.queue.dto.QueueStatusResponseDto;
+import net.proselyte.queueservice.entity.QueueItem;
+import net.proselyte.queueservice.repository.QueueEntry;
+import net.proselyte.queueservice.repository.QueueJoin;
 import net.proselyte.queueservice.repository.RedisQueueRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -9,10 +13,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
@@ -27,9 +33,20 @@ import org.mockito.ArgumentCaptor;
 @DisplayName("QueueService Unit Tests")
 class QueueServiceTest {
 
+    private static final String NICKNAME = "Player1";
+
     @Mock
     private RedisQueueRepository redisQueueRepository;
 
+    @Mock
+    private MatchmakingWorker matchmakingWorker;
+
+    @Mock
+    private WebSocketNotificationService notificationService;
+
+    @Mock
+    private QueueHistoryRecorder queueHistoryRecorder;
+
     @InjectMocks
     private QueueService queueService;
 
@@ -46,45 +63,68 @@ class QueueServiceTest {
     @DisplayName("Should successfully add user to queue when user is not in queue")
     void shouldAddUserToQueueWhenNotInQueue() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(false);
-        when(redisQueueRepository.addToQueue(eq(testUserId), anyLong())).thenReturn(true);
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME)))
+                .thenReturn(new QueueJoin(true, testTimestamp));
 
         // when
-        queueService.joinQueue(testUserId);
+        QueueJoinResponseDto response = queueService.joinQueue(testUserId, NICKNAME, null);
 
         // then
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, times(1)).addToQueue(eq(testUserId), anyLong());
+        assertTrue(response.getNewlyJoined());
+        assertEquals(testUserId, response.getPersonId());
+        assertEquals(QueueJoinResponseDto.StatusEnum.WAITING, response.getStatus());
+        assertEquals(testTimestamp, response.getJoinedAt().toInstant().toEpochMilli());
+        verify(redisQueueRepository, never()).isInQueue(any());
+        verify(matchmakingWorker, times(1)).requestMatchmaking();
+        verify(notificationService, times(1)).clearPendingNotifications(testUserId);
+        verify(queueHistoryRecorder, times(1)).record(
+                testUserId, QueueItem.QueueStatus.WAITING, Instant.ofEpochMilli(testTimestamp));
     }
 
     @Test
-    @DisplayName("Should not add user to queue when user is already in queue")
-    void shouldNotAddUserToQueueWhenAlreadyInQueue() {
+    @DisplayName("Should pass player rating to the queue")
+    void shouldPassPlayerRatingToQueue() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(true);
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), eq(1500.0), eq(NICKNAME)))
+                .thenReturn(new QueueJoin(true, testTimestamp));
 
         // when
-        queueService.joinQueue(testUserId);
+        queueService.joinQueue(testUserId, NICKNAME, 1500.0);
 
         // then
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, never()).addToQueue(any(UUID.class), anyLong());
+        verify(redisQueueRepository, times(1)).joinQueue(eq(testUserId), anyLong(), eq(1500.0), eq(NICKNAME));
     }
 
     @Test
-    @DisplayName("Should handle failed add to queue gracefully")
-    void shouldHandleFailedAddToQueue() {
+    @DisplayName("Should report original join time when user is already in queue")
+    void shouldNotAddUserToQueueWhenAlreadyInQueue() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(false);
-        when(redisQueueRepository.addToQueue(eq(testUserId), anyLong())).thenReturn(false);
+        long originalJoin = testTimestamp - 30_000;
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME)))
+                .thenReturn(new QueueJoin(false, originalJoin));
 
         // when
-        queueService.joinQueue(testUserId);
+        QueueJoinResponseDto response = queueService.joinQueue(testUserId, NICKNAME, null);
 
         // then
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, times(1)).addToQueue(eq(testUserId), anyLong());
-        // Service should not throw exception, just log warning
+        assertFalse(response.getNewlyJoined());
+        assertEquals(originalJoin, response.getJoinedAt().toInstant().toEpochMilli());
+        verify(matchmakingWorker, never()).requestMatchmaking();
+        verify(notificationService, never()).clearPendingNotifications(any());
+        verify(queueHistoryRecorder, never()).record(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should propagate Redis failure on join")
+    void shouldHandleFailedAddToQueue() {
+        // given
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME)))
+                .thenThrow(new RedisConnectionFailureException("connection refused"));
+
+        // when & then
+        assertThrows(RedisConnectionFailureException.class,
+                () -> queueService.joinQueue(testUserId, NICKNAME, null));
+        verify(matchmakingWorker, never()).requestMatchmaking();
     }
 
     @Test
@@ -98,6 +138,7 @@ class QueueServiceTest {
 
         // then
         verify(redisQueueRepository, times(1)).removeFromQueue(testUserId);
+        verify(queueHistoryRecorder, times(1)).record(eq(testUserId), eq(QueueItem.QueueStatus.LEFT), any());
     }
 
     @Test
@@ -111,6 +152,7 @@ class QueueServiceTest {
 
         // then
         verify(redisQueueRepository, times(1)).removeFromQueue(testUserId);
+        verify(queueHistoryRecorder, never()).record(any(), any(), any());
         // Service should not throw exception, just log warning
     }
 
@@ -119,11 +161,9 @@ class QueueServiceTest {
     void shouldReturnQueueStatusWhenUserInQueue() {
         // given
         long joinTimestamp = Instant.now().minusSeconds(45).toEpochMilli();
-        Long position = 2L;
 
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(true);
-        when(redisQueueRepository.getJoinTimestamp(testUserId)).thenReturn(joinTimestamp);
-        when(redisQueueRepository.getPosition(testUserId)).thenReturn(position);
+        when(redisQueueRepository.getQueueEntry(testUserId))
+                .thenReturn(Optional.of(new QueueEntry(joinTimestamp, 2L)));
 
         // when
         QueueStatusResponseDto result = queueService.getQueueStatus(testUserId);
@@ -133,16 +173,16 @@ class QueueServiceTest {
         assertEquals(QueueStatusResponseDto.StatusEnum.WAITING, result.getStatus());
         assertNotNull(result.getJoinedAt());
         assertTrue(result.getWaitingTime() >= 45);
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, times(1)).getJoinTimestamp(testUserId);
-        verify(redisQueueRepository, times(1)).getPosition(testUserId);
+        assertEquals(3, result.getPosition());
+        verify(redisQueueRepository, times(1)).getQueueEntry(testUserId);
+        verifyNoMoreInteractions(redisQueueRepository);
     }
 
     @Test
     @DisplayName("Should throw exception when getting status for user not in queue")
     void shouldThrowExceptionWhenGettingStatusForUserNotInQueue() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(false);
+        when(redisQueueRepository.getQueueEntry(testUserId)).thenReturn(Optional.empty());
 
         // when & then
         ResponseStatusException exception = assertThrows(
@@ -152,27 +192,24 @@ class QueueServiceTest {
 
         assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
         assertEquals("User not found in queue", exception.getReason());
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, never()).getJoinTimestamp(any(UUID.class));
+        verify(redisQueueRepository, times(1)).getQueueEntry(testUserId);
     }
 
     @Test
-    @DisplayName("Should throw exception when join timestamp is null")
-    void shouldThrowExceptionWhenJoinTimestampIsNull() {
+    @DisplayName("Should report first player in queue as position 1")
+    void shouldReportFirstPlayerAsPositionOne() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(true);
-        when(redisQueueRepository.getJoinTimestamp(testUserId)).thenReturn(null);
+        long joinTimestamp = Instant.now().minusSeconds(10).toEpochMilli();
 
-        // when & then
-        ResponseStatusException exception = assertThrows(
-                ResponseStatusException.class,
-                () -> queueService.getQueueStatus(testUserId)
-        );
+        when(redisQueueRepository.getQueueEntry(testUserId))
+                .thenReturn(Optional.of(new QueueEntry(joinTimestamp, 0L)));
 
-        assertEquals(HttpStatus.NOT_FOUND, exception.getStatusCode());
-        assertEquals("User not found in queue", exception.getReason());
-        verify(redisQueueRepository, times(1)).isInQueue(testUserId);
-        verify(redisQueueRepository, times(1)).getJoinTimestamp(testUserId);
+        // when
+        QueueStatusResponseDto result = queueService.getQueueStatus(testUserId);
+
+        // then
+        assertEquals(1, result.getPosition());
+        assertEquals(joinTimestamp, result.getJoinedAt().toInstant().toEpochMilli());
     }
 
     @Test
@@ -180,11 +217,9 @@ class QueueServiceTest {
     void shouldCalculateWaitingTimeCorrectly() {
         // given
         long joinTimestamp = Instant.now().minusSeconds(30).toEpochMilli();
-        Long position = 0L;
 
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(true);
-        when(redisQueueRepository.getJoinTimestamp(testUserId)).thenReturn(joinTimestamp);
-        when(redisQueueRepository.getPosition(testUserId)).thenReturn(position);
+        when(redisQueueRepository.getQueueEntry(testUserId))
+                .thenReturn(Optional.of(new QueueEntry(joinTimestamp, 0L)));
 
         // when
         QueueStatusResponseDto result = queueService.getQueueStatus(testUserId);
@@ -262,43 +297,22 @@ class QueueServiceTest {
         verify(redisQueueRepository, times(1)).getOldestPlayers(count);
     }
 
-    @Test
-    @DisplayName("Should handle null position in queue status")
-    void shouldHandleNullPositionInQueueStatus() {
-        // given
-        long joinTimestamp = Instant.now().minusSeconds(10).toEpochMilli();
-
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(true);
-        when(redisQueueRepository.getJoinTimestamp(testUserId)).thenReturn(joinTimestamp);
-        when(redisQueueRepository.getPosition(testUserId)).thenReturn(null);
-
-        // when
-        QueueStatusResponseDto result = queueService.getQueueStatus(testUserId);
-
-        // then
-        assertNotNull(result);
-        assertEquals(QueueStatusResponseDto.StatusEnum.WAITING, result.getStatus());
-        assertNotNull(result.getJoinedAt());
-        assertTrue(result.getWaitingTime() >= 10);
-        verify(redisQueueRepository, times(1)).getPosition(testUserId);
-    }
-
     @Test
     @DisplayName("Should use current timestamp when adding user to queue")
     void shouldUseCurrentTimestampWhenAddingToQueue() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(false);
-        when(redisQueueRepository.addToQueue(eq(testUserId), anyLong())).thenReturn(true);
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME)))
+                .thenReturn(new QueueJoin(true, testTimestamp));
 
         long beforeAdd = Instant.now().toEpochMilli();
 
         // when
-        queueService.joinQueue(testUserId);
+        queueService.joinQueue(testUserId, NICKNAME, null);
 
         // then
         long afterAdd = Instant.now().toEpochMilli();
         ArgumentCaptor<Long> timestampCaptor = ArgumentCaptor.forClass(Long.class);
-        verify(redisQueueRepository).addToQueue(eq(testUserId), timestampCaptor.capture());
+        verify(redisQueueRepository).joinQueue(eq(testUserId), timestampCaptor.capture(), isNull(), eq(NICKNAME));
         
         Long capturedTimestamp = timestampCaptor.getValue();
         assertNotNull(capturedTimestamp);
@@ -310,18 +324,21 @@ class QueueServiceTest {
     @DisplayName("Should handle multiple join attempts for same user")
     void shouldHandleMultipleJoinAttemptsForSameUser() {
         // given
-        when(redisQueueRepository.isInQueue(testUserId)).thenReturn(false, true);
-        when(redisQueueRepository.addToQueue(eq(testUserId), anyLong())).thenReturn(true);
+        when(redisQueueRepository.joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME)))
+                .thenReturn(new QueueJoin(true, testTimestamp), new QueueJoin(false, testTimestamp));
 
         // when - first join
-        queueService.joinQueue(testUserId);
+        QueueJoinResponseDto first = queueService.joinQueue(testUserId, NICKNAME, null);
 
         // when - second join attempt
-        queueService.joinQueue(testUserId);
+        QueueJoinResponseDto second = queueService.joinQueue(testUserId, NICKNAME, null);
 
         // then
-        verify(redisQueueRepository, times(2)).isInQueue(testUserId);
-        verify(redisQueueRepository, times(1)).addToQueue(eq(testUserId), anyLong());
+        assertTrue(first.getNewlyJoined());
+        assertFalse(second.getNewlyJoined());
+        assertEquals(first.getJoinedAt(), second.getJoinedAt());
+        verify(redisQueueRepository, times(2)).joinQueue(eq(testUserId), anyLong(), isNull(), eq(NICKNAME));
+        verify(matchmakingWorker, times(1)).requestMatchmaking();
     }
 
     @Test
@@ -331,20 +348,18 @@ class QueueServiceTest {
         UUID user1 = UUID.randomUUID();
         UUID user2 = UUID.randomUUID();
 
-        when(redisQueueRepository.isInQueue(user1)).thenReturn(false);
-        when(redisQueueRepository.isInQueue(user2)).thenReturn(false);
-        when(redisQueueRepository.addToQueue(any(UUID.class), anyLong())).thenReturn(true);
+        when(redisQueueRepository.joinQueue(any(UUID.class), anyLong(), any(), any()))
+                .thenReturn(new QueueJoin(true, testTimestamp));
         when(redisQueueRepository.removeFromQueue(any(UUID.class))).thenReturn(true);
 
         // when
-        queueService.joinQueue(user1);
-        queueService.joinQueue(user2);
+        queueService.joinQueue(user1, NICKNAME, null);
+        queueService.joinQueue(user2, NICKNAME, null);
         queueService.leaveQueue(user1);
 
         // then
-        verify(redisQueueRepository, times(1)).isInQueue(user1);
-        verify(redisQueueRepository, times(1)).isInQueue(user2);
-        verify(redisQueueRepository, times(2)).addToQueue(any(UUID.class), anyLong());
+        verify(redisQueueRepository, times(1)).joinQueue(eq(user1), anyLong(), any(), any());
+        verify(redisQueueRepository, times(1)).joinQueue(eq(user2), anyLong(), any(), any());
         verify(redisQueueRepository, times(1)).removeFromQueue(user1);
     }
 }
@@ -10,9 +10,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -23,6 +26,9 @@ class WebSocketNotificationServiceTest {
     @Mock
     private SimpMessagingTemplate messagingTemplate;
 
+    @Mock
+    private ClusterNotificationRelay clusterNotificationRelay;
+
     @InjectMocks
     private WebSocketNotificationService notificationService;
 
@@ -172,5 +178,92 @@ class WebSocketNotificationServiceTest {
         verify(messagingTemplate, times(1))
                 .convertAndSend(eq("/topic/queue/" + user2), any(WebSocketNotificationService.MatchFoundEvent.class));
     }
-}
 
+    @Test
+    @DisplayName("Should send queue status event to user topic")
+    void shouldSendQueueStatusEvent() {
+        // when
+        notificationService.sendQueueStatus(testUserId1, 3, 42, 12);
+
+        // then
+        ArgumentCaptor<WebSocketNotificationService.QueueStatusEvent> eventCaptor =
+                ArgumentCaptor.forClass(WebSocketNotificationService.QueueStatusEvent.class);
+
+        verify(messagingTemplate, times(1))
+                .convertAndSend(eq("/topic/queue/" + testUserId1), eventCaptor.capture());
+
+        WebSocketNotificationService.QueueStatusEvent capturedEvent = eventCaptor.getValue();
+        assertEquals("queue_status", capturedEvent.getType());
+        assertEquals(3, capturedEvent.getPosition());
+        assertEquals(42, capturedEvent.getWaitingTime());
+        assertEquals(12, capturedEvent.getEstimatedWaitSeconds());
+    }
+
+    @Test
+    @DisplayName("Should publish queue statuses through cluster relay in chunks")
+    void shouldPublishQueueStatusesThroughClusterRelayInChunks() {
+        // given
+        when(clusterNotificationRelay.enabled()).thenReturn(true);
+        when(clusterNotificationRelay.publishQueueStatuses(anyList())).thenReturn(true);
+        List<WebSocketNotificationService.QueueStatus> statuses = new ArrayList<>();
+        for (int i = 1; i <= WebSocketNotificationService.QUEUE_STATUS_CHUNK + 1; i++) {
+            statuses.add(new WebSocketNotificationService.QueueStatus(UUID.randomUUID(), i, 0, null));
+        }
+
+        // when
+        notificationService.sendQueueStatuses(statuses);
+
+        // then
+        verify(clusterNotificationRelay).publishQueueStatuses(
+                argThat(chunk -> chunk.size() == WebSocketNotificationService.QUEUE_STATUS_CHUNK));
+        verify(clusterNotificationRelay).publishQueueStatuses(argThat(chunk -> chunk.size() == 1));
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should deliver queue statuses locally when cluster relay fails")
+    void shouldDeliverQueueStatusesLocallyWhenRelayFails() {
+        // given
+        when(clusterNotificationRelay.enabled()).thenReturn(true);
+        when(clusterNotificationRelay.publishQueueStatuses(anyList())).thenReturn(false);
+
+        // when
+        notificationService.sendQueueStatuses(List.of(
+                new WebSocketNotificationService.QueueStatus(testUserId1, 1, 10, 5)));
+
+        // then
+        verify(messagingTemplate, times(1)).convertAndSend(eq("/topic/queue/" + testUserId1),
+                any(WebSocketNotificationService.QueueStatusEvent.class));
+    }
+
+    @Test
+    @DisplayName("Should route match found through cluster relay in cluster mode")
+    void shouldRouteMatchFoundThroughClusterRelay() {
+        // given
+        when(clusterNotificationRelay.enabled()).thenReturn(true);
+        when(clusterNotificationRelay.publish(eq(testUserId1), any())).thenReturn(true);
+
+        // when
+        notificationService.sendMatchFound(testUserId1, testMatchId, testNickname2);
+
+        // then
+        verify(clusterNotificationRelay).publish(eq(testUserId1),
+                argThat(event -> testMatchId.equals(event.getMatchId())));
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    @DisplayName("Should fall back to local broker when cluster publish fails")
+    void shouldFallBackToLocalBrokerWhenClusterPublishFails() {
+        // given
+        when(clusterNotificationRelay.enabled()).thenReturn(true);
+        when(clusterNotificationRelay.publish(eq(testUserId1), any())).thenReturn(false);
+
+        // when
+        notificationService.sendMatchFound(testUserId1, testMatchId, testNickname2);
+
+        // then
+        verify(messagingTemplate).convertAndSend(eq("/topic/queue/" + testUserId1),
+                any(WebSocketNotificationService.MatchFoundEvent.class));
+    }
+}
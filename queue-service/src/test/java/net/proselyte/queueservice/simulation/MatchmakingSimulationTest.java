@@ -0,0 +1,90 @@
+package net.proselyte.queueservice.simulation;
+
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.config.RedisConfig;
+import net.proselyte.queueservice.repository.QueueMemberCodec;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сравнение алгоритмов подбора под одинаковой нагрузкой. Запуск: {@code ./gradlew simulation};
+ * таблица с p50/p95/p99 времени до матча, матчами в секунду и разницей рейтингов в парах печатается в stdout.
+ */
+@Tag("simulation")
+@Testcontainers
+class MatchmakingSimulationTest {
+
+    private static final SimulationScenario SCENARIO = new SimulationScenario(
+            200, Duration.ofSeconds(20), Duration.ofSeconds(60), 1500, 300, 0.9, Duration.ofMillis(20), 42);
+
+    @Container
+    static GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static RedisTemplate<String, String> queueRedisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        queueRedisTemplate = new RedisConfig().queueRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void compareAlgorithms() {
+        Map<String, MatchmakingProperties> algorithms = new LinkedHashMap<>();
+        algorithms.put("pair", new MatchmakingProperties(null, null, 0, 1));
+        algorithms.put("batch-16", new MatchmakingProperties(null, null, 16, 1));
+        algorithms.put("batch-64", new MatchmakingProperties(null, null, 64, 1));
+        algorithms.put("pair-x8", new MatchmakingProperties(null, null, 0, 8));
+        algorithms.put("pair-wide", new MatchmakingProperties(null,
+                new MatchmakingProperties.Rating(200, 20, 600, 16, 4, 1024), 0, 1));
+
+        MatchmakingSimulator simulator = new MatchmakingSimulator(new RedisQueueRepository(
+                queueRedisTemplate, new QueueMemberCodec(QueueMemberCodec.Encoding.TEXT)));
+        List<SimulationReport> reports = new ArrayList<>();
+        algorithms.forEach((name, properties) -> {
+            flush();
+            reports.add(simulator.run(name, properties, SCENARIO));
+        });
+
+        System.out.println(SimulationReport.HEADER);
+        reports.forEach(report -> System.out.println(report.formatRow()));
+
+        for (SimulationReport report : reports) {
+            assertTrue(report.matches() > 0, report.algorithm() + " produced no matches");
+            assertTrue(report.timeToMatchPercentile(0.50) <= report.timeToMatchPercentile(0.99));
+        }
+    }
+
+    private static void flush() {
+        queueRedisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+    }
+}
@@ -0,0 +1,202 @@
+package net.proselyte.queueservice.simulation;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.proselyte.game.dto.CreateMatchRequest;
+import net.proselyte.game.dto.CreateMatchesRequest;
+import net.proselyte.game.dto.MatchResponse;
+import net.proselyte.game.dto.MatchesResponse;
+import net.proselyte.queueservice.client.GameServiceClient;
+import net.proselyte.queueservice.client.PersonServiceClient;
+import net.proselyte.queueservice.config.MatchmakingProperties;
+import net.proselyte.queueservice.metric.MatchmakingMetrics;
+import net.proselyte.queueservice.repository.RedisPairingRateRepository;
+import net.proselyte.queueservice.repository.RedisQueueRepository;
+import net.proselyte.queueservice.service.MatchmakingLeaderLease;
+import net.proselyte.queueservice.service.MatchmakingService;
+import net.proselyte.queueservice.service.PresenceTracker;
+import net.proselyte.queueservice.service.QueueHistoryRecorder;
+import net.proselyte.queueservice.service.WebSocketNotificationService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Прогоняет настоящий {@link MatchmakingService} и Lua-скрипты очереди на живом Redis под синтетической нагрузкой:
+ * пуассоновский поток входов, нормальное распределение рейтинга, уход игроков с экспоненциальным терпением.
+ * game-service заменен заглушкой, которая фиксирует созданные пары; persons-api не нужен,
+ * потому что никнеймы берутся из карточек очереди. Остальные зависимости (уведомления, presence,
+ * история, лидерство) - пустые моки.
+ * При {@code concurrency > 1} шаги подбора идут параллельными полосами на виртуальных потоках, как в MatchmakingWorker.
+ */
+public class MatchmakingSimulator {
+
+    private static final long TICK_MILLIS = 5;
+    private static final String NICKNAME = "sim";
+
+    private final RedisQueueRepository repository;
+
+    public MatchmakingSimulator(RedisQueueRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Прогон одного алгоритма. Очередь перед прогоном должна быть пустой.
+     */
+    public SimulationReport run(String algorithm, MatchmakingProperties properties, SimulationScenario scenario) {
+        RecordingGameService gameService = new RecordingGameService(scenario.gameLatency());
+        MatchmakingService matchmakingService = new MatchmakingService(
+                repository,
+                gameService,
+                mock(PersonServiceClient.class),
+                mock(WebSocketNotificationService.class),
+                new MatchmakingMetrics(new SimpleMeterRegistry(), properties),
+                properties,
+                mock(MatchmakingLeaderLease.class),
+                mock(PresenceTracker.class),
+                mock(QueueHistoryRecorder.class),
+                mock(RedisPairingRateRepository.class));
+
+        Random random = new Random(scenario.seed());
+        Map<UUID, Arrival> arrivals = new ConcurrentHashMap<>();
+        PriorityQueue<Abandon> abandons = new PriorityQueue<>();
+        long abandoned = 0;
+
+        long start = System.currentTimeMillis();
+        long end = start + scenario.duration().toMillis();
+        double nextArrival = start + exponential(random, 1000.0 / scenario.arrivalsPerSecond());
+        long now = start;
+        while (now < end) {
+            while (nextArrival <= now) {
+                UUID userId = UUID.randomUUID();
+                Double rating = random.nextDouble() < scenario.ratedShare()
+                        ? scenario.ratingMean() + random.nextGaussian() * scenario.ratingStdDev()
+                        : null;
+                long joinedAt = (long) nextArrival;
+                repository.joinQueue(userId, joinedAt, rating, NICKNAME);
+                arrivals.put(userId, new Arrival(joinedAt, rating));
+                abandons.add(new Abandon(
+                        joinedAt + (long) exponential(random, scenario.meanPatience().toMillis()), userId));
+                nextArrival += exponential(random, 1000.0 / scenario.arrivalsPerSecond());
+            }
+            while (!abandons.isEmpty() && abandons.peek().at() <= now) {
+                if (repository.removeFromQueue(abandons.poll().userId())) {
+                    abandoned++;
+                }
+            }
+            drain(matchmakingService, properties.concurrency());
+            sleep(TICK_MILLIS);
+            now = System.currentTimeMillis();
+        }
+        double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+        List<Long> timesToMatch = new ArrayList<>();
+        List<Double> gaps = new ArrayList<>();
+        for (MatchedPair pair : gameService.pairs) {
+            Arrival first = arrivals.get(pair.player1());
+            Arrival second = arrivals.get(pair.player2());
+            timesToMatch.add(pair.at() - first.joinedAt());
+            timesToMatch.add(pair.at() - second.joinedAt());
+            if (first.rating() != null && second.rating() != null) {
+                gaps.add(Math.abs(first.rating() - second.rating()));
+            }
+        }
+        return new SimulationReport(algorithm, arrivals.size(), gameService.pairs.size(), abandoned, seconds,
+                timesToMatch.stream().mapToLong(Long::longValue).toArray(),
+                gaps.stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    /**
+     * Проход до первого пустого или неудачного шага в каждой полосе, как у MatchmakingWorker.
+     */
+    private static void drain(MatchmakingService matchmakingService, int concurrency) {
+        if (concurrency <= 1) {
+            while (matchmakingService.matchNext().proceed()) {
+                // следующий шаг
+            }
+            return;
+        }
+        try (ExecutorService lanes = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int lane = 0; lane < concurrency; lane++) {
+                lanes.execute(() -> {
+                    while (matchmakingService.matchNext().proceed()) {
+                        // следующий шаг
+                    }
+                });
+            }
+        }
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        }
+    }
+
+    private record Arrival(long joinedAt, Double rating) {
+    }
+
+    private record Abandon(long at, UUID userId) implements Comparable<Abandon> {
+
+        @Override
+        public int compareTo(Abandon other) {
+            return Long.compare(at, other.at);
+        }
+    }
+
+    private record MatchedPair(UUID player1, UUID player2, long at) {
+    }
+
+    /**
+     * Заглушка game-service: создает матч на любую пару и запоминает, когда пара была создана.
+     */
+    private static class RecordingGameService implements GameServiceClient {
+
+        private final List<MatchedPair> pairs = Collections.synchronizedList(new ArrayList<>());
+        private final Duration latency;
+
+        private RecordingGameService(Duration latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public MatchResponse createMatch(CreateMatchRequest request) {
+            sleep(latency.toMillis());
+            return record(request);
+        }
+
+        @Override
+        public MatchesResponse createMatches(CreateMatchesRequest request) {
+            sleep(latency.toMillis());
+            MatchesResponse response = new MatchesResponse();
+            response.setItems(request.getMatches().stream().map(this::record).toList());
+            return response;
+        }
+
+        private MatchResponse record(CreateMatchRequest request) {
+            pairs.add(new MatchedPair(request.getPlayer1Id(), request.getPlayer2Id(), System.currentTimeMillis()));
+            MatchResponse match = new MatchResponse();
+            match.setId(UUID.randomUUID());
+            match.setPlayer1Id(request.getPlayer1Id());
+            match.setPlayer2Id(request.getPlayer2Id());
+            return match;
+        }
+    }
+}
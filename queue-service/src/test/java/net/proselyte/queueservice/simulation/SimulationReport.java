@@ -0,0 +1,68 @@
+package net.proselyte.queueservice.simulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Итог прогона одного алгоритма подбора.
+ *
+ * @param algorithm     название алгоритма
+ * @param arrivals      сколько игроков вошло в очередь
+ * @param matches       сколько матчей создано
+ * @param abandoned     сколько игроков ушло из очереди, не дождавшись пары
+ * @param seconds       длительность прогона
+ * @param timeToMatchMs время до матча каждого сматченного игрока
+ * @param ratingGaps    разница рейтингов в каждой паре, где рейтинг есть у обоих
+ */
+public record SimulationReport(
+        String algorithm,
+        long arrivals,
+        long matches,
+        long abandoned,
+        double seconds,
+        long[] timeToMatchMs,
+        double[] ratingGaps
+) {
+
+    public static final String HEADER = String.format(Locale.ROOT,
+            "%-14s %8s %8s %9s %9s %8s %8s %8s %9s %9s",
+            "algorithm", "arrivals", "matches", "abandoned", "matches/s",
+            "p50 ms", "p95 ms", "p99 ms", "gap mean", "gap p95");
+
+    public double matchesPerSecond() {
+        return seconds > 0 ? matches / seconds : 0;
+    }
+
+    public long timeToMatchPercentile(double percentile) {
+        if (timeToMatchMs.length == 0) {
+            return 0;
+        }
+        long[] sorted = timeToMatchMs.clone();
+        Arrays.sort(sorted);
+        return sorted[rank(sorted.length, percentile)];
+    }
+
+    public double ratingGapMean() {
+        return Arrays.stream(ratingGaps).average().orElse(0);
+    }
+
+    public double ratingGapPercentile(double percentile) {
+        if (ratingGaps.length == 0) {
+            return 0;
+        }
+        double[] sorted = ratingGaps.clone();
+        Arrays.sort(sorted);
+        return sorted[rank(sorted.length, percentile)];
+    }
+
+    public String formatRow() {
+        return String.format(Locale.ROOT, "%-14s %8d %8d %9d %9.1f %8d %8d %8d %9.1f %9.1f",
+                algorithm, arrivals, matches, abandoned, matchesPerSecond(),
+                timeToMatchPercentile(0.50), timeToMatchPercentile(0.95), timeToMatchPercentile(0.99),
+                ratingGapMean(), ratingGapPercentile(0.95));
+    }
+
+    private static int rank(int size, double percentile) {
+        return Math.max(0, Math.min(size - 1, (int) Math.ceil(percentile * size) - 1));
+    }
+}
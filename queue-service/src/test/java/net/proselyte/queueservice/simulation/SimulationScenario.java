@@ -0,0 +1,27 @@
+package net.proselyte.queueservice.simulation;
+
+import java.time.Duration;
+
+/**
+ * Нагрузка, которую симулятор подает в очередь.
+ *
+ * @param arrivalsPerSecond интенсивность пуассоновского потока входов в очередь
+ * @param duration          сколько длится прогон (реальное время: окно рейтинга считается от Instant.now())
+ * @param meanPatience      среднее (экспоненциальное) время, через которое игрок без пары уходит из очереди
+ * @param ratingMean        среднее нормального распределения рейтинга
+ * @param ratingStdDev      стандартное отклонение рейтинга
+ * @param ratedShare        доля игроков с рейтингом; остальные подбираются по времени входа
+ * @param gameLatency       сколько заглушка game-service отвечает на создание матча
+ * @param seed              seed генератора, чтобы алгоритмы сравнивались на одном и том же потоке
+ */
+public record SimulationScenario(
+        double arrivalsPerSecond,
+        Duration duration,
+        Duration meanPatience,
+        double ratingMean,
+        double ratingStdDev,
+        double ratedShare,
+        Duration gameLatency,
+        long seed
+) {
+}